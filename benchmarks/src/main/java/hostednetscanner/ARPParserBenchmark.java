@@ -0,0 +1,65 @@
+package hostednetscanner;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the ARP table parsers against generated {@code arp -a} outputs of
+ * a hosted network interface followed by three other interfaces.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ARPParserBenchmark {
+
+	@Param({ "10", "100", "1000", "5000" })
+	public int entries;
+
+	private String arpOutput;
+	private byte[] arpBytes;
+	private Network hostedNetwork;
+	private final ARPTableParser streamingParser = new ARPTableParser();
+	private final ArpTable arpTable = new ArpTable();
+
+	@Setup
+	public void setup() throws Exception {
+		arpOutput = FixtureGenerator.arpOutput(4, entries);
+		arpBytes = arpOutput.getBytes();
+		hostedNetwork = new Network(new Device(InetAddress.getByName(FixtureGenerator.HOSTED_IP), null));
+	}
+
+	@Benchmark
+	public Set<Network> parseAll() {
+		return ARPScanner.parse(arpOutput);
+	}
+
+	@Benchmark
+	public Set<Device> parseNetworkDevices() {
+		return ARPScanner.parseNetworkDevices(hostedNetwork, arpOutput);
+	}
+
+	@Benchmark
+	public ArpTable parseStreaming() throws IOException {
+		arpTable.clear();
+		streamingParser.parse(new ByteArrayInputStream(arpBytes), arpTable);
+		return arpTable;
+	}
+}
@@ -0,0 +1,86 @@
+package hostednetscanner;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the queries of a {@link DeviceHistoryStore} holding 30 days of
+ * sessions of the given number of devices, each connecting a few times a day.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeviceHistoryStoreBenchmark {
+	private static final long DAY_MS = TimeUnit.DAYS.toMillis(1);
+	private static final long START = 1700000000000L;
+
+	@Param({ "1000" })
+	public int devices;
+
+	private Path directory;
+	private DeviceHistoryStore store;
+	private long mac;
+
+	@Setup
+	public void setup() throws Exception {
+		directory = Files.createTempDirectory("history-benchmark");
+		store = new DeviceHistoryStore(directory);
+
+		Random random = new Random(42);
+		for (int n = 0; n < devices; n++) {
+			long deviceMac = AddressUtils.parseMac(FixtureGenerator.clientMac(n));
+			long time = START + random.nextInt(3600000);
+			while (time < START + 30 * DAY_MS) {
+				store.update(deviceMac, 0x0A000000 | n, true, time);
+				time += 600000 + random.nextInt(8 * 3600000);
+				store.update(deviceMac, 0x0A000000 | n, false, time);
+				time += 600000 + random.nextInt(4 * 3600000);
+			}
+		}
+		mac = AddressUtils.parseMac(FixtureGenerator.clientMac(devices / 2));
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		store.close();
+		try (Stream<Path> files = Files.walk(directory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+		}
+	}
+
+	@Benchmark
+	public List<DeviceHistoryStore.Session> sessionsOfDeviceInWeek() {
+		return store.getSessions(mac, START + 7 * DAY_MS, START + 14 * DAY_MS);
+	}
+
+	@Benchmark
+	public List<DeviceHistoryStore.Session> sessionsInHour() {
+		return store.getSessions(START + 15 * DAY_MS, START + 15 * DAY_MS + DeviceHistoryStore.HOUR_MS);
+	}
+
+	@Benchmark
+	public int[] hourlyPeaksOfMonth() {
+		return store.getConcurrencyHistogram(START, START + 30 * DAY_MS, DeviceHistoryStore.HOUR_MS);
+	}
+}
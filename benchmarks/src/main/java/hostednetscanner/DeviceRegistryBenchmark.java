@@ -0,0 +1,75 @@
+package hostednetscanner;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks diffing a scan cycle against the {@link DeviceRegistry}: every
+ * known device is looked up by MAC, marked connected and reachable, and the
+ * statuses are derived from the marks. {@link #diffUnchanged()} measures the
+ * steady state, while in {@link #diffHalfChanged()} half of the devices
+ * alternate between online and offline on every cycle.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeviceRegistryBenchmark {
+
+	@Param({ "100", "1000", "10000" })
+	public int devices;
+
+	private DeviceRegistry registry;
+	private ArpTable snapshot;
+	private boolean odd;
+
+	@Setup
+	public void setup() {
+		registry = new DeviceRegistry(devices);
+		snapshot = new ArpTable(devices);
+		for (int n = 0; n < devices; n++) {
+			Device device = new Device(null, FixtureGenerator.clientMac(n));
+			registry.add(device);
+			snapshot.add(0, 0x0A000000 | n, AddressUtils.parseMac(device.getMacAddress()));
+		}
+	}
+
+	@Benchmark
+	public boolean diffUnchanged() {
+		registry.beginCycle();
+		for (int i = 0; i < snapshot.size(); i++) {
+			int slot = registry.slotOf(snapshot.getMac(i));
+			registry.markConnected(slot);
+			registry.markReachable(slot, snapshot.getIp(i));
+		}
+		return registry.applyCycle(registry.size(), AddressUtils.INVALID, System.currentTimeMillis());
+	}
+
+	@Benchmark
+	public boolean diffHalfChanged() {
+		odd = !odd;
+		registry.beginCycle();
+		for (int i = 0; i < snapshot.size(); i++) {
+			if (odd && (i & 1) == 0)
+				continue;
+
+			int slot = registry.slotOf(snapshot.getMac(i));
+			registry.markConnected(slot);
+			registry.markReachable(slot, snapshot.getIp(i));
+		}
+		return registry.applyCycle(registry.size(), AddressUtils.INVALID, System.currentTimeMillis());
+	}
+}
@@ -0,0 +1,67 @@
+package hostednetscanner;
+
+import java.net.InetAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks concurrent hostname lookups through a {@link HostnameResolver}
+ * whose simulated lookup sleeps for the given latency, once the names of all
+ * addresses are cached.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class HostnameResolverBenchmark {
+
+	@Param({ "100", "5000" })
+	public int addresses;
+
+	@Param({ "50" })
+	public long latencyMs;
+
+	private InetAddress[] ips;
+	private HostnameResolver resolver;
+
+	@Setup
+	public void setup() throws Exception {
+		resolver = new HostnameResolver(HostnameResolver.simulatedLookup(latencyMs), 64, addresses, 10000,
+				TimeUnit.HOURS.toMillis(1), TimeUnit.HOURS.toMillis(1));
+		ips = new InetAddress[addresses];
+		CompletableFuture<?>[] lookups = new CompletableFuture<?>[addresses];
+		for (int i = 0; i < addresses; i++) {
+			ips[i] = AddressUtils.toInetAddress(0x0A000000 | i);
+			lookups[i] = resolver.resolve(ips[i]);
+		}
+		CompletableFuture.allOf(lookups).join();
+	}
+
+	@TearDown
+	public void tearDown() {
+		resolver.shutdown();
+	}
+
+	@Benchmark
+	public String resolveCached() {
+		return resolver.resolve(ips[ThreadLocalRandom.current().nextInt(addresses)]).join();
+	}
+}
@@ -0,0 +1,44 @@
+package hostednetscanner;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the {@code ipconfig /all} parser against generated outputs with an
+ * increasing number of adapters.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IPConfigParserBenchmark {
+
+	@Param({ "1", "4", "16", "64" })
+	public int adapters;
+
+	private String ipconfigOutput;
+
+	@Setup
+	public void setup() {
+		ipconfigOutput = FixtureGenerator.ipconfigOutput(adapters);
+	}
+
+	@Benchmark
+	public List<IPConfigScanner.IPConfigEntry> parse() {
+		return IPConfigScanner.parse(ipconfigOutput);
+	}
+}
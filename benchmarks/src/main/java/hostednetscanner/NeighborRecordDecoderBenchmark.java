@@ -0,0 +1,48 @@
+package hostednetscanner;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks decoding the neighbor records of the PowerShell reachability
+ * script.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NeighborRecordDecoderBenchmark {
+
+	@Param({ "10", "100", "1000", "5000" })
+	public int entries;
+
+	private byte[] records;
+	private final NeighborRecordDecoder decoder = new NeighborRecordDecoder();
+	private final NeighborTable neighborTable = new NeighborTable();
+
+	@Setup
+	public void setup() {
+		records = FixtureGenerator.neighborOutput(entries).getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Benchmark
+	public NeighborTable decode() {
+		neighborTable.clear();
+		decoder.decode(records, 0, records.length, neighborTable);
+		return neighborTable;
+	}
+}
@@ -0,0 +1,59 @@
+package hostednetscanner;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks reading a Linux neighbor table with {@link ProcNetArpSource}, from
+ * a generated fixture copy of {@code /proc/net/arp}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NeighborSourceBenchmark {
+
+	@Param({ "10", "100", "1000", "5000" })
+	public int entries;
+
+	private Path fixture;
+	private ProcNetArpSource source;
+	private final ArpTable arpTable = new ArpTable();
+
+	@Setup
+	public void setup() throws IOException {
+		fixture = Files.createTempFile("proc_net_arp", ".txt");
+		Files.write(fixture, FixtureGenerator.procNetArpOutput(entries, "lo").getBytes(StandardCharsets.US_ASCII));
+		source = new ProcNetArpSource(fixture);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(fixture);
+	}
+
+	@Benchmark
+	public ArpTable readProcNetArp() throws IOException {
+		arpTable.clear();
+		source.read(arpTable);
+		return arpTable;
+	}
+}
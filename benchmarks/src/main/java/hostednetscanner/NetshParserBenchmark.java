@@ -0,0 +1,49 @@
+package hostednetscanner;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the parsing of {@code netsh wlan show hostednetwork} outputs with
+ * an increasing number of connected clients.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NetshParserBenchmark {
+
+	@Param({ "10", "100", "1000", "5000" })
+	public int clients;
+
+	private String netshOutput;
+
+	@Setup
+	public void setup() {
+		netshOutput = FixtureGenerator.hostedNetworkOutput(clients);
+	}
+
+	@Benchmark
+	public List<String> clientMacs() {
+		return new ScanSnapshot(netshOutput, null, null, 0).getClientMacs();
+	}
+
+	@Benchmark
+	public String hostedNetMac() {
+		return HostedNetwork.parseHostedNetMac(netshOutput);
+	}
+}
@@ -0,0 +1,65 @@
+package hostednetscanner;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks concurrent calls through a {@link ShellSessionPool} of
+ * {@link StandInShell} processes, each call running a registered function that
+ * prints a few lines.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class ShellSessionPoolBenchmark {
+	private static final String FUNCTION = "Get-Neighbors";
+
+	@Param({ "1", "2", "4" })
+	public int shells;
+
+	private ShellSessionPool pool;
+
+	@Setup
+	public void setup() throws IOException {
+		String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+		pool = new ShellSessionPool(
+				Arrays.asList(java, "-cp", System.getProperty("java.class.path"), StandInShell.class.getName()),
+				shells);
+		pool.register(FUNCTION, "Write-Output \"IP Address: 192.168.137.2\"\n"
+				+ "Write-Output \"MAC Address: AA-BB-CC-00-00-00\"\nWrite-Output \"State: Reachable\"");
+		// Wait for the shells to start up before measuring
+		for (int i = 0; i < shells; i++) {
+			pool.invoke(FUNCTION, 30000);
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		pool.close();
+	}
+
+	@Benchmark
+	public String invoke() throws IOException {
+		return pool.invoke(FUNCTION, ShellSessionPool.DEFAULT_TIMEOUT_MS);
+	}
+}
@@ -5,10 +5,18 @@ import javax.swing.JOptionPane;
 import javax.swing.UIManager;
 
 import HostedNetScannerUI.MainWindow;
+import hostednetscanner.CommandExecutor;
 import hostednetscanner.Logger;
 
 public class App {
 	public static void main(String[] args) {
+		for (String arg : args) {
+			if (arg.equals("--headless")) {
+				Daemon.main(args);
+				return;
+			}
+		}
+
 		if (!isAdmin()) {
 			JOptionPane.showMessageDialog(null, "This application requires administrator privileges to run.");
 			System.exit(1); // Exit with an error code
@@ -33,13 +41,12 @@ public class App {
 		});
 	}
 
-	private static boolean isAdmin() {
+	static boolean isAdmin() {
 		try {
 			// Attempt to execute a command that requires admin rights
-			Process process = Runtime.getRuntime().exec("net session");
-			int exitCode = process.waitFor();
+			int exitCode = CommandExecutor.getDefault().execute("net session").getExitCode();
 			return exitCode == 0; // Exit code 0 usually indicates success, meaning admin rights
-		} catch (IOException | InterruptedException e) {
+		} catch (IOException e) {
 			// An exception likely means we don't have admin rights
 			return false;
 		}
@@ -0,0 +1,182 @@
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import hostednetscanner.ApiServer;
+import hostednetscanner.ConfigManager;
+import hostednetscanner.DeviceHistoryStore;
+import hostednetscanner.HostedNetwork;
+import hostednetscanner.Logger;
+import hostednetscanner.MetricsServer;
+import hostednetscanner.MultiNetworkMonitor;
+import hostednetscanner.Network;
+import hostednetscanner.NetworkEventBus;
+import hostednetscanner.NetworkEventSource;
+import hostednetscanner.ScanMetrics;
+
+/**
+ * Runs the scanner without a user interface, on a headless gateway: starts the
+ * hosted network, monitors it and serves its devices, deltas and metrics with
+ * the {@link ApiServer} until the process is stopped. With {@code --all}, every
+ * network of the machine is monitored by a {@link MultiNetworkMonitor}, the
+ * hosted network included if it is running.
+ *
+ * <pre>
+ * java -cp HostedNetScanner.jar Daemon [--port &lt;port&gt;] [--all]
+ * </pre>
+ *
+ * The port defaults to the one of the {@link ConfigManager}. Also started with
+ * {@code App --headless}.
+ */
+public class Daemon {
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+		if (!App.isAdmin()) {
+			System.err.println("This application requires administrator privileges to run.");
+			System.exit(1);
+		}
+
+		ConfigManager config = new ConfigManager();
+		int port = config.getApiPort();
+		boolean all = false;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("--all")) {
+				all = true;
+			} else if (args[i].equals("--port") && i + 1 < args.length) {
+				try {
+					port = Integer.parseInt(args[++i]);
+				} catch (NumberFormatException e) {
+					System.err.println("Invalid port: " + args[i]);
+					System.exit(1);
+				}
+			}
+		}
+
+		ApiServer server;
+		try {
+			server = new ApiServer(ScanMetrics.getDefault(), port);
+		} catch (IOException e) {
+			System.err.println("Error starting the API server on port " + port + ": " + e.getMessage());
+			Logger.logError("Error starting the API server on port " + port + ": ", e);
+			System.exit(1);
+			return;
+		}
+		Logger.logMessage("Serving the API on http://127.0.0.1:" + server.getPort() + "/api");
+		MetricsServer.open(config);
+
+		// Only the hosted network is required, other networks are optional
+		HostedNetwork hnet = null;
+		if (!all) {
+			HostedNetwork.startNetwork();
+			hnet = HostedNetwork.getInstance();
+			if (hnet == null) {
+				System.err.println("The hosted network could not be started, check its SSID and password.");
+				Logger.logMessage("The hosted network could not be started");
+				server.stop();
+				System.exit(1);
+			}
+		} else if (HostedNetwork.isNetworkRunning()) {
+			hnet = HostedNetwork.findHostedNetworkInstance();
+		}
+
+		// The histories opened, closed when the process stops
+		Set<DeviceHistoryStore> histories = ConcurrentHashMap.newKeySet();
+		if (hnet != null) {
+			openHistory(config, hnet, histories);
+			hnet.setEvictionPolicy(config.getEvictionPolicy());
+		}
+
+		MultiNetworkMonitor monitor = null;
+		if (all) {
+			monitor = new MultiNetworkMonitor(config.getPollingPolicy(), NetworkEventSource.getDefault());
+			monitor.addListener(new MultiNetworkMonitor.Listener() {
+				@Override
+				public void onNetworkAdded(Network network) {
+					network.setEvictionPolicy(config.getEvictionPolicy());
+					// The hosted network keeps the history opened above
+					if (network.getHistory() == null) {
+						openHistory(config, network, histories);
+					}
+					server.addNetwork(network);
+				}
+
+				@Override
+				public void onNetworkRemoved(Network network) {
+					server.removeNetwork(network);
+					closeHistory(network, histories);
+				}
+			});
+			monitor.start();
+		} else {
+			server.addNetwork(hnet);
+			hnet.monitorNetwork();
+		}
+
+		MultiNetworkMonitor started = monitor;
+		CountDownLatch stopped = new CountDownLatch(1);
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			if (started != null) {
+				started.stop();
+			}
+			server.stop();
+			for (DeviceHistoryStore history : histories) {
+				try {
+					history.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+			stopped.countDown();
+		}, "daemon-stop"));
+
+		// The monitor and server threads are daemon threads, keep the process alive
+		try {
+			stopped.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Opens the history of a network and subscribes it to the network's deltas.
+	 * The hosted network's history is the configured directory, the other
+	 * networks have one of their own, see {@link DeviceHistoryStore#open(ConfigManager, Network)}.
+	 */
+	private static void openHistory(ConfigManager config, Network network, Set<DeviceHistoryStore> histories) {
+		try {
+			DeviceHistoryStore history = network instanceof HostedNetwork ? DeviceHistoryStore.open(config)
+					: DeviceHistoryStore.open(config, network);
+			histories.add(history);
+			network.addNetworkDeltaListener(history, NetworkEventBus.OverflowPolicy.BLOCK, 256);
+			// Evicted devices are restored from the history when they come back
+			network.setHistory(history);
+		} catch (IOException e) {
+			e.printStackTrace();
+			Logger.logError("Error opening the device history: ", e);
+		}
+	}
+
+	/**
+	 * Closes the history of a network no longer monitored, once it recorded the
+	 * deltas already published.
+	 */
+	private static void closeHistory(Network network, Set<DeviceHistoryStore> histories) {
+		DeviceHistoryStore history = network.getHistory();
+		if (history == null || !histories.remove(history))
+			return;
+		try {
+			network.getEventBus().awaitIdle(1000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		network.removeNetworkDeltaListener(history);
+		network.setHistory(null);
+		try {
+			history.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+			Logger.logError("Error closing the device history: ", e);
+		}
+	}
+}
@@ -0,0 +1,328 @@
+package HostedNetScannerUI;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.Icon;
+import javax.swing.RowSorter;
+import javax.swing.SortOrder;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.TableRowSorter;
+
+import hostednetscanner.DeviceRecord;
+import hostednetscanner.DeviceRegistry;
+import hostednetscanner.DeviceSnapshot;
+import hostednetscanner.NetworkDelta;
+import hostednetscanner.NetworkDeltaListener;
+
+/**
+ * Table model of the devices of the hosted network, fed by the network's
+ * deltas and {@link DeviceSnapshot}s.
+ *
+ * Only the rows of the devices that changed are fired as inserted, updated or
+ * deleted, so the selection and an edit in progress survive scans. Deltas
+ * arriving in bursts are merged and applied on the event dispatch thread at
+ * most once per frame.
+ *
+ * Rows stay in insertion order in the model; sorting is left to the
+ * {@link TableRowSorter} of {@link #createRowSorter()}, which puts offline
+ * devices last and compares IP addresses numerically.
+ */
+public class DeviceTableModel extends AbstractTableModel implements NetworkDeltaListener {
+	private static final long serialVersionUID = 1L;
+
+	public static final int STATUS_COLUMN = 0;
+	public static final int HOSTNAME_COLUMN = 1;
+	public static final int CUSTOM_NAME_COLUMN = 2;
+	public static final int MAC_COLUMN = 3;
+	public static final int IP_COLUMN = 4;
+	public static final int CONNECTION_TIME_COLUMN = 5;
+	public static final int LAST_SEEN_COLUMN = 6;
+
+	private static final int FRAME_MS = 16;
+	private static final String[] COLUMN_NAMES = { "Status", "Hostname", "Custom name", "MAC Address", "IP Address",
+			"Connection time", "Last Seen" };
+	private static final Class<?>[] COLUMN_TYPES = { Icon.class, String.class, String.class, String.class,
+			IpAddressCell.class, String.class, String.class };
+
+	private final Icon onlineIcon;
+	private final Icon unconfirmedIcon;
+	private final Icon offlineIcon;
+
+	// Accessed on the event dispatch thread only
+	private final List<Row> rows = new ArrayList<>();
+	private final Map<Long, Integer> rowIndex = new HashMap<>();
+	private final Timer flushTimer;
+	private long lastFlushNanos;
+
+	// Deltas received since the last flush, guarded by this
+	private NetworkDelta pending;
+	private boolean flushScheduled;
+
+	public DeviceTableModel(Icon onlineIcon, Icon unconfirmedIcon, Icon offlineIcon) {
+		this.onlineIcon = onlineIcon;
+		this.unconfirmedIcon = unconfirmedIcon;
+		this.offlineIcon = offlineIcon;
+		flushTimer = new Timer(FRAME_MS, e -> flush());
+		flushTimer.setRepeats(false);
+	}
+
+	/**
+	 * Creates the sorter of the table: offline devices last, then by IP address.
+	 */
+	public TableRowSorter<DeviceTableModel> createRowSorter() {
+		TableRowSorter<DeviceTableModel> sorter = new TableRowSorter<>(this);
+		sorter.setComparator(STATUS_COLUMN, Comparator.comparingInt(this::statusRank));
+		sorter.setSortKeys(Arrays.asList(new RowSorter.SortKey(STATUS_COLUMN, SortOrder.ASCENDING),
+				new RowSorter.SortKey(IP_COLUMN, SortOrder.ASCENDING)));
+		sorter.setSortsOnUpdates(true);
+		return sorter;
+	}
+
+	/**
+	 * Queues a delta for the next frame. Called on the network's event bus.
+	 */
+	@Override
+	public void onNetworkDelta(NetworkDelta delta) {
+		synchronized (this) {
+			pending = pending == null ? delta : NetworkDelta.coalesce(pending, delta);
+			if (flushScheduled)
+				return;
+			flushScheduled = true;
+		}
+		SwingUtilities.invokeLater(this::scheduleFlush);
+	}
+
+	/**
+	 * Replaces all the rows with the records of a snapshot. Must be called on the
+	 * event dispatch thread.
+	 */
+	public void reload(DeviceSnapshot snapshot) {
+		rows.clear();
+		rowIndex.clear();
+		for (DeviceRecord record : snapshot.getRecords()) {
+			rowIndex.put(record.getMac(), rows.size());
+			rows.add(new Row(record));
+		}
+		fireTableDataChanged();
+	}
+
+	/**
+	 * Removes all the rows, discarding the deltas not applied yet. Must be called
+	 * on the event dispatch thread.
+	 */
+	public void clear() {
+		synchronized (this) {
+			pending = null;
+		}
+		reload(DeviceSnapshot.EMPTY);
+	}
+
+	/**
+	 * @return the record shown by a row, in model coordinates
+	 */
+	public DeviceRecord getRecord(int row) {
+		return rows.get(row).record;
+	}
+
+	@Override
+	public int getRowCount() {
+		return rows.size();
+	}
+
+	@Override
+	public int getColumnCount() {
+		return COLUMN_NAMES.length;
+	}
+
+	@Override
+	public String getColumnName(int column) {
+		return COLUMN_NAMES[column];
+	}
+
+	@Override
+	public Class<?> getColumnClass(int column) {
+		return COLUMN_TYPES[column];
+	}
+
+	@Override
+	public boolean isCellEditable(int row, int column) {
+		return column == CUSTOM_NAME_COLUMN;
+	}
+
+	@Override
+	public Object getValueAt(int rowIndex, int column) {
+		Row row = rows.get(rowIndex);
+		DeviceRecord record = row.record;
+		switch (column) {
+		case STATUS_COLUMN:
+			return statusIcon(record.getStatusCode());
+		case HOSTNAME_COLUMN:
+			return record.getHostname();
+		case CUSTOM_NAME_COLUMN:
+			return row.customName;
+		case MAC_COLUMN:
+			return record.getMacAddress();
+		case IP_COLUMN:
+			return row.ip;
+		case CONNECTION_TIME_COLUMN:
+			return row.connectionTime;
+		case LAST_SEEN_COLUMN:
+			return row.lastSeen;
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Shows the edited custom name right away. Listeners of the model get a cell
+	 * update event and are expected to pass the name on to the device; the row
+	 * is refreshed from the next delta.
+	 */
+	@Override
+	public void setValueAt(Object value, int row, int column) {
+		if (column != CUSTOM_NAME_COLUMN)
+			return;
+		rows.get(row).customName = (String) value;
+		fireTableCellUpdated(row, column);
+	}
+
+	private void scheduleFlush() {
+		long wait = FRAME_MS - (System.nanoTime() - lastFlushNanos) / 1000000;
+		if (wait <= 0) {
+			flush();
+		} else {
+			flushTimer.setInitialDelay((int) wait);
+			flushTimer.restart();
+		}
+	}
+
+	private void flush() {
+		NetworkDelta delta;
+		synchronized (this) {
+			delta = pending;
+			pending = null;
+			flushScheduled = false;
+		}
+		lastFlushNanos = System.nanoTime();
+		if (delta != null) {
+			apply(delta);
+		}
+	}
+
+	private void apply(NetworkDelta delta) {
+		DeviceSnapshot snapshot = delta.getSnapshot();
+		// Appended rows are fired as one range
+		int firstInserted = -1;
+		for (NetworkDelta.Change change : delta.getChanges()) {
+			DeviceRecord record = change.getRecord();
+			if (record == null)
+				continue;
+
+			Integer row = rowIndex.get(record.getMac());
+			if (row == null && !change.is(NetworkDelta.REMOVED)) {
+				if (firstInserted < 0)
+					firstInserted = rows.size();
+				rowIndex.put(record.getMac(), rows.size());
+				rows.add(new Row(record));
+				continue;
+			}
+
+			if (firstInserted >= 0) {
+				fireTableRowsInserted(firstInserted, rows.size() - 1);
+				firstInserted = -1;
+			}
+			if (row == null)
+				continue;
+			if (change.is(NetworkDelta.REMOVED)) {
+				removeRow(row);
+			} else {
+				rows.set(row, new Row(record));
+				fireTableRowsUpdated(row, row);
+			}
+		}
+		if (firstInserted >= 0) {
+			fireTableRowsInserted(firstInserted, rows.size() - 1);
+		}
+
+		// Catch up if deltas were missed, e.g. dropped by the event bus
+		if (rows.size() != snapshot.size()) {
+			reload(snapshot);
+		}
+	}
+
+	private void removeRow(int row) {
+		rowIndex.remove(rows.remove(row).record.getMac());
+		for (int i = row; i < rows.size(); i++) {
+			rowIndex.put(rows.get(i).record.getMac(), i);
+		}
+		fireTableRowsDeleted(row, row);
+	}
+
+	private Icon statusIcon(byte status) {
+		switch (status) {
+		case DeviceRegistry.ONLINE:
+			return onlineIcon;
+		case DeviceRegistry.UNCONFIRMED:
+			return unconfirmedIcon;
+		default:
+			return offlineIcon;
+		}
+	}
+
+	private int statusRank(Object icon) {
+		// Push offline devices last
+		return icon == offlineIcon ? 1 : 0;
+	}
+
+	/**
+	 * One row of the table, with the values derived from its record computed
+	 * once.
+	 */
+	private static final class Row {
+		final DeviceRecord record;
+		final IpAddressCell ip;
+		final String connectionTime;
+		final String lastSeen;
+		String customName;
+
+		Row(DeviceRecord record) {
+			this.record = record;
+			this.ip = new IpAddressCell(record.getIp(), record.getHostAddress());
+			this.connectionTime = record.getFormattedConnectionTime();
+			this.lastSeen = record.getFormattedLastSeen();
+			this.customName = record.getCustomName();
+		}
+	}
+
+	/**
+	 * Value of the IP column: displayed dotted, sorted numerically, unknown
+	 * addresses last.
+	 */
+	public static final class IpAddressCell implements Comparable<IpAddressCell> {
+		private final int ip;
+		private final String text;
+
+		IpAddressCell(int ip, String text) {
+			this.ip = ip;
+			this.text = text;
+		}
+
+		@Override
+		public int compareTo(IpAddressCell other) {
+			// 0 stands for an unknown IP, sort it like 255.255.255.255
+			return Integer.compareUnsigned(ip - 1, other.ip - 1);
+		}
+
+		@Override
+		public String toString() {
+			return text != null ? text : "";
+		}
+	}
+}
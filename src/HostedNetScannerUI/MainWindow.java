@@ -5,23 +5,16 @@ import java.awt.Color;
 import java.awt.Font;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.Clip;
-import javax.swing.Icon;
 import javax.swing.ImageIcon;
 import javax.swing.JFrame;
 import javax.swing.JMenu;
@@ -33,14 +26,23 @@ import javax.swing.JSeparator;
 import javax.swing.JTable;
 import javax.swing.SwingUtilities;
 import javax.swing.border.EmptyBorder;
-import javax.swing.table.DefaultTableModel;
 
+import hostednetscanner.AddressUtils;
 import hostednetscanner.ConfigManager;
-import hostednetscanner.Device;
+import hostednetscanner.DeviceHistoryStore;
+import hostednetscanner.DeviceJournal;
+import hostednetscanner.DeviceRecord;
+import hostednetscanner.DeviceSnapshot;
+import hostednetscanner.DeviceStatusView;
 import hostednetscanner.HostedNetwork;
+import hostednetscanner.IOExecutor;
+import hostednetscanner.KnownDevicesStore;
 import hostednetscanner.Logger;
-import hostednetscanner.Network;
+import hostednetscanner.MetricsServer;
+import hostednetscanner.NetworkDelta;
+import hostednetscanner.NetworkEventBus;
 import hostednetscanner.NetworkUpdateListener;
+import hostednetscanner.ScanMetrics;
 
 public class MainWindow extends JFrame {
 	private static final long serialVersionUID = 1L;
@@ -55,30 +57,113 @@ public class MainWindow extends JFrame {
 	private final ImageIcon statusGreen = new ImageIcon("images/green16.png");
 	private final ImageIcon statusYellow = new ImageIcon("images/yellow16.png");
 	private final ImageIcon statusRed = new ImageIcon("images/red16.png");
+	private final DeviceTableModel tableModel = new DeviceTableModel(statusGreen, statusYellow, statusRed);
+
+	// Device history, and the status file rendered from the devices
+	private DeviceJournal journal;
+	private DeviceHistoryStore history;
+	private DeviceStatusView statusView;
 
 	/**
 	 * Create the frame.
 	 */
 	public MainWindow() {
 		initializeComponents();
-		initializeHostedNetwork();
+		IOExecutor.run(() -> MetricsServer.open(config)).exceptionally(this::logBackgroundError);
+		IOExecutor.run(this::initializeHostedNetwork).exceptionally(this::logBackgroundError);
 	}
 
+	/**
+	 * Attaches to the hosted network if it is running. Blocks on netsh and
+	 * ipconfig, so it must not be called from the event dispatch thread.
+	 */
 	void initializeHostedNetwork() {
 		if (HostedNetwork.isNetworkRunning()) {
 			// If the network is already running, get the HostedNetwork instance
 			HostedNetwork hnet = HostedNetwork.findHostedNetworkInstance();
-			hnet.addNetworkUpdateListener(refreshTableListener);
-			hnet.addNetworkUpdateListener(saveDevicesLog);
+			if (hnet == null) {
+				return;
+			}
+			// The model merges deltas itself, it only needs the latest one
+			hnet.addNetworkDeltaListener(tableModel, NetworkEventBus.OverflowPolicy.COALESCE_LATEST, 1);
+			DeviceSnapshot snapshot = hnet.getSnapshot();
+			SwingUtilities.invokeLater(() -> tableModel.reload(snapshot));
+			attachDeviceLog(hnet);
 			hnet.addNetworkUpdateListener(saveKnownDevices);
 			hnet.addNetworkUpdateListener(playSoundListener);
 			hnet.monitorNetwork();
 
-			mntmStartNetwork.setEnabled(false);
-			mntmStopNetwork.setEnabled(true); // Enable Stop when network is running
+			SwingUtilities.invokeLater(() -> {
+				mntmStartNetwork.setEnabled(false);
+				mntmStopNetwork.setEnabled(true); // Enable Stop when network is running
+			});
+		}
+	}
+
+	/**
+	 * Records the changes of the network in the device journal and keeps the
+	 * device status file up to date.
+	 */
+	private synchronized void attachDeviceLog(HostedNetwork hnet) {
+		if (journal == null) {
+			try {
+				journal = DeviceJournal.open(config);
+				Runtime.getRuntime().addShutdownHook(new Thread(journal::close, "device-journal-close"));
+			} catch (IOException e) {
+				e.printStackTrace();
+				Logger.logError("Error opening the device journal: ", e);
+			}
+		}
+		if (journal != null) {
+			// Keep every change in the history, queuing is cheap
+			hnet.addNetworkDeltaListener(journal, NetworkEventBus.OverflowPolicy.BLOCK, 256);
+		}
+
+		if (history == null) {
+			try {
+				history = DeviceHistoryStore.open(config);
+				DeviceHistoryStore opened = history;
+				Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+					try {
+						opened.close();
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+				}, "device-history-close"));
+			} catch (IOException e) {
+				e.printStackTrace();
+				Logger.logError("Error opening the device history: ", e);
+			}
+		}
+		if (history != null) {
+			hnet.addNetworkDeltaListener(history, NetworkEventBus.OverflowPolicy.BLOCK, 256);
+		}
+		// Evicted devices are restored from the history when they come back
+		hnet.setHistory(history);
+		hnet.setEvictionPolicy(config.getEvictionPolicy());
+
+		if (statusView != null) {
+			statusView.stop();
+		}
+		statusView = new DeviceStatusView(hnet, config, config.getStatusRenderInterval());
+		statusView.start();
+	}
+
+	/**
+	 * Writes the device status file now.
+	 */
+	private synchronized void renderDeviceLog() throws IOException {
+		if (statusView != null) {
+			statusView.render();
 		}
 	}
 
+	private Void logBackgroundError(Throwable e) {
+		e.printStackTrace();
+		Logger.logError("Error in background task: ", e);
+		return null;
+	}
+
 	void initializeComponents() {
 		setTitle("HostedNetScanner");
 		setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
@@ -96,6 +181,32 @@ public class MainWindow extends JFrame {
 				System.exit(0);
 			}
 		});
+
+		JMenuItem mntmWriteStatus = new JMenuItem("Write Status File");
+		mntmWriteStatus.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				IOExecutor.run(MainWindow.this::renderDeviceLog).exceptionally(MainWindow.this::logBackgroundError);
+			}
+		});
+		mnFile.add(mntmWriteStatus);
+
+		JMenuItem mntmLogMetrics = new JMenuItem("Log Scan Metrics");
+		mntmLogMetrics.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				IOExecutor.run(() -> Logger.logMessage("Scan metrics:\n" + ScanMetrics.getDefault().dump()))
+						.exceptionally(MainWindow.this::logBackgroundError);
+			}
+		});
+		mnFile.add(mntmLogMetrics);
+
+		JMenuItem mntmLogReport = new JMenuItem("Write Log Report");
+		mntmLogReport.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				IOExecutor.run(() -> Logger.writeHtmlReport(Path.of(System.getProperty("user.dir"), "logs.html")))
+						.exceptionally(MainWindow.this::logBackgroundError);
+			}
+		});
+		mnFile.add(mntmLogReport);
 		mnFile.add(mntmQuit);
 
 		JMenu mnServer = new JMenu("Server");
@@ -119,14 +230,16 @@ public class MainWindow extends JFrame {
 		mnServer.add(mntmStopNetwork);
 		mntmStopNetwork.addActionListener(new ActionListener() { // ActionListener for stopping
 			public void actionPerformed(ActionEvent e) {
-				HostedNetwork.stopNetwork();
-
-				// Clear the table
-				DefaultTableModel model = (DefaultTableModel) table.getModel();
-				model.setRowCount(0);
-
-				mntmStartNetwork.setEnabled(true);
 				mntmStopNetwork.setEnabled(false);
+				IOExecutor.run(HostedNetwork::stopNetwork).whenComplete((result, error) -> {
+					SwingUtilities.invokeLater(() -> {
+						// Clear the table
+						tableModel.clear();
+
+						mntmStartNetwork.setEnabled(true);
+						mntmStopNetwork.setEnabled(false);
+					});
+				}).exceptionally(MainWindow.this::logBackgroundError);
 			}
 		});
 		mntmStopNetwork.setEnabled(false); // Initially disabled
@@ -139,19 +252,30 @@ public class MainWindow extends JFrame {
 		mnServer.add(mntmRefresh);
 		mntmRefresh.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
-				try {
-					HostedNetwork.getInstance().refreshData();
-				} catch (Exception e2) {
-					e2.printStackTrace();
-					Logger.logError("Error refreshing the table", e2);
+				HostedNetwork hnet = HostedNetwork.getInstance();
+				if (hnet == null) {
+					return;
 				}
+				mntmRefresh.setEnabled(false);
+				IOExecutor.run(hnet::refreshData).whenComplete((result, error) -> {
+					if (error != null) {
+						error.printStackTrace();
+						Logger.logError("Error refreshing the table", error);
+					}
+					SwingUtilities.invokeLater(() -> mntmRefresh.setEnabled(true));
+				});
 			}
 		});
 		mntmStartNetwork.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
-				HostedNetwork.startNetwork();
-
-				initializeHostedNetwork();
+				mntmStartNetwork.setEnabled(false);
+				IOExecutor.run(() -> {
+					HostedNetwork.startNetwork();
+					initializeHostedNetwork();
+				}).whenComplete((result, error) -> SwingUtilities.invokeLater(() -> {
+					// Re-enable Start if the network did not come up
+					mntmStartNetwork.setEnabled(HostedNetwork.getInstance() == null);
+				})).exceptionally(MainWindow.this::logBackgroundError);
 			}
 		});
 
@@ -185,40 +309,30 @@ public class MainWindow extends JFrame {
 		table = new JTable();
 		table.setRowHeight(25);
 		table.setFont(new Font("SansSerif", Font.PLAIN, 17));
-		table.setModel(new DefaultTableModel(new Object[][] { { null, null, null, null, null, null, null }, },
-				new String[] { "Status", "Hostname", "Custom name", "MAC Address", "IP Address", "Connection time",
-						"Last Seen" }) {
-			Class[] columnTypes = new Class[] { Icon.class, String.class, String.class, String.class, String.class,
-					Object.class, String.class };
-			boolean[] columnEditable = new boolean[] { false, false, true, false, false, false, false };
-
-			public Class getColumnClass(int columnIndex) {
-				return columnTypes[columnIndex];
-			}
-
-			public boolean isCellEditable(int row, int column) {
-				return columnEditable[column];
-			}
-		});
+		table.setModel(tableModel);
+		table.setRowSorter(tableModel.createRowSorter());
 
-		table.getModel().addTableModelListener(e -> {
+		tableModel.addTableModelListener(e -> {
 			if (e.getType() == javax.swing.event.TableModelEvent.UPDATE) {
 				int row = e.getFirstRow();
 				int column = e.getColumn();
-				if (column == 2) { // 'Custom name' column index
-					String newCustomName = (String) table.getValueAt(row, column);
-					String macAddress = (String) table.getValueAt(row, 3);
-
-					// Find and update the corresponding Device
-					for (Device device : HostedNetwork.getInstance().getKnownDevices()) {
-						if (device.getMacAddress().equals(macAddress)) {
-							device.setCustomName(newCustomName);
-							break;
-						}
+				if (column == DeviceTableModel.CUSTOM_NAME_COLUMN) {
+					// Rows of model events are in model coordinates
+					String newCustomName = (String) tableModel.getValueAt(row, column);
+					String macAddress = tableModel.getRecord(row).getMacAddress();
+
+					// Rename the device through the network, then notify listeners about
+					// the update, they write files
+					HostedNetwork hnet = HostedNetwork.getInstance();
+					if (hnet == null) {
+						// The network was stopped, there is no device to rename
+						return;
 					}
-
-					// Notify listeners about the update
-					HostedNetwork.getInstance().notifyListeners(HostedNetwork.getInstance().getKnownDevices());
+					long mac = AddressUtils.parseMac(macAddress);
+					IOExecutor.run(() -> {
+						if (hnet.setCustomName(mac, newCustomName))
+							hnet.publishChanges();
+					}).exceptionally(this::logBackgroundError);
 				}
 			}
 		});
@@ -255,199 +369,81 @@ public class MainWindow extends JFrame {
 	 * Listener that updates the table with the active devices on the network. This
 	 * listener is triggered when the network is updated.
 	 */
-	private NetworkUpdateListener refreshTableListener = new NetworkUpdateListener() {
-
+	private NetworkUpdateListener saveKnownDevices = new NetworkUpdateListener() {
 		@Override
-		public synchronized void onNetworkUpdated(Set<Device> knownDevices) {
-			SwingUtilities.invokeLater(() -> {
-				DefaultTableModel model = (DefaultTableModel) table.getModel();
-				model.setRowCount(0);
-
-				// Convert to list and sort
-				List<Device> sortedDevices = new ArrayList<>(knownDevices);
-				Collections.sort(sortedDevices, (d1, d2) -> {
-					// Push offline devices last
-					boolean isOffline1 = d1.getStatus().equalsIgnoreCase("offline");
-					boolean isOffline2 = d2.getStatus().equalsIgnoreCase("offline");
-					if (isOffline1 != isOffline2) {
-						return isOffline1 ? 1 : -1;
-					}
-
-					// Sort by IP address, using 255.255.255.255 for null addresses
-					return getComparisonIP(d1).compareTo(getComparisonIP(d2));
-				});
-
-				for (Device device : sortedDevices) {
-					// Convert status to appropriate icon
-					ImageIcon statusIcon;
-					switch (device.getStatus().toLowerCase()) {
-					case "online":
-						statusIcon = statusGreen;
-						break;
-					case "unconfirmed":
-						statusIcon = statusYellow;
-						break;
-					case "offline":
-						statusIcon = statusRed;
-						break;
-					default:
-						statusIcon = statusRed;
-					}
-
-					model.addRow(new Object[] { statusIcon, device.getHostname(), device.getCustomName(),
-							device.getMacAddress(), device.getHostAddress(), device.getFormattedConnectionTime(),
-							device.getFormattedLastSeen() });
-				}
-			});
+		public synchronized void onNetworkUpdated(List<DeviceRecord> knownDevices) {
+			saveKnownDevices(knownDevices);
 		}
 
-		private String getComparisonIP(Device device) {
-			return device.getHostAddress() != null ? device.getHostAddress() : "255.255.255.255";
-		}
-	};
-
-	/**
-	 * Listener that updates the table with the active devices on the network. This
-	 * listener is triggered when the network is updated.
-	 */
-	private NetworkUpdateListener saveDevicesLog = new NetworkUpdateListener() {
+		/**
+		 * Only the added and renamed devices of the delta can change the file.
+		 */
 		@Override
-		public synchronized void onNetworkUpdated(Set<Device> knownDevices) {
-			String logPath = config.getDeviceLogFilePath();
-			if (logPath == null || logPath.isEmpty()) {
-				return;
+		public synchronized void onNetworkDelta(NetworkDelta delta) {
+			Map<String, String> changedDevices = new HashMap<>();
+			for (NetworkDelta.Change change : delta.getChanges()) {
+				if (!change.is(NetworkDelta.REMOVED)
+						&& change.is(NetworkDelta.ADDED | NetworkDelta.NAME_CHANGED)) {
+					changedDevices.put(change.getMacAddress(), change.getRecord().getCustomName());
+				}
 			}
-
-			try (BufferedWriter writer = new BufferedWriter(new FileWriter(logPath, false))) {
-				LocalDateTime now = LocalDateTime.now();
-				DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-
-				// Write online devices
-				writer.write(now.format(formatter));
-				writer.newLine();
-				writer.write("Online devices:");
-				writer.newLine();
-				knownDevices.stream()
-					.filter(d -> "online".equals(d.getStatus()))
-					.forEach(device -> writeDeviceLog(writer, device));
-
-				// Write unconfirmed devices
-				writer.write("\nUnconfirmed devices:");
-				writer.newLine();
-				knownDevices.stream()
-					.filter(d -> "unconfirmed".equals(d.getStatus()))
-					.forEach(device -> writeDeviceLog(writer, device));
-
-				// Write offline devices
-				writer.write("\nOffline devices:");
-				writer.newLine();
-				knownDevices.stream()
-					.filter(d -> "offline".equals(d.getStatus()))
-					.forEach(device -> writeDeviceLog(writer, device));
-
-				writer.flush();
-			} catch (IOException e) {
-				System.err.println("Error writing to device log file: " + e.getMessage());
+			if (!changedDevices.isEmpty()) {
+				saveKnownDevices(changedDevices);
 			}
 		}
 
-		private void writeDeviceLog(BufferedWriter writer, Device device) {
-			try {
-				String line = String.format("%-17s||%-15s||%s", device.getMacAddress(), device.getHostAddress(),
-						device.getCustomName() != null ? device.getCustomName() : device.getHostname());
-				writer.write(line);
-				writer.newLine();
-			} catch (IOException e) {
-				System.err.println("Error writing device entry: " + e.getMessage());
-			}
-		}
-	};
-
-	/**
-	 * Listener that updates the table with the active devices on the network. This
-	 * listener is triggered when the network is updated.
-	 */
-	private NetworkUpdateListener saveKnownDevices = new NetworkUpdateListener() {
-		private Map<String, String> cachedDevices;
-
-		@Override
-		public synchronized void onNetworkUpdated(Set<Device> knownDevices) {
-			saveKnownDevices(knownDevices);
-		}
-
 		/**
 		 * Saves known devices to the specified file if there are changes.
 		 *
-		 * @param devices the set of current known devices.
+		 * @param devices the records of the current known devices.
 		 */
-		public void saveKnownDevices(Set<Device> devices) {
+		public void saveKnownDevices(List<DeviceRecord> devices) {
 			// Get current devices
 			Map<String, String> currentDevices = new HashMap<>();
-			for (Device device : devices) {
+			for (DeviceRecord device : devices) {
 				currentDevices.put(device.getMacAddress(), device.getCustomName());
 			}
+			saveKnownDevices(currentDevices);
+		}
 
-			// Load or use cached known devices
-			Map<String, String> knownDevices;
-
-			if (cachedDevices == null) {
-				Map<String, String> loadedDevices = Network.loadKnownPeers();
-				if (loadedDevices != null) {
-					cachedDevices = loadedDevices; // Update the cached version if loading was successful
-					knownDevices = new HashMap<>(cachedDevices); // Use the newly loaded devices
-				} else {
-					// Handle the case where loadKnownPeers returns null (e.g., empty data source)
-					knownDevices = new HashMap<>(); // Initialize an empty map
-					System.err.println("Warning: Network.loadKnownPeers returned null.");
-				}
-			} else {
-				knownDevices = new HashMap<>(cachedDevices); // Use the cached version
-			}
-
-			// Track if any changes were made
-			boolean hasChanges = false;
-
-			// Update known devices with new/modified entries
-			for (Map.Entry<String, String> entry : currentDevices.entrySet()) {
-				String mac = entry.getKey();
-				String newName = entry.getValue();
-
-				// If the device is not known yet OR if there's a name set and that name has changed!
-				if (!knownDevices.containsKey(mac)
-						|| (knownDevices.get(mac) != null && !knownDevices.get(mac).equals(newName))) {
-					knownDevices.put(mac, newName);
-					hasChanges = true;
-				}
-			}
+		/**
+		 * Merges the given devices into the known devices. Only the changed devices
+		 * are appended to the file by the {@link KnownDevicesStore}.
+		 *
+		 * @param currentDevices the custom names of the devices, by MAC address.
+		 */
+		private void saveKnownDevices(Map<String, String> currentDevices) {
+			KnownDevicesStore.getDefault().putAll(currentDevices);
+		}
+	};
 
-			// Save if there were changes
-			if (hasChanges) {
-				String filePath = config.getKnownDevicesFilePath();
-				try (BufferedWriter writer = new BufferedWriter(new FileWriter(filePath))) {
-					for (Map.Entry<String, String> entry : knownDevices.entrySet()) {
-						writer.write(entry.getKey() + "||" + entry.getValue());
-						writer.newLine();
-					}
-				} catch (IOException e) {
-					e.printStackTrace();
-					Logger.logError("Error saving known devices: ", e);
+	private NetworkUpdateListener playSoundListener = new NetworkUpdateListener() {
+		@Override
+		public void onNetworkUpdated(List<DeviceRecord> devices) {
+			for (DeviceRecord device : devices) {
+				if (shouldDing(device)) {
+					playDingSound();
+					break; // Play sound once per update if condition is met
 				}
 			}
-
-			cachedDevices = new HashMap<>(knownDevices);
 		}
-	};
 
-	private NetworkUpdateListener playSoundListener = new NetworkUpdateListener() {
+		/**
+		 * Only looks at the devices that changed in the delta.
+		 */
 		@Override
-		public void onNetworkUpdated(Set<Device> devices) {
-			for (Device device : devices) {
-				if ("offline".equals(device.getStatus())
-						|| (device.getCustomName() != null && device.getCustomName().startsWith("¨"))) {
+		public void onNetworkDelta(NetworkDelta delta) {
+			for (NetworkDelta.Change change : delta.getChanges()) {
+				if (!change.is(NetworkDelta.REMOVED) && shouldDing(change.getRecord())) {
 					playDingSound();
 					break; // Play sound once per update if condition is met
 				}
 			}
 		}
+
+		private boolean shouldDing(DeviceRecord device) {
+			return "offline".equals(device.getStatus())
+					|| (device.getCustomName() != null && device.getCustomName().startsWith("¨"));
+		}
 	};
 }
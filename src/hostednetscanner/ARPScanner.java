@@ -1,9 +1,9 @@
 package hostednetscanner;
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -19,34 +19,67 @@ public class ARPScanner {
 	public static String runARPScan() {
 		try {
 			String command = System.getProperty("os.name").toLowerCase().contains("win") ? "arp -a" : "arp -an";
-			Process process = Runtime.getRuntime().exec(command);
+			return CommandExecutor.getDefault().execute(command).getOutput();
+		} catch (Exception e) {
+			e.printStackTrace();
+			Logger.logError("Error executing ARP scan: ", e);
+		}
 
-			BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-			StringBuilder output = new StringBuilder();
-			String line;
-			while ((line = reader.readLine()) != null) {
-				output.append(line).append("\n");
-			}
+		return null;
+	}
 
-			return output.toString();
+	/**
+	 * Reads the neighbor table from the default {@link NeighborSource} into the
+	 * given handler, without building the output as a String. On Linux this reads
+	 * {@code /proc/net/arp}, elsewhere it streams the output of the ARP command
+	 * through an {@link ARPTableParser}.
+	 *
+	 * @param handler receives the parsed entries, e.g. an {@link ArpTable}
+	 * @return {@code true} if the scan completed, {@code false} if an error occurred.
+	 */
+	public static boolean runARPScan(ARPTableParser.EntryHandler handler) {
+		try {
+			NeighborSource.getDefault().read(handler);
+			return true;
 		} catch (Exception e) {
 			e.printStackTrace();
 			Logger.logError("Error executing ARP scan: ", e);
 		}
 
-		return null;
+		return false;
 	}
 
 	/**
-	 * Scans the network using the ARP (Address Resolution Protocol) command and
-	 * returns a list of networks. The command executed depends on the operating
-	 * system: - For Windows: "arp -a" - For Unix-based systems: "arp -an"
+	 * Scans the neighbor table of every interface and returns a list of networks.
+	 * The table is read from the default {@link NeighborSource}: {@code /proc/net/arp}
+	 * on Linux, "arp -a" on Windows and "arp -an" on other Unix-based systems.
 	 *
 	 * @return a list of Network objects representing the scanned networks. If an
 	 *         error occurs, an empty list is returned.
 	 */
 	public static Set<Network> scanAll() {
-		return parse(runARPScan());
+		Map<Integer, Network> networks = new LinkedHashMap<>();
+		runARPScan(new ARPTableParser.EntryHandler() {
+			@Override
+			public void onInterface(int interfaceIp) {
+				networks.computeIfAbsent(interfaceIp, ARPScanner::newInterfaceNetwork);
+			}
+
+			@Override
+			public void onEntry(int interfaceIp, int ipAddress, long macAddress, boolean dynamic) {
+				if (!dynamic)
+					return;
+
+				Network network = networks.computeIfAbsent(interfaceIp, ARPScanner::newInterfaceNetwork);
+				network.addDevice(new Device(AddressUtils.toInetAddress(ipAddress), AddressUtils.formatMac(macAddress),
+						network));
+			}
+		});
+		return new HashSet<>(networks.values());
+	}
+
+	private static Network newInterfaceNetwork(int interfaceIp) {
+		return new Network(new Device(AddressUtils.toInetAddress(interfaceIp), null));
 	}
 
 	/**
@@ -56,7 +89,7 @@ public class ARPScanner {
 	 * @return a list of Network objects, each containing devices found in the ARP
 	 *         output
 	 */
-	private static Set<Network> parse(String arpOutput) {
+	static Set<Network> parse(String arpOutput) {
 		Set<Network> networks = new HashSet<>();
 		Network currentNetwork = null;
 		Pattern interfacePattern = Pattern.compile("Interface: (\\d+\\.\\d+\\.\\d+\\.\\d+)");
@@ -74,7 +107,9 @@ public class ARPScanner {
 			if (interfaceMatcher.find()) {
 				try {
 					InetAddress interfaceIp = InetAddress.getByName(interfaceMatcher.group(1));
-					currentNetwork = new Network(new Device(interfaceIp));
+					// The interface MAC is not listed in the ARP output; resolving it through
+					// new Device(interfaceIp) would run another ARP scan for every interface
+					currentNetwork = new Network(new Device(interfaceIp, null));
 					networks.add(currentNetwork);
 					headerPassed = false;
 				} catch (UnknownHostException e) {
@@ -182,6 +217,22 @@ public class ARPScanner {
 				.map(Device::getIpAddress).orElse(null);
 	}
 
+	/**
+	 * Retrieves the IP address associated with a given MAC address from the ARP
+	 * table captured in the given scan snapshot. No ARP scan is run.
+	 *
+	 * @param snapshot the scan cycle snapshot to resolve from
+	 * @param network the network whose ARP entries should be searched
+	 * @param macAddress the MAC address of the device whose IP address is to be found
+	 * @return the IP address of the device with the specified MAC address, or null if not found
+	 */
+	public static InetAddress getIpAddress(ScanSnapshot snapshot, Network network, String macAddress) {
+		ArpTable table = snapshot.getArpTable();
+		int interfaceIp = AddressUtils.toInt(network.getConnectedInterface().getIpAddress());
+		int entry = table.find(interfaceIp, AddressUtils.parseMac(macAddress));
+		return entry < 0 ? null : AddressUtils.toInetAddress(table.getIp(entry));
+	}
+
 	/**
 	 * Retrieves the MAC address associated with the given IP address.
 	 *
@@ -209,4 +260,25 @@ public class ARPScanner {
 		String arpOutput = runARPScan();
 		return parseNetworkDevices(net, arpOutput);
 	}
+
+	/**
+	 * Returns the devices of the given network found in the ARP table captured by
+	 * the given scan snapshot.
+	 *
+	 * @param snapshot the scan cycle snapshot to read from
+	 * @param net the network to look up
+	 * @return a set of active devices in the specified network
+	 */
+	public static Set<Device> getDiscoveredDevices(ScanSnapshot snapshot, Network net) {
+		ArpTable table = snapshot.getArpTable();
+		int interfaceIp = AddressUtils.toInt(net.getConnectedInterface().getIpAddress());
+
+		Set<Device> devices = new HashSet<>();
+		for (int i = 0; i < table.size(); i++) {
+			if (table.getInterfaceIp(i) == interfaceIp) {
+				devices.add(new Device(AddressUtils.toInetAddress(table.getIp(i)), AddressUtils.formatMac(table.getMac(i))));
+			}
+		}
+		return devices;
+	}
 }
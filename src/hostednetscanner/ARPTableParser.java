@@ -0,0 +1,160 @@
+package hostednetscanner;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Streaming parser for the Windows {@code arp -a} output.
+ *
+ * The output is read as raw bytes into a reused buffer and tokenized in place:
+ * IPv4 addresses are decoded into {@code int} and MAC addresses into
+ * {@code long}, and every entry is handed to an {@link EntryHandler} without any
+ * intermediate String being created. A parser instance is not thread safe but
+ * can be reused for any number of outputs.
+ */
+public class ARPTableParser {
+	private static final byte[] INTERFACE = "Interface:".getBytes();
+	private static final byte[] DYNAMIC = "dynamic".getBytes();
+
+	/**
+	 * Receives the entries found by the parser.
+	 */
+	public interface EntryHandler {
+		/**
+		 * Called when a new "Interface:" section starts.
+		 *
+		 * @param interfaceIp the IPv4 address of the interface
+		 */
+		default void onInterface(int interfaceIp) {
+		}
+
+		/**
+		 * Called for every entry of an interface section.
+		 *
+		 * @param interfaceIp the IPv4 address of the interface the entry belongs to
+		 * @param ipAddress   the IPv4 address of the entry
+		 * @param macAddress  the MAC address of the entry, see {@link AddressUtils}
+		 * @param dynamic     whether the entry type is "dynamic"
+		 */
+		void onEntry(int interfaceIp, int ipAddress, long macAddress, boolean dynamic);
+	}
+
+	private byte[] buffer = new byte[8192];
+	private boolean inInterface;
+	private int interfaceIp;
+
+	/**
+	 * Parses the whole stream, reading it in chunks into the parser's buffer.
+	 */
+	public void parse(InputStream in, EntryHandler handler) throws IOException {
+		inInterface = false;
+		int filled = 0;
+		int read;
+		while ((read = in.read(buffer, filled, buffer.length - filled)) != -1) {
+			filled += read;
+			int consumed = parseLines(buffer, 0, filled, handler);
+
+			// Move the unfinished line to the start of the buffer
+			filled -= consumed;
+			System.arraycopy(buffer, consumed, buffer, 0, filled);
+			if (filled == buffer.length) {
+				byte[] larger = new byte[buffer.length * 2];
+				System.arraycopy(buffer, 0, larger, 0, filled);
+				buffer = larger;
+			}
+		}
+
+		if (filled > 0) {
+			parseLine(buffer, 0, filled, handler);
+		}
+	}
+
+	/**
+	 * Parses an output already held in memory.
+	 */
+	public void parse(byte[] data, int off, int len, EntryHandler handler) {
+		inInterface = false;
+		int consumed = parseLines(data, off, off + len, handler);
+		if (consumed < off + len) {
+			parseLine(data, consumed, off + len, handler);
+		}
+	}
+
+	/**
+	 * Parses every complete line in {@code [start, end)}.
+	 *
+	 * @return the offset right after the last complete line
+	 */
+	private int parseLines(byte[] buf, int start, int end, EntryHandler handler) {
+		int lineStart = start;
+		for (int i = start; i < end; i++) {
+			if (buf[i] == '\n') {
+				parseLine(buf, lineStart, i, handler);
+				lineStart = i + 1;
+			}
+		}
+		return lineStart;
+	}
+
+	private void parseLine(byte[] buf, int start, int end, EntryHandler handler) {
+		int i = skipSpaces(buf, start, end);
+		if (i == end)
+			return;
+
+		if (startsWith(buf, i, end, INTERFACE)) {
+			i = skipSpaces(buf, i + INTERFACE.length, end);
+			int tokenEnd = tokenEnd(buf, i, end);
+			long ip = AddressUtils.parseIPv4(buf, i, tokenEnd - i);
+			inInterface = ip != AddressUtils.INVALID;
+			if (inInterface) {
+				interfaceIp = (int) ip;
+				handler.onInterface(interfaceIp);
+			}
+			return;
+		}
+
+		if (!inInterface)
+			return;
+
+		// Internet Address, Physical Address, Type. The header line fails the first
+		// token check and is skipped as any other malformed line.
+		int ipEnd = tokenEnd(buf, i, end);
+		long ip = AddressUtils.parseIPv4(buf, i, ipEnd - i);
+		if (ip == AddressUtils.INVALID)
+			return;
+
+		int macStart = skipSpaces(buf, ipEnd, end);
+		int macEnd = tokenEnd(buf, macStart, end);
+		long mac = AddressUtils.parseMac(buf, macStart, macEnd - macStart);
+		if (mac == AddressUtils.INVALID)
+			return;
+
+		int typeStart = skipSpaces(buf, macEnd, end);
+		int typeEnd = tokenEnd(buf, typeStart, end);
+		boolean dynamic = typeEnd - typeStart == DYNAMIC.length && startsWith(buf, typeStart, typeEnd, DYNAMIC);
+
+		handler.onEntry(interfaceIp, (int) ip, mac, dynamic);
+	}
+
+	private static int skipSpaces(byte[] buf, int i, int end) {
+		while (i < end && (buf[i] == ' ' || buf[i] == '\t' || buf[i] == '\r'))
+			i++;
+		return i;
+	}
+
+	private static int tokenEnd(byte[] buf, int i, int end) {
+		while (i < end && buf[i] != ' ' && buf[i] != '\t' && buf[i] != '\r')
+			i++;
+		return i;
+	}
+
+	private static boolean startsWith(byte[] buf, int i, int end, byte[] prefix) {
+		if (end - i < prefix.length)
+			return false;
+		for (int k = 0; k < prefix.length; k++) {
+			if (buf[i + k] != prefix[k])
+				return false;
+		}
+		return true;
+	}
+}
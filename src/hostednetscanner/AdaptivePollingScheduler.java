@@ -0,0 +1,171 @@
+package hostednetscanner;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Computes the delay before the next poll of a network from the outcome of
+ * the previous one.
+ *
+ * After a tick that detected a change the interval drops to the burst
+ * interval, so a wave of clients joining is followed closely. Every quiet tick
+ * then multiplies the interval by the backoff factor, up to the ceiling. Each
+ * delay is jittered so that several monitors do not tick in lockstep.
+ *
+ * The delay is counted from the end of a tick, so a slow tick postpones the
+ * next one instead of piling up behind it; ticks that took longer than their
+ * interval are counted as overruns.
+ */
+public class AdaptivePollingScheduler {
+
+	/**
+	 * Immutable polling policy, see {@link ConfigManager#getPollingPolicy()}.
+	 */
+	public static final class Policy {
+		public static final Policy DEFAULT = new Policy(250, 2000, 30000, 2.0, 0.1);
+
+		private final long burstIntervalMs;
+		private final long baseIntervalMs;
+		private final long maxIntervalMs;
+		private final double backoffFactor;
+		private final double jitter;
+
+		/**
+		 * @param burstIntervalMs the interval after a detected change
+		 * @param baseIntervalMs  the interval of the first tick
+		 * @param maxIntervalMs   the ceiling of the interval during quiet periods
+		 * @param backoffFactor   the factor the interval grows by after each quiet
+		 *                        tick, at least 1
+		 * @param jitter          the maximum random deviation of a delay, as a
+		 *                        fraction of the interval between 0 and 1
+		 */
+		public Policy(long burstIntervalMs, long baseIntervalMs, long maxIntervalMs, double backoffFactor,
+				double jitter) {
+			this.burstIntervalMs = Math.max(1, burstIntervalMs);
+			this.maxIntervalMs = Math.max(this.burstIntervalMs, maxIntervalMs);
+			this.baseIntervalMs = Math.min(Math.max(this.burstIntervalMs, baseIntervalMs), this.maxIntervalMs);
+			this.backoffFactor = Math.max(1.0, backoffFactor);
+			this.jitter = Math.min(Math.max(0.0, jitter), 1.0);
+		}
+
+		public long getBurstIntervalMs() {
+			return burstIntervalMs;
+		}
+
+		public long getBaseIntervalMs() {
+			return baseIntervalMs;
+		}
+
+		public long getMaxIntervalMs() {
+			return maxIntervalMs;
+		}
+
+		public double getBackoffFactor() {
+			return backoffFactor;
+		}
+
+		public double getJitter() {
+			return jitter;
+		}
+
+		@Override
+		public String toString() {
+			return "Policy[burst=" + burstIntervalMs + "ms, base=" + baseIntervalMs + "ms, max=" + maxIntervalMs
+					+ "ms, backoff=" + backoffFactor + ", jitter=" + jitter + "]";
+		}
+	}
+
+	private final Policy policy;
+
+	private volatile long intervalMs;
+	private volatile long lastTickNanos;
+	private volatile long maxTickNanos;
+	private volatile long totalTickNanos;
+	private volatile long ticks;
+	private volatile long overruns;
+
+	public AdaptivePollingScheduler(Policy policy) {
+		this.policy = policy;
+		this.intervalMs = policy.getBaseIntervalMs();
+	}
+
+	public Policy getPolicy() {
+		return policy;
+	}
+
+	/**
+	 * @return the delay before the first tick, in milliseconds
+	 */
+	public long firstDelay() {
+		return jittered(intervalMs);
+	}
+
+	/**
+	 * Records a finished tick and returns the delay before the next one. Must be
+	 * called from one thread at a time, typically the thread running the ticks.
+	 *
+	 * @param changed   whether the tick detected a change of the network
+	 * @param tickNanos how long the tick took
+	 * @return the delay before the next tick, in milliseconds
+	 */
+	public long nextDelay(boolean changed, long tickNanos) {
+		ticks++;
+		lastTickNanos = tickNanos;
+		totalTickNanos += tickNanos;
+		if (tickNanos > maxTickNanos) {
+			maxTickNanos = tickNanos;
+		}
+		if (TimeUnit.NANOSECONDS.toMillis(tickNanos) > intervalMs) {
+			overruns++;
+		}
+
+		if (changed) {
+			intervalMs = policy.getBurstIntervalMs();
+		} else {
+			intervalMs = Math.min((long) (intervalMs * policy.getBackoffFactor()), policy.getMaxIntervalMs());
+		}
+		return jittered(intervalMs);
+	}
+
+	private long jittered(long interval) {
+		if (policy.getJitter() == 0)
+			return interval;
+
+		double deviation = policy.getJitter() * (ThreadLocalRandom.current().nextDouble() * 2 - 1);
+		return Math.max(1, Math.round(interval * (1 + deviation)));
+	}
+
+	/**
+	 * @return the current interval between ticks before jitter, in milliseconds
+	 */
+	public long getIntervalMs() {
+		return intervalMs;
+	}
+
+	public long getLastTickNanos() {
+		return lastTickNanos;
+	}
+
+	public long getMaxTickNanos() {
+		return maxTickNanos;
+	}
+
+	/**
+	 * @return the mean duration of the ticks so far, in nanoseconds
+	 */
+	public long getMeanTickNanos() {
+		long count = ticks;
+		return count == 0 ? 0 : totalTickNanos / count;
+	}
+
+	public long getTickCount() {
+		return ticks;
+	}
+
+	/**
+	 * @return the number of ticks that lasted longer than their interval
+	 */
+	public long getOverrunCount() {
+		return overruns;
+	}
+}
@@ -0,0 +1,267 @@
+package hostednetscanner;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+
+/**
+ * Primitive encodings of the addresses handled by the scanners: IPv4 addresses
+ * as {@code int} and 48-bit MAC addresses as {@code long}, so that large tables
+ * can be parsed and compared without creating intermediate Strings.
+ */
+public final class AddressUtils {
+	/**
+	 * Returned by the parse methods when the input is not a valid address. Valid
+	 * MACs only use the lower 48 bits and valid IPv4s the lower 32 bits, so this
+	 * can never be mistaken for a real address.
+	 */
+	public static final long INVALID = -1L;
+
+	private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+	private AddressUtils() {
+	}
+
+	/**
+	 * Parses a MAC address written as six hex pairs separated by '-' or ':'.
+	 *
+	 * @param mac the MAC address, e.g. {@code aa-bb-cc-dd-ee-ff}
+	 * @return the MAC address in the lower 48 bits, or {@link #INVALID}
+	 */
+	public static long parseMac(CharSequence mac) {
+		return mac == null ? INVALID : parseMac(mac, 0, mac.length());
+	}
+
+	/**
+	 * Parses a MAC address from a range of characters, see
+	 * {@link #parseMac(CharSequence)}.
+	 */
+	public static long parseMac(CharSequence chars, int off, int len) {
+		if (len != 17)
+			return INVALID;
+
+		long value = 0;
+		for (int i = 0; i < 17; i++) {
+			char c = chars.charAt(off + i);
+			if (i % 3 == 2) {
+				if (!isMacSeparator(c))
+					return INVALID;
+				continue;
+			}
+			int digit = hexDigit(c);
+			if (digit < 0)
+				return INVALID;
+			value = (value << 4) | digit;
+		}
+		return value;
+	}
+
+	/**
+	 * Parses a MAC address from ASCII bytes, see {@link #parseMac(CharSequence)}.
+	 */
+	public static long parseMac(byte[] buf, int off, int len) {
+		if (len != 17)
+			return INVALID;
+
+		long value = 0;
+		for (int i = 0; i < 17; i++) {
+			byte b = buf[off + i];
+			if (i % 3 == 2) {
+				if (!isMacSeparator(b))
+					return INVALID;
+				continue;
+			}
+			int digit = hexDigit(b);
+			if (digit < 0)
+				return INVALID;
+			value = (value << 4) | digit;
+		}
+		return value;
+	}
+
+	/**
+	 * Parses a MAC address from ASCII bytes held in a (possibly direct) buffer,
+	 * using absolute indexes, see {@link #parseMac(CharSequence)}.
+	 */
+	public static long parseMac(ByteBuffer buf, int off, int len) {
+		if (len != 17)
+			return INVALID;
+
+		long value = 0;
+		for (int i = 0; i < 17; i++) {
+			byte b = buf.get(off + i);
+			if (i % 3 == 2) {
+				if (!isMacSeparator(b))
+					return INVALID;
+				continue;
+			}
+			int digit = hexDigit(b);
+			if (digit < 0)
+				return INVALID;
+			value = (value << 4) | digit;
+		}
+		return value;
+	}
+
+	/**
+	 * Formats a MAC address the way {@link Device#formatMacAddress(String)} does:
+	 * uppercase, hyphen separated.
+	 */
+	public static String formatMac(long mac) {
+		char[] chars = new char[17];
+		for (int i = 0; i < 6; i++) {
+			int octet = (int) (mac >>> (40 - 8 * i)) & 0xFF;
+			chars[i * 3] = HEX[octet >>> 4];
+			chars[i * 3 + 1] = HEX[octet & 0xF];
+			if (i < 5)
+				chars[i * 3 + 2] = '-';
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * Parses a dotted IPv4 address.
+	 *
+	 * @return the address in the lower 32 bits, or {@link #INVALID}
+	 */
+	public static long parseIPv4(CharSequence ip) {
+		return ip == null ? INVALID : parseIPv4(ip, 0, ip.length());
+	}
+
+	/**
+	 * Parses a dotted IPv4 address from a range of characters.
+	 *
+	 * @return the address in the lower 32 bits, or {@link #INVALID}
+	 */
+	public static long parseIPv4(CharSequence chars, int off, int len) {
+		long value = 0;
+		int octet = -1;
+		int dots = 0;
+		for (int i = off; i < off + len; i++) {
+			char c = chars.charAt(i);
+			if (c == '.') {
+				if (octet < 0 || ++dots > 3)
+					return INVALID;
+				value = (value << 8) | octet;
+				octet = -1;
+			} else if (isDigit(c)) {
+				octet = (octet < 0 ? 0 : octet * 10) + (c - '0');
+				if (octet > 255)
+					return INVALID;
+			} else {
+				return INVALID;
+			}
+		}
+		if (dots != 3 || octet < 0)
+			return INVALID;
+		return (value << 8) | octet;
+	}
+
+	/**
+	 * Parses a dotted IPv4 address from ASCII bytes.
+	 *
+	 * @return the address in the lower 32 bits, or {@link #INVALID}
+	 */
+	public static long parseIPv4(byte[] buf, int off, int len) {
+		long value = 0;
+		int octet = -1;
+		int dots = 0;
+		for (int i = off; i < off + len; i++) {
+			byte b = buf[i];
+			if (b == '.') {
+				if (octet < 0 || ++dots > 3)
+					return INVALID;
+				value = (value << 8) | octet;
+				octet = -1;
+			} else if (isDigit(b)) {
+				octet = (octet < 0 ? 0 : octet * 10) + (b - '0');
+				if (octet > 255)
+					return INVALID;
+			} else {
+				return INVALID;
+			}
+		}
+		if (dots != 3 || octet < 0)
+			return INVALID;
+		return (value << 8) | octet;
+	}
+
+	/**
+	 * Parses a dotted IPv4 address from ASCII bytes held in a (possibly direct)
+	 * buffer, using absolute indexes.
+	 *
+	 * @return the address in the lower 32 bits, or {@link #INVALID}
+	 */
+	public static long parseIPv4(ByteBuffer buf, int off, int len) {
+		long value = 0;
+		int octet = -1;
+		int dots = 0;
+		for (int i = off; i < off + len; i++) {
+			byte b = buf.get(i);
+			if (b == '.') {
+				if (octet < 0 || ++dots > 3)
+					return INVALID;
+				value = (value << 8) | octet;
+				octet = -1;
+			} else if (isDigit(b)) {
+				octet = (octet < 0 ? 0 : octet * 10) + (b - '0');
+				if (octet > 255)
+					return INVALID;
+			} else {
+				return INVALID;
+			}
+		}
+		if (dots != 3 || octet < 0)
+			return INVALID;
+		return (value << 8) | octet;
+	}
+
+	/**
+	 * @return the IPv4 address as an int, or 0 if the address is null or not IPv4
+	 */
+	public static int toInt(InetAddress address) {
+		if (!(address instanceof Inet4Address))
+			return 0;
+
+		byte[] b = address.getAddress();
+		return ((b[0] & 0xFF) << 24) | ((b[1] & 0xFF) << 16) | ((b[2] & 0xFF) << 8) | (b[3] & 0xFF);
+	}
+
+	/**
+	 * Converts an int encoded IPv4 address back to an {@link InetAddress} without
+	 * any name service lookup.
+	 */
+	public static InetAddress toInetAddress(int ip) {
+		try {
+			return InetAddress.getByAddress(new byte[] { (byte) (ip >>> 24), (byte) (ip >>> 16), (byte) (ip >>> 8),
+					(byte) ip });
+		} catch (UnknownHostException e) {
+			// Cannot happen for a 4 byte address
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public static String formatIPv4(int ip) {
+		return (ip >>> 24) + "." + ((ip >>> 16) & 0xFF) + "." + ((ip >>> 8) & 0xFF) + "." + (ip & 0xFF);
+	}
+
+	// The helpers take an int so that the char and the byte parsers share them
+	private static int hexDigit(int c) {
+		if (c >= '0' && c <= '9')
+			return c - '0';
+		if (c >= 'a' && c <= 'f')
+			return c - 'a' + 10;
+		if (c >= 'A' && c <= 'F')
+			return c - 'A' + 10;
+		return -1;
+	}
+
+	private static boolean isMacSeparator(int c) {
+		return c == '-' || c == ':';
+	}
+
+	private static boolean isDigit(int c) {
+		return c >= '0' && c <= '9';
+	}
+}
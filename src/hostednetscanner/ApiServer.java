@@ -0,0 +1,384 @@
+package hostednetscanner;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local HTTP API of the scanner, for dashboards and other tools. Only the
+ * loopback address is bound, and every endpoint answers {@code GET}:
+ * <ul>
+ * <li>{@code /api/networks}: the monitored networks, as a JSON array;</li>
+ * <li>{@code /api/devices}: the devices of every network, or of one with
+ * {@code ?network=<interface MAC>}, as a JSON array;</li>
+ * <li>{@code /api/metrics}: the {@link ScanMetrics}, as a JSON array;</li>
+ * <li>{@code /api/events}: a Server-Sent-Events stream starting with a
+ * {@code snapshot} event per network, followed by a {@code delta} event per
+ * {@link NetworkDelta}. Deltas of a version not above the snapshot's are
+ * already part of it.</li>
+ * </ul>
+ *
+ * The stream costs the scanner nothing per client: the server subscribes once
+ * to the {@link NetworkEventBus} of each network, encodes each delta once on
+ * the bus worker and queues the same bytes for every client. Each client is
+ * written by its own thread. A client too slow to keep up is disconnected, and
+ * gets a new snapshot when it reconnects.
+ */
+public class ApiServer {
+	public static final int DEFAULT_PORT = 8750;
+	private static final int CLIENT_QUEUE_CAPACITY = 64;
+	private static final long KEEPALIVE_MS = 15000;
+	private static final String JSON_CONTENT_TYPE = "application/json; charset=utf-8";
+	private static final byte[] STREAM_START = "retry: 1000\n\n".getBytes(StandardCharsets.UTF_8);
+	private static final byte[] KEEPALIVE = ":\n\n".getBytes(StandardCharsets.UTF_8);
+
+	private final ScanMetrics metrics;
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final List<Stream> streams = new CopyOnWriteArrayList<>();
+	private final Set<Client> clients = ConcurrentHashMap.newKeySet();
+	private volatile boolean stopped;
+
+	/**
+	 * Starts serving. Networks are added with {@link #addNetwork(Network)}.
+	 *
+	 * @param port the port to listen on, 0 for any free port
+	 * @throws IOException if the port could not be bound
+	 */
+	public ApiServer(ScanMetrics metrics, int port) throws IOException {
+		this.metrics = metrics;
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		server.createContext("/api", this::handle);
+		// Event streams hold their thread for as long as the client is connected
+		executor = Executors.newCachedThreadPool(IOExecutor.newThreadFactory("api-server"));
+		server.setExecutor(executor);
+		server.start();
+	}
+
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Serves the devices of a network and streams its deltas.
+	 */
+	public void addNetwork(Network network) {
+		Stream stream = new Stream(network);
+		streams.add(stream);
+		// A client lagging behind never loses a change, it gets merged deltas
+		network.addNetworkDeltaListener(stream, NetworkEventBus.OverflowPolicy.COALESCE_LATEST,
+				NetworkEventBus.DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Stops serving a network.
+	 */
+	public void removeNetwork(Network network) {
+		for (Stream stream : streams) {
+			if (stream.network == network) {
+				streams.remove(stream);
+				network.removeNetworkDeltaListener(stream);
+			}
+		}
+	}
+
+	/**
+	 * @return the number of clients connected to the event stream
+	 */
+	public int getStreamClients() {
+		return clients.size();
+	}
+
+	/**
+	 * Stops the server, disconnecting the event stream clients.
+	 */
+	public void stop() {
+		stopped = true;
+		for (Stream stream : streams) {
+			stream.network.removeNetworkDeltaListener(stream);
+		}
+		streams.clear();
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try (exchange) {
+			if (!"GET".equals(exchange.getRequestMethod())) {
+				exchange.sendResponseHeaders(405, -1);
+				return;
+			}
+
+			String path = exchange.getRequestURI().getPath();
+			if (path.endsWith("/"))
+				path = path.substring(0, path.length() - 1);
+			StringBuilder body = new StringBuilder();
+			switch (path) {
+			case "/api/networks":
+				writeNetworks(body);
+				break;
+			case "/api/devices":
+				if (!writeDevices(body, getParameter(exchange, "network"))) {
+					exchange.sendResponseHeaders(404, -1);
+					return;
+				}
+				break;
+			case "/api/metrics":
+				metrics.writeJson(body);
+				break;
+			case "/api/events":
+				stream(exchange);
+				return;
+			default:
+				exchange.sendResponseHeaders(404, -1);
+				return;
+			}
+
+			byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().set("Content-Type", JSON_CONTENT_TYPE);
+			exchange.sendResponseHeaders(200, bytes.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(bytes);
+			}
+		}
+	}
+
+	private static String getParameter(HttpExchange exchange, String name) {
+		String query = exchange.getRequestURI().getRawQuery();
+		if (query == null)
+			return null;
+		for (String parameter : query.split("&")) {
+			int equals = parameter.indexOf('=');
+			if (equals > 0 && parameter.substring(0, equals).equals(name))
+				return URLDecoder.decode(parameter.substring(equals + 1), StandardCharsets.UTF_8);
+		}
+		return null;
+	}
+
+	private void writeNetworks(StringBuilder out) {
+		out.append('[');
+		boolean first = true;
+		for (Stream stream : streams) {
+			if (!first)
+				out.append(',');
+			first = false;
+
+			Network network = stream.network;
+			Device connectedInterface = network.getConnectedInterface();
+			DeviceSnapshot snapshot = network.getSnapshot();
+			int online = 0;
+			for (int i = 0; i < snapshot.size(); i++) {
+				if (snapshot.get(i).isConnected())
+					online++;
+			}
+
+			out.append('{');
+			Json.appendName(out, "id");
+			Json.appendString(out, stream.id);
+			out.append(',');
+			Json.appendName(out, "ip");
+			Json.appendString(out, connectedInterface.getHostAddress());
+			out.append(',');
+			Json.appendName(out, "subnetMask");
+			Json.appendString(out, network.getSubnetMask());
+			out.append(',');
+			Json.appendName(out, "defaultGateway");
+			Json.appendString(out, network.getDefaultGateway());
+			out.append(',');
+			Json.appendName(out, "version").append(snapshot.getVersion()).append(',');
+			Json.appendName(out, "devices").append(snapshot.size()).append(',');
+			Json.appendName(out, "online").append(online);
+			out.append('}');
+		}
+		out.append(']');
+	}
+
+	/**
+	 * @param networkId the network to list, or null for all of them
+	 * @return {@code false} if there is no network of that id
+	 */
+	private boolean writeDevices(StringBuilder out, String networkId) {
+		out.append('[');
+		boolean found = networkId == null;
+		boolean first = true;
+		for (Stream stream : streams) {
+			if (networkId != null && !stream.id.equalsIgnoreCase(networkId))
+				continue;
+			found = true;
+			DeviceSnapshot snapshot = stream.network.getSnapshot();
+			for (int i = 0; i < snapshot.size(); i++) {
+				if (!first)
+					out.append(',');
+				first = false;
+				appendRecord(out, stream.id, snapshot.get(i));
+			}
+		}
+		out.append(']');
+		return found;
+	}
+
+	private static void appendRecord(StringBuilder out, String networkId, DeviceRecord record) {
+		out.append('{');
+		Json.appendName(out, "network");
+		Json.appendString(out, networkId);
+		out.append(',');
+		Json.appendName(out, "mac");
+		Json.appendString(out, record.getMacAddress());
+		out.append(',');
+		Json.appendName(out, "ip");
+		Json.appendString(out, record.getHostAddress());
+		out.append(',');
+		Json.appendName(out, "hostname");
+		Json.appendString(out, record.getHostname());
+		out.append(',');
+		Json.appendName(out, "customName");
+		Json.appendString(out, record.getCustomName());
+		out.append(',');
+		Json.appendName(out, "status");
+		Json.appendString(out, record.getStatus());
+		out.append(',');
+		Json.appendName(out, "connected").append(record.isConnected()).append(',');
+		Json.appendName(out, "firstSeen").append(record.getFirstSeen()).append(',');
+		Json.appendName(out, "lastSeen").append(record.getLastSeen());
+		out.append('}');
+	}
+
+	private static byte[] frame(String event, StringBuilder data) {
+		return ("event: " + event + "\ndata: " + data + "\n\n").getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Streams the events to a client until it disconnects, falls behind or the
+	 * server stops. Runs on the client's own thread.
+	 */
+	private void stream(HttpExchange exchange) throws IOException {
+		exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+		exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+		exchange.sendResponseHeaders(200, 0);
+
+		// Registered before the snapshots are taken so no delta falls in between
+		Client client = new Client();
+		clients.add(client);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(STREAM_START);
+			for (Stream stream : streams) {
+				out.write(stream.snapshotFrame());
+			}
+			out.flush();
+
+			while (!stopped && !client.overflowed) {
+				byte[] frame = client.frames.poll(KEEPALIVE_MS, TimeUnit.MILLISECONDS);
+				out.write(frame != null ? frame : KEEPALIVE);
+				while ((frame = client.frames.poll()) != null) {
+					out.write(frame);
+				}
+				out.flush();
+			}
+		} catch (IOException e) {
+			// The client disconnected
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			clients.remove(client);
+		}
+	}
+
+	/**
+	 * The deltas of one network, encoded once for all the clients.
+	 */
+	private final class Stream implements NetworkDeltaListener {
+		final Network network;
+		final String id;
+
+		Stream(Network network) {
+			this.network = network;
+			this.id = network.getConnectedInterface().getMacAddress();
+		}
+
+		byte[] snapshotFrame() {
+			DeviceSnapshot snapshot = network.getSnapshot();
+			StringBuilder data = new StringBuilder();
+			data.append('{');
+			Json.appendName(data, "network");
+			Json.appendString(data, id);
+			data.append(',');
+			Json.appendName(data, "version").append(snapshot.getVersion()).append(',');
+			Json.appendName(data, "devices").append('[');
+			for (int i = 0; i < snapshot.size(); i++) {
+				if (i > 0)
+					data.append(',');
+				appendRecord(data, id, snapshot.get(i));
+			}
+			data.append("]}");
+			return frame("snapshot", data);
+		}
+
+		@Override
+		public void onNetworkDelta(NetworkDelta delta) {
+			if (clients.isEmpty())
+				return;
+
+			StringBuilder data = new StringBuilder();
+			data.append('{');
+			Json.appendName(data, "network");
+			Json.appendString(data, id);
+			data.append(',');
+			Json.appendName(data, "version").append(delta.getVersion()).append(',');
+			Json.appendName(data, "changes").append('[');
+			boolean first = true;
+			for (NetworkDelta.Change change : delta.getChanges()) {
+				if (!first)
+					data.append(',');
+				first = false;
+				data.append('{');
+				Json.appendName(data, "mac");
+				Json.appendString(data, change.getMacAddress());
+				data.append(',');
+				Json.appendName(data, "change");
+				Json.appendString(data, NetworkDelta.describe(change.getFlags()));
+				data.append(',');
+				Json.appendName(data, "device");
+				if (change.getRecord() == null) {
+					data.append("null");
+				} else {
+					appendRecord(data, id, change.getRecord());
+				}
+				data.append('}');
+			}
+			data.append("]}");
+
+			byte[] frame = frame("delta", data);
+			for (Client client : clients) {
+				client.offer(frame);
+			}
+		}
+	}
+
+	/**
+	 * The frames waiting to be written to one event stream client.
+	 */
+	private static final class Client {
+		final BlockingQueue<byte[]> frames = new ArrayBlockingQueue<>(CLIENT_QUEUE_CAPACITY);
+		volatile boolean overflowed;
+
+		void offer(byte[] frame) {
+			if (!frames.offer(frame))
+				overflowed = true;
+		}
+	}
+}
@@ -0,0 +1,124 @@
+package hostednetscanner;
+
+import java.util.Arrays;
+
+/**
+ * Reusable primitive buffer of dynamic ARP entries, filled by an
+ * {@link ARPTableParser}.
+ *
+ * Entries are stored column-wise (interface IP, IP and MAC) and looked up by
+ * interface and MAC through an open-addressing index that is rebuilt lazily
+ * after the table changes. Clearing and refilling the table reuses all of its
+ * arrays, so a steady-state scan allocates nothing per entry. Static entries
+ * (broadcast, multicast) are ignored, like they were by the String based
+ * parsers.
+ */
+public class ArpTable implements ARPTableParser.EntryHandler {
+	private int size;
+	private int[] interfaceIps;
+	private int[] ips;
+	private long[] macs;
+
+	// Slot -> entry index + 1, 0 meaning empty
+	private int[] index = new int[0];
+	private boolean indexed;
+
+	public ArpTable() {
+		this(64);
+	}
+
+	public ArpTable(int capacity) {
+		interfaceIps = new int[capacity];
+		ips = new int[capacity];
+		macs = new long[capacity];
+	}
+
+	public void clear() {
+		size = 0;
+		indexed = false;
+	}
+
+	@Override
+	public void onEntry(int interfaceIp, int ipAddress, long macAddress, boolean dynamic) {
+		if (!dynamic)
+			return;
+
+		add(interfaceIp, ipAddress, macAddress);
+	}
+
+	public void add(int interfaceIp, int ipAddress, long macAddress) {
+		if (size == macs.length) {
+			int capacity = Math.max(16, size * 2);
+			interfaceIps = Arrays.copyOf(interfaceIps, capacity);
+			ips = Arrays.copyOf(ips, capacity);
+			macs = Arrays.copyOf(macs, capacity);
+		}
+		interfaceIps[size] = interfaceIp;
+		ips[size] = ipAddress;
+		macs[size] = macAddress;
+		size++;
+		indexed = false;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getInterfaceIp(int i) {
+		return interfaceIps[i];
+	}
+
+	public int getIp(int i) {
+		return ips[i];
+	}
+
+	public long getMac(int i) {
+		return macs[i];
+	}
+
+	/**
+	 * Finds the entry of the given MAC address on the given interface.
+	 *
+	 * @return the index of the entry, or -1 if there is none
+	 */
+	public int find(int interfaceIp, long macAddress) {
+		if (size == 0)
+			return -1;
+		if (!indexed)
+			buildIndex();
+
+		int mask = index.length - 1;
+		for (int slot = hash(interfaceIp, macAddress) & mask;; slot = (slot + 1) & mask) {
+			int entry = index[slot] - 1;
+			if (entry < 0)
+				return -1;
+			if (macs[entry] == macAddress && interfaceIps[entry] == interfaceIp)
+				return entry;
+		}
+	}
+
+	private void buildIndex() {
+		// Keep the load factor at or below 0.5
+		int capacity = Integer.highestOneBit(Math.max(size, 8) * 2 - 1) << 1;
+		if (index.length < capacity) {
+			index = new int[capacity];
+		} else {
+			Arrays.fill(index, 0);
+		}
+
+		int mask = index.length - 1;
+		for (int i = 0; i < size; i++) {
+			int slot = hash(interfaceIps[i], macs[i]) & mask;
+			while (index[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			index[slot] = i + 1;
+		}
+		indexed = true;
+	}
+
+	private static int hash(int interfaceIp, long mac) {
+		long h = (mac ^ ((long) interfaceIp << 16)) * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+}
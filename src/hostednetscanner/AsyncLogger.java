@@ -0,0 +1,539 @@
+package hostednetscanner;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous logger writing JSON lines, one object per event:
+ *
+ * <pre>
+ * {"time":"2024-05-01T12:00:00.123","level":"ERROR","thread":"network-monitor","message":"...","stackTrace":"..."}
+ * </pre>
+ *
+ * Logging threads only claim a slot of a ring buffer of preallocated events
+ * with a compare-and-set and fill it in; they never block and never touch the
+ * file. When the ring is full the event is dropped and counted. A single
+ * writer thread drains the published events in batches, every 50 ms or as soon
+ * as the ring is half full, encodes them into a
+ * reused {@link ByteBuffer} and writes them to a {@link FileChannel} kept
+ * open. The file is rotated once it exceeds a size or an age, keeping a
+ * bounded number of rotated files. The number of dropped events is written to
+ * the log itself, every 10 s at most.
+ *
+ * If the file cannot be written, the writer drops the batch, closes the file
+ * and opens it again after a delay doubling from 100 ms to 30 s.
+ *
+ * The log can be rendered as an HTML report on demand with
+ * {@link #writeHtmlReport(Path)}.
+ */
+public class AsyncLogger {
+	public static final int DEFAULT_CAPACITY = 4096;
+	public static final long DEFAULT_MAX_BYTES = 5L * 1024 * 1024;
+	public static final long DEFAULT_MAX_AGE_MS = TimeUnit.DAYS.toMillis(1);
+	public static final int DEFAULT_MAX_FILES = 5;
+	private static final long BATCH_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+	private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
+	// The writer frees slots in steps of this many events at most
+	private static final int RELEASE_BATCH = 64;
+	private static final DateTimeFormatter ROTATED_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+	private static final long DROP_REPORT_INTERVAL_MS = 10000;
+	private static final long RETRY_MIN_MS = 100;
+	private static final long RETRY_MAX_MS = 30000;
+
+	private final Path file;
+	private final long maxBytes;
+	private final long maxAgeMs;
+	private final int maxFiles;
+
+	// Ring of preallocated events, see log()
+	private final Event[] ring;
+	private final int mask;
+	private final AtomicLong claimed = new AtomicLong();
+	private volatile long consumed;
+	private volatile long written;
+	private final LongAdder dropped = new LongAdder();
+	private volatile boolean parked;
+
+	// Owned by the writer thread
+	private final Thread writer;
+	private final StringBuilder line = new StringBuilder(256);
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+	private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+	// The time of the last event formatted to the second, see encode()
+	private long formattedSecond = Long.MIN_VALUE;
+	private String formattedTime;
+	private FileChannel channel;
+	private long openedAt;
+	// The drops written to the log so far, see reportDrops()
+	private final Event dropReport = new Event();
+	private long reportedDrops;
+	private long reportedAt;
+	private volatile boolean closed;
+
+	/**
+	 * Starts the writer of a log file.
+	 *
+	 * @param file     the current log file, rotated files are written next to it
+	 * @param capacity the number of events that may wait for the writer, rounded
+	 *                 up to a power of two
+	 * @param maxBytes the size after which the file is rotated
+	 * @param maxAgeMs the age after which the file is rotated
+	 * @param maxFiles the number of rotated files kept
+	 */
+	public AsyncLogger(Path file, int capacity, long maxBytes, long maxAgeMs, int maxFiles) {
+		this.file = file.toAbsolutePath();
+		this.maxBytes = maxBytes;
+		this.maxAgeMs = maxAgeMs;
+		this.maxFiles = Math.max(0, maxFiles);
+
+		int size = Integer.highestOneBit(Math.max(capacity, 2) * 2 - 1);
+		ring = new Event[size];
+		for (int i = 0; i < size; i++) {
+			ring[i] = new Event();
+		}
+		mask = size - 1;
+
+		writer = IOExecutor.newThread("async-logger", this::run);
+		writer.start();
+	}
+
+	/**
+	 * Queues an event for the writer. Never blocks.
+	 *
+	 * @param throwable the error to log with its stack trace, or null
+	 * @return {@code false} if the event was dropped because the ring is full or
+	 *         the logger closed
+	 */
+	public boolean log(String level, String message, Throwable throwable) {
+		if (closed) {
+			dropped.increment();
+			return false;
+		}
+
+		long sequence;
+		do {
+			sequence = claimed.get();
+			if (sequence - consumed >= ring.length) {
+				LockSupport.unpark(writer);
+				dropped.increment();
+				return false;
+			}
+		} while (!claimed.compareAndSet(sequence, sequence + 1));
+
+		Event event = ring[(int) sequence & mask];
+		event.time = System.currentTimeMillis();
+		event.level = level;
+		event.thread = Thread.currentThread().getName();
+		event.message = message;
+		event.throwable = throwable;
+		// Publishes the event to the writer
+		event.sequence = sequence;
+		// Wake the writer up early in a burst rather than drop events
+		if (parked && sequence - consumed >= ring.length / 2) {
+			LockSupport.unpark(writer);
+		}
+		return true;
+	}
+
+	/**
+	 * Waits until the events logged so far are written to the file.
+	 *
+	 * @return {@code false} if the timeout elapsed first
+	 */
+	public boolean flush(long timeoutMs) {
+		long target = claimed.get();
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+		while (written < target && writer.isAlive()) {
+			LockSupport.unpark(writer);
+			if (System.nanoTime() > deadline)
+				return false;
+			LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+		}
+		return written >= target;
+	}
+
+	/**
+	 * Writes the pending events and stops the writer. Events logged afterwards
+	 * are dropped.
+	 */
+	public void close(long timeoutMs) {
+		flush(timeoutMs);
+		closed = true;
+		LockSupport.unpark(writer);
+		try {
+			writer.join(timeoutMs);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public Path getFile() {
+		return file;
+	}
+
+	/**
+	 * @return the number of events dropped because the writer fell behind or
+	 *         failed to write them
+	 */
+	public long getDropped() {
+		return dropped.sum();
+	}
+
+	private void run() {
+		long retryMs = RETRY_MIN_MS;
+		try {
+			while (true) {
+				try {
+					if (channel == null)
+						open();
+					boolean stopping = closed;
+					if (drain() > 0) {
+						retryMs = RETRY_MIN_MS;
+					} else {
+						if (stopping)
+							break;
+						parked = true;
+						LockSupport.parkNanos(this, BATCH_INTERVAL_NANOS);
+						parked = false;
+					}
+				} catch (IOException e) {
+					System.err.println("Error writing the log file " + file + ", retrying in " + retryMs + " ms: " + e);
+					discardBatch();
+					if (closed)
+						break;
+					LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(retryMs));
+					retryMs = Math.min(retryMs * 2, RETRY_MAX_MS);
+				}
+			}
+		} finally {
+			closeChannel();
+		}
+	}
+
+	/**
+	 * Counts the events of the batch that could not be written as dropped, and
+	 * closes the file to open it again.
+	 */
+	private void discardBatch() {
+		buffer.clear();
+		dropped.add(consumed - written);
+		written = consumed;
+		closeChannel();
+	}
+
+	/**
+	 * Writes the published events as one batch.
+	 *
+	 * @return the number of events written
+	 */
+	private int drain() throws IOException {
+		long next = consumed;
+		int count = 0;
+		Event event;
+		try {
+			while ((event = ring[(int) next & mask]).sequence == next) {
+				encode(event);
+				event.message = null;
+				event.throwable = null;
+				next++;
+				count++;
+				// Frees the slots for the logging threads
+				if ((count & (RELEASE_BATCH - 1)) == 0)
+					consumed = next;
+			}
+		} finally {
+			// The events encoded were cleared, they must not be read again
+			consumed = next;
+		}
+		if (!reportDrops() && count == 0)
+			return 0;
+
+		writeBuffer();
+		written = next;
+		if (channel.position() >= maxBytes || System.currentTimeMillis() - openedAt >= maxAgeMs) {
+			rotate();
+		}
+		return count;
+	}
+
+	/**
+	 * Adds the number of events dropped since the last report to the batch, if
+	 * any were and the last report is old enough.
+	 *
+	 * @return {@code true} if a report was added
+	 */
+	private boolean reportDrops() throws IOException {
+		long drops = dropped.sum();
+		long now = System.currentTimeMillis();
+		if (drops == reportedDrops || now - reportedAt < DROP_REPORT_INTERVAL_MS)
+			return false;
+
+		dropReport.time = now;
+		dropReport.level = "WARN";
+		dropReport.thread = writer.getName();
+		dropReport.message = (drops - reportedDrops) + " log events dropped";
+		encode(dropReport);
+		reportedDrops = drops;
+		reportedAt = now;
+		return true;
+	}
+
+	private void encode(Event event) throws IOException {
+		line.setLength(0);
+		long second = Math.floorDiv(event.time, 1000);
+		if (second != formattedSecond) {
+			LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochSecond(second), ZoneId.systemDefault());
+			formattedTime = TIME_FORMAT.format(time);
+			formattedSecond = second;
+		}
+		int millis = Math.floorMod(event.time, 1000);
+		line.append("{\"time\":\"").append(formattedTime).append('.');
+		line.append((char) ('0' + millis / 100)).append((char) ('0' + millis / 10 % 10)).append((char) ('0' + millis % 10));
+		line.append("\",\"level\":\"").append(event.level);
+		line.append("\",\"thread\":");
+		Json.appendString(line, event.thread);
+		line.append(",\"message\":");
+		Json.appendString(line, event.message);
+		if (event.throwable != null) {
+			StringWriter stackTrace = new StringWriter();
+			event.throwable.printStackTrace(new PrintWriter(stackTrace));
+			line.append(",\"stackTrace\":");
+			Json.appendString(line, stackTrace.toString());
+		}
+		line.append("}\n");
+
+		CharBuffer chars = CharBuffer.wrap(line);
+		encoder.reset();
+		while (true) {
+			CoderResult result = encoder.encode(chars, buffer, true);
+			if (result.isOverflow()) {
+				writeBuffer();
+			} else {
+				break;
+			}
+		}
+	}
+
+	private void writeBuffer() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	private void open() throws IOException {
+		Files.createDirectories(file.getParent());
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.APPEND);
+		openedAt = System.currentTimeMillis();
+	}
+
+	private void closeChannel() {
+		if (channel == null)
+			return;
+		try {
+			channel.close();
+		} catch (IOException e) {
+			System.err.println("Error closing the log file " + file + ": " + e);
+		}
+		channel = null;
+	}
+
+	private void rotate() throws IOException {
+		channel.close();
+		Path rotated = file.resolveSibling(rotatedPrefix() + LocalDateTime.now().format(ROTATED_FORMAT) + ".jsonl");
+		Files.move(file, rotated);
+
+		List<Path> files = rotatedFiles(file);
+		for (int i = 0; i < files.size() - maxFiles; i++) {
+			Files.deleteIfExists(files.get(i));
+		}
+		open();
+	}
+
+	private String rotatedPrefix() {
+		return baseName(file) + "-";
+	}
+
+	private static String baseName(Path file) {
+		String name = file.getFileName().toString();
+		int extension = name.lastIndexOf('.');
+		return extension > 0 ? name.substring(0, extension) : name;
+	}
+
+	/**
+	 * @return the rotated files of a log file, oldest first
+	 */
+	private static List<Path> rotatedFiles(Path file) throws IOException {
+		List<Path> files = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(file.getParent(),
+				baseName(file) + "-*.jsonl")) {
+			for (Path rotated : stream) {
+				files.add(rotated);
+			}
+		}
+		// The timestamp in the name sorts chronologically
+		files.sort(null);
+		return files;
+	}
+
+	/**
+	 * Renders the log, rotated files included, as an HTML document.
+	 *
+	 * @param output the HTML file to write
+	 */
+	public void writeHtmlReport(Path output) throws IOException {
+		flush(1000);
+		List<Path> files = rotatedFiles(file);
+		if (Files.exists(file))
+			files.add(file);
+
+		try (BufferedWriter out = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+			out.write("<!DOCTYPE html>\n<html>\n<head>\n<meta charset=\"utf-8\">\n");
+			out.write("<title>HostedNetScanner log</title>\n");
+			out.write("<style>body{font-family:sans-serif}table{border-collapse:collapse}"
+					+ "td,th{border:1px solid #ccc;padding:2px 6px;vertical-align:top;text-align:left}"
+					+ ".ERROR{color:red}pre{margin:0}</style>\n</head>\n<body>\n");
+			out.write("<table>\n<tr><th>Time</th><th>Level</th><th>Thread</th><th>Message</th></tr>\n");
+			for (Path path : files) {
+				try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+					String json;
+					while ((json = reader.readLine()) != null) {
+						Map<String, String> event = parseJson(json);
+						if (event.isEmpty())
+							continue;
+						String level = escapeHtml(event.getOrDefault("level", ""));
+						out.write("<tr class=\"" + level + "\"><td>" + escapeHtml(event.getOrDefault("time", ""))
+								+ "</td><td>" + level + "</td><td>" + escapeHtml(event.getOrDefault("thread", ""))
+								+ "</td><td><pre>" + escapeHtml(event.getOrDefault("message", "")));
+						String stackTrace = event.get("stackTrace");
+						if (stackTrace != null)
+							out.write("\n" + escapeHtml(stackTrace));
+						out.write("</pre></td></tr>\n");
+					}
+				}
+			}
+			out.write("</table>\n</body>\n</html>\n");
+		}
+	}
+
+	/**
+	 * Parses a flat JSON object of string values, as written by
+	 * {@link #encode(Event)}.
+	 *
+	 * @return the values by key, empty if the line is not such an object
+	 */
+	static Map<String, String> parseJson(String json) {
+		Map<String, String> values = new HashMap<>();
+		int[] position = { json.indexOf('{') + 1 };
+		if (position[0] == 0)
+			return values;
+		while (true) {
+			skipSeparators(json, position);
+			if (position[0] >= json.length() || json.charAt(position[0]) != '"')
+				return values;
+			String key = parseString(json, position);
+			skipSeparators(json, position);
+			if (key == null || position[0] >= json.length())
+				return values;
+			String value = null;
+			if (json.startsWith("null", position[0])) {
+				position[0] += 4;
+			} else {
+				value = parseString(json, position);
+				if (value == null)
+					return values;
+			}
+			values.put(key, value);
+		}
+	}
+
+	private static void skipSeparators(String json, int[] position) {
+		while (position[0] < json.length() && ":, ".indexOf(json.charAt(position[0])) >= 0) {
+			position[0]++;
+		}
+	}
+
+	private static String parseString(String json, int[] position) {
+		int i = position[0];
+		if (i >= json.length() || json.charAt(i) != '"')
+			return null;
+		StringBuilder value = new StringBuilder();
+		for (i++; i < json.length(); i++) {
+			char c = json.charAt(i);
+			if (c == '"') {
+				position[0] = i + 1;
+				return value.toString();
+			}
+			if (c == '\\' && i + 1 < json.length()) {
+				char escaped = json.charAt(++i);
+				switch (escaped) {
+				case 'n':
+					value.append('\n');
+					break;
+				case 'r':
+					value.append('\r');
+					break;
+				case 't':
+					value.append('\t');
+					break;
+				case 'u':
+					if (i + 4 < json.length()) {
+						value.append((char) Integer.parseInt(json.substring(i + 1, i + 5), 16));
+						i += 4;
+					}
+					break;
+				default:
+					value.append(escaped);
+				}
+			} else {
+				value.append(c);
+			}
+		}
+		position[0] = i;
+		return value.toString();
+	}
+
+	private static String escapeHtml(String text) {
+		return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+	}
+
+	/**
+	 * A slot of the ring. {@link #sequence} is written last by the logging
+	 * thread, publishing the other fields to the writer.
+	 */
+	private static final class Event {
+		volatile long sequence = -1;
+		long time;
+		String level;
+		String thread;
+		String message;
+		Throwable throwable;
+	}
+}
@@ -0,0 +1,155 @@
+package hostednetscanner;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+
+/**
+ * Runs the external commands the scanners depend on ({@code arp}, {@code ipconfig},
+ * {@code netsh}, PowerShell, ...).
+ *
+ * The default executor spawns real processes. It can be replaced, either with
+ * {@link #setDefault(CommandExecutor)} or by starting the application with
+ * {@code -Dhostednetscanner.replay=<fixture dir>}, to serve recorded outputs
+ * through a {@link ReplayCommandExecutor} instead, which allows the scan pipeline
+ * to be exercised off a Windows box.
+ */
+public interface CommandExecutor {
+
+	/**
+	 * Runs a command to completion and returns its exit code and standard output.
+	 *
+	 * @param command the command line to run
+	 * @return the result of the command, never null
+	 * @throws IOException if the command could not be run or its output read
+	 */
+	CommandResult execute(String command) throws IOException;
+
+	/**
+	 * Runs a command to completion, handing its standard output to the handler as
+	 * a byte stream instead of collecting it into a String.
+	 *
+	 * @param command the command line to run
+	 * @param handler consumes the standard output of the command
+	 * @throws IOException if the command could not be run or its output read
+	 */
+	default void stream(String command, OutputHandler handler) throws IOException {
+		handler.handle(new ByteArrayInputStream(execute(command).getOutput().getBytes(StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * Opens a long-lived interactive shell that scripts can be sent to.
+	 *
+	 * @param command the shell executable and its arguments
+	 * @return the opened session
+	 * @throws IOException if the shell could not be started
+	 */
+	ShellSession openShell(String... command) throws IOException;
+
+	/**
+	 * @return the executor the scanners route their commands through
+	 */
+	static CommandExecutor getDefault() {
+		return Holder.executor;
+	}
+
+	/**
+	 * Replaces the executor the scanners route their commands through.
+	 *
+	 * @param executor the new executor, must not be null
+	 */
+	static void setDefault(CommandExecutor executor) {
+		if (executor == null) {
+			throw new IllegalArgumentException("Command executor cannot be null");
+		}
+		Holder.executor = executor;
+	}
+
+	/**
+	 * Exit code and standard output of a finished command.
+	 */
+	class CommandResult {
+		private final int exitCode;
+		private final String output;
+
+		public CommandResult(int exitCode, String output) {
+			this.exitCode = exitCode;
+			this.output = output;
+		}
+
+		public int getExitCode() {
+			return exitCode;
+		}
+
+		public String getOutput() {
+			return output;
+		}
+
+		public boolean isSuccess() {
+			return exitCode == 0;
+		}
+	}
+
+	/**
+	 * Consumes the standard output of a command.
+	 */
+	@FunctionalInterface
+	interface OutputHandler {
+		void handle(InputStream output) throws IOException;
+	}
+
+	/**
+	 * An interactive shell process kept open between scripts.
+	 */
+	interface ShellSession extends Closeable {
+		/**
+		 * Sends a script to the shell and waits for its whole output.
+		 *
+		 * @param script the script to run
+		 * @return the output of the script
+		 * @throws IOException if the shell could not be written to or read from
+		 */
+		String execute(String script) throws IOException;
+
+		/**
+		 * Registers a script as a named function of the shell, so that later
+		 * calls only need to send its name.
+		 *
+		 * @param function the function name, e.g. {@code Get-HostedNetNeighbors}
+		 * @param body     the script run by the function
+		 * @throws IOException if the function could not be defined
+		 */
+		void register(String function, String body) throws IOException;
+
+		/**
+		 * Calls a function registered with {@link #register(String, String)}.
+		 *
+		 * @param function  the function name
+		 * @param timeoutMs how long to wait for the output
+		 * @return the output of the function
+		 * @throws IOException if the call failed or timed out
+		 */
+		String invoke(String function, long timeoutMs) throws IOException;
+
+		boolean isAlive();
+	}
+
+	class Holder {
+		private static volatile CommandExecutor executor = createDefault();
+
+		private Holder() {
+		}
+
+		private static CommandExecutor createDefault() {
+			if (!ReplayCommandExecutor.isConfigured()) {
+				return new ProcessCommandExecutor();
+			}
+
+			return new ReplayCommandExecutor(Paths.get(System.getProperty("hostednetscanner.replay")),
+					ReplayCommandExecutor.getConfiguredLatencyMs());
+		}
+	}
+}
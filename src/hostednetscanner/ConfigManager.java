@@ -21,6 +21,20 @@ import javax.swing.filechooser.FileNameExtensionFilter;
  * - bssidKey: BSSID of the hosted network.
  * - networkPasswordKey: Password of the hosted network.
  * - ssidKey: SSID of the hosted network.
+ * - pollBurstIntervalKey, pollBaseIntervalKey, pollMaxIntervalKey,
+ *   pollBackoffFactorKey, pollJitterKey: policy of the
+ *   {@link AdaptivePollingScheduler}.
+ * - eventOverflowPolicyKey, eventQueueCapacityKey: defaults of the listener
+ *   queues of the {@link NetworkEventBus}.
+ * - journalDirectoryKey, journalGroupCommitKey, journalFsyncPolicyKey,
+ *   journalFsyncIntervalKey, journalSegmentBytesKey, journalMaxSegmentsKey:
+ *   location and options of the {@link DeviceJournal}.
+ * - statusRenderIntervalKey: period of the {@link DeviceStatusView}.
+ * - historyDirectoryKey: directory of the {@link DeviceHistoryStore}.
+ * - maxTrackedDevicesKey, maxOfflineAgeKey: eviction policy of the
+ *   {@link DeviceRegistry}.
+ * - metricsPortKey: local port of the {@link MetricsServer}, 0 to disable it.
+ * - apiPortKey: local port of the {@link ApiServer} of the headless daemon.
  *
  * Methods:
  * - ConfigManager(): Constructor that initializes the preferences node.
@@ -32,6 +46,26 @@ import javax.swing.filechooser.FileNameExtensionFilter;
  * - getNetworkPassword(): Retrieves the network password.
  * - saveSSID(String ssid): Saves the SSID of the hosted network.
  * - getSSID(): Retrieves the SSID of the hosted network.
+ * - savePollingPolicy(AdaptivePollingScheduler.Policy policy): Saves the adaptive polling policy.
+ * - getPollingPolicy(): Retrieves the adaptive polling policy.
+ * - saveEventOverflowPolicy(NetworkEventBus.OverflowPolicy policy): Saves the listener queue overflow policy.
+ * - getEventOverflowPolicy(): Retrieves the listener queue overflow policy.
+ * - saveEventQueueCapacity(int capacity): Saves the listener queue capacity.
+ * - getEventQueueCapacity(): Retrieves the listener queue capacity.
+ * - saveJournalDirectory(String path): Saves the device journal directory.
+ * - getJournalDirectory(): Retrieves the device journal directory.
+ * - saveJournalOptions(DeviceJournal.Options options): Saves the device journal options.
+ * - getJournalOptions(): Retrieves the device journal options.
+ * - saveStatusRenderInterval(long intervalMs): Saves the period of the device status file.
+ * - getStatusRenderInterval(): Retrieves the period of the device status file.
+ * - saveHistoryDirectory(String path): Saves the device history directory.
+ * - getHistoryDirectory(): Retrieves the device history directory.
+ * - saveEvictionPolicy(DeviceRegistry.EvictionPolicy policy): Saves the eviction policy of the known devices.
+ * - getEvictionPolicy(): Retrieves the eviction policy of the known devices.
+ * - saveMetricsPort(int port): Saves the port of the metrics server.
+ * - getMetricsPort(): Retrieves the port of the metrics server.
+ * - saveApiPort(int port): Saves the port of the API server.
+ * - getApiPort(): Retrieves the port of the API server.
  * - showSaveDialog(Component parentComponent, String dialogTitle, String approveButtonText,
  *   String initialDirectory, String fileDescription, String[] fileExtensions, String defaultFileName):
  *   Opens a save dialog and returns the full path of the selected file.
@@ -43,6 +77,25 @@ public class ConfigManager {
 	private static final String bssidKey = "hosted_network_bssid";
 	private static final String networkPasswordKey = "hosted_network_password";
 	private static final String ssidKey = "hosted_network_ssid"; // Add this constant
+	private static final String pollBurstIntervalKey = "poll_burst_interval_ms";
+	private static final String pollBaseIntervalKey = "poll_base_interval_ms";
+	private static final String pollMaxIntervalKey = "poll_max_interval_ms";
+	private static final String pollBackoffFactorKey = "poll_backoff_factor";
+	private static final String pollJitterKey = "poll_jitter";
+	private static final String eventOverflowPolicyKey = "event_overflow_policy";
+	private static final String eventQueueCapacityKey = "event_queue_capacity";
+	private static final String journalDirectoryKey = "journal_directory";
+	private static final String journalGroupCommitKey = "journal_group_commit_ms";
+	private static final String journalFsyncPolicyKey = "journal_fsync_policy";
+	private static final String journalFsyncIntervalKey = "journal_fsync_interval_ms";
+	private static final String journalSegmentBytesKey = "journal_segment_bytes";
+	private static final String journalMaxSegmentsKey = "journal_max_segments";
+	private static final String statusRenderIntervalKey = "status_render_interval_ms";
+	private static final String historyDirectoryKey = "history_directory";
+	private static final String maxTrackedDevicesKey = "max_tracked_devices";
+	private static final String maxOfflineAgeKey = "max_offline_age_ms";
+	private static final String metricsPortKey = "metrics_port";
+	private static final String apiPortKey = "api_port";
 	private Preferences prefs;
 
 	public ConfigManager() {
@@ -83,6 +136,117 @@ public class ConfigManager {
 		return prefs.get(ssidKey, "HostedNetScanner"); // Default SSID if not set
 	}
 
+	public void savePollingPolicy(AdaptivePollingScheduler.Policy policy) {
+		prefs.putLong(pollBurstIntervalKey, policy.getBurstIntervalMs());
+		prefs.putLong(pollBaseIntervalKey, policy.getBaseIntervalMs());
+		prefs.putLong(pollMaxIntervalKey, policy.getMaxIntervalMs());
+		prefs.putDouble(pollBackoffFactorKey, policy.getBackoffFactor());
+		prefs.putDouble(pollJitterKey, policy.getJitter());
+	}
+
+	public AdaptivePollingScheduler.Policy getPollingPolicy() {
+		AdaptivePollingScheduler.Policy defaults = AdaptivePollingScheduler.Policy.DEFAULT;
+		return new AdaptivePollingScheduler.Policy(
+				prefs.getLong(pollBurstIntervalKey, defaults.getBurstIntervalMs()),
+				prefs.getLong(pollBaseIntervalKey, defaults.getBaseIntervalMs()),
+				prefs.getLong(pollMaxIntervalKey, defaults.getMaxIntervalMs()),
+				prefs.getDouble(pollBackoffFactorKey, defaults.getBackoffFactor()),
+				prefs.getDouble(pollJitterKey, defaults.getJitter()));
+	}
+
+	public void saveEventOverflowPolicy(NetworkEventBus.OverflowPolicy policy) {
+		prefs.put(eventOverflowPolicyKey, policy.name());
+	}
+
+	public NetworkEventBus.OverflowPolicy getEventOverflowPolicy() {
+		return NetworkEventBus.OverflowPolicy.parse(prefs.get(eventOverflowPolicyKey, null),
+				NetworkEventBus.OverflowPolicy.COALESCE_LATEST);
+	}
+
+	public void saveEventQueueCapacity(int capacity) {
+		prefs.putInt(eventQueueCapacityKey, capacity);
+	}
+
+	public int getEventQueueCapacity() {
+		return prefs.getInt(eventQueueCapacityKey, NetworkEventBus.DEFAULT_CAPACITY);
+	}
+
+	public void saveJournalDirectory(String path) {
+		prefs.put(journalDirectoryKey, path);
+	}
+
+	public String getJournalDirectory() {
+		return prefs.get(journalDirectoryKey, System.getProperty("user.dir") + "/journal");
+	}
+
+	public void saveJournalOptions(DeviceJournal.Options options) {
+		prefs.putLong(journalGroupCommitKey, options.getGroupCommitMs());
+		prefs.put(journalFsyncPolicyKey, options.getFsyncPolicy().name());
+		prefs.putLong(journalFsyncIntervalKey, options.getFsyncIntervalMs());
+		prefs.putLong(journalSegmentBytesKey, options.getSegmentBytes());
+		prefs.putInt(journalMaxSegmentsKey, options.getMaxSegments());
+	}
+
+	public DeviceJournal.Options getJournalOptions() {
+		DeviceJournal.Options defaults = DeviceJournal.Options.DEFAULT;
+		DeviceJournal.FsyncPolicy fsyncPolicy;
+		try {
+			fsyncPolicy = DeviceJournal.FsyncPolicy
+					.valueOf(prefs.get(journalFsyncPolicyKey, defaults.getFsyncPolicy().name()));
+		} catch (IllegalArgumentException e) {
+			fsyncPolicy = defaults.getFsyncPolicy();
+		}
+		return new DeviceJournal.Options(
+				prefs.getLong(journalGroupCommitKey, defaults.getGroupCommitMs()),
+				fsyncPolicy,
+				prefs.getLong(journalFsyncIntervalKey, defaults.getFsyncIntervalMs()),
+				prefs.getLong(journalSegmentBytesKey, defaults.getSegmentBytes()),
+				prefs.getInt(journalMaxSegmentsKey, defaults.getMaxSegments()));
+	}
+
+	public void saveStatusRenderInterval(long intervalMs) {
+		prefs.putLong(statusRenderIntervalKey, intervalMs);
+	}
+
+	public long getStatusRenderInterval() {
+		return prefs.getLong(statusRenderIntervalKey, DeviceStatusView.DEFAULT_INTERVAL_MS);
+	}
+
+	public void saveHistoryDirectory(String path) {
+		prefs.put(historyDirectoryKey, path);
+	}
+
+	public String getHistoryDirectory() {
+		return prefs.get(historyDirectoryKey, System.getProperty("user.dir") + "/history");
+	}
+
+	public void saveEvictionPolicy(DeviceRegistry.EvictionPolicy policy) {
+		prefs.putInt(maxTrackedDevicesKey, policy.getMaxTrackedDevices());
+		prefs.putLong(maxOfflineAgeKey, policy.getMaxOfflineAgeMs());
+	}
+
+	public DeviceRegistry.EvictionPolicy getEvictionPolicy() {
+		DeviceRegistry.EvictionPolicy defaults = DeviceRegistry.EvictionPolicy.DEFAULT;
+		return new DeviceRegistry.EvictionPolicy(prefs.getInt(maxTrackedDevicesKey, defaults.getMaxTrackedDevices()),
+				prefs.getLong(maxOfflineAgeKey, defaults.getMaxOfflineAgeMs()));
+	}
+
+	public void saveMetricsPort(int port) {
+		prefs.putInt(metricsPortKey, port);
+	}
+
+	public int getMetricsPort() {
+		return prefs.getInt(metricsPortKey, 0);
+	}
+
+	public void saveApiPort(int port) {
+		prefs.putInt(apiPortKey, port);
+	}
+
+	public int getApiPort() {
+		return prefs.getInt(apiPortKey, ApiServer.DEFAULT_PORT);
+	}
+
 	/**
 	 * Opens a save dialog and returns the full path of the selected file.
 	 *
@@ -0,0 +1,42 @@
+package hostednetscanner;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Counts the bytes read from the pipe of a process into a
+ * {@link ScanMetrics.Counter}, once per read call rather than per byte.
+ */
+class CountingInputStream extends FilterInputStream {
+	private final ScanMetrics.Counter bytes;
+
+	CountingInputStream(InputStream in, ScanMetrics.Counter bytes) {
+		super(in);
+		this.bytes = bytes;
+	}
+
+	@Override
+	public int read() throws IOException {
+		int b = super.read();
+		if (b >= 0)
+			bytes.increment();
+		return b;
+	}
+
+	@Override
+	public int read(byte[] buffer, int offset, int length) throws IOException {
+		int read = super.read(buffer, offset, length);
+		if (read > 0)
+			bytes.add(read);
+		return read;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = super.skip(n);
+		if (skipped > 0)
+			bytes.add(skipped);
+		return skipped;
+	}
+}
@@ -0,0 +1,630 @@
+package hostednetscanner;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Embedded, file-backed history of the connection sessions of the devices.
+ *
+ * A session is the time a device spends connected (online or unconfirmed)
+ * with one IP address. Sessions are stored as fixed-width records in
+ * memory-mapped segment files partitioned by the UTC day of their start,
+ * {@code sessions-yyyyMMdd.dat}:
+ *
+ * <pre>
+ * header  (32 bytes): magic, version, record count, unused, last write millis, heartbeat millis
+ * records (32 bytes): MAC (long), start millis (long), end millis (long, -1 while open), IPv4 (int), unused
+ * </pre>
+ *
+ * Every record is also kept in memory in primitive columns, indexed by MAC and
+ * by the hours each closed session overlaps, so that queries over a month of
+ * sessions of a thousand devices only visit the sessions of the requested
+ * device or hours.
+ *
+ * While sessions are open, a heartbeat is written every {@link #HEARTBEAT_MS}
+ * to the header of their segments. Sessions left open by a crash are closed
+ * when the store is opened, at the latest heartbeat or write of any segment:
+ * the last time the store is known to have been running.
+ *
+ * As a {@link NetworkDeltaListener} the store opens and closes the sessions
+ * from the status and IP changes of the devices, at the time the network
+ * published them. All methods are synchronized; queries can be made from any
+ * thread.
+ */
+public class DeviceHistoryStore implements NetworkDeltaListener, Closeable {
+	public static final long HOUR_MS = 3600000L;
+	public static final long HEARTBEAT_MS = 30000;
+	private static final long DAY_MS = 24 * HOUR_MS;
+	private static final int MAGIC = 0x484E5353; // "HNSS"
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 32;
+	private static final int RECORD_BYTES = 32;
+	private static final int INITIAL_RECORDS = 1024;
+	private static final long OPEN = -1;
+	private static final Pattern SEGMENT_NAME = Pattern.compile("sessions-(\\d{8})\\.dat");
+	private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.BASIC_ISO_DATE;
+
+	/**
+	 * One connection session of a device.
+	 */
+	public static final class Session {
+		private final long mac;
+		private final int ip;
+		private final long start;
+		private final long end;
+
+		Session(long mac, int ip, long start, long end) {
+			this.mac = mac;
+			this.ip = ip;
+			this.start = start;
+			this.end = end;
+		}
+
+		public long getMac() {
+			return mac;
+		}
+
+		public String getMacAddress() {
+			return AddressUtils.formatMac(mac);
+		}
+
+		/**
+		 * @return the IPv4 address of the device during the session, 0 if unknown
+		 */
+		public int getIp() {
+			return ip;
+		}
+
+		/**
+		 * @return the start of the session in epoch milliseconds
+		 */
+		public long getStart() {
+			return start;
+		}
+
+		/**
+		 * @return the end of the session in epoch milliseconds, -1 if the device
+		 *         is still connected
+		 */
+		public long getEnd() {
+			return end;
+		}
+
+		public boolean isOpen() {
+			return end == OPEN;
+		}
+
+		/**
+		 * @return the duration of the session, up to now if it is still open
+		 */
+		public long getDurationMs() {
+			return (end == OPEN ? System.currentTimeMillis() : end) - start;
+		}
+
+		@Override
+		public String toString() {
+			return "Session[" + getMacAddress() + ", " + (ip == 0 ? "-" : AddressUtils.formatIPv4(ip)) + ", "
+					+ start + " - " + (end == OPEN ? "open" : end) + "]";
+		}
+	}
+
+	private final Path directory;
+	private final List<Partition> partitions = new ArrayList<>();
+	private final Map<Long, Partition> partitionsByDay = new HashMap<>();
+
+	// Sessions, indexed by id in the order they were opened
+	private int size;
+	private long[] macs = new long[INITIAL_RECORDS];
+	private long[] starts = new long[INITIAL_RECORDS];
+	private long[] ends = new long[INITIAL_RECORDS];
+	private int[] ips = new int[INITIAL_RECORDS];
+	private int[] partitionOf = new int[INITIAL_RECORDS];
+	private int[] recordOf = new int[INITIAL_RECORDS];
+
+	// MAC -> session ids, hour -> ids of the closed sessions overlapping it
+	private final Map<Long, IntList> byMac = new HashMap<>();
+	private final TreeMap<Long, IntList> byHour = new TreeMap<>();
+	// MAC -> id of its open session
+	private final Map<Long, Integer> openSessions = new HashMap<>();
+	private final ScheduledExecutorService heartbeats;
+
+	/**
+	 * Opens the store in the given directory, loading its segments.
+	 *
+	 * @throws IOException if a segment could not be read
+	 */
+	public DeviceHistoryStore(Path directory) throws IOException {
+		this.directory = directory;
+		Files.createDirectories(directory);
+
+		List<Path> files = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "sessions-*.dat")) {
+			for (Path file : stream) {
+				if (SEGMENT_NAME.matcher(file.getFileName().toString()).matches())
+					files.add(file);
+			}
+		}
+		Collections.sort(files);
+		for (Path file : files) {
+			Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+			matcher.matches();
+			partition(LocalDate.parse(matcher.group(1), DAY_FORMAT).toEpochDay());
+		}
+
+		long lastAlive = 0;
+		for (Partition partition : partitions) {
+			lastAlive = Math.max(lastAlive, partition.getLastAlive());
+		}
+		for (int index = 0; index < partitions.size(); index++) {
+			load(index, lastAlive);
+		}
+
+		heartbeats = Executors
+				.newSingleThreadScheduledExecutor(r -> IOExecutor.newThread("device-history-heartbeat", r));
+		heartbeats.scheduleWithFixedDelay(() -> heartbeat(System.currentTimeMillis()), HEARTBEAT_MS, HEARTBEAT_MS,
+				TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Opens the store configured in the {@link ConfigManager}.
+	 */
+	public static DeviceHistoryStore open(ConfigManager config) throws IOException {
+		return new DeviceHistoryStore(Path.of(config.getHistoryDirectory()));
+	}
+
+	/**
+	 * Opens the store of a network other than the hosted one, in a directory of
+	 * its own under the configured one named after the MAC address of its
+	 * interface, so that a device seen on two networks has sessions on both.
+	 */
+	public static DeviceHistoryStore open(ConfigManager config, Network network) throws IOException {
+		Device connectedInterface = network.getConnectedInterface();
+		String name = connectedInterface.getMacAddress() != null ? connectedInterface.getMacAddress()
+				: connectedInterface.getIpAddress().getHostAddress();
+		return new DeviceHistoryStore(
+				Path.of(config.getHistoryDirectory(), "interface-" + name.replaceAll("[^0-9A-Za-z]", "-")));
+	}
+
+	public Path getDirectory() {
+		return directory;
+	}
+
+	@Override
+	public void onNetworkDelta(NetworkDelta delta) {
+		long now = delta.getTimestamp();
+		synchronized (this) {
+			for (NetworkDelta.Change change : delta.getChanges()) {
+				DeviceRecord record = change.getRecord();
+				if (record == null)
+					continue;
+
+				boolean connected = !change.is(NetworkDelta.REMOVED)
+						&& record.getStatusCode() != DeviceRegistry.OFFLINE;
+				try {
+					update(record.getMac(), record.getIp(), connected, now);
+				} catch (IOException e) {
+					e.printStackTrace();
+					Logger.logError("Error writing the device history: ", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Opens, closes or splits the session of a device according to its state.
+	 *
+	 * @param connected whether the device is connected
+	 * @param now       the time of the change in epoch milliseconds
+	 */
+	public synchronized void update(long mac, int ip, boolean connected, long now) throws IOException {
+		Integer open = openSessions.get(mac);
+		if (open != null && (!connected || ips[open] != ip)) {
+			closeSession(open, now);
+			open = null;
+		}
+		if (open == null && connected) {
+			openSession(mac, ip, now);
+		}
+	}
+
+	/**
+	 * Records in the segments of the open sessions that the store is still
+	 * running at the given time, called every {@link #HEARTBEAT_MS}.
+	 */
+	public synchronized void heartbeat(long now) {
+		for (int id : openSessions.values()) {
+			partitions.get(partitionOf[id]).setHeartbeat(now);
+		}
+	}
+
+	/**
+	 * Closes all the open sessions, e.g. when the network stops.
+	 */
+	public synchronized void closeAll(long now) throws IOException {
+		for (Integer id : new ArrayList<>(openSessions.values())) {
+			closeSession(id, now);
+		}
+	}
+
+	/**
+	 * @return the number of sessions in the store
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * @return the open session of a device, or null if it is not connected
+	 */
+	public synchronized Session getOpenSession(long mac) {
+		Integer id = openSessions.get(mac);
+		return id == null ? null : session(id);
+	}
+
+	/**
+	 * @return the sessions of a device overlapping {@code [from, to)}, oldest
+	 *         first
+	 */
+	public synchronized List<Session> getSessions(long mac, long from, long to) {
+		List<Session> sessions = new ArrayList<>();
+		IntList ids = byMac.get(mac);
+		if (ids == null)
+			return sessions;
+		for (int i = 0; i < ids.size; i++) {
+			int id = ids.values[i];
+			if (overlaps(id, from, to))
+				sessions.add(session(id));
+		}
+		return sessions;
+	}
+
+	/**
+	 * @return the first session of a device still open or ended after
+	 *         {@code from}, or null if there is none
+	 */
+	public synchronized Session getFirstSession(long mac, long from) {
+		IntList ids = byMac.get(mac);
+		if (ids == null)
+			return null;
+		for (int i = 0; i < ids.size; i++) {
+			int id = ids.values[i];
+			if (ends[id] == OPEN || ends[id] > from)
+				return session(id);
+		}
+		return null;
+	}
+
+	/**
+	 * @return the last session of a device, or null if it never connected
+	 */
+	public synchronized Session getLastSession(long mac) {
+		IntList ids = byMac.get(mac);
+		return ids == null ? null : session(ids.values[ids.size - 1]);
+	}
+
+	/**
+	 * @return the sessions of all the devices overlapping {@code [from, to)},
+	 *         ordered by start
+	 */
+	public synchronized List<Session> getSessions(long from, long to) {
+		int[] ids = overlapping(from, to);
+		List<Session> sessions = new ArrayList<>(ids.length);
+		for (int id : ids) {
+			sessions.add(session(id));
+		}
+		return sessions;
+	}
+
+	/**
+	 * Computes the peak number of devices connected at the same time in each
+	 * bucket of {@code [from, to)}, e.g. per hour with {@link #HOUR_MS}.
+	 *
+	 * @return the peak of each bucket, the first bucket starting at {@code from}
+	 */
+	public synchronized int[] getConcurrencyHistogram(long from, long to, long bucketMs) {
+		int buckets = (int) Math.max((to - from + bucketMs - 1) / bucketMs, 0);
+		int[] peaks = new int[buckets];
+		int[] ids = overlapping(from, to);
+		if (ids.length == 0)
+			return peaks;
+
+		// Group the session bounds by bucket, so only the bounds of one bucket
+		// need to be sorted together
+		long now = System.currentTimeMillis();
+		int[] offsets = new int[buckets + 1];
+		for (int id : ids) {
+			long start = Math.max(starts[id], from) - from;
+			long end = Math.min(ends[id] == OPEN ? now : ends[id], to) - from;
+			if (end > start) {
+				offsets[bucketOf(start, bucketMs, buckets) + 1]++;
+				offsets[bucketOf(end, bucketMs, buckets) + 1]++;
+			}
+		}
+		for (int bucket = 0; bucket < buckets; bucket++) {
+			offsets[bucket + 1] += offsets[bucket];
+		}
+		long[] bounds = new long[offsets[buckets]];
+		int[] fill = Arrays.copyOf(offsets, buckets);
+		for (int id : ids) {
+			long start = Math.max(starts[id], from) - from;
+			long end = Math.min(ends[id] == OPEN ? now : ends[id], to) - from;
+			if (end > start) {
+				bounds[fill[bucketOf(start, bucketMs, buckets)]++] = start << 1 | 1;
+				bounds[fill[bucketOf(end, bucketMs, buckets)]++] = end << 1;
+			}
+		}
+
+		// Sweep the bounds, a disconnection counting before a connection at the
+		// same time
+		int current = 0;
+		for (int bucket = 0; bucket < buckets; bucket++) {
+			Arrays.sort(bounds, offsets[bucket], offsets[bucket + 1]);
+			long bucketStart = bucket * bucketMs;
+			int i = offsets[bucket];
+			while (i < offsets[bucket + 1] && bounds[i] >> 1 == bucketStart && (bounds[i] & 1) == 0) {
+				current--;
+				i++;
+			}
+			// Devices still connected from the previous bucket
+			int peak = current;
+			for (; i < offsets[bucket + 1]; i++) {
+				if ((bounds[i] & 1) != 0) {
+					peak = Math.max(peak, ++current);
+				} else {
+					current--;
+				}
+			}
+			peaks[bucket] = peak;
+		}
+		return peaks;
+	}
+
+	private static int bucketOf(long time, long bucketMs, int buckets) {
+		return (int) Math.min(time / bucketMs, buckets - 1);
+	}
+
+	/**
+	 * Forces the segments to the storage device.
+	 */
+	public synchronized void flush() {
+		for (Partition partition : partitions) {
+			partition.buffer.force();
+		}
+	}
+
+	/**
+	 * Closes the open sessions and the segments.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		heartbeats.shutdownNow();
+		closeAll(System.currentTimeMillis());
+		flush();
+		for (Partition partition : partitions) {
+			partition.channel.close();
+		}
+	}
+
+	private Session session(int id) {
+		return new Session(macs[id], ips[id], starts[id], ends[id]);
+	}
+
+	private boolean overlaps(int id, long from, long to) {
+		return starts[id] < to && (ends[id] == OPEN || ends[id] > from);
+	}
+
+	/**
+	 * @return the ids of the sessions overlapping {@code [from, to)}, in order
+	 */
+	private int[] overlapping(long from, long to) {
+		if (to <= from)
+			return new int[0];
+
+		Collection<IntList> hours = byHour.subMap(Math.floorDiv(from, HOUR_MS), true, Math.floorDiv(to - 1, HOUR_MS), true)
+				.values();
+		long indexed = 0;
+		for (IntList ids : hours) {
+			indexed += ids.size;
+		}
+
+		IntList found = new IntList();
+		if (indexed >= size) {
+			// The range covers most sessions, scanning them all is cheaper
+			for (int id = 0; id < size; id++) {
+				if (overlaps(id, from, to))
+					found.add(id);
+			}
+			return Arrays.copyOf(found.values, found.size);
+		}
+
+		BitSet seen = new BitSet(size);
+		for (IntList ids : hours) {
+			for (int i = 0; i < ids.size; i++) {
+				int id = ids.values[i];
+				if (!seen.get(id) && overlaps(id, from, to))
+					seen.set(id);
+			}
+		}
+		for (int id : openSessions.values()) {
+			if (overlaps(id, from, to))
+				seen.set(id);
+		}
+		return seen.stream().toArray();
+	}
+
+	private void openSession(long mac, int ip, long now) throws IOException {
+		Partition partition = partition(Math.floorDiv(now, DAY_MS));
+		int record = partition.append(mac, now, OPEN, ip);
+		int id = add(mac, ip, now, OPEN, partitions.indexOf(partition), record);
+		openSessions.put(mac, id);
+	}
+
+	private void closeSession(int id, long now) {
+		long end = Math.max(now, starts[id]);
+		ends[id] = end;
+		partitions.get(partitionOf[id]).setEnd(recordOf[id], end);
+		openSessions.remove(macs[id]);
+		indexHours(id);
+	}
+
+	private int add(long mac, int ip, long start, long end, int partition, int record) {
+		if (size == macs.length) {
+			int capacity = size * 2;
+			macs = Arrays.copyOf(macs, capacity);
+			starts = Arrays.copyOf(starts, capacity);
+			ends = Arrays.copyOf(ends, capacity);
+			ips = Arrays.copyOf(ips, capacity);
+			partitionOf = Arrays.copyOf(partitionOf, capacity);
+			recordOf = Arrays.copyOf(recordOf, capacity);
+		}
+		int id = size++;
+		macs[id] = mac;
+		starts[id] = start;
+		ends[id] = end;
+		ips[id] = ip;
+		partitionOf[id] = partition;
+		recordOf[id] = record;
+		byMac.computeIfAbsent(mac, k -> new IntList()).add(id);
+		return id;
+	}
+
+	private void indexHours(int id) {
+		long last = Math.floorDiv(Math.max(ends[id] - 1, starts[id]), HOUR_MS);
+		for (long hour = Math.floorDiv(starts[id], HOUR_MS); hour <= last; hour++) {
+			byHour.computeIfAbsent(hour, k -> new IntList()).add(id);
+		}
+	}
+
+	private Partition partition(long day) throws IOException {
+		Partition partition = partitionsByDay.get(day);
+		if (partition == null) {
+			String name = "sessions-" + LocalDate.ofEpochDay(day).format(DAY_FORMAT) + ".dat";
+			partition = new Partition(directory.resolve(name), day);
+			partitions.add(partition);
+			partitionsByDay.put(day, partition);
+		}
+		return partition;
+	}
+
+	/**
+	 * Indexes the sessions of a loaded segment, closing those left open by a
+	 * crash at the given time.
+	 *
+	 * @param lastAlive the last time the store was known to be running
+	 */
+	private void load(int index, long lastAlive) {
+		Partition partition = partitions.get(index);
+		for (int record = 0; record < partition.count; record++) {
+			int offset = HEADER_BYTES + record * RECORD_BYTES;
+			long mac = partition.buffer.getLong(offset);
+			long start = partition.buffer.getLong(offset + 8);
+			long end = partition.buffer.getLong(offset + 16);
+			int ip = partition.buffer.getInt(offset + 24);
+			if (end == OPEN) {
+				// Left open by a crash, the device was connected as long as the store ran
+				end = Math.max(lastAlive, start);
+				partition.setEnd(record, end);
+			}
+			int id = add(mac, ip, start, end, index, record);
+			indexHours(id);
+		}
+	}
+
+	/**
+	 * A memory-mapped segment file, grown by remapping when full.
+	 */
+	private static final class Partition {
+		final FileChannel channel;
+		MappedByteBuffer buffer;
+		int count;
+
+		Partition(Path file, long day) throws IOException {
+			channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+					StandardOpenOption.WRITE);
+			if (channel.size() >= HEADER_BYTES) {
+				map(Math.max(channel.size(), HEADER_BYTES + (long) INITIAL_RECORDS * RECORD_BYTES));
+				if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+					channel.close();
+					throw new IOException("Not a session segment: " + file);
+				}
+				count = buffer.getInt(8);
+			} else {
+				map(HEADER_BYTES + (long) INITIAL_RECORDS * RECORD_BYTES);
+				buffer.putInt(0, MAGIC);
+				buffer.putInt(4, VERSION);
+				buffer.putInt(8, 0);
+			}
+		}
+
+		private void map(long bytes) throws IOException {
+			buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+		}
+
+		int append(long mac, long start, long end, int ip) throws IOException {
+			int offset = HEADER_BYTES + count * RECORD_BYTES;
+			if (offset + RECORD_BYTES > buffer.capacity()) {
+				buffer.force();
+				map((long) buffer.capacity() * 2);
+			}
+			buffer.putLong(offset, mac);
+			buffer.putLong(offset + 8, start);
+			buffer.putLong(offset + 16, end);
+			buffer.putInt(offset + 24, ip);
+			buffer.putInt(8, ++count);
+			buffer.putLong(16, System.currentTimeMillis());
+			return count - 1;
+		}
+
+		void setEnd(int record, long end) {
+			buffer.putLong(HEADER_BYTES + record * RECORD_BYTES + 16, end);
+			buffer.putLong(16, System.currentTimeMillis());
+		}
+
+		void setHeartbeat(long now) {
+			buffer.putLong(24, now);
+		}
+
+		/**
+		 * @return the latest of the last write and the heartbeat of the segment
+		 */
+		long getLastAlive() {
+			return Math.max(buffer.getLong(16), buffer.getLong(24));
+		}
+	}
+
+	/**
+	 * Growable list of primitive ints.
+	 */
+	private static final class IntList {
+		int[] values = new int[4];
+		int size;
+
+		void add(int value) {
+			if (size == values.length)
+				values = Arrays.copyOf(values, size * 2);
+			values[size++] = value;
+		}
+	}
+}
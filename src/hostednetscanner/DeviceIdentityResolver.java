@@ -0,0 +1,180 @@
+package hostednetscanner;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resolves the MAC addresses seen on the network to stable logical devices.
+ *
+ * Phones rotate locally administered MAC addresses (the U/L bit of the first
+ * octet set), so the same device may come back under a new MAC. The resolver
+ * maps such a MAC to the identity of the device it most likely is, the MAC
+ * the device was first registered with in the {@link DeviceRegistry}:
+ * <ul>
+ * <li>a new MAC joining with the IP address of a randomized device that left
+ * within the lease window continues that device's lease;</li>
+ * <li>a new MAC whose hostname resolves to the hostname of a randomized device
+ * that is offline is merged into that device by
+ * {@link #applyMerges(DeviceRegistry)} at the next scan.</li>
+ * </ul>
+ * Globally unique MACs are always their own identity.
+ *
+ * Every resolution is kept in a fingerprint cache, so resolving a MAC already
+ * seen is a map lookup. The caches are bounded and forget the least recently
+ * used entries. The registry must only be passed from the scanner thread; the
+ * hostnames may be reported from any thread.
+ */
+public class DeviceIdentityResolver {
+	public static final long DEFAULT_LEASE_WINDOW_MS = 3600000L;
+	private static final int CACHE_SIZE = 4096;
+
+	private final long leaseWindowMs;
+	// Randomized MAC -> identity
+	private final Map<Long, Long> identities = new LruMap<>(CACHE_SIZE);
+	// IP -> identity of the last randomized device that joined with it
+	private final Map<Integer, Long> byIp = new LruMap<>(CACHE_SIZE);
+	// Hostname -> identity of the first randomized device that resolved to it
+	private final Map<String, Long> byHostname = new LruMap<>(CACHE_SIZE);
+	// Pairs of identities (from, to) to merge at the next scan
+	private final List<long[]> merges = new ArrayList<>();
+
+	/**
+	 * @param leaseWindowMs how long after a randomized device left a new MAC
+	 *                      joining with its IP address is taken for the same
+	 *                      device
+	 */
+	public DeviceIdentityResolver(long leaseWindowMs) {
+		this.leaseWindowMs = leaseWindowMs;
+	}
+
+	/**
+	 * @return {@code true} if the U/L bit of the MAC is set and it is not a
+	 *         multicast address, i.e. it may be randomized
+	 */
+	public static boolean isLocallyAdministered(long mac) {
+		int firstOctet = (int) (mac >>> 40) & 0xFF;
+		return (firstOctet & 0x02) != 0 && (firstOctet & 0x01) == 0;
+	}
+
+	/**
+	 * @return the identity a MAC was resolved to, or the MAC itself if it was
+	 *         never resolved or is globally unique
+	 */
+	public synchronized long getIdentity(long mac) {
+		if (!isLocallyAdministered(mac))
+			return mac;
+		Long identity = identities.get(mac);
+		return identity == null ? mac : identity;
+	}
+
+	/**
+	 * Resolves a MAC that has no device in the registry. Devices must have been
+	 * marked connected for this scan cycle before, so that a device still
+	 * connected is never taken for a rotation.
+	 *
+	 * @param ip  the IP the MAC joined with, 0 if unknown
+	 * @param now the time of the scan, in epoch milliseconds
+	 * @return the identity of the MAC
+	 */
+	public synchronized long resolve(long mac, int ip, DeviceRegistry registry, long now) {
+		if (!isLocallyAdministered(mac))
+			return mac;
+		Long cached = identities.get(mac);
+		if (cached != null)
+			return cached;
+
+		long identity = mac;
+		if (ip != 0) {
+			Long previous = byIp.get(ip);
+			if (previous != null && hasLeft(registry, previous, ip, now)) {
+				identity = previous;
+			}
+			byIp.put(ip, identity);
+		}
+		identities.put(mac, identity);
+		return identity;
+	}
+
+	/**
+	 * Reports the resolved hostname of a device. If an other randomized device
+	 * resolved to the same hostname before, the two are merged at the next
+	 * {@link #applyMerges(DeviceRegistry)}.
+	 *
+	 * @param identity the MAC the device is registered with
+	 */
+	public synchronized void onHostname(long identity, String hostname) {
+		if (!isLocallyAdministered(identity) || hostname == null || hostname.isEmpty())
+			return;
+
+		String key = hostname.toLowerCase();
+		Long previous = byHostname.get(key);
+		if (previous == null) {
+			byHostname.put(key, identity);
+		} else if (previous != identity) {
+			merges.add(new long[] { identity, previous });
+		}
+	}
+
+	/**
+	 * Merges the devices found to be the same by their hostname: the newer
+	 * device is removed from the registry and its MACs resolve to the older one
+	 * from now on. Devices connected at the same time are not merged, they only
+	 * share a hostname. Must be called before the scan marks the devices.
+	 *
+	 * @return the removed devices
+	 */
+	public synchronized List<Device> applyMerges(DeviceRegistry registry) {
+		List<Device> removed = new ArrayList<>();
+		for (long[] merge : merges) {
+			long from = merge[0];
+			long to = merge[1];
+			int toSlot = registry.slotOf(to);
+			if (registry.slotOf(from) < 0 || toSlot < 0 || registry.getStatus(toSlot) != DeviceRegistry.OFFLINE)
+				continue;
+
+			removed.add(registry.remove(from));
+			for (Map.Entry<Long, Long> entry : identities.entrySet()) {
+				if (entry.getValue() == from)
+					entry.setValue(to);
+			}
+			for (Map.Entry<Integer, Long> entry : byIp.entrySet()) {
+				if (entry.getValue() == from)
+					entry.setValue(to);
+			}
+			identities.put(from, to);
+		}
+		merges.clear();
+		return removed;
+	}
+
+	/**
+	 * @return whether the device registered as {@code identity} had the given IP
+	 *         and left no longer than the lease window ago
+	 */
+	private boolean hasLeft(DeviceRegistry registry, long identity, int ip, long now) {
+		int slot = registry.slotOf(identity);
+		if (slot < 0 || registry.isConnected(slot) || registry.getIp(slot) != ip)
+			return false;
+
+		// An online device not connected in this cycle has just left
+		long leftAt = registry.getStatus(slot) == DeviceRegistry.OFFLINE ? registry.getLastSeen(slot) : now;
+		return now - leftAt <= leaseWindowMs;
+	}
+
+	private static final class LruMap<K, V> extends LinkedHashMap<K, V> {
+		private static final long serialVersionUID = 1L;
+		private final int maxSize;
+
+		LruMap(int maxSize) {
+			super(16, 0.75f, true);
+			this.maxSize = maxSize;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+			return size() > maxSize;
+		}
+	}
+}
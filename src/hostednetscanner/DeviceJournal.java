@@ -0,0 +1,594 @@
+package hostednetscanner;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Append-only journal of the device events of a {@link Network}: devices
+ * joining and leaving, IP and status changes, and devices forgotten by the
+ * registry.
+ *
+ * Each event is one tab separated line:
+ *
+ * <pre>
+ * epoch millis	JOIN|LEAVE|IP_CHANGE|STATUS_CHANGE|EVICT	MAC	IPv4 or -	status
+ * </pre>
+ *
+ * A device joins when it is added or comes back from offline, and leaves when
+ * it goes offline or is removed while connected. A device removed once it was
+ * offline, evicted or merged into another one, has left already: its removal
+ * is an EVICT.
+ *
+ * As a {@link NetworkDeltaListener} the journal turns each delta into one event
+ * per change, so the cost of a tick grows with the number of changes instead
+ * of the number of devices. Events are queued and written by a writer thread
+ * in group commits: the events arriving within {@link Options#getGroupCommitMs()}
+ * of each other go to the file in a single write, followed by an fsync
+ * depending on the {@link FsyncPolicy}.
+ *
+ * The journal is split in segment files named {@code journal-00000001.log},
+ * {@code journal-00000002.log}, ... A new segment is started once the current
+ * one reaches {@link Options#getSegmentBytes()}, and the oldest segments are
+ * deleted past {@link Options#getMaxSegments()}, if set.
+ */
+public class DeviceJournal implements NetworkDeltaListener, Closeable {
+	private static final Pattern SEGMENT_NAME = Pattern.compile("journal-(\\d{8})\\.log");
+	private static final int QUEUE_CAPACITY = 65536;
+	private static final int MAX_BATCH = 4096;
+	// Queued to wake the writer up for an immediate fsync
+	private static final Event SYNC = new Event(0, null, 0, 0, DeviceRegistry.OFFLINE);
+
+	/**
+	 * The kind of a journal event.
+	 */
+	public enum EventType {
+		JOIN, LEAVE, IP_CHANGE, STATUS_CHANGE, EVICT
+	}
+
+	/**
+	 * When the journal forces its writes to the storage device.
+	 */
+	public enum FsyncPolicy {
+		/**
+		 * Never, the operating system flushes the writes when it sees fit.
+		 */
+		NONE,
+		/**
+		 * After every group commit.
+		 */
+		BATCH,
+		/**
+		 * At most every {@link Options#getFsyncIntervalMs()}.
+		 */
+		PERIODIC
+	}
+
+	/**
+	 * Immutable settings of a journal.
+	 */
+	public static final class Options {
+		public static final Options DEFAULT = new Options(20, FsyncPolicy.BATCH, 1000, 4 * 1024 * 1024, 0);
+
+		private final long groupCommitMs;
+		private final FsyncPolicy fsyncPolicy;
+		private final long fsyncIntervalMs;
+		private final long segmentBytes;
+		private final int maxSegments;
+
+		/**
+		 * @param groupCommitMs   how long the writer waits for more events after
+		 *                        the first one of a batch
+		 * @param fsyncPolicy     when writes are forced to the storage device
+		 * @param fsyncIntervalMs the period of {@link FsyncPolicy#PERIODIC}
+		 * @param segmentBytes    the size at which a new segment is started
+		 * @param maxSegments     the number of segments to keep, 0 to keep them
+		 *                        all
+		 */
+		public Options(long groupCommitMs, FsyncPolicy fsyncPolicy, long fsyncIntervalMs, long segmentBytes,
+				int maxSegments) {
+			this.groupCommitMs = Math.max(groupCommitMs, 0);
+			this.fsyncPolicy = fsyncPolicy;
+			this.fsyncIntervalMs = Math.max(fsyncIntervalMs, 1);
+			this.segmentBytes = Math.max(segmentBytes, 1024);
+			this.maxSegments = Math.max(maxSegments, 0);
+		}
+
+		public long getGroupCommitMs() {
+			return groupCommitMs;
+		}
+
+		public FsyncPolicy getFsyncPolicy() {
+			return fsyncPolicy;
+		}
+
+		public long getFsyncIntervalMs() {
+			return fsyncIntervalMs;
+		}
+
+		public long getSegmentBytes() {
+			return segmentBytes;
+		}
+
+		public int getMaxSegments() {
+			return maxSegments;
+		}
+
+		@Override
+		public String toString() {
+			return "Options[groupCommit=" + groupCommitMs + " ms, fsync=" + fsyncPolicy
+					+ (fsyncPolicy == FsyncPolicy.PERIODIC ? " every " + fsyncIntervalMs + " ms" : "") + ", segment="
+					+ segmentBytes + " bytes, maxSegments=" + maxSegments + "]";
+		}
+	}
+
+	/**
+	 * One event of the journal.
+	 */
+	public static final class Event {
+		private final long time;
+		private final EventType type;
+		private final long mac;
+		private final int ip;
+		private final byte status;
+
+		public Event(long time, EventType type, long mac, int ip, byte status) {
+			this.time = time;
+			this.type = type;
+			this.mac = mac;
+			this.ip = ip;
+			this.status = status;
+		}
+
+		/**
+		 * @return the time of the event in epoch milliseconds
+		 */
+		public long getTime() {
+			return time;
+		}
+
+		public EventType getType() {
+			return type;
+		}
+
+		public long getMac() {
+			return mac;
+		}
+
+		/**
+		 * @return the IPv4 address of the device after the event, 0 if unknown
+		 */
+		public int getIp() {
+			return ip;
+		}
+
+		/**
+		 * @return the status of the device after the event, one of the
+		 *         {@link DeviceRegistry} status codes
+		 */
+		public byte getStatus() {
+			return status;
+		}
+
+		@Override
+		public String toString() {
+			return time + "\t" + type + "\t" + AddressUtils.formatMac(mac) + "\t"
+					+ (ip == 0 ? "-" : AddressUtils.formatIPv4(ip)) + "\t" + DeviceRegistry.statusName(status);
+		}
+
+		static Event parse(String line) {
+			String[] fields = line.split("\t");
+			if (fields.length != 5)
+				return null;
+			try {
+				long mac = AddressUtils.parseMac(fields[2]);
+				if (mac == AddressUtils.INVALID)
+					return null;
+				int ip = 0;
+				if (!fields[3].equals("-")) {
+					long parsed = AddressUtils.parseIPv4(fields[3]);
+					if (parsed == AddressUtils.INVALID)
+						return null;
+					ip = (int) parsed;
+				}
+				return new Event(Long.parseLong(fields[0]), EventType.valueOf(fields[1]), mac, ip,
+						DeviceRegistry.statusCode(fields[4]));
+			} catch (IllegalArgumentException e) {
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * Receives the events read back from a journal.
+	 */
+	public interface EventHandler {
+		void onEvent(Event event);
+	}
+
+	private final Path directory;
+	private final Options options;
+	private final BlockingQueue<Event> queue = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+	private final Thread writer;
+	private final ByteBuffer buffer = ByteBuffer.allocate(256 * 1024);
+	private final StringBuilder line = new StringBuilder(64);
+
+	private FileChannel channel;
+	private int segment;
+	private long segmentSize;
+	private long lastFsync;
+	private volatile boolean dirty;
+	private volatile boolean closed;
+
+	// Progress of the writer, guarded by this
+	private long queued;
+	private long written;
+	private long batches;
+	private long fsyncs;
+	private long bytesWritten;
+	// The last status journaled per MAC, only used by the thread delivering the deltas
+	private final Map<Long, Byte> statuses = new HashMap<>();
+
+	/**
+	 * Opens the journal in the given directory, appending to its last segment,
+	 * and starts the writer thread.
+	 *
+	 * @throws IOException if the directory or the segment could not be opened
+	 */
+	public DeviceJournal(Path directory, Options options) throws IOException {
+		this.directory = directory;
+		this.options = options;
+		Files.createDirectories(directory);
+
+		List<Integer> segments = listSegments(directory);
+		openSegment(segments.isEmpty() ? 1 : segments.get(segments.size() - 1));
+
+		writer = IOExecutor.newThread("device-journal", this::run);
+		writer.start();
+	}
+
+	/**
+	 * Opens the journal configured in the {@link ConfigManager}.
+	 */
+	public static DeviceJournal open(ConfigManager config) throws IOException {
+		return new DeviceJournal(Path.of(config.getJournalDirectory()), config.getJournalOptions());
+	}
+
+	public Path getDirectory() {
+		return directory;
+	}
+
+	public Options getOptions() {
+		return options;
+	}
+
+	/**
+	 * Queues the events of a delta. Blocks only if the writer is far behind.
+	 * Joins and leaves are told from the status the device had in the previous
+	 * deltas; a device whose status changed before the journal listened is taken
+	 * to leave if it went offline, and to change status otherwise.
+	 */
+	@Override
+	public void onNetworkDelta(NetworkDelta delta) {
+		long now = delta.getTimestamp();
+		for (NetworkDelta.Change change : delta.getChanges()) {
+			DeviceRecord record = change.getRecord();
+			if (record == null)
+				continue;
+
+			byte status = record.getStatusCode();
+			if (change.is(NetworkDelta.REMOVED)) {
+				// The record of a removed device has its last status
+				statuses.remove(record.getMac());
+				append(new Event(now, status == DeviceRegistry.OFFLINE ? EventType.EVICT : EventType.LEAVE,
+						record.getMac(), record.getIp(), status));
+				continue;
+			}
+
+			Byte previous = statuses.put(record.getMac(), status);
+			boolean wasOnline = !change.is(NetworkDelta.ADDED)
+					&& (previous == null || previous != DeviceRegistry.OFFLINE);
+			boolean isOnline = status != DeviceRegistry.OFFLINE;
+			if (isOnline && !wasOnline) {
+				append(new Event(now, EventType.JOIN, record.getMac(), record.getIp(), status));
+			} else if (!isOnline && wasOnline) {
+				append(new Event(now, EventType.LEAVE, record.getMac(), record.getIp(), status));
+			} else if (!change.is(NetworkDelta.ADDED)) {
+				if (change.is(NetworkDelta.IP_CHANGED)) {
+					append(new Event(now, EventType.IP_CHANGE, record.getMac(), record.getIp(), status));
+				}
+				if (change.is(NetworkDelta.STATUS_CHANGED)) {
+					append(new Event(now, EventType.STATUS_CHANGE, record.getMac(), record.getIp(), status));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Queues an event for the next group commit.
+	 */
+	public void append(Event event) {
+		if (closed)
+			return;
+		try {
+			queue.put(event);
+			synchronized (this) {
+				queued++;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Waits until the events queued so far are written, and forced to the
+	 * storage device unless the policy is {@link FsyncPolicy#NONE}.
+	 *
+	 * @return {@code false} if the timeout elapsed first
+	 */
+	public synchronized boolean flush(long timeoutMs) throws InterruptedException {
+		long target = queued;
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+		while (written < target || (dirty && options.fsyncPolicy != FsyncPolicy.NONE)) {
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0 || !writer.isAlive())
+				return false;
+			// Ask the writer for an immediate fsync of the last batch
+			queue.offer(SYNC);
+			TimeUnit.NANOSECONDS.timedWait(this, Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(10)));
+		}
+		return true;
+	}
+
+	/**
+	 * Writes the queued events and closes the journal.
+	 */
+	@Override
+	public void close() {
+		if (closed)
+			return;
+		closed = true;
+		queue.offer(SYNC);
+		try {
+			writer.join(5000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public synchronized long getEventsWritten() {
+		return written;
+	}
+
+	public synchronized long getBatches() {
+		return batches;
+	}
+
+	public synchronized long getFsyncs() {
+		return fsyncs;
+	}
+
+	public synchronized long getBytesWritten() {
+		return bytesWritten;
+	}
+
+	/**
+	 * @return the number of events waiting for the writer
+	 */
+	public int getQueued() {
+		return queue.size();
+	}
+
+	public synchronized int getSegment() {
+		return segment;
+	}
+
+	/**
+	 * Reads every event of the journal in the given directory, oldest segment
+	 * first. Malformed lines, such as a line torn by a crash, are skipped.
+	 */
+	public static void read(Path directory, EventHandler handler) throws IOException {
+		for (int segment : listSegments(directory)) {
+			try (BufferedReader reader = Files.newBufferedReader(segmentPath(directory, segment),
+					StandardCharsets.US_ASCII)) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					Event event = Event.parse(line);
+					if (event != null) {
+						handler.onEvent(event);
+					}
+				}
+			}
+		}
+	}
+
+	private void run() {
+		List<Event> batch = new ArrayList<>();
+		while (true) {
+			try {
+				Event first = queue.poll(Math.min(options.fsyncIntervalMs, 1000), TimeUnit.MILLISECONDS);
+				if (first != null) {
+					batch.add(first);
+					collect(batch);
+				}
+			} catch (InterruptedException e) {
+				// Not expected, the channel is closed if interrupted during a write
+				closed = true;
+			}
+
+			boolean force = closed | batch.removeIf(event -> event == SYNC);
+			try {
+				if (!batch.isEmpty()) {
+					write(batch);
+					batch.clear();
+				}
+				sync(force);
+			} catch (IOException e) {
+				e.printStackTrace();
+				Logger.logError("Error writing the device journal: ", e);
+				batch.clear();
+			}
+
+			if (closed && queue.isEmpty())
+				break;
+		}
+
+		try {
+			channel.close();
+		} catch (IOException e) {
+			Logger.logError("Error closing the device journal: ", e);
+		}
+		synchronized (this) {
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Gathers the events arriving within the group commit window of the first
+	 * one of the batch.
+	 */
+	private void collect(List<Event> batch) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(options.groupCommitMs);
+		while (batch.size() < MAX_BATCH) {
+			queue.drainTo(batch, MAX_BATCH - batch.size());
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0 || closed)
+				break;
+			Event next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+			if (next == null)
+				break;
+			batch.add(next);
+		}
+	}
+
+	private void write(List<Event> batch) throws IOException {
+		long bytes = 0;
+		buffer.clear();
+		for (Event event : batch) {
+			line.setLength(0);
+			line.append(event).append('\n');
+			if (buffer.remaining() < line.length()) {
+				bytes += drain();
+			}
+			for (int i = 0; i < line.length(); i++) {
+				buffer.put((byte) line.charAt(i));
+			}
+		}
+		bytes += drain();
+
+		synchronized (this) {
+			written += batch.size();
+			batches++;
+			bytesWritten += bytes;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Writes the buffer to the current segment, starting a new segment first if
+	 * it would grow past the configured size.
+	 */
+	private long drain() throws IOException {
+		buffer.flip();
+		int length = buffer.remaining();
+		if (segmentSize > 0 && segmentSize + length > options.segmentBytes) {
+			rotate();
+		}
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+		segmentSize += length;
+		dirty = true;
+		return length;
+	}
+
+	private void sync(boolean force) throws IOException {
+		if (!dirty)
+			return;
+
+		boolean due;
+		switch (options.fsyncPolicy) {
+		case BATCH:
+			due = true;
+			break;
+		case PERIODIC:
+			due = force || System.currentTimeMillis() - lastFsync >= options.fsyncIntervalMs;
+			break;
+		default:
+			due = false;
+		}
+		if (!due)
+			return;
+
+		channel.force(false);
+		lastFsync = System.currentTimeMillis();
+		synchronized (this) {
+			dirty = false;
+			fsyncs++;
+			notifyAll();
+		}
+	}
+
+	private void rotate() throws IOException {
+		if (options.fsyncPolicy != FsyncPolicy.NONE) {
+			channel.force(false);
+		}
+		channel.close();
+		openSegment(segment + 1);
+
+		if (options.maxSegments > 0) {
+			List<Integer> segments = listSegments(directory);
+			for (int i = 0; i < segments.size() - options.maxSegments; i++) {
+				Files.deleteIfExists(segmentPath(directory, segments.get(i)));
+			}
+		}
+	}
+
+	private void openSegment(int number) throws IOException {
+		FileChannel opened = FileChannel.open(segmentPath(directory, number), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		synchronized (this) {
+			channel = opened;
+			segment = number;
+			segmentSize = opened.size();
+		}
+	}
+
+	private static Path segmentPath(Path directory, int segment) {
+		return directory.resolve(String.format("journal-%08d.log", segment));
+	}
+
+	private static List<Integer> listSegments(Path directory) throws IOException {
+		List<Integer> segments = new ArrayList<>();
+		if (!Files.isDirectory(directory))
+			return segments;
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "journal-*.log")) {
+			for (Path file : files) {
+				Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+				if (matcher.matches()) {
+					segments.add(Integer.parseInt(matcher.group(1)));
+				}
+			}
+		}
+		Collections.sort(segments);
+		return segments;
+	}
+}
@@ -0,0 +1,119 @@
+package hostednetscanner;
+
+import java.net.InetAddress;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Immutable state of a known device at one {@link DeviceSnapshot} version.
+ *
+ * Records are built by the {@link DeviceRegistry} when a snapshot is
+ * published and shared between versions as long as the device does not
+ * change, so they can be read from any thread without locking. The getters
+ * mirror those of {@link Device}.
+ */
+public final class DeviceRecord {
+	private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+	private final long mac;
+	private final String macAddress;
+	private final int ip;
+	private final String hostname;
+	private final String customName;
+	private final byte status;
+	private final long firstSeen;
+	private final long lastSeen;
+
+	DeviceRecord(long mac, String macAddress, int ip, String hostname, String customName, byte status,
+			long firstSeen, long lastSeen) {
+		this.mac = mac;
+		this.macAddress = macAddress;
+		this.ip = ip;
+		this.hostname = hostname;
+		this.customName = customName;
+		this.status = status;
+		this.firstSeen = firstSeen;
+		this.lastSeen = lastSeen;
+	}
+
+	/**
+	 * @return the MAC address encoded as a long, see {@link AddressUtils}
+	 */
+	public long getMac() {
+		return mac;
+	}
+
+	public String getMacAddress() {
+		return macAddress;
+	}
+
+	/**
+	 * @return the IPv4 address encoded as an int, 0 if unknown
+	 */
+	public int getIp() {
+		return ip;
+	}
+
+	public InetAddress getIpAddress() {
+		return ip == 0 ? null : AddressUtils.toInetAddress(ip);
+	}
+
+	public String getHostAddress() {
+		return ip == 0 ? null : AddressUtils.formatIPv4(ip);
+	}
+
+	public String getHostname() {
+		return hostname;
+	}
+
+	public String getCustomName() {
+		return customName;
+	}
+
+	/**
+	 * @return the status as one of the {@link DeviceRegistry} status codes
+	 */
+	public byte getStatusCode() {
+		return status;
+	}
+
+	public String getStatus() {
+		return DeviceRegistry.statusName(status);
+	}
+
+	public boolean isConnected() {
+		return status == DeviceRegistry.ONLINE;
+	}
+
+	/**
+	 * @return the connection time in epoch milliseconds
+	 */
+	public long getFirstSeen() {
+		return firstSeen;
+	}
+
+	/**
+	 * @return the last seen time in epoch milliseconds
+	 */
+	public long getLastSeen() {
+		return lastSeen;
+	}
+
+	public String getFormattedConnectionTime() {
+		return DeviceRegistry.toLocalDateTime(firstSeen).format(FORMATTER);
+	}
+
+	public String getFormattedLastSeen() {
+		return DeviceRegistry.toLocalDateTime(lastSeen).format(FORMATTER);
+	}
+
+	public LocalDateTime getConnectionTime() {
+		return DeviceRegistry.toLocalDateTime(firstSeen);
+	}
+
+	@Override
+	public String toString() {
+		return "DeviceRecord[" + macAddress + ", " + getHostAddress() + ", " + getStatus() + ", hostname=" + hostname
+				+ ", customName=" + customName + "]";
+	}
+}
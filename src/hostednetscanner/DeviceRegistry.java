@@ -0,0 +1,756 @@
+package hostednetscanner;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Registry of the devices known to a {@link Network}, keyed by the 48-bit MAC
+ * address encoded as a {@code long} (see {@link AddressUtils}).
+ *
+ * The MAC is mapped to a dense slot through an open-addressing table, and the
+ * per-device state (IP, status, first and last seen, hostname and custom
+ * name) is stored column-wise in primitive arrays indexed by slot. A scan cycle marks
+ * the slots that are connected and reachable, then {@link HostedNetwork} derives
+ * the new statuses from the marks, so diffing a snapshot against the registry
+ * allocates nothing for devices that are already known.
+ *
+ * Each slot also keeps the {@link Device} it was registered from. The
+ * registry writes through to it whenever a column changes, so code of the
+ * scanner thread reading {@link Network#getKnownDevices()} keeps seeing up to
+ * date objects. These objects never leave the network: listeners only get the
+ * immutable {@link DeviceRecord}s, and names are changed through
+ * {@link #setHostname(int, String)} and {@link #setCustomName(int, String)}.
+ *
+ * Every change made through the registry (added and removed devices, status,
+ * IP and name updates) is also recorded by MAC address, until
+ * {@link #drainChanges()} turns them into the changes of a
+ * {@link NetworkDelta}.
+ *
+ * The registry only grows with the devices that are online: offline devices
+ * are evicted by {@link #evict(EvictionPolicy, long, long)} once too old or too
+ * many, and their sessions remain in the {@link DeviceHistoryStore}.
+ *
+ * Each slot caches the {@link DeviceRecord} of its last published
+ * {@link DeviceSnapshot}; a change clears it, so
+ * {@link #buildSnapshot(long)} only allocates records for the devices
+ * that changed since the previous snapshot.
+ *
+ * The registry is not thread safe: it is owned by its {@link Network}, and only
+ * accessed under the network's lock.
+ */
+public class DeviceRegistry {
+	public static final byte ONLINE = 0;
+	public static final byte UNCONFIRMED = 1;
+	public static final byte OFFLINE = 2;
+
+	/**
+	 * Immutable bounds of the devices tracked by a registry, see
+	 * {@link DeviceRegistry#evict(EvictionPolicy, long, long)} and
+	 * {@link ConfigManager#getEvictionPolicy()}.
+	 */
+	public static final class EvictionPolicy {
+		public static final EvictionPolicy DEFAULT = new EvictionPolicy(1024, 24 * 3600000L);
+		public static final EvictionPolicy NONE = new EvictionPolicy(0, 0);
+
+		private final int maxTrackedDevices;
+		private final long maxOfflineAgeMs;
+
+		/**
+		 * @param maxTrackedDevices the number of devices above which the least
+		 *                          recently seen offline devices are evicted, 0 for
+		 *                          no limit
+		 * @param maxOfflineAgeMs   the time after which an offline device is
+		 *                          evicted, 0 for no limit
+		 */
+		public EvictionPolicy(int maxTrackedDevices, long maxOfflineAgeMs) {
+			this.maxTrackedDevices = Math.max(0, maxTrackedDevices);
+			this.maxOfflineAgeMs = Math.max(0, maxOfflineAgeMs);
+		}
+
+		public int getMaxTrackedDevices() {
+			return maxTrackedDevices;
+		}
+
+		public long getMaxOfflineAgeMs() {
+			return maxOfflineAgeMs;
+		}
+	}
+
+	private static final long EMPTY = AddressUtils.INVALID;
+	private static final String[] STATUS_NAMES = { "online", "unconfirmed", "offline" };
+
+	// Open addressing table: MAC -> slot
+	private long[] keys;
+	private int[] keySlots;
+
+	// Columns, indexed by slot
+	private int size;
+	private long[] macs;
+	private int[] ips;
+	private byte[] statuses;
+	private long[] firstSeen;
+	private long[] lastSeen;
+	private String[] hostnames;
+	private String[] customNames;
+	private Device[] devices;
+	private DeviceRecord[] records;
+
+	// Scan cycle marks, indexed by slot
+	private int cycle;
+	private int[] connectedMarks;
+	private int[] reachableMarks;
+	private int[] reachableIps;
+
+	// Offline slots considered by the last eviction, reused between scans
+	private int[] evictionSlots = new int[0];
+
+	private int modCount;
+
+	// MAC -> NetworkDelta flags, in the order of the first change
+	private final Map<Long, Integer> changes = new LinkedHashMap<>();
+
+	public DeviceRegistry() {
+		this(16);
+	}
+
+	public DeviceRegistry(int capacity) {
+		capacity = Math.max(capacity, 4);
+		macs = new long[capacity];
+		ips = new int[capacity];
+		statuses = new byte[capacity];
+		firstSeen = new long[capacity];
+		lastSeen = new long[capacity];
+		hostnames = new String[capacity];
+		customNames = new String[capacity];
+		devices = new Device[capacity];
+		records = new DeviceRecord[capacity];
+		connectedMarks = new int[capacity];
+		reachableMarks = new int[capacity];
+		reachableIps = new int[capacity];
+
+		int tableSize = Integer.highestOneBit(capacity * 2 - 1) << 1;
+		keys = new long[tableSize];
+		keySlots = new int[tableSize];
+		Arrays.fill(keys, EMPTY);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the slot of the given MAC address, or -1 if it is not registered
+	 */
+	public int slotOf(long mac) {
+		if (mac == EMPTY)
+			return -1;
+
+		int mask = keys.length - 1;
+		for (int i = hash(mac) & mask;; i = (i + 1) & mask) {
+			if (keys[i] == mac)
+				return keySlots[i];
+			if (keys[i] == EMPTY)
+				return -1;
+		}
+	}
+
+	public int slotOf(String mac) {
+		return mac == null ? -1 : slotOf(AddressUtils.parseMac(mac));
+	}
+
+	public boolean contains(long mac) {
+		return slotOf(mac) >= 0;
+	}
+
+	/**
+	 * Registers a device, taking its current IP, status, times and names as the
+	 * initial column values. A device already registered under the same MAC is replaced.
+	 *
+	 * @return the slot of the device, or -1 if its MAC address is not a valid
+	 *         48-bit address
+	 */
+	public int add(Device device) {
+		long mac = AddressUtils.parseMac(device.getMacAddress());
+		if (mac == EMPTY)
+			return -1;
+
+		int slot = slotOf(mac);
+		if (slot < 0) {
+			ensureCapacity(size + 1);
+			slot = size++;
+			insertKey(mac, slot);
+			macs[slot] = mac;
+			connectedMarks[slot] = 0;
+			reachableMarks[slot] = 0;
+			recordChange(mac, NetworkDelta.ADDED);
+		} else {
+			recordChange(mac, NetworkDelta.STATUS_CHANGED | NetworkDelta.IP_CHANGED | NetworkDelta.NAME_CHANGED);
+		}
+
+		ips[slot] = AddressUtils.toInt(device.getIpAddress());
+		statuses[slot] = statusCode(device.getStatus());
+		firstSeen[slot] = toMillis(device.getConnectionTime());
+		lastSeen[slot] = toMillis(device.getLastSeen());
+		hostnames[slot] = device.getHostname();
+		customNames[slot] = device.getCustomName();
+		devices[slot] = device;
+		records[slot] = null;
+		modCount++;
+		return slot;
+	}
+
+	/**
+	 * Removes the device with the given MAC address. The last slot is moved into
+	 * the freed one, so slots are only stable between removals.
+	 *
+	 * @return the removed device, or null if it was not registered
+	 */
+	public Device remove(long mac) {
+		int slot = slotOf(mac);
+		if (slot < 0)
+			return null;
+
+		Device removed = devices[slot];
+		removeKey(mac);
+		recordChange(mac, NetworkDelta.REMOVED);
+
+		int last = --size;
+		if (slot != last) {
+			macs[slot] = macs[last];
+			ips[slot] = ips[last];
+			statuses[slot] = statuses[last];
+			firstSeen[slot] = firstSeen[last];
+			lastSeen[slot] = lastSeen[last];
+			hostnames[slot] = hostnames[last];
+			customNames[slot] = customNames[last];
+			devices[slot] = devices[last];
+			records[slot] = records[last];
+			connectedMarks[slot] = connectedMarks[last];
+			reachableMarks[slot] = reachableMarks[last];
+			reachableIps[slot] = reachableIps[last];
+			keySlots[keyIndex(macs[slot])] = slot;
+		}
+		hostnames[last] = null;
+		customNames[last] = null;
+		devices[last] = null;
+		records[last] = null;
+		modCount++;
+		return removed;
+	}
+
+	public void clear() {
+		for (int slot = 0; slot < size; slot++) {
+			recordChange(macs[slot], NetworkDelta.REMOVED);
+		}
+		Arrays.fill(keys, EMPTY);
+		Arrays.fill(hostnames, 0, size, null);
+		Arrays.fill(customNames, 0, size, null);
+		Arrays.fill(devices, 0, size, null);
+		Arrays.fill(records, 0, size, null);
+		size = 0;
+		modCount++;
+	}
+
+	public long getMac(int slot) {
+		return macs[slot];
+	}
+
+	public int getIp(int slot) {
+		return ips[slot];
+	}
+
+	/**
+	 * Updates the IP of a slot. The device object is only touched if the IP
+	 * actually changed.
+	 *
+	 * @return {@code true} if the IP changed
+	 */
+	public boolean setIp(int slot, int ip) {
+		if (ips[slot] == ip)
+			return false;
+
+		ips[slot] = ip;
+		records[slot] = null;
+		// 0 stands for an unknown IP
+		devices[slot].setIpAddress(ip == 0 ? null : AddressUtils.toInetAddress(ip));
+		recordChange(macs[slot], NetworkDelta.IP_CHANGED);
+		return true;
+	}
+
+	public byte getStatus(int slot) {
+		return statuses[slot];
+	}
+
+	/**
+	 * Updates the status of a slot, with the same last seen semantics as
+	 * {@link Device#setStatus(String)}.
+	 *
+	 * @return {@code true} if the status changed
+	 */
+	public boolean setStatus(int slot, byte status, long now) {
+		if (statuses[slot] == status)
+			return false;
+
+		statuses[slot] = status;
+		records[slot] = null;
+		if (status != ONLINE) {
+			lastSeen[slot] = now;
+		}
+		devices[slot].setStatus(STATUS_NAMES[status]);
+		recordChange(macs[slot], NetworkDelta.STATUS_CHANGED);
+		return true;
+	}
+
+	public String getHostname(int slot) {
+		return hostnames[slot];
+	}
+
+	/**
+	 * Updates the hostname of a slot.
+	 *
+	 * @return {@code true} if the hostname changed
+	 */
+	public boolean setHostname(int slot, String hostname) {
+		if (Objects.equals(hostnames[slot], hostname))
+			return false;
+
+		hostnames[slot] = hostname;
+		records[slot] = null;
+		devices[slot].setHostname(hostname);
+		recordChange(macs[slot], NetworkDelta.NAME_CHANGED);
+		return true;
+	}
+
+	public String getCustomName(int slot) {
+		return customNames[slot];
+	}
+
+	/**
+	 * Updates the custom name of a slot.
+	 *
+	 * @return {@code true} if the custom name changed
+	 */
+	public boolean setCustomName(int slot, String customName) {
+		if (Objects.equals(customNames[slot], customName))
+			return false;
+
+		customNames[slot] = customName;
+		records[slot] = null;
+		devices[slot].setCustomName(customName);
+		recordChange(macs[slot], NetworkDelta.NAME_CHANGED);
+		return true;
+	}
+
+	public long getFirstSeen(int slot) {
+		return firstSeen[slot];
+	}
+
+	public long getLastSeen(int slot) {
+		return lastSeen[slot];
+	}
+
+	public Device getDevice(int slot) {
+		return devices[slot];
+	}
+
+	/**
+	 * Starts a new scan cycle. Connected and reachable marks of the previous
+	 * cycle are implicitly discarded.
+	 */
+	public void beginCycle() {
+		cycle++;
+	}
+
+	public void markConnected(int slot) {
+		connectedMarks[slot] = cycle;
+	}
+
+	public void markReachable(int slot, int ip) {
+		reachableMarks[slot] = cycle;
+		reachableIps[slot] = ip;
+	}
+
+	public boolean isConnected(int slot) {
+		return connectedMarks[slot] == cycle;
+	}
+
+	public boolean isReachable(int slot) {
+		return reachableMarks[slot] == cycle;
+	}
+
+	/**
+	 * @return the IP the slot was marked reachable with during this cycle
+	 */
+	public int getReachableIp(int slot) {
+		return reachableIps[slot];
+	}
+
+	/**
+	 * Derives the status of the first {@code count} slots from the marks of the
+	 * current cycle: online if connected and reachable, unconfirmed if only
+	 * connected, offline otherwise. Reachable slots also take the IP they were
+	 * marked with.
+	 *
+	 * @param count   the number of slots to update, typically the registry size
+	 *                before the devices that are new in this cycle were added
+	 * @param skipMac a MAC whose status must be left untouched (the network's own
+	 *                interface)
+	 * @param now     the time of the cycle, in epoch milliseconds
+	 * @return {@code true} if any status changed
+	 */
+	public boolean applyCycle(int count, long skipMac, long now) {
+		boolean modified = false;
+		for (int slot = 0; slot < count; slot++) {
+			if (macs[slot] == skipMac)
+				continue;
+
+			boolean isReachable = isReachable(slot);
+			boolean isConnected = isConnected(slot);
+
+			if (isReachable) {
+				setIp(slot, reachableIps[slot]);
+			}
+
+			byte newStatus;
+			if (isConnected && isReachable) {
+				newStatus = ONLINE;
+			} else if (!isConnected) {
+				newStatus = OFFLINE;
+			} else {
+				newStatus = UNCONFIRMED;
+			}
+
+			modified |= setStatus(slot, newStatus, now);
+		}
+		return modified;
+	}
+
+	/**
+	 * Evicts the offline devices the policy no longer allows to track: those
+	 * offline for longer than its maximum age, then the least recently seen ones
+	 * while the registry holds more than its maximum number of devices. The
+	 * registry is then trimmed 10% below the maximum, so that the selection of
+	 * the offline devices is not repeated at every scan. Online and unconfirmed
+	 * devices are never evicted.
+	 *
+	 * The evicted devices are removed like by {@link #remove(long)}.
+	 *
+	 * @param skipMac a MAC that must not be evicted (the network's own interface)
+	 * @param now     the current time, in epoch milliseconds
+	 * @return the evicted devices
+	 */
+	public List<Device> evict(EvictionPolicy policy, long skipMac, long now) {
+		List<Device> evicted = new ArrayList<>();
+		long maxAge = policy.getMaxOfflineAgeMs();
+		if (maxAge > 0) {
+			// Backwards, as a removal moves the last slot into the freed one
+			for (int slot = size - 1; slot >= 0; slot--) {
+				if (statuses[slot] == OFFLINE && macs[slot] != skipMac && now - lastSeen[slot] > maxAge)
+					evicted.add(remove(macs[slot]));
+			}
+		}
+
+		int max = policy.getMaxTrackedDevices();
+		if (max > 0 && size > max) {
+			int target = max - max / 10;
+			if (evictionSlots.length < size)
+				evictionSlots = new int[macs.length];
+			int offline = 0;
+			for (int slot = 0; slot < size; slot++) {
+				if (statuses[slot] == OFFLINE && macs[slot] != skipMac)
+					evictionSlots[offline++] = slot;
+			}
+
+			// Only the least recently seen need to come first, in any order
+			long[] victims = new long[Math.min(size - target, offline)];
+			selectLeastRecentlySeen(evictionSlots, offline, victims.length);
+			for (int i = 0; i < victims.length; i++) {
+				victims[i] = macs[evictionSlots[i]];
+			}
+			for (long mac : victims) {
+				evicted.add(remove(mac));
+			}
+		}
+		return evicted;
+	}
+
+	/**
+	 * Moves the {@code count} slots with the smallest last seen time to the
+	 * front of {@code slots[0, length)}, with a quickselect.
+	 */
+	private void selectLeastRecentlySeen(int[] slots, int length, int count) {
+		int from = 0;
+		int to = length - 1;
+		while (from < to && count > from && count <= to) {
+			long pivot = lastSeen[slots[(from + to) >>> 1]];
+			int i = from;
+			int j = to;
+			while (i <= j) {
+				while (lastSeen[slots[i]] < pivot)
+					i++;
+				while (lastSeen[slots[j]] > pivot)
+					j--;
+				if (i <= j) {
+					int slot = slots[i];
+					slots[i++] = slots[j];
+					slots[j--] = slot;
+				}
+			}
+			// [from, j] <= pivot <= [i, to]
+			if (count <= j) {
+				to = j;
+			} else if (count >= i) {
+				from = i;
+			} else {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Records a change of a device, merged with the changes already recorded for
+	 * it. A device added then removed before the changes are drained is
+	 * forgotten, one removed then added again is reported as updated.
+	 *
+	 * @param flags a combination of the {@link NetworkDelta} change flags
+	 */
+	private void recordChange(long mac, int flags) {
+		Integer previous = changes.get(mac);
+		int merged = NetworkDelta.mergeFlags(previous == null ? 0 : previous, flags);
+		if (merged == 0) {
+			changes.remove(mac);
+		} else {
+			changes.put(mac, merged);
+		}
+	}
+
+	/**
+	 * @return {@code true} if changes were recorded since the last drain
+	 */
+	public boolean hasChanges() {
+		return !changes.isEmpty();
+	}
+
+	/**
+	 * Returns and forgets the changes recorded since the last call.
+	 */
+	public List<NetworkDelta.Change> drainChanges() {
+		List<NetworkDelta.Change> drained = new ArrayList<>(changes.size());
+		for (Map.Entry<Long, Integer> change : changes.entrySet()) {
+			drained.add(new NetworkDelta.Change(change.getKey(), change.getValue()));
+		}
+		changes.clear();
+		return drained;
+	}
+
+	/**
+	 * Builds the next immutable snapshot of the registered devices. Records of
+	 * the slots untouched since the previous snapshot are reused, every change
+	 * made through the registry having cleared the record of its slot.
+	 *
+	 * @param version the version of the new snapshot
+	 */
+	public DeviceSnapshot buildSnapshot(long version) {
+		DeviceRecord[] snapshot = new DeviceRecord[size];
+		for (int slot = 0; slot < size; slot++) {
+			DeviceRecord record = records[slot];
+			if (record == null) {
+				record = new DeviceRecord(macs[slot], devices[slot].getMacAddress(), ips[slot], hostnames[slot],
+						customNames[slot], statuses[slot], firstSeen[slot], lastSeen[slot]);
+				records[slot] = record;
+			}
+			snapshot[slot] = record;
+		}
+		return new DeviceSnapshot(version, snapshot);
+	}
+
+	/**
+	 * @return a live {@link Set} view of the registered devices. Adding to or
+	 *         removing from the view writes through to the registry.
+	 */
+	public Set<Device> asSet() {
+		return new DeviceSetView();
+	}
+
+	public static byte statusCode(String status) {
+		if (status == null)
+			return OFFLINE;
+
+		switch (status) {
+		case "online":
+			return ONLINE;
+		case "unconfirmed":
+			return UNCONFIRMED;
+		default:
+			return OFFLINE;
+		}
+	}
+
+	public static String statusName(byte status) {
+		return STATUS_NAMES[status];
+	}
+
+	private static long toMillis(LocalDateTime time) {
+		return time == null ? 0 : time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+	}
+
+	static LocalDateTime toLocalDateTime(long millis) {
+		return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity <= macs.length)
+			return;
+
+		int newCapacity = Math.max(capacity, macs.length * 2);
+		macs = Arrays.copyOf(macs, newCapacity);
+		ips = Arrays.copyOf(ips, newCapacity);
+		statuses = Arrays.copyOf(statuses, newCapacity);
+		firstSeen = Arrays.copyOf(firstSeen, newCapacity);
+		lastSeen = Arrays.copyOf(lastSeen, newCapacity);
+		hostnames = Arrays.copyOf(hostnames, newCapacity);
+		customNames = Arrays.copyOf(customNames, newCapacity);
+		devices = Arrays.copyOf(devices, newCapacity);
+		records = Arrays.copyOf(records, newCapacity);
+		connectedMarks = Arrays.copyOf(connectedMarks, newCapacity);
+		reachableMarks = Arrays.copyOf(reachableMarks, newCapacity);
+		reachableIps = Arrays.copyOf(reachableIps, newCapacity);
+
+		// Keep the load factor of the key table at or below 0.5
+		if (newCapacity * 2 > keys.length) {
+			long[] oldKeys = keys;
+			int[] oldSlots = keySlots;
+			keys = new long[Integer.highestOneBit(newCapacity * 2 - 1) << 1];
+			keySlots = new int[keys.length];
+			Arrays.fill(keys, EMPTY);
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] != EMPTY)
+					insertKey(oldKeys[i], oldSlots[i]);
+			}
+		}
+	}
+
+	private void insertKey(long mac, int slot) {
+		int mask = keys.length - 1;
+		int i = hash(mac) & mask;
+		while (keys[i] != EMPTY) {
+			i = (i + 1) & mask;
+		}
+		keys[i] = mac;
+		keySlots[i] = slot;
+	}
+
+	private int keyIndex(long mac) {
+		int mask = keys.length - 1;
+		int i = hash(mac) & mask;
+		while (keys[i] != mac) {
+			i = (i + 1) & mask;
+		}
+		return i;
+	}
+
+	/**
+	 * Removes a key with backward shift deletion, so no tombstones are needed.
+	 */
+	private void removeKey(long mac) {
+		int mask = keys.length - 1;
+		int hole = keyIndex(mac);
+		int i = hole;
+		while (true) {
+			i = (i + 1) & mask;
+			if (keys[i] == EMPTY)
+				break;
+
+			int home = hash(keys[i]) & mask;
+			// Move the entry into the hole if its home is not between the hole and i
+			if (((i - home) & mask) >= ((i - hole) & mask)) {
+				keys[hole] = keys[i];
+				keySlots[hole] = keySlots[i];
+				hole = i;
+			}
+		}
+		keys[hole] = EMPTY;
+	}
+
+	private static int hash(long mac) {
+		long h = mac * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	private class DeviceSetView extends AbstractSet<Device> {
+		@Override
+		public Iterator<Device> iterator() {
+			return new Iterator<Device>() {
+				private int next = 0;
+				private int last = -1;
+				private int expectedModCount = modCount;
+
+				@Override
+				public boolean hasNext() {
+					return next < size;
+				}
+
+				@Override
+				public Device next() {
+					if (modCount != expectedModCount)
+						throw new ConcurrentModificationException();
+					if (next >= size)
+						throw new NoSuchElementException();
+					last = next++;
+					return devices[last];
+				}
+
+				@Override
+				public void remove() {
+					if (last < 0)
+						throw new IllegalStateException();
+					DeviceRegistry.this.remove(macs[last]);
+					// The last slot was moved into the removed one, visit it next
+					next = last;
+					last = -1;
+					expectedModCount = modCount;
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return o instanceof Device && slotOf(((Device) o).getMacAddress()) >= 0;
+		}
+
+		@Override
+		public boolean add(Device device) {
+			if (slotOf(device.getMacAddress()) >= 0)
+				return false;
+			return DeviceRegistry.this.add(device) >= 0;
+		}
+
+		@Override
+		public boolean remove(Object o) {
+			return o instanceof Device
+					&& DeviceRegistry.this.remove(AddressUtils.parseMac(((Device) o).getMacAddress())) != null;
+		}
+
+		@Override
+		public void clear() {
+			DeviceRegistry.this.clear();
+		}
+	}
+}
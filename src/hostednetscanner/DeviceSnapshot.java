@@ -0,0 +1,110 @@
+package hostednetscanner;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable, versioned view of the known devices of a {@link Network}.
+ *
+ * A network publishes a new snapshot with every {@link NetworkDelta}, swapping
+ * a single reference, so readers on any thread get a consistent set of
+ * {@link DeviceRecord}s without locking or copying. The next version is built
+ * by the writer off to the side; records of devices that did not change are
+ * shared with the previous version.
+ */
+public final class DeviceSnapshot {
+	public static final DeviceSnapshot EMPTY = new DeviceSnapshot(0, new DeviceRecord[0]);
+
+	private final long version;
+	private final DeviceRecord[] records;
+	// MAC -> record index + 1, 0 meaning empty
+	private final int[] index;
+	private final List<DeviceRecord> recordList;
+
+	/**
+	 * @param version the version of the snapshot
+	 * @param records the records, owned by the snapshot from now on
+	 */
+	DeviceSnapshot(long version, DeviceRecord[] records) {
+		this.version = version;
+		this.records = records;
+
+		// Keep the load factor at or below 0.5
+		index = new int[Integer.highestOneBit(Math.max(records.length, 4) * 2 - 1) << 1];
+		int mask = index.length - 1;
+		for (int i = 0; i < records.length; i++) {
+			int slot = hash(records[i].getMac()) & mask;
+			while (index[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			index[slot] = i + 1;
+		}
+
+		recordList = new RecordList();
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	public int size() {
+		return records.length;
+	}
+
+	public DeviceRecord get(int i) {
+		return records[i];
+	}
+
+	/**
+	 * @return the record of the given MAC address, or null if it is not known
+	 */
+	public DeviceRecord find(long mac) {
+		int mask = index.length - 1;
+		for (int slot = hash(mac) & mask;; slot = (slot + 1) & mask) {
+			int entry = index[slot] - 1;
+			if (entry < 0)
+				return null;
+			if (records[entry].getMac() == mac)
+				return records[entry];
+		}
+	}
+
+	public DeviceRecord find(String mac) {
+		return mac == null ? null : find(AddressUtils.parseMac(mac));
+	}
+
+	/**
+	 * @return an unmodifiable list view of the records
+	 */
+	public List<DeviceRecord> getRecords() {
+		return recordList;
+	}
+
+	private static int hash(long mac) {
+		long h = mac * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	@Override
+	public String toString() {
+		return "DeviceSnapshot[version=" + version + ", devices=" + records.length + "]";
+	}
+
+	private class RecordList extends AbstractList<DeviceRecord> {
+		@Override
+		public DeviceRecord get(int i) {
+			return records[i];
+		}
+
+		@Override
+		public int size() {
+			return records.length;
+		}
+
+		@Override
+		public Object[] toArray() {
+			return Arrays.copyOf(records, records.length, Object[].class);
+		}
+	}
+}
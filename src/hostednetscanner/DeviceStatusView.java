@@ -0,0 +1,131 @@
+package hostednetscanner;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Human readable status file of a network's devices, listing the online,
+ * unconfirmed and offline devices.
+ *
+ * The file is a view rendered from the network's {@link DeviceSnapshot}: every
+ * interval if the snapshot changed since the last rendering, or on demand with
+ * {@link #render()}. The history of the changes is kept by the
+ * {@link DeviceJournal}. The file is written next to its final location and
+ * moved in place, so readers never see a partial file.
+ */
+public class DeviceStatusView {
+	public static final long DEFAULT_INTERVAL_MS = 10000;
+	private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+	private final Network network;
+	private final ConfigManager config;
+	private final long intervalMs;
+	private ScheduledExecutorService executor;
+	private long renderedVersion = -1;
+
+	/**
+	 * @param config     gives the path of the file, read at every rendering
+	 * @param intervalMs the period of the rendering
+	 */
+	public DeviceStatusView(Network network, ConfigManager config, long intervalMs) {
+		this.network = network;
+		this.config = config;
+		this.intervalMs = Math.max(intervalMs, 100);
+	}
+
+	/**
+	 * Starts rendering the file periodically.
+	 */
+	public synchronized void start() {
+		if (executor != null)
+			return;
+		executor = Executors.newSingleThreadScheduledExecutor(r -> IOExecutor.newThread("device-status-view", r));
+		executor.scheduleWithFixedDelay(this::renderIfChanged, 0, intervalMs, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops the periodic rendering, after a last rendering of the pending
+	 * changes.
+	 */
+	public synchronized void stop() {
+		if (executor == null)
+			return;
+		executor.shutdownNow();
+		executor = null;
+		renderIfChanged();
+	}
+
+	/**
+	 * Renders the file now, whether the devices changed or not.
+	 *
+	 * @throws IOException if the file could not be written
+	 */
+	public synchronized void render() throws IOException {
+		String logPath = config.getDeviceLogFilePath();
+		if (logPath == null || logPath.isEmpty()) {
+			return;
+		}
+
+		DeviceSnapshot snapshot = network.getSnapshot();
+		StringBuilder online = new StringBuilder();
+		StringBuilder unconfirmed = new StringBuilder();
+		StringBuilder offline = new StringBuilder();
+		for (DeviceRecord device : snapshot.getRecords()) {
+			StringBuilder section;
+			switch (device.getStatusCode()) {
+			case DeviceRegistry.ONLINE:
+				section = online;
+				break;
+			case DeviceRegistry.UNCONFIRMED:
+				section = unconfirmed;
+				break;
+			default:
+				section = offline;
+			}
+			section.append(String.format("%-17s||%-15s||%s", device.getMacAddress(), device.getHostAddress(),
+					device.getCustomName() != null ? device.getCustomName() : device.getHostname()));
+			section.append(System.lineSeparator());
+		}
+
+		Path file = Path.of(logPath).toAbsolutePath();
+		Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (BufferedWriter writer = Files.newBufferedWriter(temp)) {
+			writer.write(LocalDateTime.now().format(FORMATTER));
+			writer.newLine();
+			writer.write("Online devices:");
+			writer.newLine();
+			writer.append(online);
+			writer.write("\nUnconfirmed devices:");
+			writer.newLine();
+			writer.append(unconfirmed);
+			writer.write("\nOffline devices:");
+			writer.newLine();
+			writer.append(offline);
+		}
+		try {
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+		}
+		renderedVersion = snapshot.getVersion();
+	}
+
+	private synchronized void renderIfChanged() {
+		if (network.getSnapshot().getVersion() == renderedVersion)
+			return;
+		try {
+			render();
+		} catch (IOException e) {
+			Logger.logError("Error writing to device log file: ", e);
+		}
+	}
+}
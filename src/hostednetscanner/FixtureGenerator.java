@@ -0,0 +1,178 @@
+package hostednetscanner;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Generates synthetic outputs in the format of the tools and files the scanners
+ * parse, for use with {@link ReplayCommandExecutor} and benchmarks.
+ *
+ * <pre>
+ * java hostednetscanner.FixtureGenerator &lt;output dir&gt; [clients]
+ * </pre>
+ *
+ * writes a complete replay fixture directory for a hosted network with the
+ * given number of clients (500 by default).
+ */
+public class FixtureGenerator {
+	public static final String HOSTED_IP = "192.168.137.1";
+	public static final String HOSTED_MAC = "02-1A-2B-3C-4D-5E";
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: FixtureGenerator <output dir> [clients]");
+			System.exit(1);
+		}
+
+		Path dir = Paths.get(args[0]);
+		int clients = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+		writeFixtures(dir, clients);
+		System.out.println("Wrote fixtures for " + clients + " clients to " + dir.toAbsolutePath());
+	}
+
+	/**
+	 * Writes the fixtures of every command used by a scan cycle to the given
+	 * directory.
+	 *
+	 * @param dir     the fixture directory, created if missing
+	 * @param clients the number of clients connected to the hosted network
+	 * @throws IOException if a fixture could not be written
+	 */
+	public static void writeFixtures(Path dir, int clients) throws IOException {
+		Files.createDirectories(dir);
+		write(dir, "net session", "There are no entries in the list.\n");
+		write(dir, "arp -a", arpOutput(1, clients));
+		write(dir, "arp -an", arpOutput(1, clients));
+		write(dir, "ipconfig /all", ipconfigOutput(1));
+		write(dir, "netsh wlan show hostednetwork", hostedNetworkOutput(clients));
+		write(dir, "powershell", "");
+		write(dir, "powershell Get-HostedNetNeighbors", neighborOutput(clients));
+	}
+
+	private static void write(Path dir, String command, String content) throws IOException {
+		Files.write(dir.resolve(ReplayCommandExecutor.fixtureName(command)), content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * @return the MAC address of the n-th synthetic client, dash separated
+	 */
+	public static String clientMac(int n) {
+		return String.format("AA-BB-CC-%02X-%02X-%02X", (n >> 16) & 0xFF, (n >> 8) & 0xFF, n & 0xFF);
+	}
+
+	/**
+	 * @return the IP address of the n-th synthetic client on the given interface
+	 */
+	public static String clientIp(int iface, int n) {
+		int host = n + 2;
+		return String.format("10.%d.%d.%d", iface, (host >> 8) & 0xFF, host & 0xFF);
+	}
+
+	private static String interfaceIp(int iface) {
+		return iface == 0 ? HOSTED_IP : String.format("10.%d.0.1", iface);
+	}
+
+	/**
+	 * Generates {@code arp -a} output. The first interface is the hosted network
+	 * and its entries are the clients of {@link #hostedNetworkOutput(int)}.
+	 */
+	public static String arpOutput(int interfaces, int entriesPerInterface) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < interfaces; i++) {
+			sb.append("\nInterface: ").append(interfaceIp(i)).append(" --- 0x").append(Integer.toHexString(i + 5))
+					.append("\n");
+			sb.append("  Internet Address      Physical Address      Type\n");
+			for (int n = 0; n < entriesPerInterface; n++) {
+				String ip = i == 0 ? hostedClientIp(n) : clientIp(i, n);
+				sb.append(String.format("  %-22s%-22sdynamic   \n", ip, clientMac(n).toLowerCase()));
+			}
+			sb.append(String.format("  %-22s%-22sstatic    \n", "224.0.0.22", "01-00-5e-00-00-16"));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Generates a Linux {@code /proc/net/arp} table with the given number of
+	 * complete entries on the given device.
+	 */
+	public static String procNetArpOutput(int entries, String device) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("IP address       HW type     Flags       HW address            Mask     Device\n");
+		for (int n = 0; n < entries; n++) {
+			sb.append(String.format("%-16s 0x1         0x2         %-17s     *        %s\n", clientIp(1, n),
+					clientMac(n).replace('-', ':').toLowerCase(), device));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Generates {@code ipconfig /all} output. The first adapter is the hosted
+	 * network adapter.
+	 */
+	public static String ipconfigOutput(int adapters) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("\nWindows IP Configuration\n\n");
+		sb.append("   Host Name . . . . . . . . . . . . : GATEWAY\n");
+		sb.append("   Primary Dns Suffix  . . . . . . . : \n");
+		sb.append("   Node Type . . . . . . . . . . . . : Hybrid\n");
+		for (int i = 0; i < adapters; i++) {
+			String mac = i == 0 ? HOSTED_MAC : String.format("00-15-5D-00-%02X-%02X", (i >> 8) & 0xFF, i & 0xFF);
+			String description = i == 0 ? "Microsoft Hosted Network Virtual Adapter" : "Ethernet Adapter #" + i;
+			sb.append("\nWireless LAN adapter Local Area Connection* ").append(i + 1).append(":\n\n");
+			sb.append("   Connection-specific DNS Suffix  . : \n");
+			sb.append("   Description . . . . . . . . . . . : ").append(description).append("\n");
+			sb.append("   Physical Address. . . . . . . . . : ").append(mac).append("\n");
+			sb.append("   DHCP Enabled. . . . . . . . . . . : No\n");
+			sb.append("   Autoconfiguration Enabled . . . . : Yes\n");
+			sb.append("   IPv4 Address. . . . . . . . . . . : ").append(interfaceIp(i)).append("(Preferred) \n");
+			sb.append("   Subnet Mask . . . . . . . . . . . : 255.255.0.0\n");
+			sb.append("   Default Gateway . . . . . . . . . : \n");
+			sb.append("   NetBIOS over Tcpip. . . . . . . . : Enabled\n");
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Generates {@code netsh wlan show hostednetwork} output for a started
+	 * network with the given number of clients.
+	 */
+	public static String hostedNetworkOutput(int clients) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("\nHosted network settings\n-----------------------\n");
+		sb.append("    Mode                   : Allowed\n");
+		sb.append("    SSID name              : \"HostedNetScanner\"\n");
+		sb.append("    Max number of clients  : 100\n");
+		sb.append("    Authentication         : WPA2-Personal\n");
+		sb.append("    Cipher                 : CCMP\n\n");
+		sb.append("Hosted network status\n---------------------\n");
+		sb.append("    Status                 : Started\n");
+		sb.append("    BSSID                  : ").append(HOSTED_MAC.replace('-', ':').toLowerCase()).append("\n");
+		sb.append("    Radio type             : 802.11n\n");
+		sb.append("    Channel                : 11\n");
+		sb.append("    Number of clients      : ").append(clients).append("\n");
+		for (int n = 0; n < clients; n++) {
+			sb.append("        ").append(clientMac(n).replace('-', ':').toLowerCase()).append("        Authenticated\n");
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Generates the records of the PowerShell reachability script of
+	 * {@link PSDeviceScanner} with every client reachable.
+	 */
+	public static String neighborOutput(int clients) {
+		StringBuilder sb = new StringBuilder();
+		for (int n = 0; n < clients; n++) {
+			sb.append("12\t").append(hostedClientIp(n)).append('\t').append(clientMac(n)).append("\tReachable\n");
+		}
+		return sb.toString();
+	}
+
+	private static String hostedClientIp(int n) {
+		int host = n + 2;
+		return String.format("192.168.%d.%d", 137 + (host >> 8), host & 0xFF);
+	}
+}
@@ -1,27 +1,22 @@
 package hostednetscanner;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.net.InetAddress;
-import java.nio.file.WatchService;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 public class HostedNetwork extends Network {
 	private static HostedNetwork instance;
-	private WatchService watchService;
-	private Thread watchThread;
+	private static final ScanMetrics.LatencyHistogram DIFF_LATENCY = ScanSnapshot.stageLatency("diff");
+	private static final ScanMetrics.LatencyHistogram PUBLISH_LATENCY = ScanSnapshot.stageLatency("publish");
+	private static final ScanMetrics.Counter DEVICES_DIFFED = ScanMetrics.getDefault().counter("devices_diffed",
+			"Devices compared with the scanned clients and neighbors.");
+	private final DeviceIdentityResolver identities = new DeviceIdentityResolver(
+			DeviceIdentityResolver.DEFAULT_LEASE_WINDOW_MS);
+	private NetworkMonitor monitor;
 
 	private HostedNetwork(Network network) {
 		super(network.getConnectedInterface());
@@ -68,10 +63,10 @@ public class HostedNetwork extends Network {
 						password);
 
 				// Start Hosted Network
-				Runtime.getRuntime().exec(setCommand);
+				CommandExecutor.getDefault().execute(setCommand);
 
 				// Start Hosted Network
-				Runtime.getRuntime().exec("netsh wlan start hostednetwork");
+				CommandExecutor.getDefault().execute("netsh wlan start hostednetwork");
 				Thread.sleep(RETRY_DELAY_MS);
 				attempts++;
 			} catch (Exception e) {
@@ -87,18 +82,18 @@ public class HostedNetwork extends Network {
 
 	public static void stopNetwork() {
 		try {
-			Runtime.getRuntime().exec("netsh wlan stop hostednetwork");
+			CommandExecutor.getDefault().execute("netsh wlan stop hostednetwork");
 			if (instance != null) {
-				instance.getKnownDevices().clear();
+				instance.clearKnownDevices();
 				instance.notifyListeners(instance.getKnownDevices());
 
-				// Stop the watch service
-				if (instance.watchService != null) {
-					instance.watchService.close();
-				}
-				if (instance.watchThread != null) {
-					instance.watchThread.interrupt();
+				if (instance.monitor != null) {
+					instance.monitor.stop();
 				}
+
+				// Stop watching the known devices file
+				KnownDevicesStore.getDefault().stopWatching();
+				instance.close();
 			}
 			instance = null;
 		} catch (Exception e) {
@@ -159,21 +154,25 @@ public class HostedNetwork extends Network {
 	 *         address could not be found or an error occurred.
 	 */
 	public static String getHostedNetMac() {
-		try {
-			Process p = Runtime.getRuntime().exec("netsh wlan show hostednetwork");
-			BufferedReader reader = new BufferedReader(new InputStreamReader(p.getInputStream()));
-			String line;
-			while ((line = reader.readLine()) != null) {
-				if (line.contains("BSSID")) {
-					String mac = line.split(" : ")[1].trim();
-					return Device.formatMacAddress(mac);
-				}
+		return parseHostedNetMac(queryHostedNetwork());
+	}
+
+	/**
+	 * Extracts the BSSID from the output of {@code netsh wlan show hostednetwork}.
+	 *
+	 * @param output the command output, may be null
+	 * @return the formatted MAC address, or {@code null} if none is listed.
+	 */
+	static String parseHostedNetMac(String output) {
+		if (output == null)
+			return null;
+
+		for (String line : output.split("\n")) {
+			if (line.contains("BSSID")) {
+				String mac = line.split(" : ")[1].trim();
+				return Device.formatMacAddress(mac);
 			}
-		} catch (Exception e) {
-			e.printStackTrace();
-			Logger.logError("Error getting hosted network MAC address: ", e);
 		}
-
 		return null;
 	}
 
@@ -183,21 +182,32 @@ public class HostedNetwork extends Network {
 	 * @return {@code true} if a hosted network is running, {@code false} otherwise.
 	 */
 	public static boolean isNetworkRunning() {
-		try {
-			Process p = Runtime.getRuntime().exec("netsh wlan show hostednetwork");
-			BufferedReader reader = new BufferedReader(new InputStreamReader(p.getInputStream()));
-			String line;
-			while ((line = reader.readLine()) != null) {
-				if (line.contains("Status")) {
-					return line.split(" : ")[1].trim().equals("Started");
-				}
+		String output = queryHostedNetwork();
+		if (output == null)
+			return false;
+
+		for (String line : output.split("\n")) {
+			if (line.contains("Status")) {
+				return line.split(" : ")[1].trim().equals("Started");
 			}
+		}
+		return false;
+	}
+
+	/**
+	 * Runs {@code netsh wlan show hostednetwork} once and returns its output.
+	 *
+	 * @return the command output, or {@code null} if an error occurred.
+	 */
+	public static String queryHostedNetwork() {
+		try {
+			return CommandExecutor.getDefault().execute("netsh wlan show hostednetwork").getOutput();
 		} catch (Exception e) {
 			e.printStackTrace();
-			Logger.logError("Error checking if hosted network is running: ", e);
+			Logger.logError("Error querying hosted network: ", e);
 		}
 
-		return false;
+		return null;
 	}
 
 	/**
@@ -207,187 +217,226 @@ public class HostedNetwork extends Network {
 	 * @throws IOException if an I/O error occurs while executing the command or reading the output.
 	 */
 	public Set<Device> getConnectedDevices() throws IOException {
-		Set<Device> devices = new HashSet<>();
-		Process process = Runtime.getRuntime().exec("netsh wlan show hostednetwork");
-
-		try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-			String line;
-			while ((line = reader.readLine()) != null) {
-				Matcher matcher = Pattern.compile("([\\dA-Fa-f:]{17})").matcher(line);
-				if (matcher.find()) {
-					String mac = Device.formatMacAddress(matcher.group(1));
-					String name = recognizeClient(mac);
-					InetAddress ipAddr;
-					if (this.getConnectedInterface().getMacAddress().equals(mac)) {
-						ipAddr = this.getConnectedInterface().getIpAddress();
-					} else {
-						ipAddr = ARPScanner.getIpAddress(this, mac);
-					}
+		return getConnectedDevices(ScanSnapshot.capture(false));
+	}
 
-					Device connectedDevice = new Device(ipAddr, mac);
-					connectedDevice.setCustomName(name);
+	/**
+	 * Retrieves the set of devices connected to the hosted network as captured by
+	 * the given scan snapshot. Client IPs are resolved from the snapshot's ARP
+	 * index, so no command is run per client.
+	 *
+	 * @param snapshot the scan cycle snapshot to read from
+	 * @return a set of {@link Device} objects representing the connected devices.
+	 * @throws IOException if the known devices could not be read.
+	 */
+	public Set<Device> getConnectedDevices(ScanSnapshot snapshot) throws IOException {
+		Set<Device> devices = new HashSet<>();
 
-					devices.add(connectedDevice);
-				}
+		for (String mac : snapshot.getClientMacs()) {
+			String name = recognizeClient(mac);
+			InetAddress ipAddr;
+			if (this.getConnectedInterface().getMacAddress().equals(mac)) {
+				ipAddr = this.getConnectedInterface().getIpAddress();
+			} else {
+				ipAddr = ARPScanner.getIpAddress(snapshot, this, mac);
 			}
-		} catch (IOException e) {
-			e.printStackTrace();
-			Logger.logError("Error getting connected devices: ", e);
+
+			Device connectedDevice = new Device(ipAddr, mac);
+			connectedDevice.setCustomName(name);
+
+			devices.add(connectedDevice);
 		}
 
 		return devices;
 	}
 
 	/**
-	 * Updates the list of connected devices and their statuses.
+	 * Updates the list of connected devices and their statuses from a new
+	 * {@link ScanSnapshot} of the connected clients, ARP and neighbor tables.
+	 */
+	@Override
+	public void updateConnectedDevices() {
+		updateConnectedDevices(ScanSnapshot.capture(needsNeighborTable()));
+	}
+
+	/**
+	 * If there are less than 2 known devices, the connected devices are used as
+	 * reachable. This is because PSDeviceScanner takes times to start up, so I
+	 * don't want the initial scan to take too long.
+	 */
+	@Override
+	public boolean needsNeighborTable() {
+		return getRegistry().size() >= 2;
+	}
+
+	/**
+	 * Updates the list of connected devices and their statuses from a snapshot
+	 * captured by the caller, possibly shared with other networks.
 	 *
 	 * This method performs the following steps:
-	 * 1. Retrieves the currently connected devices.
-	 * 2. Determines the reachable devices based on the known devices.
-	 * 3. Updates the status of existing known devices based on their connectivity and reachability.
-	 * 4. Adds any new connected devices to the network's known devices list.
-	 * 5. Performs hostname lookups for new devices asynchronously.
-	 * 6. Notifies listeners if there are any changes in the network.
-	 * 7. Rechecks custom names and notifies listeners if necessary.
+	 * 1. Reads the connected clients, ARP and neighbor tables of the {@link ScanSnapshot}.
+	 * 2. Marks the connected and reachable devices in the network's {@link DeviceRegistry},
+	 *    registering any new connected device under the identity resolved by the
+	 *    {@link DeviceIdentityResolver}, so a rotated randomized MAC is not a new device.
+	 * 3. Updates the status and IP of existing known devices from the marks, and
+	 *    evicts the offline devices beyond the network's eviction policy.
+	 * 4. Performs hostname lookups for new devices asynchronously.
+	 * 5. Rechecks custom names.
+	 * 6. Publishes the changes recorded by the registry as one {@link NetworkDelta},
+	 *    and a second one once the hostname lookups are done.
 	 *
-	 * Exceptions:
-	 * - IOException: If there is an error retrieving connected or reachable devices.
+	 * Known devices are diffed through their registry slots, so no object is
+	 * created for devices that were already known. Steps 1 to 5 hold the
+	 * network's lock, the publication does not: a listener blocking it never
+	 * holds up the callers of {@link #setCustomName(long, String)} and the like.
 	 */
 	@Override
-	public void updateConnectedDevices() {
-		Set<Device> connectedDevices = null;
-		try {
-			connectedDevices = getConnectedDevices();
-		} catch (IOException e) {
-			e.printStackTrace();
-			Logger.logError("Error getting connected devices: ", e);
+	public void updateConnectedDevices(ScanSnapshot snapshot) {
+		long start = System.nanoTime();
+		synchronized (this) {
+			diff(snapshot);
 		}
+		DIFF_LATENCY.recordSince(start);
 
-		Set<Device> reachableDevices = null;
-		if (this.getKnownDevices().size() < 2) {
-			// If there are less than 2 known devices, use the connected devices as
-			// reachable
-			// This is because PSDeviceScanner takes times to start up, so I don't want the
-			// initial scan to take too long
-			reachableDevices = connectedDevices;
-		} else {
-			try {
-				reachableDevices = new PSDeviceScanner().getReachableDevices();
-			} catch (IOException e) {
-				System.err.println("Error executing PowerShell command: " + e.getMessage());
+		start = System.nanoTime();
+		publishChanges();
+		PUBLISH_LATENCY.recordSince(start);
+	}
+
+	/**
+	 * Steps 1 to 5 of {@link #updateConnectedDevices(ScanSnapshot)}, holding the
+	 * network's lock.
+	 */
+	private void diff(ScanSnapshot snapshot) {
+		DeviceRegistry registry = getRegistry();
+		long now = System.currentTimeMillis();
+		int interfaceIp = AddressUtils.toInt(getConnectedInterface().getIpAddress());
+		long interfaceMac = AddressUtils.parseMac(getConnectedInterface().getMacAddress());
+		ArpTable arpTable = snapshot.getArpTable();
+
+		// Devices found to be the same by their hostname since the last cycle
+		identities.applyMerges(registry);
+
+		registry.beginCycle();
+		int knownCount = registry.size();
+		List<Device> newDevices = new ArrayList<>();
+
+		// Mark the known devices first, so that a device still connected is never
+		// taken for a rotation of a new randomized MAC
+		long[] clientMacs = snapshot.getClientMacAddresses();
+		long[] unknownMacs = new long[clientMacs.length];
+		int unknownCount = 0;
+		for (long mac : clientMacs) {
+			int slot = registry.slotOf(identities.getIdentity(mac));
+			if (slot < 0) {
+				unknownMacs[unknownCount++] = mac;
+			} else {
+				registry.markConnected(slot);
 			}
 		}
-
-		boolean networkModified = false;
-
-		// Mac, Device map for quick lookup by MAC address
-		Map<String, Device> reachableDevicesMap = reachableDevices.stream()
-				.collect(Collectors.toMap(Device::getMacAddress, d -> d));
-		Map<String, Device> connectedDevicesMap = connectedDevices.stream()
-				.collect(Collectors.toMap(Device::getMacAddress, d -> d));
-
-		// Mark existing devices as offline if not in new network
-		for (Device existingDevice : this.getKnownDevices()) {
-			if (existingDevice.equals(this.getConnectedInterface()))
-				continue;
-
-			Device reachableDevice = reachableDevicesMap.get(existingDevice.getMacAddress());
-			boolean isReachable = reachableDevice != null;
-			boolean isConnected = connectedDevicesMap.containsKey(existingDevice.getMacAddress());
-
-			if (isReachable) {
-				existingDevice.setIpAddress(reachableDevice.getIpAddress());
+		for (int i = 0; i < unknownCount; i++) {
+			long mac = unknownMacs[i];
+			int entry = arpTable.find(interfaceIp, mac);
+			long identity = mac == interfaceMac ? mac
+					: identities.resolve(mac, entry < 0 ? 0 : arpTable.getIp(entry), registry, now);
+			int slot = registry.slotOf(identity);
+			if (slot < 0) {
+				Device device = createConnectedDevice(mac, identity, interfaceMac, arpTable);
+				slot = registry.add(device);
+				if (slot < 0)
+					continue;
+				newDevices.add(device);
 			}
+			registry.markConnected(slot);
+		}
 
-			String newStatus;
-			if (isConnected && isReachable) {
-				newStatus = "online";
-			} else if (!isConnected) {
-				newStatus = "offline";
-			} else {
-				newStatus = "unconfirmed";
+		NeighborTable neighborTable = snapshot.getNeighborTable();
+		if (neighborTable != null) {
+			for (int i = 0; i < neighborTable.size(); i++) {
+				int slot = registry.slotOf(identities.getIdentity(neighborTable.getMac(i)));
+				if (slot < 0)
+					continue;
+
+				NeighborState state = neighborTable.getState(i);
+				if (state.isReachable()) {
+					registry.markReachable(slot, neighborTable.getIp(i));
+				} else if (state.hasAddress()) {
+					// An unconfirmed entry still tells the current IP, not that the device answers
+					registry.setIp(slot, neighborTable.getIp(i));
+				}
 			}
-
-			if (!newStatus.equals(existingDevice.getStatus())) {
-				existingDevice.setStatus(newStatus);
-				networkModified = true;
+		} else {
+			// Connected devices are considered reachable at their ARP address
+			for (long mac : clientMacs) {
+				int slot = registry.slotOf(identities.getIdentity(mac));
+				if (slot >= 0) {
+					int entry = arpTable.find(interfaceIp, mac);
+					registry.markReachable(slot, entry < 0 ? 0 : arpTable.getIp(entry));
+				}
 			}
 		}
 
-		Set<Device> newDevices = connectedDevices.stream().filter(device -> !this.getKnownDevices().contains(device))
-				.collect(Collectors.toSet());
-		if (!newDevices.isEmpty()) {
-			// If there are new devices not currently on known Devices
-			this.getKnownDevices().addAll(newDevices);
-			networkModified = true;
-		}
+		// Update the status of the devices known before this cycle
+		registry.applyCycle(knownCount, interfaceMac, now);
 
-		if (networkModified) {
-			List<CompletableFuture<Void>> HN_lookupTasks = new ArrayList<>();
+		// Keep the registry bounded by the active devices
+		registry.evict(getEvictionPolicy(), interfaceMac, now);
+		DEVICES_DIFFED.add(knownCount + newDevices.size());
 
-			for (Device newDevice : newDevices) {
-				if (newDevice.getHostname() == null) {
-					CompletableFuture<Void> lookupTask = CompletableFuture.runAsync(() -> {
-						String hostName = newDevice.getIpAddress().getHostName();
-						newDevice.setHostname(hostName);
-					});
-					HN_lookupTasks.add(lookupTask);
-				}
-			}
+		// The names found are published with a second delta
+		resolveHostnames(newDevices);
 
-			notifyListeners(getKnownDevices());
+		recheckCustomNames();
+	}
 
-			// Wait for all hostname lookups to complete then notify
-			CompletableFuture.allOf(HN_lookupTasks.toArray(new CompletableFuture[0])).thenRun(() -> {
-				notifyListeners(getKnownDevices());
-			});
-		}
+	/**
+	 * Lets the identity resolver merge the randomized MACs of a device by its
+	 * hostname.
+	 */
+	@Override
+	protected void onHostnameResolved(long mac, String hostname) {
+		identities.onHostname(mac, hostname);
+	}
 
-		try {
-			if (recheckCustomNames())
-				notifyListeners(getKnownDevices());
-		} catch (IOException e) {
+	/**
+	 * Creates the device object of a newly connected client, resolving its IP from
+	 * the ARP table of this cycle, see {@link #createDevice(long, InetAddress)}.
+	 * The device is registered under its identity, the MAC it was first seen with
+	 * if its randomized MAC rotated.
+	 */
+	private Device createConnectedDevice(long mac, long identity, long interfaceMac, ArpTable arpTable) {
+		InetAddress ipAddr;
+		if (mac == interfaceMac) {
+			ipAddr = this.getConnectedInterface().getIpAddress();
+		} else {
+			int entry = arpTable.find(AddressUtils.toInt(getConnectedInterface().getIpAddress()), mac);
+			ipAddr = entry < 0 ? null : AddressUtils.toInetAddress(arpTable.getIp(entry));
 		}
+
+		return createDevice(identity, ipAddr);
 	}
 
 	/**
-	 * Monitors the network by periodically checking for connected devices. This
-	 * method schedules a task to run at a fixed rate of every 2 seconds. The task
-	 * retrieves the currently connected devices and updates the internal state.
-	 *
-	 * <p>
-	 * Note: This method uses a single-threaded scheduled executor service to
-	 * perform the monitoring task.
-	 * </p>
-	 *
-	 * @throws IOException if an I/O error occurs while retrieving connected
-	 *                     devices.
+	 * Monitors the network for connected devices with a {@link NetworkMonitor}.
+	 * Devices are rescanned when the platform's {@link NetworkEventSource}
+	 * reports a change, or polled with an {@link AdaptivePollingScheduler} if no
+	 * event source is available.
 	 */
 	@Override
-	public void monitorNetwork() {
-		ScheduledExecutorService executor = Executors.newScheduledThreadPool(1);
-		executor.scheduleAtFixedRate(() -> {
-			this.updateConnectedDevices();
-		}, 0, 2, TimeUnit.SECONDS);
+	public synchronized void monitorNetwork() {
+		if (monitor != null) {
+			return;
+		}
+		KnownDevicesStore.getDefault().startWatching();
+		monitor = new NetworkMonitor(this, NetworkEventSource.getDefault());
+		monitor.start();
 	}
 
 	/**
-	 * Rechecks and updates the custom names of known devices based on a predefined map of known peers.
-	 *
-	 * @return {@code true} if any device's custom name was changed, {@code false} otherwise.
-	 * @throws IOException if an I/O error occurs while loading the known peers.
+	 * @return the monitor started by {@link #monitorNetwork()}, or null
 	 */
-	private boolean recheckCustomNames() throws IOException {
-		boolean changed = false;
-		Map<String, String> knownDevicesMap = loadKnownPeers();
-		for (Device device : getKnownDevices()) {
-			String customName = knownDevicesMap.get(device.getMacAddress());
-			if (customName != null && !customName.equals(device.getCustomName())) {
-				device.setCustomName(customName);
-				changed = true;
-			}
-		}
-		return changed;
+	public NetworkMonitor getMonitor() {
+		return monitor;
 	}
 
 	/**
@@ -395,23 +444,26 @@ public class HostedNetwork extends Network {
 	 * information. It updates the connected interface with new information if the
 	 * MAC address matches the hosted network's MAC address. Additionally, it clears
 	 * the current known devices to force a full refresh and forces an immediate
-	 * update of connected devices.
+	 * update of connected devices. The interfaces are scanned and the update
+	 * published without holding the network's lock.
 	 */
 	public void refreshData() {
 		// Re-scan network interfaces to get updated information
 		List<Network> allNetworks = IPConfigScanner.scanNetworks();
 
-		// Find our network interface with updated information
-		for (Network network : allNetworks) {
-			if (network.getConnectedInterface().getMacAddress().equals(getHostedNetMac())) {
-				// Update the connected interface with new information
-				this.setConnectedInterface(network.getConnectedInterface());
-				break;
+		synchronized (this) {
+			// Find our network interface with updated information
+			for (Network network : allNetworks) {
+				if (network.getConnectedInterface().getMacAddress().equals(getHostedNetMac())) {
+					// Update the connected interface with new information
+					this.setConnectedInterface(network.getConnectedInterface());
+					break;
+				}
 			}
-		}
 
-		// Clear current devices to force a full refresh
-		this.getKnownDevices().clear();
+			// Clear current devices to force a full refresh
+			this.clearKnownDevices();
+		}
 
 		// Force an immediate update of connected devices
 		updateConnectedDevices();
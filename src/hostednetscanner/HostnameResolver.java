@@ -0,0 +1,351 @@
+package hostednetscanner;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reverse DNS resolution of device addresses, bounded in threads and time.
+ *
+ * Lookups run on the resolver's own small pool of {@link IOExecutor} threads,
+ * never on the common ForkJoinPool, and each has a deadline after which it completes with no name.
+ * Results are cached by address: resolved names for the positive TTL, failures
+ * and timeouts for the shorter negative TTL, after which the address is looked
+ * up again. Concurrent lookups of the same address share a single query.
+ * Expired entries are swept out every negative TTL, and once the cache holds
+ * more than its maximum size the entries expiring first are evicted.
+ *
+ * The outcome of every resolution is counted in the {@link ScanMetrics}, as
+ * well as by the resolver itself.
+ *
+ * The returned futures never complete exceptionally, a missing name is
+ * reported as {@code null}.
+ */
+public class HostnameResolver {
+	public static final int DEFAULT_THREADS = 4;
+	public static final int DEFAULT_QUEUE_SIZE = 256;
+	public static final long DEFAULT_TIMEOUT_MS = 2000;
+	public static final long DEFAULT_POSITIVE_TTL_MS = TimeUnit.MINUTES.toMillis(30);
+	public static final long DEFAULT_NEGATIVE_TTL_MS = TimeUnit.MINUTES.toMillis(2);
+	public static final int DEFAULT_MAX_CACHE_SIZE = 4096;
+	private static final ScanMetrics.LatencyHistogram LOOKUP_LATENCY = ScanSnapshot.stageLatency("dns");
+	private static final ScanMetrics.Counter HITS = resolutions("hit");
+	private static final ScanMetrics.Counter MISSES = resolutions("miss");
+	private static final ScanMetrics.Counter COALESCED = resolutions("coalesced");
+	private static final ScanMetrics.Counter TIMEOUTS = resolutions("timeout");
+	private static final ScanMetrics.Counter FAILURES = resolutions("failure");
+	private static final ScanMetrics.Counter REJECTED = resolutions("rejected");
+	private static final ScanMetrics.Counter EVICTIONS = ScanMetrics.getDefault().counter("hostname_cache_evictions",
+			"Hostname cache entries evicted before they expired.");
+
+	/**
+	 * Performs the actual reverse lookup of an address.
+	 */
+	public interface Lookup {
+		/**
+		 * @return the hostname of the address, or null if it has none
+		 * @throws Exception if the lookup failed
+		 */
+		String lookup(InetAddress address) throws Exception;
+	}
+
+	/**
+	 * Looks up names through {@link InetAddress#getHostName()}, which returns the
+	 * address itself when no name is found.
+	 */
+	public static final Lookup SYSTEM_LOOKUP = address -> {
+		String hostName = InetAddress.getByAddress(address.getAddress()).getHostName();
+		return hostName.equals(address.getHostAddress()) ? null : hostName;
+	};
+
+	private static volatile HostnameResolver instance;
+
+	static {
+		ScanMetrics.getDefault().gauge("hostname_cache_entries", "Addresses in the hostname cache.", () -> {
+			HostnameResolver current = instance;
+			return current == null ? 0 : current.getCacheSize();
+		});
+	}
+
+	private final Lookup lookup;
+	private final ThreadPoolExecutor executor;
+	private final long timeoutMs;
+	private final long positiveTtlMs;
+	private final long negativeTtlMs;
+	private final int maxCacheSize;
+
+	private final Map<InetAddress, CacheEntry> cache = new ConcurrentHashMap<>();
+	private final Map<InetAddress, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong coalesced = new AtomicLong();
+	private final AtomicLong timeouts = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	// Guarded by this
+	private long nextSweepAt;
+
+	public HostnameResolver(Lookup lookup) {
+		this(lookup, DEFAULT_THREADS, DEFAULT_QUEUE_SIZE, DEFAULT_TIMEOUT_MS, DEFAULT_POSITIVE_TTL_MS,
+				DEFAULT_NEGATIVE_TTL_MS);
+	}
+
+	/**
+	 * @param lookup        the lookup to run
+	 * @param threads       the maximum number of lookups running at once
+	 * @param queueSize     the maximum number of lookups waiting for a thread,
+	 *                      lookups beyond it are rejected and not cached
+	 * @param timeoutMs     the deadline of a lookup, from the time it is requested
+	 * @param positiveTtlMs how long a resolved name is cached
+	 * @param negativeTtlMs how long a failed or timed out lookup is cached
+	 */
+	public HostnameResolver(Lookup lookup, int threads, int queueSize, long timeoutMs, long positiveTtlMs,
+			long negativeTtlMs) {
+		this(lookup, threads, queueSize, timeoutMs, positiveTtlMs, negativeTtlMs, DEFAULT_MAX_CACHE_SIZE);
+	}
+
+	/**
+	 * @param maxCacheSize the number of cached addresses above which the entries
+	 *                     expiring first are evicted
+	 * @see #HostnameResolver(Lookup, int, int, long, long, long)
+	 */
+	public HostnameResolver(Lookup lookup, int threads, int queueSize, long timeoutMs, long positiveTtlMs,
+			long negativeTtlMs, int maxCacheSize) {
+		this.lookup = lookup;
+		this.timeoutMs = timeoutMs;
+		this.positiveTtlMs = positiveTtlMs;
+		this.negativeTtlMs = negativeTtlMs;
+		this.maxCacheSize = Math.max(1, maxCacheSize);
+		this.nextSweepAt = System.currentTimeMillis() + negativeTtlMs;
+
+		executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<>(queueSize), IOExecutor.newThreadFactory("hostname-resolver"));
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * @return the resolver set with {@link #setDefault(HostnameResolver)}, by
+	 *         default one using the system lookup or, when the application replays
+	 *         fixtures, a simulated lookup with the replay latency
+	 */
+	public static synchronized HostnameResolver getDefault() {
+		if (instance == null) {
+			instance = new HostnameResolver(ReplayCommandExecutor.isConfigured()
+					? simulatedLookup(ReplayCommandExecutor.getConfiguredLatencyMs())
+					: SYSTEM_LOOKUP);
+		}
+		return instance;
+	}
+
+	/**
+	 * Replaces the resolver the networks look their hostnames up with. The
+	 * previous one is not shut down.
+	 *
+	 * @param resolver the new resolver, must not be null
+	 */
+	public static synchronized void setDefault(HostnameResolver resolver) {
+		if (resolver == null) {
+			throw new IllegalArgumentException("Hostname resolver cannot be null");
+		}
+		instance = resolver;
+	}
+
+	private static ScanMetrics.Counter resolutions(String result) {
+		return ScanMetrics.getDefault().counter("hostname_resolutions", "result", result,
+				"Hostname resolutions, by how they were answered.");
+	}
+
+	/**
+	 * Lookup answering {@code client-a-b-c-d.local} for every address after the
+	 * given latency, for replayed runs and benchmarks.
+	 */
+	public static Lookup simulatedLookup(long latencyMs) {
+		return address -> {
+			if (latencyMs > 0) {
+				Thread.sleep(latencyMs);
+			}
+			return "client-" + address.getHostAddress().replace('.', '-').replace(':', '-') + ".local";
+		};
+	}
+
+	/**
+	 * Resolves the hostname of an address, from the cache if possible.
+	 *
+	 * @return a future completed with the hostname, or with null if the address
+	 *         has no name, the lookup failed or it timed out
+	 */
+	public CompletableFuture<String> resolve(InetAddress address) {
+		CacheEntry entry = cache.get(address);
+		if (entry != null && entry.expiresAt > System.currentTimeMillis()) {
+			hits.incrementAndGet();
+			HITS.increment();
+			return CompletableFuture.completedFuture(entry.hostname);
+		}
+
+		misses.incrementAndGet();
+		MISSES.increment();
+		CompletableFuture<String> pending = inFlight.get(address);
+		if (pending == null) {
+			CompletableFuture<String> started = new CompletableFuture<>();
+			pending = inFlight.putIfAbsent(address, started);
+			if (pending == null) {
+				start(address, started);
+				return started;
+			}
+		}
+		coalesced.incrementAndGet();
+		COALESCED.increment();
+		return pending;
+	}
+
+	/**
+	 * @return {@code true} if the address has an unexpired cache entry, positive
+	 *         or negative
+	 */
+	public boolean isCached(InetAddress address) {
+		CacheEntry entry = cache.get(address);
+		return entry != null && entry.expiresAt > System.currentTimeMillis();
+	}
+
+	private void start(InetAddress address, CompletableFuture<String> result) {
+		CompletableFuture<String> query = new CompletableFuture<>();
+		Future<?> task;
+		try {
+			task = executor.submit(() -> {
+				long start = System.nanoTime();
+				try {
+					query.complete(lookup.lookup(address));
+				} catch (Throwable e) {
+					query.completeExceptionally(e);
+				} finally {
+					LOOKUP_LATENCY.recordSince(start);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			// Too many lookups pending, let a later request retry instead of caching
+			rejected.incrementAndGet();
+			REJECTED.increment();
+			inFlight.remove(address, result);
+			result.complete(null);
+			return;
+		}
+
+		query.orTimeout(timeoutMs, TimeUnit.MILLISECONDS).whenComplete((hostname, error) -> {
+			long now = System.currentTimeMillis();
+			if (error == null) {
+				cache.put(address, new CacheEntry(hostname, now + (hostname != null ? positiveTtlMs : negativeTtlMs)));
+			} else {
+				if (error instanceof TimeoutException) {
+					timeouts.incrementAndGet();
+					TIMEOUTS.increment();
+					task.cancel(true);
+				} else {
+					failures.incrementAndGet();
+					FAILURES.increment();
+				}
+				cache.put(address, new CacheEntry(null, now + negativeTtlMs));
+				hostname = null;
+			}
+			sweep(now);
+			inFlight.remove(address, result);
+			result.complete(hostname);
+		});
+	}
+
+	/**
+	 * Removes the expired entries, at most once per negative TTL unless the cache
+	 * grew over its maximum size. If it is still too large, the entries expiring
+	 * first are evicted until it is a tenth under the maximum.
+	 */
+	private synchronized void sweep(long now) {
+		if (now < nextSweepAt && cache.size() <= maxCacheSize)
+			return;
+
+		nextSweepAt = now + negativeTtlMs;
+		cache.values().removeIf(entry -> entry.expiresAt <= now);
+		if (cache.size() <= maxCacheSize)
+			return;
+
+		List<Map.Entry<InetAddress, CacheEntry>> entries = new ArrayList<>(cache.entrySet());
+		entries.sort(Comparator.comparingLong(entry -> entry.getValue().expiresAt));
+		int excess = entries.size() - (maxCacheSize - maxCacheSize / 10);
+		for (int i = 0; i < excess; i++) {
+			if (cache.remove(entries.get(i).getKey(), entries.get(i).getValue())) {
+				evictions.incrementAndGet();
+				EVICTIONS.increment();
+			}
+		}
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * @return the number of misses that joined a lookup already in flight
+	 */
+	public long getCoalescedCount() {
+		return coalesced.get();
+	}
+
+	public long getTimeoutCount() {
+		return timeouts.get();
+	}
+
+	public long getFailureCount() {
+		return failures.get();
+	}
+
+	public long getRejectedCount() {
+		return rejected.get();
+	}
+
+	/**
+	 * @return the number of entries evicted from the cache before they expired
+	 */
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	public int getCacheSize() {
+		return cache.size();
+	}
+
+	@Override
+	public String toString() {
+		return "HostnameResolver[hits=" + hits + ", misses=" + misses + ", coalesced=" + coalesced + ", timeouts="
+				+ timeouts + ", failures=" + failures + ", rejected=" + rejected + ", evicted=" + evictions + ", cached="
+				+ cache.size() + "]";
+	}
+
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	private static final class CacheEntry {
+		final String hostname;
+		final long expiresAt;
+
+		CacheEntry(String hostname, long expiresAt) {
+			this.hostname = hostname;
+			this.expiresAt = expiresAt;
+		}
+	}
+}
@@ -0,0 +1,166 @@
+package hostednetscanner;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Execution layer for the blocking I/O of the scanner: process reads,
+ * PowerShell calls, DNS lookups and file writes.
+ *
+ * On Java 21 and later every task and every thread created through this class
+ * is a virtual thread, so a blocked call only parks a continuation and
+ * thousands of concurrent probes cost almost nothing. On older runtimes it
+ * falls back to daemon platform threads. Virtual threads are looked up
+ * reflectively so that the code still compiles and runs on Java 17.
+ *
+ * Before Java 24, a virtual thread waiting in {@code Object.wait()} or blocked
+ * inside a {@code synchronized} block pins its carrier thread. Code that may
+ * wait for long on these threads uses {@code java.util.concurrent} locks and
+ * queues instead, see {@link NetworkEventBus}.
+ *
+ * The Swing event dispatch thread should only render: actions that block hand
+ * their work to {@link #run(Task)} and come back to the EDT with the result.
+ */
+public final class IOExecutor {
+
+	/**
+	 * A blocking task without result.
+	 */
+	@FunctionalInterface
+	public interface Task {
+		void run() throws Exception;
+	}
+
+	// Thread.ofVirtual(), Thread.Builder.name(String), unstarted(Runnable) and
+	// factory(), or null before Java 21
+	private static final Method OF_VIRTUAL;
+	private static final Method BUILDER_NAME;
+	private static final Method BUILDER_UNSTARTED;
+	private static final Method BUILDER_FACTORY;
+
+	static {
+		Method ofVirtual = null;
+		Method name = null;
+		Method unstarted = null;
+		Method factory = null;
+		if (!Boolean.getBoolean("hostednetscanner.platformThreads")) {
+			try {
+				Class<?> builder = Class.forName("java.lang.Thread$Builder");
+				ofVirtual = Thread.class.getMethod("ofVirtual");
+				name = builder.getMethod("name", String.class);
+				unstarted = builder.getMethod("unstarted", Runnable.class);
+				factory = builder.getMethod("factory");
+			} catch (ReflectiveOperationException e) {
+				// Java 20 or earlier
+				ofVirtual = null;
+			}
+		}
+		OF_VIRTUAL = ofVirtual;
+		BUILDER_NAME = name;
+		BUILDER_UNSTARTED = unstarted;
+		BUILDER_FACTORY = factory;
+	}
+
+	private static final ExecutorService EXECUTOR = newExecutor();
+
+	private IOExecutor() {
+	}
+
+	/**
+	 * @return {@code true} if tasks and threads are virtual threads
+	 */
+	public static boolean isVirtual() {
+		return OF_VIRTUAL != null;
+	}
+
+	/**
+	 * @return the shared executor running one (virtual) thread per task
+	 */
+	public static ExecutorService getExecutor() {
+		return EXECUTOR;
+	}
+
+	/**
+	 * Runs a blocking task on the execution layer.
+	 *
+	 * @return a future completed when the task is done, exceptionally if it threw
+	 */
+	public static CompletableFuture<Void> run(Task task) {
+		return CompletableFuture.runAsync(() -> {
+			try {
+				task.run();
+			} catch (Exception e) {
+				throw new CompletionException(e);
+			}
+		}, EXECUTOR);
+	}
+
+	/**
+	 * Runs a blocking computation on the execution layer.
+	 *
+	 * @return a future completed with the result, exceptionally if it threw
+	 */
+	public static <T> CompletableFuture<T> supply(Callable<T> task) {
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				return task.call();
+			} catch (Exception e) {
+				throw new CompletionException(e);
+			}
+		}, EXECUTOR);
+	}
+
+	/**
+	 * Creates a factory of threads named {@code name-1}, {@code name-2}, ...,
+	 * virtual if supported, otherwise daemon platform threads. Used by the
+	 * components that manage their own threads or pools.
+	 */
+	public static ThreadFactory newThreadFactory(String name) {
+		AtomicInteger count = new AtomicInteger();
+		return task -> newThread(name + "-" + count.incrementAndGet(), task);
+	}
+
+	/**
+	 * Creates an unstarted thread, virtual if supported, otherwise a daemon
+	 * platform thread.
+	 */
+	public static Thread newThread(String name, Runnable task) {
+		if (OF_VIRTUAL != null) {
+			try {
+				Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), name);
+				return (Thread) BUILDER_UNSTARTED.invoke(builder, task);
+			} catch (ReflectiveOperationException e) {
+				// Fall back to a platform thread below
+			}
+		}
+
+		Thread thread = new Thread(task, name);
+		thread.setDaemon(true);
+		return thread;
+	}
+
+	private static ExecutorService newExecutor() {
+		if (OF_VIRTUAL != null) {
+			try {
+				ThreadFactory threadFactory = (ThreadFactory) BUILDER_FACTORY.invoke(OF_VIRTUAL.invoke(null));
+				return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+						.invoke(null, threadFactory);
+			} catch (ReflectiveOperationException e) {
+				// Fall back to platform threads below
+			}
+		}
+
+		// Idle threads are reclaimed after a minute, like a cached thread pool
+		return new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<>(),
+				newThreadFactory("io"));
+	}
+}
@@ -1,6 +1,4 @@
 package hostednetscanner;
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
@@ -11,16 +9,10 @@ import java.util.regex.Pattern;
 public class IPConfigScanner {
 	public static List<Network> scanNetworks() {
 		try {
-			Process process = Runtime.getRuntime().exec("ipconfig /all");
-			BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-			StringBuilder output = new StringBuilder();
-			String line;
-			while ((line = reader.readLine()) != null) {
-				output.append(line).append("\n");
-			}
+			String output = CommandExecutor.getDefault().execute("ipconfig /all").getOutput();
 
 			List<Network> networks = new ArrayList<>();
-			List<IPConfigEntry> ipConfigEntries = parse(output.toString());
+			List<IPConfigEntry> ipConfigEntries = parse(output);
 			for (IPConfigEntry entry : ipConfigEntries) {
 				Device connectedInterface = entry._interface;
 				Network network = new Network(connectedInterface);
@@ -38,7 +30,7 @@ public class IPConfigScanner {
 		}
 	}
 
-	private static List<IPConfigEntry> parse(String rawOutput) {
+	static List<IPConfigEntry> parse(String rawOutput) {
 		List<IPConfigEntry> ipConfigEntries = new ArrayList<>();
 		String[] sections = rawOutput.split("(?=\\r?\\n\\r?\\n[^\\s].+:)");
 
@@ -0,0 +1,82 @@
+package hostednetscanner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A network reached through one of the machine's interfaces other than the
+ * hosted network, such as a LAN or a VPN. There is no client list for such a
+ * network: its devices are the dynamic entries of the ARP table under the
+ * interface's address, each taken as connected and reachable at its ARP IP.
+ */
+public class InterfaceNetwork extends Network {
+
+	/**
+	 * @param network a network discovered by {@link IPConfigScanner}, whose
+	 *                interface, subnet mask and gateway are copied
+	 */
+	public InterfaceNetwork(Network network) {
+		super(network.getConnectedInterface());
+		setSubnetMask(network.getSubnetMask());
+		setDefaultGateway(network.getDefaultGateway());
+	}
+
+	@Override
+	public void updateConnectedDevices() {
+		updateConnectedDevices(ScanSnapshot.capture(false));
+	}
+
+	/**
+	 * Marks the devices of the ARP table under the interface's address, adds
+	 * the new ones and takes the others offline, then publishes the changes.
+	 * The hostnames of the new devices, and of those not resolved yet, are
+	 * looked up asynchronously and published with a second delta. The changes
+	 * are published once the network's lock is released.
+	 */
+	@Override
+	public void updateConnectedDevices(ScanSnapshot snapshot) {
+		synchronized (this) {
+			diff(snapshot);
+		}
+		publishChanges();
+	}
+
+	private void diff(ScanSnapshot snapshot) {
+		Device connectedInterface = getConnectedInterface();
+		if (connectedInterface.getIpAddress() == null)
+			return;
+
+		DeviceRegistry registry = getRegistry();
+		long now = System.currentTimeMillis();
+		int interfaceIp = AddressUtils.toInt(connectedInterface.getIpAddress());
+		long interfaceMac = connectedInterface.getMacAddress() == null ? 0
+				: AddressUtils.parseMac(connectedInterface.getMacAddress());
+		ArpTable arpTable = snapshot.getArpTable();
+
+		registry.beginCycle();
+		int knownCount = registry.size();
+		List<Device> newDevices = new ArrayList<>();
+		for (int i = 0; i < arpTable.size(); i++) {
+			if (arpTable.getInterfaceIp(i) != interfaceIp)
+				continue;
+
+			long mac = arpTable.getMac(i);
+			int ip = arpTable.getIp(i);
+			int slot = registry.slotOf(mac);
+			if (slot < 0) {
+				Device device = createDevice(mac, AddressUtils.toInetAddress(ip));
+				slot = registry.add(device);
+				if (slot < 0)
+					continue;
+				newDevices.add(device);
+			}
+			registry.markConnected(slot);
+			registry.markReachable(slot, ip);
+		}
+
+		registry.applyCycle(knownCount, interfaceMac, now);
+		registry.evict(getEvictionPolicy(), interfaceMac, now);
+		resolveHostnames(newDevices);
+		recheckCustomNames();
+	}
+}
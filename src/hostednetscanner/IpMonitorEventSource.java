@@ -0,0 +1,152 @@
+package hostednetscanner;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Linux {@link NetworkEventSource} streaming {@code ip monitor neigh}.
+ *
+ * The kernel pushes a line for every neighbor table change, so the source
+ * thread sleeps in a blocking read while the network is idle. A single long
+ * running process replaces the per-tick forks of polling.
+ *
+ * If {@code iw} is installed, {@code iw event} is streamed as well: a client
+ * associating with or leaving an access point of the machine is reported as
+ * {@link EventType#ASSOCIATION} at once, before its neighbor entry changes.
+ * The source keeps running on neighbor events alone if {@code iw} exits.
+ */
+public class IpMonitorEventSource implements NetworkEventSource {
+	private static final String[] IP_PATHS = { "/sbin/ip", "/usr/sbin/ip", "/bin/ip", "/usr/bin/ip" };
+	private static final String[] IW_PATHS = { "/sbin/iw", "/usr/sbin/iw", "/bin/iw", "/usr/bin/iw" };
+
+	private Process process;
+	private Process stations;
+	private volatile boolean closed;
+
+	/**
+	 * @return {@code true} if the {@code ip} command is available
+	 */
+	public static boolean isSupported() {
+		return findIp() != null;
+	}
+
+	private static Path findIp() {
+		return findExecutable(IP_PATHS);
+	}
+
+	private static Path findExecutable(String[] paths) {
+		for (String candidate : paths) {
+			Path path = Paths.get(candidate);
+			if (Files.isExecutable(path))
+				return path;
+		}
+		return null;
+	}
+
+	@Override
+	public synchronized void start(Listener listener) throws IOException {
+		Path ip = findIp();
+		if (ip == null) {
+			throw new IOException("The ip command is not available");
+		}
+
+		ProcessBuilder processBuilder = new ProcessBuilder(ip.toString(), "monitor", "neigh");
+		processBuilder.redirectErrorStream(true);
+		process = processBuilder.start();
+
+		Process started = process;
+		IOExecutor.newThread("ip-monitor-events", () -> readEvents(started, listener)).start();
+		startStations(listener);
+	}
+
+	/**
+	 * Streams {@code iw event} for the association events, if {@code iw} is
+	 * installed.
+	 */
+	private void startStations(Listener listener) {
+		Path iw = findExecutable(IW_PATHS);
+		if (iw == null)
+			return;
+
+		try {
+			ProcessBuilder processBuilder = new ProcessBuilder(iw.toString(), "event");
+			processBuilder.redirectErrorStream(true);
+			stations = processBuilder.start();
+		} catch (IOException e) {
+			Logger.logError("Error starting iw event, associations are seen through the neighbor table: ", e);
+			return;
+		}
+
+		Process started = stations;
+		IOExecutor.newThread("iw-events", () -> readStations(started, listener)).start();
+	}
+
+	private void readStations(Process source, Listener listener) {
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(source.getInputStream(), StandardCharsets.US_ASCII))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (isStationEvent(line)) {
+					listener.onEvent(EventType.ASSOCIATION);
+				}
+			}
+		} catch (IOException e) {
+			// Reported below
+		}
+
+		if (!closed) {
+			Logger.logMessage("iw event exited, associations are seen through the neighbor table");
+		}
+	}
+
+	/**
+	 * @return {@code true} if a line of {@code iw event} reports a client
+	 *         associating with or leaving an access point, e.g.
+	 *         {@code wlan0 (phy #0): new station 02:00:00:00:00:02}
+	 */
+	static boolean isStationEvent(String line) {
+		return line.contains(": new station ") || line.contains(": del station ");
+	}
+
+	private void readEvents(Process source, Listener listener) {
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(source.getInputStream(), StandardCharsets.US_ASCII))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (!line.isBlank()) {
+					listener.onEvent(EventType.NEIGHBOR);
+				}
+			}
+		} catch (IOException e) {
+			if (!closed) {
+				listener.onFailure(e);
+			}
+			return;
+		}
+
+		if (!closed) {
+			listener.onFailure(new IOException("ip monitor exited"));
+		}
+	}
+
+	@Override
+	public synchronized String getName() {
+		return stations != null ? "ip monitor neigh + iw event" : "ip monitor neigh";
+	}
+
+	@Override
+	public synchronized void close() {
+		closed = true;
+		if (process != null) {
+			process.destroy();
+		}
+		if (stations != null) {
+			stations.destroy();
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package hostednetscanner;
+
+/**
+ * Writing of JSON values into a {@link StringBuilder}, for the JSON lines of
+ * the {@link AsyncLogger} and the responses of the {@link ApiServer}.
+ */
+final class Json {
+	private Json() {
+	}
+
+	/**
+	 * Appends a string as a quoted JSON string, or {@code null}.
+	 */
+	static void appendString(StringBuilder out, String value) {
+		if (value == null) {
+			out.append("null");
+			return;
+		}
+		out.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '"':
+				out.append("\\\"");
+				break;
+			case '\\':
+				out.append("\\\\");
+				break;
+			case '\n':
+				out.append("\\n");
+				break;
+			case '\r':
+				out.append("\\r");
+				break;
+			case '\t':
+				out.append("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					out.append(String.format("\\u%04x", (int) c));
+				} else {
+					out.append(c);
+				}
+			}
+		}
+		out.append('"');
+	}
+
+	/**
+	 * Appends {@code "name":} with the name quoted.
+	 */
+	static StringBuilder appendName(StringBuilder out, String name) {
+		appendString(out, name);
+		return out.append(':');
+	}
+}
@@ -0,0 +1,325 @@
+package hostednetscanner;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The custom names of the known devices, by MAC address, stored in the known
+ * devices file as {@code mac||name} lines.
+ *
+ * The file is read once into an in-memory index, so recognizing a client costs
+ * a map lookup instead of a file read. Changes are appended to the file, the
+ * last line of a MAC address winning when it is read back, and the file is
+ * compacted to one line per device once the appended lines outnumber the
+ * devices. While {@link #startWatching() watched}, the file is reloaded when it
+ * is modified by another program, e.g. edited by hand.
+ */
+public class KnownDevicesStore implements Closeable {
+	private static final String SEPARATOR = "||";
+	private static final int MIN_COMPACTION_LINES = 64;
+	// Stands for a device known without custom name, the index has no null values
+	private static final String NO_NAME = "";
+
+	private static KnownDevicesStore defaultStore;
+
+	private final Path file;
+	private volatile Map<String, String> index = new ConcurrentHashMap<>();
+	private volatile long version;
+	// Guarded by this
+	private int lines;
+	private FileTime writtenTime;
+	private long writtenSize = -1;
+	private WatchService watchService;
+
+	public KnownDevicesStore(Path file) {
+		this.file = file.toAbsolutePath();
+		reload();
+	}
+
+	/**
+	 * @return the store of the known devices file of the {@link ConfigManager},
+	 *         reopened if the configured path changed
+	 */
+	public static synchronized KnownDevicesStore getDefault() {
+		Path path = Path.of(new ConfigManager().getKnownDevicesFilePath()).toAbsolutePath();
+		if (defaultStore == null || !defaultStore.file.equals(path)) {
+			boolean watching = false;
+			if (defaultStore != null) {
+				watching = defaultStore.isWatching();
+				defaultStore.close();
+			}
+			defaultStore = new KnownDevicesStore(path);
+			if (watching) {
+				defaultStore.startWatching();
+			}
+		}
+		return defaultStore;
+	}
+
+	public Path getFile() {
+		return file;
+	}
+
+	/**
+	 * @return the custom name of a device, or null if it has none or is unknown
+	 */
+	public String getName(String mac) {
+		String name = index.get(mac);
+		return name == null || name.equals(NO_NAME) ? null : name;
+	}
+
+	public boolean contains(String mac) {
+		return index.containsKey(mac);
+	}
+
+	public int size() {
+		return index.size();
+	}
+
+	/**
+	 * @return a copy of the known devices, by MAC address. Devices without custom
+	 *         name are mapped to null.
+	 */
+	public Map<String, String> getAll() {
+		Map<String, String> devices = new HashMap<>();
+		for (Map.Entry<String, String> entry : index.entrySet()) {
+			devices.put(entry.getKey(), entry.getValue().equals(NO_NAME) ? null : entry.getValue());
+		}
+		return devices;
+	}
+
+	/**
+	 * @return a number changed every time the known devices change, through this
+	 *         store or by a reload of the file
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Records a device and its custom name, see {@link #putAll(Map)}.
+	 */
+	public boolean put(String mac, String name) {
+		Map<String, String> devices = new HashMap<>();
+		devices.put(mac, name);
+		return putAll(devices);
+	}
+
+	/**
+	 * Records devices and their custom names. An unknown device is added even
+	 * without custom name, while a known device keeps its name if it has none.
+	 * Only the devices that changed are appended to the file.
+	 *
+	 * @param devices the custom names by MAC address, null for no name
+	 * @return {@code true} if any device changed
+	 */
+	public synchronized boolean putAll(Map<String, String> devices) {
+		StringBuilder appended = new StringBuilder();
+		int appendedLines = 0;
+		for (Map.Entry<String, String> entry : devices.entrySet()) {
+			String mac = entry.getKey();
+			String name = entry.getValue() == null ? NO_NAME : entry.getValue().trim();
+			String known = index.get(mac);
+			if (known != null && (name.equals(NO_NAME) || name.equals(known)))
+				continue;
+
+			index.put(mac, name);
+			appended.append(mac).append(SEPARATOR).append(name).append(System.lineSeparator());
+			appendedLines++;
+		}
+		if (appendedLines == 0)
+			return false;
+
+		version++;
+		try {
+			if (lines + appendedLines > Math.max(index.size() * 2, MIN_COMPACTION_LINES)) {
+				compact();
+			} else {
+				try (BufferedWriter writer = new BufferedWriter(new FileWriter(file.toFile(), true))) {
+					writer.append(appended);
+				}
+				lines += appendedLines;
+				rememberWrite();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			Logger.logError("Error saving known devices: ", e);
+		}
+		return true;
+	}
+
+	/**
+	 * Rewrites the file with one line per device. The file is written next to
+	 * its final location and moved in place.
+	 */
+	public synchronized void compact() throws IOException {
+		Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (BufferedWriter writer = new BufferedWriter(new FileWriter(temp.toFile()))) {
+			for (Map.Entry<String, String> entry : index.entrySet()) {
+				writer.write(entry.getKey() + SEPARATOR + entry.getValue());
+				writer.newLine();
+			}
+		}
+		try {
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+		}
+		lines = index.size();
+		rememberWrite();
+	}
+
+	/**
+	 * Reads the file again, replacing the index.
+	 */
+	public synchronized void reload() {
+		Map<String, String> loaded = new ConcurrentHashMap<>();
+		int read = 0;
+		try (BufferedReader reader = new BufferedReader(new FileReader(file.toFile()))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				int separator = line.indexOf(SEPARATOR);
+				if (separator <= 0)
+					continue;
+				String mac = Device.formatMacAddress(line.substring(0, separator).trim());
+				String name = line.substring(separator + SEPARATOR.length()).trim();
+				loaded.put(mac, name);
+				read++;
+			}
+		} catch (FileNotFoundException e) {
+			// No device known yet
+		} catch (IOException e) {
+			e.printStackTrace();
+			Logger.logError("Error loading known peers: ", e);
+			return;
+		}
+		if (!loaded.equals(index)) {
+			index = loaded;
+			version++;
+		}
+		lines = read;
+		rememberWrite();
+	}
+
+	/**
+	 * Starts reloading the file when another program modifies it.
+	 */
+	public synchronized void startWatching() {
+		if (watchService != null)
+			return;
+		try {
+			Path directory = file.getParent();
+			Files.createDirectories(directory);
+			watchService = directory.getFileSystem().newWatchService();
+			directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_MODIFY);
+		} catch (IOException e) {
+			Logger.logError("Error watching the known devices file: ", e);
+			watchService = null;
+			return;
+		}
+		WatchService service = watchService;
+		IOExecutor.newThread("known-devices-watch", () -> watch(service)).start();
+		// Catch up with the modifications made before watching
+		reloadIfModified();
+	}
+
+	public synchronized boolean isWatching() {
+		return watchService != null;
+	}
+
+	/**
+	 * Stops watching the file.
+	 */
+	public synchronized void stopWatching() {
+		if (watchService == null)
+			return;
+		try {
+			watchService.close();
+		} catch (IOException e) {
+			Logger.logError("Error closing the known devices watch service: ", e);
+		}
+		watchService = null;
+	}
+
+	/**
+	 * Stops watching the file and compacts it if changes were appended.
+	 */
+	@Override
+	public synchronized void close() {
+		stopWatching();
+		if (lines > index.size()) {
+			try {
+				compact();
+			} catch (IOException e) {
+				Logger.logError("Error compacting known devices: ", e);
+			}
+		}
+	}
+
+	private void watch(WatchService service) {
+		try {
+			while (true) {
+				WatchKey key = service.take();
+				boolean modified = false;
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if (file.getFileName().equals(event.context())
+							|| event.kind() == StandardWatchEventKinds.OVERFLOW) {
+						modified = true;
+					}
+				}
+				key.reset();
+				if (modified) {
+					reloadIfModified();
+				}
+			}
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			// Stopped
+		}
+	}
+
+	/**
+	 * Reloads the file unless it is as this store last wrote or read it.
+	 */
+	private synchronized void reloadIfModified() {
+		try {
+			BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+			if (attributes.size() == writtenSize && attributes.lastModifiedTime().equals(writtenTime))
+				return;
+		} catch (IOException e) {
+			// Deleted or being replaced, keep the known devices
+			return;
+		}
+		reload();
+	}
+
+	private void rememberWrite() {
+		try {
+			BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+			writtenTime = attributes.lastModifiedTime();
+			writtenSize = attributes.size();
+		} catch (IOException e) {
+			writtenTime = null;
+			writtenSize = -1;
+		}
+	}
+}
@@ -1,33 +1,60 @@
 package hostednetscanner;
 
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.io.StringWriter;
-import java.time.LocalDateTime;
+import java.nio.file.Path;
 
+/**
+ * Application log, written as JSON lines to {@code logs.jsonl} in the working
+ * directory by an {@link AsyncLogger}. Logging never blocks the calling
+ * thread, messages are dropped and counted when the writer falls behind;
+ * the HTML report of the log is generated on demand with
+ * {@link #writeHtmlReport(Path)}.
+ */
 public class Logger {
-	private static String logFilePath = System.getProperty("user.dir") + "/logs.html";
+	private static final long SHUTDOWN_FLUSH_MS = 2000;
+	private static final AsyncLogger logger = createLogger();
 
 	public static void logMessage(String message) {
-		log("INFO", message);
+		log("INFO", message, null);
 	}
 
 	public static void logError(String error, Throwable throwable) {
-		StringWriter sw = new StringWriter();
-		PrintWriter pw = new PrintWriter(sw);
-		throwable.printStackTrace(pw);
-		log("ERROR", error + "\nStack trace:\n" + sw.toString());
+		log("ERROR", error, throwable);
 	}
 
-	private static void log(String level, String message) {
-		try (FileWriter fw = new FileWriter(logFilePath, true)) {
-			// Initialize HTML file if empty
-			fw.write("<p><pre>" + LocalDateTime.now() + " [<span style=\"color:"
-					+ (level.equals("ERROR") ? "red" : "black") + "\">" + level + "</span>] " + message
-					+ "</pre></p>\n");
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+	/**
+	 * Waits until the messages logged so far are written.
+	 *
+	 * @return {@code false} if the timeout elapsed first
+	 */
+	public static boolean flush(long timeoutMs) {
+		return logger.flush(timeoutMs);
+	}
+
+	/**
+	 * Renders the log as an HTML document.
+	 */
+	public static void writeHtmlReport(Path output) throws IOException {
+		logger.writeHtmlReport(output);
+	}
+
+	/**
+	 * @return the number of messages dropped because the log writer fell behind
+	 */
+	public static long getDropped() {
+		return logger.getDropped();
+	}
+
+	private static void log(String level, String message, Throwable throwable) {
+		// A dropped message is counted, and the drops reported in the log
+		logger.log(level, message, throwable);
+	}
+
+	private static AsyncLogger createLogger() {
+		AsyncLogger created = new AsyncLogger(Path.of(System.getProperty("user.dir"), "logs.jsonl"),
+				AsyncLogger.DEFAULT_CAPACITY, AsyncLogger.DEFAULT_MAX_BYTES, AsyncLogger.DEFAULT_MAX_AGE_MS,
+				AsyncLogger.DEFAULT_MAX_FILES);
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> created.close(SHUTDOWN_FLUSH_MS), "logger-close"));
+		return created;
 	}
 }
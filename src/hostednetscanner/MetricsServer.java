@@ -0,0 +1,97 @@
+package hostednetscanner;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves the {@link ScanMetrics} in the Prometheus text format on
+ * {@code http://127.0.0.1:<port>/metrics}, and as the text of
+ * {@link ScanMetrics#dump()} on {@code /metrics/dump}. Only the loopback
+ * address is bound.
+ */
+public class MetricsServer {
+	private static final String PROMETHEUS_CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	private final ScanMetrics metrics;
+	private final HttpServer server;
+
+	/**
+	 * Starts serving the metrics.
+	 *
+	 * @param port the port to listen on, 0 for any free port
+	 * @throws IOException if the port could not be bound
+	 */
+	public MetricsServer(ScanMetrics metrics, int port) throws IOException {
+		this.metrics = metrics;
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		server.createContext("/metrics", this::handle);
+		server.setExecutor(Executors.newSingleThreadExecutor(r -> IOExecutor.newThread("metrics-server", r)));
+		server.start();
+	}
+
+	/**
+	 * Starts serving the default metrics on the port of the
+	 * {@link ConfigManager}, if one is configured.
+	 *
+	 * @return the started server, or null if no port is configured or it could
+	 *         not be bound
+	 */
+	public static MetricsServer open(ConfigManager config) {
+		int port = config.getMetricsPort();
+		if (port <= 0)
+			return null;
+		try {
+			MetricsServer server = new MetricsServer(ScanMetrics.getDefault(), port);
+			Logger.logMessage("Serving metrics on http://127.0.0.1:" + server.getPort() + "/metrics");
+			return server;
+		} catch (IOException e) {
+			Logger.logError("Error starting the metrics server on port " + port + ": ", e);
+			return null;
+		}
+	}
+
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	public void stop() {
+		server.stop(0);
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try (exchange) {
+			if (!"GET".equals(exchange.getRequestMethod())) {
+				exchange.sendResponseHeaders(405, -1);
+				return;
+			}
+
+			String path = exchange.getRequestURI().getPath();
+			String body;
+			if (path.equals("/metrics") || path.equals("/metrics/")) {
+				StringBuilder out = new StringBuilder();
+				metrics.writePrometheus(out);
+				body = out.toString();
+				exchange.getResponseHeaders().set("Content-Type", PROMETHEUS_CONTENT_TYPE);
+			} else if (path.equals("/metrics/dump")) {
+				body = metrics.dump();
+				exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+			} else {
+				exchange.sendResponseHeaders(404, -1);
+				return;
+			}
+
+			byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+			exchange.sendResponseHeaders(200, bytes.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(bytes);
+			}
+		}
+	}
+}
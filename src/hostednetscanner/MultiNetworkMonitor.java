@@ -0,0 +1,285 @@
+package hostednetscanner;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps every network of the machine up to date at once: the hosted network if
+ * it is running, and an {@link InterfaceNetwork} for each other interface
+ * reported by {@link IPConfigScanner}, rediscovered every minute.
+ *
+ * Each network keeps its own registry and listeners, and is polled with its
+ * own {@link AdaptivePollingScheduler}, so a busy hotspot is scanned often
+ * while a quiet VPN backs off. The external sources are captured once per
+ * tick: all the networks due at that time are updated from the same
+ * {@link ScanSnapshot}, and the number of processes spawned does not grow with
+ * the number of networks. Events of the {@link NetworkEventSource}, if any,
+ * make every network due at once.
+ *
+ * Everything runs on a single monitor thread, including the
+ * {@link Listener} calls.
+ */
+public class MultiNetworkMonitor {
+	public static final long DISCOVERY_INTERVAL_MS = 60000;
+	private static final long COALESCE_DELAY_MS = 100;
+	private static final ScanMetrics.LatencyHistogram TICK_LATENCY = ScanSnapshot.stageLatency("tick");
+	private static final ScanMetrics.Counter NETWORK_UPDATES = ScanMetrics.getDefault().counter("network_updates",
+			"Network updates made from a scan snapshot shared with the other networks of the tick.");
+
+	/**
+	 * Notified on the monitor thread when a network is discovered or its
+	 * interface disappeared.
+	 */
+	public interface Listener {
+		void onNetworkAdded(Network network);
+
+		void onNetworkRemoved(Network network);
+	}
+
+	private final AdaptivePollingScheduler.Policy policy;
+	private final NetworkEventSource source;
+	private final ScheduledExecutorService executor;
+	private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+	// Owned by the monitor thread, by interface MAC address
+	private final Map<String, Tracked> tracked = new LinkedHashMap<>();
+	private final List<Network> networks = new CopyOnWriteArrayList<>();
+	private ScheduledFuture<?> nextTick;
+	private long discoveredAt;
+	private volatile boolean stopped;
+
+	/**
+	 * @param policy the polling policy of every network
+	 * @param source the source of change events, or null to only poll
+	 */
+	public MultiNetworkMonitor(AdaptivePollingScheduler.Policy policy, NetworkEventSource source) {
+		this.policy = policy;
+		this.source = source;
+		this.executor = Executors
+				.newSingleThreadScheduledExecutor(r -> IOExecutor.newThread("multi-network-monitor", r));
+	}
+
+	public void addListener(Listener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(Listener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Discovers the networks and scans them once, then keeps polling them.
+	 */
+	public void start() {
+		KnownDevicesStore.getDefault().startWatching();
+		executor.execute(() -> {
+			discover();
+			tick();
+		});
+
+		if (source != null) {
+			try {
+				source.start(new NetworkEventSource.Listener() {
+					@Override
+					public void onEvent(NetworkEventSource.EventType type) {
+						requestScan();
+					}
+
+					@Override
+					public void onFailure(Exception cause) {
+						Logger.logError("Network event source " + source.getName() + " failed, polling only: ",
+								cause);
+					}
+				});
+				Logger.logMessage("Monitoring network changes from " + source.getName());
+			} catch (IOException e) {
+				Logger.logError("Network event source " + source.getName() + " unavailable, polling only: ", e);
+			}
+		}
+	}
+
+	/**
+	 * Asks for a scan of every network as soon as possible. Requests made in a
+	 * burst are merged into one scan.
+	 */
+	public void requestScan() {
+		if (stopped)
+			return;
+		executor.execute(() -> {
+			long now = System.nanoTime();
+			for (Tracked network : tracked.values()) {
+				network.dueNanos = now;
+			}
+			// Never push back a tick already coming sooner
+			if (nextTick == null || nextTick.getDelay(TimeUnit.MILLISECONDS) > COALESCE_DELAY_MS)
+				schedule(COALESCE_DELAY_MS);
+		});
+	}
+
+	/**
+	 * @return the monitored networks, safe to read from any thread
+	 */
+	public List<Network> getNetworks() {
+		return new ArrayList<>(networks);
+	}
+
+	/**
+	 * Stops monitoring and closes the discovered networks. The hosted network is
+	 * left to {@link HostedNetwork#stopNetwork()}.
+	 */
+	public void stop() {
+		stopped = true;
+		if (source != null) {
+			source.close();
+		}
+		executor.shutdownNow();
+		for (Network network : networks) {
+			if (!(network instanceof HostedNetwork))
+				network.close();
+		}
+	}
+
+	/**
+	 * Adds the networks of the new interfaces and removes those whose interface
+	 * disappeared. The interface of the running hosted network is monitored as
+	 * the {@link HostedNetwork}.
+	 */
+	private void discover() {
+		discoveredAt = System.nanoTime();
+		HostedNetwork hosted = HostedNetwork.getInstance();
+		String hostedMac = hosted == null ? null : hosted.getConnectedInterface().getMacAddress();
+
+		Set<String> found = new HashSet<>();
+		for (Network network : IPConfigScanner.scanNetworks()) {
+			String mac = network.getConnectedInterface().getMacAddress();
+			if (mac == null || network.getConnectedInterface().getIpAddress() == null || !found.add(mac))
+				continue;
+
+			Network monitored = mac.equals(hostedMac) ? hosted : null;
+			Tracked current = tracked.get(mac);
+			if (current != null && (monitored == null || current.network == monitored)) {
+				if (monitored == null) {
+					// Follow a new address of the interface
+					current.network.setConnectedInterface(network.getConnectedInterface());
+				}
+				continue;
+			}
+
+			if (current != null)
+				remove(mac);
+			add(mac, monitored != null ? monitored : new InterfaceNetwork(network));
+		}
+
+		for (String mac : new ArrayList<>(tracked.keySet())) {
+			if (!found.contains(mac))
+				remove(mac);
+		}
+	}
+
+	private void add(String mac, Network network) {
+		AdaptivePollingScheduler scheduler = new AdaptivePollingScheduler(policy);
+		tracked.put(mac, new Tracked(network, scheduler, System.nanoTime()));
+		networks.add(network);
+		Logger.logMessage("Monitoring the network of interface " + mac + " ("
+				+ network.getConnectedInterface().getHostAddress() + ")");
+		for (Listener listener : listeners) {
+			listener.onNetworkAdded(network);
+		}
+	}
+
+	private void remove(String mac) {
+		Tracked removed = tracked.remove(mac);
+		networks.remove(removed.network);
+		Logger.logMessage("Stopped monitoring the network of interface " + mac);
+		for (Listener listener : listeners) {
+			listener.onNetworkRemoved(removed.network);
+		}
+		if (!(removed.network instanceof HostedNetwork))
+			removed.network.close();
+	}
+
+	/**
+	 * Updates every network that is due from one shared snapshot, then
+	 * schedules the next tick for the network due first.
+	 */
+	private void tick() {
+		if (stopped)
+			return;
+
+		if (System.nanoTime() - discoveredAt >= TimeUnit.MILLISECONDS.toNanos(DISCOVERY_INTERVAL_MS)) {
+			discover();
+		}
+
+		long start = System.nanoTime();
+		List<Tracked> due = new ArrayList<>();
+		boolean withNeighbors = false;
+		for (Tracked network : tracked.values()) {
+			if (network.dueNanos - start <= 0) {
+				due.add(network);
+				withNeighbors |= network.network.needsNeighborTable();
+			}
+		}
+
+		if (!due.isEmpty()) {
+			ScanSnapshot snapshot = ScanSnapshot.capture(withNeighbors);
+			for (Tracked network : due) {
+				long version = network.network.getSnapshot().getVersion();
+				try {
+					network.network.updateConnectedDevices(snapshot);
+				} catch (RuntimeException e) {
+					// Keep monitoring, a failed update must not cancel the next ones
+					e.printStackTrace();
+					Logger.logError("Error updating connected devices: ", e);
+				}
+				// Deltas are only published when something changed
+				boolean changed = network.network.getSnapshot().getVersion() != version;
+				long delay = network.scheduler.nextDelay(changed, System.nanoTime() - start);
+				network.dueNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+			}
+			TICK_LATENCY.recordSince(start);
+			NETWORK_UPDATES.add(due.size());
+		}
+
+		long next = discoveredAt + TimeUnit.MILLISECONDS.toNanos(DISCOVERY_INTERVAL_MS);
+		for (Tracked network : tracked.values()) {
+			if (network.dueNanos - next < 0)
+				next = network.dueNanos;
+		}
+		schedule(Math.max(0, TimeUnit.NANOSECONDS.toMillis(next - System.nanoTime())));
+	}
+
+	/**
+	 * Replaces the scheduled tick. Must be called from the monitor thread.
+	 */
+	private void schedule(long delayMs) {
+		if (stopped)
+			return;
+		if (nextTick != null)
+			nextTick.cancel(false);
+		nextTick = executor.schedule(this::tick, delayMs, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * A monitored network and its polling schedule.
+	 */
+	private static final class Tracked {
+		final Network network;
+		final AdaptivePollingScheduler scheduler;
+		long dueNanos;
+
+		Tracked(Network network, AdaptivePollingScheduler scheduler, long dueNanos) {
+			this.network = network;
+			this.scheduler = scheduler;
+			this.dueNanos = dueNanos;
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package hostednetscanner;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Streaming decoder for the neighbor records written by the reachability
+ * script of {@link PSDeviceScanner}.
+ *
+ * Each neighbor is one tab separated record:
+ *
+ * <pre>
+ * ifIndex	IPAddress	LinkLayerAddress	State
+ * 12	192.168.137.23	AA-BB-CC-DD-EE-FF	Reachable
+ * </pre>
+ *
+ * Records are decoded in a single pass over the raw bytes, like
+ * {@link ARPTableParser}, and handed to a {@link RecordHandler} without any
+ * intermediate String. Lines that are not well formed records (errors, blank
+ * lines) are skipped. A decoder instance is not thread safe but can be reused
+ * for any number of outputs.
+ */
+public class NeighborRecordDecoder {
+	private static final int FIELDS = 4;
+
+	/**
+	 * Receives the records found by the decoder.
+	 */
+	public interface RecordHandler {
+		/**
+		 * @param ifIndex    the index of the interface the neighbor was seen on
+		 * @param ipAddress  the IPv4 address of the neighbor
+		 * @param macAddress the MAC address of the neighbor, see
+		 *                   {@link AddressUtils}
+		 * @param state      the state of the neighbor cache entry
+		 */
+		void onNeighbor(int ifIndex, int ipAddress, long macAddress, NeighborState state);
+	}
+
+	private byte[] buffer = new byte[8192];
+	private final int[] fieldStarts = new int[FIELDS];
+	private final int[] fieldEnds = new int[FIELDS];
+
+	/**
+	 * Decodes the whole stream, reading it in chunks into the decoder's buffer.
+	 */
+	public void decode(InputStream in, RecordHandler handler) throws IOException {
+		int filled = 0;
+		int read;
+		while ((read = in.read(buffer, filled, buffer.length - filled)) != -1) {
+			filled += read;
+			int consumed = decodeLines(buffer, 0, filled, handler);
+
+			// Move the unfinished line to the start of the buffer
+			filled -= consumed;
+			System.arraycopy(buffer, consumed, buffer, 0, filled);
+			if (filled == buffer.length) {
+				byte[] larger = new byte[buffer.length * 2];
+				System.arraycopy(buffer, 0, larger, 0, filled);
+				buffer = larger;
+			}
+		}
+
+		if (filled > 0) {
+			decodeLine(buffer, 0, filled, handler);
+		}
+	}
+
+	/**
+	 * Decodes an output already held in memory.
+	 */
+	public void decode(byte[] data, int off, int len, RecordHandler handler) {
+		int consumed = decodeLines(data, off, off + len, handler);
+		if (consumed < off + len) {
+			decodeLine(data, consumed, off + len, handler);
+		}
+	}
+
+	private int decodeLines(byte[] buf, int start, int end, RecordHandler handler) {
+		int lineStart = start;
+		for (int i = start; i < end; i++) {
+			if (buf[i] == '\n') {
+				decodeLine(buf, lineStart, i, handler);
+				lineStart = i + 1;
+			}
+		}
+		return lineStart;
+	}
+
+	private void decodeLine(byte[] buf, int start, int end, RecordHandler handler) {
+		if (end > start && buf[end - 1] == '\r')
+			end--;
+
+		int field = 0;
+		fieldStarts[0] = start;
+		for (int i = start; i < end; i++) {
+			if (buf[i] == '\t') {
+				if (field == FIELDS - 1)
+					return;
+				fieldEnds[field++] = i;
+				fieldStarts[field] = i + 1;
+			}
+		}
+		if (field != FIELDS - 1)
+			return;
+		fieldEnds[field] = end;
+
+		int ifIndex = parseIndex(buf, fieldStarts[0], fieldEnds[0]);
+		if (ifIndex < 0)
+			return;
+
+		long ip = AddressUtils.parseIPv4(buf, fieldStarts[1], fieldEnds[1] - fieldStarts[1]);
+		if (ip == AddressUtils.INVALID)
+			return;
+
+		long mac = AddressUtils.parseMac(buf, fieldStarts[2], fieldEnds[2] - fieldStarts[2]);
+		if (mac == AddressUtils.INVALID)
+			return;
+
+		NeighborState state = NeighborState.parse(buf, fieldStarts[3], fieldEnds[3] - fieldStarts[3]);
+		handler.onNeighbor(ifIndex, (int) ip, mac, state);
+	}
+
+	private static int parseIndex(byte[] buf, int start, int end) {
+		if (start == end || end - start > 9)
+			return -1;
+
+		int value = 0;
+		for (int i = start; i < end; i++) {
+			byte b = buf[i];
+			if (b < '0' || b > '9')
+				return -1;
+			value = value * 10 + (b - '0');
+		}
+		return value;
+	}
+}
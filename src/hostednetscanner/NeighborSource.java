@@ -0,0 +1,82 @@
+package hostednetscanner;
+
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * A source of the operating system's neighbor (ARP) table.
+ *
+ * Entries are streamed to an {@link ARPTableParser.EntryHandler} with addresses
+ * already encoded as primitives, whatever the source. The default source reads
+ * {@code /proc/net/arp} directly on Linux and falls back to running the ARP
+ * command everywhere else, or when commands are replayed from fixtures.
+ */
+public interface NeighborSource {
+
+	/**
+	 * Reads the current neighbor table into the handler.
+	 *
+	 * @param handler receives the interfaces and entries of the table
+	 * @throws IOException if the table could not be read
+	 */
+	void read(ARPTableParser.EntryHandler handler) throws IOException;
+
+	/**
+	 * @return {@code true} if every read forks an external process
+	 */
+	boolean spawnsProcess();
+
+	/**
+	 * @return the neighbor source set with {@link #setDefault(NeighborSource)},
+	 *         or by default the one best suited to the current platform
+	 */
+	static NeighborSource getDefault() {
+		return Holder.source;
+	}
+
+	/**
+	 * Replaces the source the scanners read the neighbor table from.
+	 *
+	 * @param source the new source, must not be null
+	 */
+	static void setDefault(NeighborSource source) {
+		if (source == null) {
+			throw new IllegalArgumentException("Neighbor source cannot be null");
+		}
+		Holder.source = source;
+	}
+
+	/**
+	 * Neighbor source running {@code arp -a} (or {@code arp -an}) through the
+	 * default {@link CommandExecutor}.
+	 */
+	class CommandNeighborSource implements NeighborSource {
+		static final CommandNeighborSource INSTANCE = new CommandNeighborSource();
+
+		@Override
+		public void read(ARPTableParser.EntryHandler handler) throws IOException {
+			String command = System.getProperty("os.name").toLowerCase().contains("win") ? "arp -a" : "arp -an";
+			CommandExecutor.getDefault().stream(command, in -> new ARPTableParser().parse(in, handler));
+		}
+
+		@Override
+		public boolean spawnsProcess() {
+			return true;
+		}
+	}
+
+	class Holder {
+		private static volatile NeighborSource source = createDefault();
+
+		private Holder() {
+		}
+
+		private static NeighborSource createDefault() {
+			// Replayed outputs are read through the replay executor
+			if (!ReplayCommandExecutor.isConfigured() && Files.isReadable(ProcNetArpSource.PROC_NET_ARP)) {
+				return ProcNetArpSource.getInstance();
+			}
+			return CommandNeighborSource.INSTANCE;
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package hostednetscanner;
+
+/**
+ * State of an IPv4 neighbor cache entry, as reported by {@code Get-NetNeighbor}.
+ */
+public enum NeighborState {
+	UNREACHABLE, INCOMPLETE, PROBE, DELAY, STALE, REACHABLE, PERMANENT, UNKNOWN;
+
+	private static final NeighborState[] VALUES = values();
+	private static final byte[][] NAMES = new byte[VALUES.length][];
+
+	static {
+		for (NeighborState state : VALUES) {
+			NAMES[state.ordinal()] = state.name().getBytes();
+		}
+	}
+
+	/**
+	 * Whether the neighbor is confirmed reachable, the only state the
+	 * reachability scan counts as online.
+	 */
+	public boolean isReachable() {
+		return this == REACHABLE;
+	}
+
+	/**
+	 * Whether the entry still maps the neighbor's IP to its MAC address, even if
+	 * the neighbor has not been confirmed recently (stale, being re-confirmed or
+	 * static).
+	 */
+	public boolean hasAddress() {
+		return this == REACHABLE || this == STALE || this == DELAY || this == PROBE || this == PERMANENT;
+	}
+
+	public static NeighborState valueOf(int ordinal) {
+		return ordinal >= 0 && ordinal < VALUES.length ? VALUES[ordinal] : UNKNOWN;
+	}
+
+	/**
+	 * Decodes a state name from ASCII bytes, ignoring case, without creating a
+	 * String.
+	 *
+	 * @return the state, or {@link #UNKNOWN} if the name is not recognized
+	 */
+	public static NeighborState parse(byte[] buf, int off, int len) {
+		for (NeighborState state : VALUES) {
+			byte[] name = NAMES[state.ordinal()];
+			if (name.length != len)
+				continue;
+
+			int i = 0;
+			while (i < len && (buf[off + i] & 0xDF) == name[i]) {
+				i++;
+			}
+			if (i == len)
+				return state;
+		}
+		return UNKNOWN;
+	}
+}
@@ -0,0 +1,70 @@
+package hostednetscanner;
+
+import java.util.Arrays;
+
+/**
+ * Reusable primitive buffer of neighbor cache entries, filled by a
+ * {@link NeighborRecordDecoder}.
+ *
+ * Entries are stored column-wise (interface index, IP, MAC and state) like in
+ * {@link ArpTable}, so clearing and refilling the table allocates nothing per
+ * entry.
+ */
+public class NeighborTable implements NeighborRecordDecoder.RecordHandler {
+	private int size;
+	private int[] ifIndexes;
+	private int[] ips;
+	private long[] macs;
+	private byte[] states;
+
+	public NeighborTable() {
+		this(64);
+	}
+
+	public NeighborTable(int capacity) {
+		ifIndexes = new int[capacity];
+		ips = new int[capacity];
+		macs = new long[capacity];
+		states = new byte[capacity];
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	@Override
+	public void onNeighbor(int ifIndex, int ipAddress, long macAddress, NeighborState state) {
+		if (size == macs.length) {
+			int capacity = Math.max(16, size * 2);
+			ifIndexes = Arrays.copyOf(ifIndexes, capacity);
+			ips = Arrays.copyOf(ips, capacity);
+			macs = Arrays.copyOf(macs, capacity);
+			states = Arrays.copyOf(states, capacity);
+		}
+		ifIndexes[size] = ifIndex;
+		ips[size] = ipAddress;
+		macs[size] = macAddress;
+		states[size] = (byte) state.ordinal();
+		size++;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getIfIndex(int i) {
+		return ifIndexes[i];
+	}
+
+	public int getIp(int i) {
+		return ips[i];
+	}
+
+	public long getMac(int i) {
+		return macs[i];
+	}
+
+	public NeighborState getState(int i) {
+		return NeighborState.valueOf(states[i]);
+	}
+}
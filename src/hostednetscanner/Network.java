@@ -1,22 +1,32 @@
 package hostednetscanner;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.net.InetAddress;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.regex.Pattern;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class Network {
 	private Device connectedInterface;
 	private String subnetMask;
 	private String defaultGateway;
-	private Set<Device> knownDevices = new HashSet<>();
-	private Set<NetworkUpdateListener> listeners = new HashSet<>();
+	private final DeviceRegistry registry = new DeviceRegistry();
+	private final Set<Device> knownDevices = registry.asSet();
+	private final NetworkEventBus eventBus = new NetworkEventBus("network-events");
+	private volatile DeviceSnapshot snapshot = DeviceSnapshot.EMPTY;
+	// Deltas built but not handed to the event bus yet, guarded by this
+	private final ArrayDeque<NetworkDelta> outbox = new ArrayDeque<>();
+	private boolean dispatching;
+	private volatile DeviceRegistry.EvictionPolicy evictionPolicy = DeviceRegistry.EvictionPolicy.DEFAULT;
+	private volatile DeviceHistoryStore history;
+	private volatile long trackedSince = System.currentTimeMillis();
+	private final Set<Device> unresolvedHostnames = ConcurrentHashMap.newKeySet();
+	private long checkedNamesVersion = -1;
 
 	public Network(Device connectedInterface) {
 		super();
@@ -47,15 +57,82 @@ public class Network {
 		this.defaultGateway = defaultGateway;
 	}
 
-	public void setKnownDevices(Set<Device> knownDevices) {
-		this.knownDevices = knownDevices;
+	/**
+	 * Replaces the known devices of this network with the given ones.
+	 *
+	 * @param knownDevices the devices to register
+	 */
+	public synchronized void setKnownDevices(Set<Device> knownDevices) {
+		registry.clear();
+		for (Device device : knownDevices) {
+			registry.add(device);
+		}
+	}
+
+	/**
+	 * Forgets all the known devices. They are reported as removed by the next
+	 * delta.
+	 */
+	public synchronized void clearKnownDevices() {
+		registry.clear();
+		trackedSince = System.currentTimeMillis();
+	}
+
+	public DeviceRegistry.EvictionPolicy getEvictionPolicy() {
+		return evictionPolicy;
+	}
+
+	/**
+	 * Sets the bounds of the known devices, applied at every scan.
+	 */
+	public void setEvictionPolicy(DeviceRegistry.EvictionPolicy evictionPolicy) {
+		this.evictionPolicy = evictionPolicy;
+	}
+
+	public DeviceHistoryStore getHistory() {
+		return history;
 	}
 
+	/**
+	 * Sets the history the evicted devices are restored from when they connect
+	 * again. The history must also listen to the network's deltas.
+	 */
+	public void setHistory(DeviceHistoryStore history) {
+		this.history = history;
+	}
+
+	/**
+	 * @return the time since which the known devices have been tracked, i.e. the
+	 *         creation of the network or the last
+	 *         {@link #clearKnownDevices()}
+	 */
+	public long getTrackedSince() {
+		return trackedSince;
+	}
+
+	/**
+	 * @return a live view of the known devices, backed by the network's
+	 *         {@link DeviceRegistry}. It must only be used by the thread
+	 *         updating the network; other threads should read
+	 *         {@link #getSnapshot()}.
+	 */
 	public Set<Device> getKnownDevices() {
 		return knownDevices;
 	}
 
-	public Set<Device> addDevice(Device device) {
+	/**
+	 * @return the immutable snapshot of the known devices published with the
+	 *         latest delta, safe to read from any thread
+	 */
+	public DeviceSnapshot getSnapshot() {
+		return snapshot;
+	}
+
+	public DeviceRegistry getRegistry() {
+		return registry;
+	}
+
+	public synchronized Set<Device> addDevice(Device device) {
 		knownDevices.add(device);
 		return knownDevices;
 	}
@@ -64,45 +141,157 @@ public class Network {
 
 	}
 
+	/**
+	 * Updates the known devices from a snapshot captured by the caller, so that
+	 * several networks can share the scan of one tick, see
+	 * {@link MultiNetworkMonitor}. Does nothing by default.
+	 */
+	public void updateConnectedDevices(ScanSnapshot snapshot) {
+
+	}
+
+	/**
+	 * @return whether the next update needs the neighbor table of the snapshot
+	 */
+	public boolean needsNeighborTable() {
+		return false;
+	}
+
 	public void monitorNetwork() {
 	};
 
 	/**
-	 * Load known peers from file using ConfigManager.
+	 * Creates the device object of a newly connected device, with its custom name
+	 * from the known devices. A device evicted from the registry gets back its
+	 * connection and last seen times from the history, as if it had never been
+	 * evicted.
+	 *
+	 * @param mac the MAC address the device is registered under
 	 */
-	public static Map<String, String> loadKnownPeers() {
-		ConfigManager configManager = new ConfigManager();
-		String knownDevicesPath = configManager.getKnownDevicesFilePath();
-		Map<String, String> knownPeers = new HashMap<>();
-		File file = new File(knownDevicesPath);
-		if (!file.exists())
-			return knownPeers; // Return empty map instead of null
-
-		try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-			String line;
-			while ((line = reader.readLine()) != null) {
-				String[] parts = line.split(Pattern.quote("||"));
-				if (parts.length == 2) {
-					String mac = Device.formatMacAddress(parts[0].trim());
-					String name = parts[1].trim();
-					knownPeers.put(mac, name);
-				}
+	protected Device createDevice(long mac, InetAddress ipAddress) {
+		String macAddress = AddressUtils.formatMac(mac);
+		Device device = new Device(ipAddress, macAddress, this);
+		device.setCustomName(KnownDevicesStore.getDefault().getName(macAddress));
+		rehydrate(device, mac);
+		return device;
+	}
+
+	/**
+	 * Restores the times of a device seen earlier since the network started
+	 * tracking its devices, from the sessions of the history.
+	 */
+	private void rehydrate(Device device, long mac) {
+		DeviceHistoryStore history = getHistory();
+		if (history == null)
+			return;
+
+		long trackedSince = getTrackedSince();
+		DeviceHistoryStore.Session first = history.getFirstSession(mac, trackedSince);
+		if (first == null)
+			return;
+		DeviceHistoryStore.Session last = history.getLastSession(mac);
+		device.setConnectionTime(DeviceRegistry.toLocalDateTime(Math.max(first.getStart(), trackedSince)));
+		device.setLastSeen(DeviceRegistry.toLocalDateTime(last.isOpen() ? last.getStart() : last.getEnd()));
+	}
+
+	/**
+	 * Looks up the hostnames of the devices added by an update, and again those
+	 * that could not be resolved once the resolver's negative cache entry for
+	 * their address has expired. The names are published with a second delta
+	 * once all the lookups are done. Called by the update, holding the lock.
+	 *
+	 * @param newDevices the devices added by the update
+	 */
+	protected void resolveHostnames(List<Device> newDevices) {
+		List<CompletableFuture<Void>> lookups = new ArrayList<>();
+		for (Device device : newDevices) {
+			if (device.getHostname() == null && device.getIpAddress() != null)
+				lookups.add(resolveHostname(device));
+		}
+
+		HostnameResolver resolver = HostnameResolver.getDefault();
+		for (Device device : unresolvedHostnames) {
+			InetAddress ipAddress = device.getIpAddress();
+			if (ipAddress == null || !knownDevices.contains(device)) {
+				unresolvedHostnames.remove(device);
+			} else if (!resolver.isCached(ipAddress)) {
+				lookups.add(resolveHostname(device));
 			}
-		} catch (IOException e) {
-			e.printStackTrace();
-			Logger.logError("Error loading known peers: ", e);
 		}
-		return knownPeers;
+
+		if (!lookups.isEmpty())
+			CompletableFuture.allOf(lookups.toArray(new CompletableFuture<?>[0])).thenRun(this::publishChanges);
 	}
 
-	// Recognise client by MAC;
-	public static String recognizeClient(String mac) throws IOException {
-		Map<String, String> knownPeers = loadKnownPeers();
-		if (knownPeers.containsKey(mac)) {
-			return knownPeers.get(mac);
+	/**
+	 * Looks up the hostname of a device with the {@link HostnameResolver}. A
+	 * device whose name cannot be resolved is shown with its IP address and
+	 * retried by the next {@link #resolveHostnames(List)}.
+	 */
+	private CompletableFuture<Void> resolveHostname(Device device) {
+		long mac = AddressUtils.parseMac(device.getMacAddress());
+		InetAddress ipAddress = device.getIpAddress();
+		return HostnameResolver.getDefault().resolve(ipAddress).thenAccept(hostName -> {
+			if (hostName != null) {
+				setHostname(mac, hostName);
+				onHostnameResolved(mac, hostName);
+				unresolvedHostnames.remove(device);
+			} else {
+				synchronized (this) {
+					int slot = registry.slotOf(mac);
+					if (slot >= 0 && registry.getHostname(slot) == null)
+						registry.setHostname(slot, ipAddress.getHostAddress());
+				}
+				unresolvedHostnames.add(device);
+			}
+		});
+	}
+
+	/**
+	 * Called on the resolver's thread when the hostname of a known device was
+	 * resolved. Does nothing by default.
+	 *
+	 * @param mac the MAC address the device is registered under
+	 */
+	protected void onHostnameResolved(long mac, String hostname) {
+
+	}
+
+	/**
+	 * Rechecks and updates the custom names of known devices from the
+	 * {@link KnownDevicesStore}, if the known devices changed since the last
+	 * check. Called by the update, holding the lock.
+	 *
+	 * @return {@code true} if any device's custom name was changed, {@code false} otherwise.
+	 */
+	protected boolean recheckCustomNames() {
+		KnownDevicesStore store = KnownDevicesStore.getDefault();
+		long version = store.getVersion();
+		if (version == checkedNamesVersion) {
+			return false;
 		}
+		checkedNamesVersion = version;
 
-		return null;
+		boolean changed = false;
+		for (int slot = 0; slot < registry.size(); slot++) {
+			String customName = store.getName(AddressUtils.formatMac(registry.getMac(slot)));
+			if (customName != null && registry.setCustomName(slot, customName))
+				changed = true;
+		}
+		return changed;
+	}
+
+	/**
+	 * @return the known devices of the {@link KnownDevicesStore}, by MAC address.
+	 *         The file is only read when it changed.
+	 */
+	public static Map<String, String> loadKnownPeers() {
+		return KnownDevicesStore.getDefault().getAll();
+	}
+
+	// Recognise client by MAC, from the in-memory index of the known devices
+	public static String recognizeClient(String mac) throws IOException {
+		return KnownDevicesStore.getDefault().getName(mac);
 	}
 
 	/**
@@ -111,7 +300,7 @@ public class Network {
 	 * @param listener the listener to register.
 	 */
 	public void addNetworkUpdateListener(NetworkUpdateListener listener) {
-		listeners.add(listener);
+		addNetworkDeltaListener(listener);
 	}
 
 	/**
@@ -120,17 +309,142 @@ public class Network {
 	 * @param listener the listener to remove.
 	 */
 	public void removeNetworkUpdateListener(NetworkUpdateListener listener) {
-		listeners.remove(listener);
+		removeNetworkDeltaListener(listener);
+	}
+
+	/**
+	 * Registers a listener of the incremental changes of the known devices, with
+	 * the overflow policy and queue capacity of the {@link ConfigManager}.
+	 * Listeners are called on their own thread, see {@link NetworkEventBus}.
+	 *
+	 * @param listener the listener to register.
+	 */
+	public void addNetworkDeltaListener(NetworkDeltaListener listener) {
+		ConfigManager config = new ConfigManager();
+		addNetworkDeltaListener(listener, config.getEventOverflowPolicy(), config.getEventQueueCapacity());
 	}
 
 	/**
-	 * Notifies all registered listeners with the current known devices.
+	 * Registers a listener of the incremental changes of the known devices.
+	 *
+	 * @param policy   what to do when the listener falls behind
+	 * @param capacity the number of deltas that may wait for the listener
+	 * @return the subscription, giving access to the listener's lag and drops
+	 */
+	public NetworkEventBus.Subscription addNetworkDeltaListener(NetworkDeltaListener listener,
+			NetworkEventBus.OverflowPolicy policy, int capacity) {
+		return eventBus.subscribe(listener, policy, capacity);
+	}
+
+	public void removeNetworkDeltaListener(NetworkDeltaListener listener) {
+		eventBus.unsubscribe(listener);
+	}
+
+	public NetworkEventBus getEventBus() {
+		return eventBus;
+	}
+
+	/**
+	 * Stops the listener workers of the network once they handled the deltas
+	 * already published, or after a second. Must be called when the network is
+	 * dropped, the workers would wait for deltas forever otherwise.
+	 */
+	public void close() {
+		try {
+			eventBus.awaitIdle(1000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		eventBus.close();
+	}
+
+	/**
+	 * Sets the hostname of a known device. May be called from any thread, the
+	 * change is published with the next delta.
+	 *
+	 * @param mac the MAC address of the device, see {@link AddressUtils}
+	 * @return {@code true} if the device is known and its hostname changed
+	 */
+	public synchronized boolean setHostname(long mac, String hostname) {
+		int slot = registry.slotOf(mac);
+		return slot >= 0 && registry.setHostname(slot, hostname);
+	}
+
+	/**
+	 * Sets the custom name of a known device. May be called from any thread, the
+	 * change is published with the next delta.
+	 *
+	 * @param mac the MAC address of the device, see {@link AddressUtils}
+	 * @return {@code true} if the device is known and its custom name changed
+	 */
+	public synchronized boolean setCustomName(long mac, String customName) {
+		int slot = registry.slotOf(mac);
+		return slot >= 0 && registry.setCustomName(slot, customName);
+	}
+
+	/**
+	 * Publishes the changes recorded since the previous delta to all registered
+	 * listeners, if there are any.
+	 *
+	 * @return {@code true} if a delta was published
+	 */
+	public boolean publishChanges() {
+		return publish(false);
+	}
+
+	/**
+	 * Notifies all registered listeners with the current known devices. Kept for
+	 * callers of the full-set API: the listeners receive a delta with the changes
+	 * recorded so far, even if there are none.
 	 *
 	 * @param devices the set of known devices to pass to listeners.
 	 */
 	public void notifyListeners(Set<Device> devices) {
-		for (NetworkUpdateListener listener : listeners) {
-			listener.onNetworkUpdated(devices);
+		publish(true);
+	}
+
+	/**
+	 * Drains the recorded changes, builds the next snapshot from the registry
+	 * and swaps it in. Holding the network's lock keeps the registry still while
+	 * the snapshot is built and queues the deltas in version order.
+	 *
+	 * The deltas are handed to the event bus outside of the lock, so a listener
+	 * blocking its publisher never holds up the other users of the network.
+	 * Only one thread hands them over at a time, in order; a thread publishing
+	 * meanwhile leaves its delta to that thread and returns at once.
+	 */
+	private boolean publish(boolean force) {
+		synchronized (this) {
+			List<NetworkDelta.Change> changes = registry.drainChanges();
+			if (changes.isEmpty() && !force)
+				return false;
+
+			DeviceSnapshot previous = snapshot;
+			DeviceSnapshot next = registry.buildSnapshot(previous.getVersion() + 1);
+			snapshot = next;
+			outbox.addLast(new NetworkDelta(changes, next, previous, System.currentTimeMillis()));
+			if (dispatching)
+				return true;
+			dispatching = true;
+		}
+
+		while (true) {
+			NetworkDelta delta;
+			synchronized (this) {
+				delta = outbox.pollFirst();
+				if (delta == null) {
+					dispatching = false;
+					return true;
+				}
+			}
+			try {
+				eventBus.publish(delta);
+			} catch (RuntimeException e) {
+				synchronized (this) {
+					dispatching = false;
+				}
+				throw e;
+			}
 		}
 	}
 
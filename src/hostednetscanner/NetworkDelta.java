@@ -0,0 +1,262 @@
+package hostednetscanner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The changes of a {@link Network}'s known devices since the previous delta,
+ * delivered to {@link NetworkDeltaListener}s.
+ *
+ * Each changed device appears once, with the kinds of change it went through
+ * combined as flags. Deltas carry a version that grows by one with every
+ * delta published by the network, so a listener can tell whether it missed
+ * one.
+ *
+ * A delta also carries the immutable {@link DeviceSnapshot} of the same
+ * version, so listeners running on other threads can read the state of every
+ * device without locking the network or copying its devices, and the time it
+ * was published, so they can date the changes however late they receive them.
+ */
+public class NetworkDelta {
+	public static final int ADDED = 1;
+	public static final int REMOVED = 1 << 1;
+	public static final int STATUS_CHANGED = 1 << 2;
+	public static final int IP_CHANGED = 1 << 3;
+	public static final int NAME_CHANGED = 1 << 4;
+
+	/**
+	 * The MAC address of a device and what changed about it.
+	 */
+	public static final class Change {
+		private final long mac;
+		private final int flags;
+		private final DeviceRecord record;
+
+		public Change(long mac, int flags) {
+			this(mac, flags, null);
+		}
+
+		public Change(long mac, int flags, DeviceRecord record) {
+			this.mac = mac;
+			this.flags = flags;
+			this.record = record;
+		}
+
+		/**
+		 * @return the MAC address encoded as a long, see {@link AddressUtils}
+		 */
+		public long getMac() {
+			return mac;
+		}
+
+		/**
+		 * @return the MAC address as known to the record, or formatted by
+		 *         {@link AddressUtils} for changes without a record
+		 */
+		public String getMacAddress() {
+			return record != null ? record.getMacAddress() : AddressUtils.formatMac(mac);
+		}
+
+		/**
+		 * @return the state of the device in the delta's snapshot, or in the
+		 *         previous snapshot for removed devices. May be null for changes
+		 *         not attached to a delta yet.
+		 */
+		public DeviceRecord getRecord() {
+			return record;
+		}
+
+		public int getFlags() {
+			return flags;
+		}
+
+		public boolean is(int flag) {
+			return (flags & flag) != 0;
+		}
+
+		@Override
+		public String toString() {
+			return getMacAddress() + "=" + describe(flags);
+		}
+	}
+
+	private final long version;
+	private final long timestamp;
+	private final List<Change> changes;
+	private final DeviceSnapshot snapshot;
+
+	/**
+	 * @param changes   the drained changes, attached to their records
+	 * @param snapshot  the snapshot after the changes, of the same version
+	 * @param previous  the snapshot before the changes, where the records of the
+	 *                  removed devices are found
+	 * @param timestamp the time the changes were published, in epoch
+	 *                  milliseconds
+	 */
+	public NetworkDelta(List<Change> changes, DeviceSnapshot snapshot, DeviceSnapshot previous, long timestamp) {
+		this(attach(changes, snapshot, previous), snapshot, timestamp);
+	}
+
+	private NetworkDelta(List<Change> attached, DeviceSnapshot snapshot, long timestamp) {
+		this.version = snapshot.getVersion();
+		this.timestamp = timestamp;
+		this.changes = Collections.unmodifiableList(attached);
+		this.snapshot = snapshot;
+	}
+
+	private static List<Change> attach(List<Change> changes, DeviceSnapshot snapshot, DeviceSnapshot previous) {
+		List<Change> attached = new ArrayList<>(changes.size());
+		for (Change change : changes) {
+			DeviceSnapshot source = change.is(REMOVED) ? previous : snapshot;
+			attached.add(new Change(change.mac, change.flags, source.find(change.mac)));
+		}
+		return attached;
+	}
+
+	/**
+	 * Merges two consecutive deltas into one, as if the changes of both had
+	 * been published at once. The result has the version, snapshot and time of
+	 * the later delta.
+	 */
+	public static NetworkDelta coalesce(NetworkDelta earlier, NetworkDelta later) {
+		Map<Long, Change> merged = new LinkedHashMap<>();
+		for (Change change : earlier.changes) {
+			merged.put(change.mac, change);
+		}
+		for (Change change : later.changes) {
+			Change previous = merged.get(change.mac);
+			if (previous == null) {
+				merged.put(change.mac, change);
+				continue;
+			}
+
+			int flags = mergeFlags(previous.flags, change.flags);
+			if (flags == 0) {
+				merged.remove(change.mac);
+			} else if ((flags & REMOVED) != 0) {
+				merged.put(change.mac,
+						new Change(change.mac, flags, previous.is(REMOVED) ? previous.record : change.record));
+			} else {
+				merged.put(change.mac, new Change(change.mac, flags, later.snapshot.find(change.mac)));
+			}
+		}
+
+		// Devices only changed by the earlier delta may have changed state since
+		List<Change> changes = new ArrayList<>(merged.size());
+		for (Change change : merged.values()) {
+			if (!change.is(REMOVED) && change.record != null) {
+				DeviceRecord current = later.snapshot.find(change.record.getMac());
+				if (current != change.record)
+					change = new Change(change.mac, change.flags, current);
+			}
+			changes.add(change);
+		}
+		return new NetworkDelta(changes, later.snapshot, later.timestamp);
+	}
+
+	/**
+	 * Combines the flags of two successive changes of one device. A device
+	 * added then removed is forgotten, one removed then added again is
+	 * reported as updated.
+	 *
+	 * @return the combined flags, 0 if the device must be forgotten
+	 */
+	static int mergeFlags(int previous, int flags) {
+		int merged = previous | flags;
+		if ((merged & ADDED) != 0 && (merged & REMOVED) != 0) {
+			if ((previous & ADDED) != 0)
+				return 0;
+			return STATUS_CHANGED | IP_CHANGED | NAME_CHANGED;
+		}
+		return merged;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return the time the delta was published by the network, in epoch
+	 *         milliseconds, right after the scan that observed its changes
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * @return every change of this delta, in the order the devices first changed
+	 */
+	public List<Change> getChanges() {
+		return changes;
+	}
+
+	public boolean isEmpty() {
+		return changes.isEmpty();
+	}
+
+	/**
+	 * @return the records of the devices added since the previous delta
+	 */
+	public List<DeviceRecord> getAdded() {
+		return select(ADDED, 0);
+	}
+
+	/**
+	 * @return the last records of the devices removed since the previous delta
+	 */
+	public List<DeviceRecord> getRemoved() {
+		return select(REMOVED, 0);
+	}
+
+	/**
+	 * @return the records of the devices that were known before and still are,
+	 *         but whose status, IP or name changed
+	 */
+	public List<DeviceRecord> getUpdated() {
+		return select(STATUS_CHANGED | IP_CHANGED | NAME_CHANGED, ADDED | REMOVED);
+	}
+
+	/**
+	 * @return the immutable state of all the known devices after this delta
+	 */
+	public DeviceSnapshot getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * @return the records of all the known devices of the network after this
+	 *         delta, as an unmodifiable list
+	 */
+	public List<DeviceRecord> getDevices() {
+		return snapshot.getRecords();
+	}
+
+	private List<DeviceRecord> select(int any, int none) {
+		List<DeviceRecord> selected = new ArrayList<>();
+		for (Change change : changes) {
+			if ((change.flags & any) != 0 && (change.flags & none) == 0 && change.record != null) {
+				selected.add(change.record);
+			}
+		}
+		return selected;
+	}
+
+	static String describe(int flags) {
+		StringBuilder sb = new StringBuilder();
+		String[] names = { "added", "removed", "status", "ip", "name" };
+		for (int i = 0; i < names.length; i++) {
+			if ((flags & (1 << i)) != 0) {
+				sb.append(sb.length() > 0 ? "|" : "").append(names[i]);
+			}
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public String toString() {
+		return "NetworkDelta[version=" + version + ", changes=" + changes + "]";
+	}
+}
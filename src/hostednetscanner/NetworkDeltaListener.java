@@ -0,0 +1,10 @@
+package hostednetscanner;
+
+/**
+ * Receives the incremental changes of a {@link Network}'s known devices.
+ *
+ * @see NetworkUpdateListener for listeners that want the full device set
+ */
+public interface NetworkDeltaListener {
+    void onNetworkDelta(NetworkDelta delta);
+}
@@ -0,0 +1,452 @@
+package hostednetscanner;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Delivers the {@link NetworkDelta}s of a {@link Network} to its listeners
+ * asynchronously, so that a slow listener (file writes, audio) never delays
+ * the scanner thread that publishes them.
+ *
+ * Each subscriber has its own bounded queue and worker thread, and receives
+ * the deltas in the order they were published. When a queue is full the
+ * subscriber's {@link OverflowPolicy} decides what happens to the new delta.
+ * Lag and drop counters are kept per subscriber, see {@link Subscription}, and
+ * the time spent in each listener is recorded in the {@link ScanMetrics}.
+ *
+ * The workers are {@link IOExecutor} threads, virtual ones on Java 21 and
+ * later. Queues are guarded by a {@link ReentrantLock} rather than a monitor,
+ * so that an idle worker or a blocked publisher parks without pinning a
+ * carrier thread.
+ */
+public class NetworkEventBus {
+	public static final int DEFAULT_CAPACITY = 16;
+
+	/**
+	 * What to do with a delta published while a subscriber's queue is full.
+	 */
+	public enum OverflowPolicy {
+		/**
+		 * Merge the delta into the last queued one, with
+		 * {@link NetworkDelta#coalesce(NetworkDelta, NetworkDelta)}. No change
+		 * is lost, the listener only sees fewer, larger deltas.
+		 */
+		COALESCE_LATEST,
+		/**
+		 * Discard the oldest queued delta to make room for the new one.
+		 */
+		DROP_OLDEST,
+		/**
+		 * Block the publisher until the subscriber catches up.
+		 */
+		BLOCK;
+
+		/**
+		 * @return the policy of the given name, ignoring case, or the default
+		 *         one if the name is unknown
+		 */
+		public static OverflowPolicy parse(String name, OverflowPolicy defaultPolicy) {
+			for (OverflowPolicy policy : values()) {
+				if (policy.name().equalsIgnoreCase(name))
+					return policy;
+			}
+			return defaultPolicy;
+		}
+	}
+
+	private final String name;
+	private final Map<NetworkDeltaListener, Subscription> subscriptions = new ConcurrentHashMap<>();
+	private volatile long publishedVersion;
+
+	/**
+	 * @param name used to name the worker threads
+	 */
+	public NetworkEventBus(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Subscribes a listener, replacing its previous subscription if any.
+	 *
+	 * @param capacity the number of deltas that may wait in the queue
+	 * @return the subscription, giving access to its metrics
+	 */
+	public Subscription subscribe(NetworkDeltaListener listener, OverflowPolicy policy, int capacity) {
+		Subscription subscription = new Subscription(listener, policy, Math.max(capacity, 1));
+		Subscription previous = subscriptions.put(listener, subscription);
+		if (previous != null) {
+			previous.close();
+		}
+		subscription.worker.start();
+		return subscription;
+	}
+
+	/**
+	 * Unsubscribes a listener. Deltas still queued for it are discarded.
+	 *
+	 * @return {@code true} if the listener was subscribed
+	 */
+	public boolean unsubscribe(NetworkDeltaListener listener) {
+		Subscription subscription = subscriptions.remove(listener);
+		if (subscription == null)
+			return false;
+		subscription.close();
+		return true;
+	}
+
+	public Subscription getSubscription(NetworkDeltaListener listener) {
+		return subscriptions.get(listener);
+	}
+
+	public List<Subscription> getSubscriptions() {
+		return new ArrayList<>(subscriptions.values());
+	}
+
+	/**
+	 * Queues a delta for every subscriber. Callers must publish deltas in
+	 * version order, from one thread at a time.
+	 */
+	public void publish(NetworkDelta delta) {
+		publishedVersion = delta.getVersion();
+		for (Subscription subscription : subscriptions.values()) {
+			subscription.offer(delta);
+		}
+	}
+
+	/**
+	 * Waits until every subscriber has handled the deltas published so far.
+	 *
+	 * @return {@code false} if the timeout elapsed first
+	 */
+	public boolean awaitIdle(long timeoutMs) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+		for (Subscription subscription : subscriptions.values()) {
+			if (!subscription.awaitIdle(deadline))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Unsubscribes every listener and stops the workers.
+	 */
+	public void close() {
+		for (NetworkDeltaListener listener : subscriptions.keySet()) {
+			unsubscribe(listener);
+		}
+	}
+
+	/**
+	 * A listener's queue and worker, with its delivery metrics.
+	 */
+	public final class Subscription {
+		private final NetworkDeltaListener listener;
+		private final OverflowPolicy policy;
+		private final int capacity;
+		private final ArrayDeque<Pending> queue = new ArrayDeque<>();
+		private final Thread worker;
+		private final ScanMetrics.LatencyHistogram dispatchLatency;
+		private final ReentrantLock lock = new ReentrantLock();
+		// Signalled when a delta is queued or the subscription closed
+		private final Condition queued = lock.newCondition();
+		// Signalled when the worker takes a delta or becomes idle
+		private final Condition taken = lock.newCondition();
+		// Guarded by lock
+		private boolean closed;
+		private boolean delivering;
+
+		// Metrics, guarded by lock
+		private long delivered;
+		private long dropped;
+		private long coalesced;
+		private long failures;
+		private long blockedNanos;
+		private long lastDeliveredVersion;
+		private long lastLagNanos;
+		private long maxLagNanos;
+
+		private Subscription(NetworkDeltaListener listener, OverflowPolicy policy, int capacity) {
+			this.listener = listener;
+			this.policy = policy;
+			this.capacity = capacity;
+			this.lastDeliveredVersion = publishedVersion;
+			this.worker = IOExecutor.newThread(name + "-" + listener.getClass().getSimpleName(), this::run);
+			this.dispatchLatency = ScanMetrics.getDefault().histogram("listener_dispatch_seconds", "listener",
+					listener.getClass().getName(), "Time spent by the network listeners handling a delta.");
+		}
+
+		private void offer(NetworkDelta delta) {
+			lock.lock();
+			try {
+				if (closed)
+					return;
+
+				if (queue.size() >= capacity) {
+					switch (policy) {
+					case COALESCE_LATEST:
+						Pending last = queue.pollLast();
+						queue.addLast(new Pending(NetworkDelta.coalesce(last.delta, delta), last.queuedAt));
+						coalesced++;
+						queued.signal();
+						return;
+					case DROP_OLDEST:
+						queue.pollFirst();
+						dropped++;
+						break;
+					case BLOCK:
+						long start = System.nanoTime();
+						try {
+							while (queue.size() >= capacity && !closed) {
+								taken.await();
+							}
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+							dropped++;
+							return;
+						} finally {
+							blockedNanos += System.nanoTime() - start;
+						}
+						if (closed)
+							return;
+						break;
+					}
+				}
+				queue.addLast(new Pending(delta, System.nanoTime()));
+				queued.signal();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private void run() {
+			while (true) {
+				Pending next;
+				lock.lock();
+				try {
+					delivering = false;
+					taken.signalAll();
+					while (queue.isEmpty() && !closed) {
+						queued.await();
+					}
+					if (closed)
+						return;
+					next = queue.pollFirst();
+					delivering = true;
+					// Wake up a blocked publisher
+					taken.signalAll();
+				} catch (InterruptedException e) {
+					return;
+				} finally {
+					lock.unlock();
+				}
+
+				boolean failed = false;
+				long start = System.nanoTime();
+				try {
+					listener.onNetworkDelta(next.delta);
+				} catch (RuntimeException e) {
+					failed = true;
+					e.printStackTrace();
+					Logger.logError("Error in network listener " + listener.getClass().getName() + ": ", e);
+				}
+				dispatchLatency.recordSince(start);
+
+				lock.lock();
+				try {
+					delivered++;
+					if (failed)
+						failures++;
+					lastDeliveredVersion = next.delta.getVersion();
+					lastLagNanos = System.nanoTime() - next.queuedAt;
+					maxLagNanos = Math.max(maxLagNanos, lastLagNanos);
+				} finally {
+					lock.unlock();
+				}
+			}
+		}
+
+		private boolean awaitIdle(long deadline) throws InterruptedException {
+			lock.lock();
+			try {
+				while (!closed && (delivering || !queue.isEmpty())) {
+					long remaining = deadline - System.nanoTime();
+					if (remaining <= 0)
+						return false;
+					taken.awaitNanos(remaining);
+				}
+				return true;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private void close() {
+			lock.lock();
+			try {
+				closed = true;
+				queue.clear();
+				queued.signalAll();
+				taken.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		public NetworkDeltaListener getListener() {
+			return listener;
+		}
+
+		public OverflowPolicy getPolicy() {
+			return policy;
+		}
+
+		public int getCapacity() {
+			return capacity;
+		}
+
+		/**
+		 * @return the number of deltas waiting in the queue
+		 */
+		public int getQueued() {
+			lock.lock();
+			try {
+				return queue.size();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		/**
+		 * @return how many versions the listener is behind the last published
+		 *         delta
+		 */
+		public long getLagVersions() {
+			lock.lock();
+			try {
+				return Math.max(publishedVersion - lastDeliveredVersion, 0);
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		/**
+		 * @return how long the oldest queued delta has been waiting, 0 if the
+		 *         queue is empty
+		 */
+		public long getLagMs() {
+			lock.lock();
+			try {
+				Pending oldest = queue.peekFirst();
+				return oldest == null ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - oldest.queuedAt);
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		/**
+		 * @return the time between the publication and the end of the delivery
+		 *         of the last delta
+		 */
+		public long getLastDeliveryLagMs() {
+			lock.lock();
+			try {
+				return TimeUnit.NANOSECONDS.toMillis(lastLagNanos);
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		public long getMaxDeliveryLagMs() {
+			lock.lock();
+			try {
+				return TimeUnit.NANOSECONDS.toMillis(maxLagNanos);
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		public long getDelivered() {
+			lock.lock();
+			try {
+				return delivered;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		/**
+		 * @return the number of deltas discarded by {@link OverflowPolicy#DROP_OLDEST}
+		 *         or an interrupted {@link OverflowPolicy#BLOCK}
+		 */
+		public long getDropped() {
+			lock.lock();
+			try {
+				return dropped;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		/**
+		 * @return the number of deltas merged by
+		 *         {@link OverflowPolicy#COALESCE_LATEST}
+		 */
+		public long getCoalesced() {
+			lock.lock();
+			try {
+				return coalesced;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		public long getFailures() {
+			lock.lock();
+			try {
+				return failures;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		/**
+		 * @return the total time publishers spent blocked on this subscriber
+		 */
+		public long getBlockedMs() {
+			lock.lock();
+			try {
+				return TimeUnit.NANOSECONDS.toMillis(blockedNanos);
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		@Override
+		public String toString() {
+			lock.lock();
+			try {
+				return "Subscription[" + listener.getClass().getName() + ", " + policy + ", queued=" + queue.size() + "/"
+						+ capacity + ", lag=" + getLagVersions() + ", delivered=" + delivered + ", dropped=" + dropped
+						+ ", coalesced=" + coalesced + "]";
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	private static final class Pending {
+		final NetworkDelta delta;
+		final long queuedAt;
+
+		Pending(NetworkDelta delta, long queuedAt) {
+			this.delta = delta;
+			this.queuedAt = queuedAt;
+		}
+	}
+}
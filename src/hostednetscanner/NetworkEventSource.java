@@ -0,0 +1,116 @@
+package hostednetscanner;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.function.Supplier;
+
+/**
+ * A source of notifications that the devices of a network may have changed,
+ * used by {@link NetworkMonitor} to scan only when something happened instead
+ * of polling on a fixed period.
+ *
+ * Events only say that a scan is worth running, they carry no device state:
+ * the scan itself still reads the authoritative tables. The source to use is
+ * chosen with the {@code hostednetscanner.events} system property:
+ * {@code auto} (the default), {@code poll} (no source), {@code ip-monitor},
+ * {@code proc} or {@code simulated}.
+ */
+public interface NetworkEventSource extends Closeable {
+
+	enum EventType {
+		/** A neighbor (ARP) table entry was added, removed or changed state. */
+		NEIGHBOR,
+		/**
+		 * A client associated with or left the wireless network, reported by
+		 * {@link IpMonitorEventSource} from {@code iw event}.
+		 */
+		ASSOCIATION
+	}
+
+	/**
+	 * Receives the events of a source. Callbacks are made from the source's own
+	 * thread and must return quickly.
+	 */
+	interface Listener {
+		void onEvent(EventType type);
+
+		/**
+		 * Called once if the source stops delivering events for any other reason
+		 * than being closed.
+		 */
+		void onFailure(Exception cause);
+	}
+
+	/**
+	 * Starts delivering events to the listener.
+	 *
+	 * @throws IOException if the source could not be started, in which case the
+	 *                     caller should fall back to polling
+	 */
+	void start(Listener listener) throws IOException;
+
+	/**
+	 * @return a short name of the source for logs
+	 */
+	String getName();
+
+	/**
+	 * Stops delivering events and releases the resources of the source.
+	 */
+	@Override
+	void close();
+
+	/**
+	 * @return a new source from the factory set with
+	 *         {@link #setDefault(Supplier)}, by default the one best suited to
+	 *         the current platform, or null if none is available and the network
+	 *         has to be polled
+	 */
+	static NetworkEventSource getDefault() {
+		return Holder.factory.get();
+	}
+
+	/**
+	 * Replaces the factory of the sources of new monitors.
+	 *
+	 * @param factory the new factory, must not be null; it may return null for
+	 *                the monitors to poll
+	 */
+	static void setDefault(Supplier<NetworkEventSource> factory) {
+		if (factory == null) {
+			throw new IllegalArgumentException("Event source factory cannot be null");
+		}
+		Holder.factory = factory;
+	}
+
+	class Holder {
+		private static volatile Supplier<NetworkEventSource> factory = Holder::createDefault;
+
+		private Holder() {
+		}
+
+		private static NetworkEventSource createDefault() {
+			String mode = System.getProperty("hostednetscanner.events", "auto");
+			switch (mode) {
+			case "poll":
+				return null;
+			case "ip-monitor":
+				return new IpMonitorEventSource();
+			case "proc":
+				return new ProcNetArpWatchSource();
+			case "simulated":
+				return SimulatedEventSource.getInstance();
+			default:
+				// Replayed scans stay on polling so their timing is reproducible
+				if (ReplayCommandExecutor.isConfigured())
+					return null;
+				if (IpMonitorEventSource.isSupported())
+					return new IpMonitorEventSource();
+				if (Files.isReadable(ProcNetArpSource.PROC_NET_ARP))
+					return new ProcNetArpWatchSource();
+				return null;
+			}
+		}
+	}
+}
@@ -0,0 +1,197 @@
+package hostednetscanner;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps a {@link Network} up to date by running
+ * {@link Network#updateConnectedDevices()} on a single monitor thread.
+ *
+ * When a {@link NetworkEventSource} is available the network is only scanned
+ * after an event, bursts of events being coalesced into one scan, plus a slow
+ * periodic resync in case an event was missed. Without a source, or once the
+ * source fails, the network is polled with the delays of an
+ * {@link AdaptivePollingScheduler}: short after a change, backing off while
+ * nothing changes. Scans never overlap since they all run on the monitor
+ * thread, and the next poll is only scheduled once the previous one is done.
+ * The duration of the scans and the polling overruns are recorded in the
+ * {@link ScanMetrics}.
+ */
+public class NetworkMonitor {
+	public static final long RESYNC_INTERVAL_MS = 60000;
+	private static final long COALESCE_DELAY_MS = 100;
+	private static final ScanMetrics.LatencyHistogram TICK_LATENCY = ScanSnapshot.stageLatency("tick");
+	private static final ScanMetrics.Counter TICK_OVERRUNS = ScanMetrics.getDefault().counter("tick_overruns",
+			"Polling ticks that lasted longer than their interval.");
+
+	private final Network network;
+	private final NetworkEventSource source;
+	private final AdaptivePollingScheduler scheduler;
+	private final ScheduledExecutorService executor;
+	private final AtomicBoolean scanPending = new AtomicBoolean();
+	private final AtomicLong events = new AtomicLong();
+	private final AtomicLong scans = new AtomicLong();
+	private ScheduledFuture<?> periodic;
+	private volatile boolean eventDriven;
+	private volatile boolean stopped;
+
+	/**
+	 * @param network the network to keep up to date
+	 * @param source  the source of change events, or null to poll
+	 */
+	public NetworkMonitor(Network network, NetworkEventSource source) {
+		this(network, source, new AdaptivePollingScheduler(new ConfigManager().getPollingPolicy()));
+	}
+
+	/**
+	 * @param network   the network to keep up to date
+	 * @param source    the source of change events, or null to poll
+	 * @param scheduler the scheduler of the polls, used when there is no event
+	 *                  source or it failed
+	 */
+	public NetworkMonitor(Network network, NetworkEventSource source, AdaptivePollingScheduler scheduler) {
+		this.network = network;
+		this.source = source;
+		this.scheduler = scheduler;
+		// Scans block on process and file I/O, run them on an I/O thread
+		this.executor = Executors.newSingleThreadScheduledExecutor(r -> IOExecutor.newThread("network-monitor", r));
+	}
+
+	/**
+	 * Scans the network once, then starts listening to the event source or
+	 * polling.
+	 */
+	public void start() {
+		executor.execute(this::scan);
+
+		if (source != null) {
+			try {
+				source.start(new NetworkEventSource.Listener() {
+					@Override
+					public void onEvent(NetworkEventSource.EventType type) {
+						events.incrementAndGet();
+						requestScan();
+					}
+
+					@Override
+					public void onFailure(Exception cause) {
+						Logger.logError("Network event source " + source.getName() + " failed, polling instead: ",
+								cause);
+						executor.execute(NetworkMonitor.this::startPolling);
+					}
+				});
+				eventDriven = true;
+				periodic = executor.scheduleWithFixedDelay(this::scan, RESYNC_INTERVAL_MS, RESYNC_INTERVAL_MS,
+						TimeUnit.MILLISECONDS);
+				Logger.logMessage("Monitoring network changes from " + source.getName());
+				return;
+			} catch (IOException e) {
+				Logger.logError("Network event source " + source.getName() + " unavailable, polling instead: ", e);
+			}
+		}
+		executor.execute(this::startPolling);
+	}
+
+	/**
+	 * Asks for a scan as soon as possible. Requests made while a scan is already
+	 * pending are merged into it.
+	 */
+	public void requestScan() {
+		if (!stopped && scanPending.compareAndSet(false, true)) {
+			executor.schedule(() -> {
+				scanPending.set(false);
+				scan();
+			}, COALESCE_DELAY_MS, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private void startPolling() {
+		if (stopped)
+			return;
+
+		eventDriven = false;
+		if (source != null) {
+			source.close();
+		}
+		if (periodic != null) {
+			periodic.cancel(false);
+		}
+		Logger.logMessage("Polling network with " + scheduler.getPolicy());
+		periodic = executor.schedule(this::poll, scheduler.firstDelay(), TimeUnit.MILLISECONDS);
+	}
+
+	private void poll() {
+		if (stopped)
+			return;
+
+		long start = System.nanoTime();
+		boolean detected = scan();
+		long overruns = scheduler.getOverrunCount();
+		long delay = scheduler.nextDelay(detected, System.nanoTime() - start);
+		if (scheduler.getOverrunCount() != overruns) {
+			TICK_OVERRUNS.increment();
+		}
+		if (!stopped && !eventDriven) {
+			periodic = executor.schedule(this::poll, delay, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * @return {@code true} if the scan published a non-empty delta
+	 */
+	private boolean scan() {
+		if (stopped)
+			return false;
+
+		long version = network.getSnapshot().getVersion();
+		long start = System.nanoTime();
+		try {
+			network.updateConnectedDevices();
+		} catch (RuntimeException e) {
+			// Keep monitoring, a failed scan must not cancel the next ones
+			e.printStackTrace();
+			Logger.logError("Error updating connected devices: ", e);
+		}
+		TICK_LATENCY.recordSince(start);
+		scans.incrementAndGet();
+		// Deltas are only published when something changed
+		return network.getSnapshot().getVersion() != version;
+	}
+
+	/**
+	 * @return {@code true} while scans are driven by the event source, false when
+	 *         polling
+	 */
+	public boolean isEventDriven() {
+		return eventDriven;
+	}
+
+	public long getEventCount() {
+		return events.get();
+	}
+
+	public long getScanCount() {
+		return scans.get();
+	}
+
+	/**
+	 * @return the polling scheduler, with the current interval and tick duration
+	 *         metrics
+	 */
+	public AdaptivePollingScheduler getScheduler() {
+		return scheduler;
+	}
+
+	public void stop() {
+		stopped = true;
+		if (source != null) {
+			source.close();
+		}
+		executor.shutdownNow();
+	}
+}
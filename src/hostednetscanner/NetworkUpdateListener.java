@@ -1,6 +1,16 @@
 package hostednetscanner;
-import java.util.Set;
+import java.util.List;
 
-public interface NetworkUpdateListener {
-    void onNetworkUpdated(Set<Device> devices);
+/**
+ * Listener receiving the records of all the known devices on every update. It
+ * adapts the {@link NetworkDeltaListener} API: prefer the latter when the work
+ * can be limited to the devices that changed.
+ */
+public interface NetworkUpdateListener extends NetworkDeltaListener {
+    void onNetworkUpdated(List<DeviceRecord> devices);
+
+    @Override
+    default void onNetworkDelta(NetworkDelta delta) {
+        onNetworkUpdated(delta.getDevices());
+    }
 }
@@ -1,21 +1,35 @@
 package hostednetscanner;
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.net.InetAddress;
-import java.net.UnknownHostException;
 import java.nio.charset.StandardCharsets;
 import java.util.HashSet;
-import java.util.Scanner;
 import java.util.Set;
 
 public class PSDeviceScanner {
 
-	private static Process powerShellProcess;
-	private static BufferedWriter writer;
-	private static BufferedReader reader;
+	private static final String REACHABLE_DEVICES_FUNCTION = "Get-HostedNetNeighbors";
+	private static final long CALL_TIMEOUT_MS = 10000;
+
+	/**
+	 * Writes one tab separated record per neighbor of the hosted network adapter:
+	 * ifIndex, IPAddress, LinkLayerAddress and State, see
+	 * {@link NeighborRecordDecoder}. Entries that are unreachable or still being
+	 * resolved carry no usable address and are left out.
+	 */
+	private static final String REACHABLE_DEVICES_SCRIPT = """
+			try {
+			    $adapter = Get-NetAdapter | Where-Object {$_.Status -eq "Up" -and $_.Name -like "*HostedNetwork*"}
+			    if ($adapter) {
+			        Get-NetNeighbor -AddressFamily IPv4 -LinkLayerAddress "??-??-??-??-??-??" -InterfaceIndex $adapter.ifIndex |
+			            Where-Object {$_.State -ne "Unreachable" -and $_.State -ne "Incomplete"} |
+			            ForEach-Object { "$($_.ifIndex)`t$($_.IPAddress)`t$($_.LinkLayerAddress)`t$($_.State)" }
+			    }
+			}
+			catch {
+			    Write-Error "Error getting connected devices: $_"
+			}
+			""";
+
+	private static CommandExecutor.ShellSession session;
 	private static boolean initialized = false;
 
 	public PSDeviceScanner() throws IOException {
@@ -24,38 +38,16 @@ public class PSDeviceScanner {
 
 	private static synchronized void initialize() throws IOException {
 		if (!initialized) {
-			ProcessBuilder processBuilder = new ProcessBuilder("powershell.exe", "-NoExit", "-Command", "-");
-			processBuilder.redirectErrorStream(true);
-
-			powerShellProcess = processBuilder.start();
-
-			writer = new BufferedWriter(
-					new OutputStreamWriter(powerShellProcess.getOutputStream(), StandardCharsets.UTF_8));
-			reader = new BufferedReader(
-					new InputStreamReader(powerShellProcess.getInputStream(), StandardCharsets.UTF_8));
+			session = CommandExecutor.getDefault().openShell("powershell.exe", "-NoExit", "-Command", "-");
+			// Define the scripts once, later calls only send the function name
+			session.register(REACHABLE_DEVICES_FUNCTION, REACHABLE_DEVICES_SCRIPT);
 			initialized = true;
 		}
 	}
 
 	public String executePowerShellScript(String ps_script) {
 		try {
-			// Write the script to PowerShell's stdin
-			writer.write(ps_script);
-			writer.newLine();
-			writer.flush();
-			writer.write("Write-Output \"EndOfScript\"\n");
-			writer.flush();
-
-			// Read the output from PowerShell's stdout
-			StringBuilder output = new StringBuilder();
-			String line;
-			while ((line = reader.readLine()) != null) {
-				if (line.equals("EndOfScript")) {
-					break;
-				}
-				output.append(line).append(System.lineSeparator());
-			}
-			return output.toString();
+			return session.execute(ps_script);
 		} catch (IOException e) {
 			e.printStackTrace();
 			Logger.logError("Error executing PowerShell script: ", e);
@@ -65,21 +57,7 @@ public class PSDeviceScanner {
 
 	public String executePowerShellCommand(String command) {
 		try {
-			writer.write(command);
-			writer.newLine();
-			writer.flush();
-			writer.write("Write-Output \"EndOfScript\"\n");
-			writer.flush();
-
-			StringBuilder output = new StringBuilder();
-			String line;
-			while ((line = reader.readLine()) != null) {
-				if (line.equals("EndOfScript")) {
-					break;
-				}
-				output.append(line).append(System.lineSeparator());
-			}
-			return output.toString();
+			return session.execute(command);
 		} catch (IOException e) {
 			e.printStackTrace();
 			Logger.logError("Error executing PowerShell command: ", e);
@@ -87,84 +65,34 @@ public class PSDeviceScanner {
 		}
 	}
 
-	public Set<Device> getReachableDevices() throws IOException {
-		String ps_script = """
-				try {
-				    # Get network adapter information
-				    $adapter = Get-NetAdapter | Where-Object {$_.Status -eq "Up" -and $_.Name -like "*HostedNetwork*"}
-
-				    if ($adapter) {
-				        # Get connected devices using Get-NetNeighbor
-				        $devices = Get-NetNeighbor -AddressFamily IPv4 -LinkLayerAddress "??-??-??-??-??-??" -InterfaceIndex $adapter.ifIndex |
-				            Where-Object {$_.State -eq "Reachable"}
-
-				        if ($devices) {
-				            Write-Host "`nConnected Devices:"
-				            Write-Host "-------------------"
-				            foreach ($device in $devices) {
-				                Write-Host "IP Address: $($device.IPAddress)"
-				                Write-Host "MAC Address: $($device.LinkLayerAddress)"
-				                Write-Host "State: $($device.State)"
-				                Write-Host "-------------------"
-				            }
-				        }
-				        else {
-				            Write-Host "No devices currently connected."
-				        }
-				    }
-				    else {
-				        Write-Host "No active WiFi adapter found."
-				    }
-				}
-				catch {
-				    Write-Error "Error getting connected devices: $_"
-				}
-				""";
+	/**
+	 * Runs the reachability script and decodes its records into the given
+	 * handler, in any state but unreachable or incomplete.
+	 */
+	public void readNeighbors(NeighborRecordDecoder.RecordHandler handler) throws IOException {
+		byte[] output = session.invoke(REACHABLE_DEVICES_FUNCTION, CALL_TIMEOUT_MS).getBytes(StandardCharsets.UTF_8);
+		new NeighborRecordDecoder().decode(output, 0, output.length, handler);
+	}
 
+	/**
+	 * @return the neighbors of the hosted network adapter that are reachable, see
+	 *         {@link NeighborState#isReachable()}
+	 */
+	public Set<Device> getReachableDevices() throws IOException {
 		Set<Device> reachableDevices = new HashSet<>();
-
-		// Read the output of the command
-		Scanner reader = new Scanner(executePowerShellScript(ps_script));
-		String line;
-		String ipAddress = null;
-		String macAddress = null;
-
-		while (reader.hasNextLine()) {
-			line = reader.nextLine();
-			if (line.startsWith("IP Address")) {
-				ipAddress = line.split(":\\s+")[1].trim();
-			} else if (line.startsWith("MAC Address")) {
-				macAddress = line.split(":\\s+")[1].trim();
-			}
-
-			if (ipAddress != null && macAddress != null) {
-				try {
-					InetAddress inetAddress = InetAddress.getByName(ipAddress);
-					Device device = new Device(inetAddress, macAddress);
-					reachableDevices.add(device);
-				} catch (UnknownHostException e) {
-					System.err.println("Error: Unknown host - " + ipAddress);
-				}
-				ipAddress = null;
-				macAddress = null;
+		readNeighbors((ifIndex, ipAddress, macAddress, state) -> {
+			if (state.isReachable()) {
+				reachableDevices.add(
+						new Device(AddressUtils.toInetAddress(ipAddress), AddressUtils.formatMac(macAddress)));
 			}
-		}
-
-		reader.close();
-
+		});
 		return reachableDevices;
 	}
 
-	public static void close() {
+	public static synchronized void close() {
 		try {
-			if (writer != null) {
-				writer.close();
-			}
-			if (reader != null) {
-				reader.close();
-			}
-			if (powerShellProcess != null) {
-				powerShellProcess.destroy();
+			if (session != null) {
+				session.close();
 			}
 			initialized = false;
 		} catch (IOException e) {
@@ -0,0 +1,260 @@
+package hostednetscanner;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.function.ToIntFunction;
+
+/**
+ * Linux {@link NeighborSource} reading the kernel ARP table from
+ * {@code /proc/net/arp} without forking any process.
+ *
+ * The file is read through a {@link FileChannel} into a direct
+ * {@link ByteBuffer} that is reused between reads, and parsed in place:
+ *
+ * <pre>
+ * IP address       HW type     Flags       HW address            Mask     Device
+ * 192.168.1.1      0x1         0x2         aa:bb:cc:dd:ee:ff     *        eth0
+ * </pre>
+ *
+ * Entries are grouped by the IPv4 address of their device, resolved per
+ * device name with {@link NetworkInterface}, so they map to the same
+ * per-interface {@link Network} model as the Windows {@code arp -a} output.
+ * The addresses are cached and resolved again once a minute, or every 5 s for
+ * a device that had none yet, so DHCP leases and renumbering are picked up.
+ * Incomplete entries are skipped and permanent ones reported as static.
+ *
+ * Instances are not thread safe.
+ */
+public class ProcNetArpSource implements NeighborSource {
+	public static final Path PROC_NET_ARP = Paths.get("/proc/net/arp");
+
+	// Flags from linux/if_arp.h
+	private static final int ATF_COM = 0x02;
+	private static final int ATF_PERM = 0x04;
+	private static final long RESOLVED_TTL_MS = 60000;
+	private static final long UNRESOLVED_TTL_MS = 5000;
+
+	private static ProcNetArpSource instance;
+
+	private final Path path;
+	private final ToIntFunction<String> interfaceResolver;
+	private final long resolvedTtlMs;
+	private final long unresolvedTtlMs;
+	private ByteBuffer buffer = ByteBuffer.allocateDirect(16 * 1024);
+
+	// Device name -> interface IPv4, resolved on first use and again once expired
+	private byte[][] deviceNames = new byte[0][];
+	private int[] deviceIps = new int[0];
+	private long[] deviceExpiries = new long[0];
+	// The time of the current read
+	private long now;
+
+	public ProcNetArpSource() {
+		this(PROC_NET_ARP);
+	}
+
+	/**
+	 * @param path the file to read, {@code /proc/net/arp} or a fixture copy of it
+	 */
+	public ProcNetArpSource(Path path) {
+		this(path, ProcNetArpSource::resolveInterfaceIp, RESOLVED_TTL_MS, UNRESOLVED_TTL_MS);
+	}
+
+	/**
+	 * @param interfaceResolver resolves a device name to its IPv4 address, 0 if
+	 *                          it has none
+	 * @param resolvedTtlMs     how long a device's address is cached
+	 * @param unresolvedTtlMs   how long a device without address is cached
+	 */
+	ProcNetArpSource(Path path, ToIntFunction<String> interfaceResolver, long resolvedTtlMs, long unresolvedTtlMs) {
+		this.path = path;
+		this.interfaceResolver = interfaceResolver;
+		this.resolvedTtlMs = resolvedTtlMs;
+		this.unresolvedTtlMs = unresolvedTtlMs;
+	}
+
+	static synchronized ProcNetArpSource getInstance() {
+		if (instance == null) {
+			instance = new ProcNetArpSource();
+		}
+		return instance;
+	}
+
+	@Override
+	public boolean spawnsProcess() {
+		return false;
+	}
+
+	@Override
+	public synchronized void read(ARPTableParser.EntryHandler handler) throws IOException {
+		int length = readFile();
+		now = System.currentTimeMillis();
+
+		int lineStart = 0;
+		boolean header = true;
+		for (int i = 0; i < length; i++) {
+			if (buffer.get(i) == '\n') {
+				if (!header) {
+					parseLine(lineStart, i, handler);
+				}
+				header = false;
+				lineStart = i + 1;
+			}
+		}
+		if (!header && lineStart < length) {
+			parseLine(lineStart, length, handler);
+		}
+	}
+
+	/**
+	 * Reads the whole file into the buffer, growing it if needed. procfs files
+	 * report a size of 0, so the file is read until end of stream.
+	 *
+	 * @return the number of bytes read
+	 */
+	private int readFile() throws IOException {
+		buffer.clear();
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			while (channel.read(buffer) != -1) {
+				if (!buffer.hasRemaining()) {
+					ByteBuffer larger = ByteBuffer.allocateDirect(buffer.capacity() * 2);
+					buffer.flip();
+					larger.put(buffer);
+					buffer = larger;
+				}
+			}
+		}
+		return buffer.position();
+	}
+
+	private void parseLine(int start, int end, ARPTableParser.EntryHandler handler) {
+		// IP address
+		int i = skipSpaces(start, end);
+		int tokenEnd = tokenEnd(i, end);
+		long ip = AddressUtils.parseIPv4(buffer, i, tokenEnd - i);
+		if (ip == AddressUtils.INVALID)
+			return;
+
+		// HW type, ignored
+		i = skipSpaces(tokenEnd, end);
+		tokenEnd = tokenEnd(i, end);
+
+		// Flags
+		i = skipSpaces(tokenEnd, end);
+		tokenEnd = tokenEnd(i, end);
+		int flags = parseHex(i, tokenEnd);
+		if ((flags & ATF_COM) == 0)
+			return;
+
+		// HW address
+		i = skipSpaces(tokenEnd, end);
+		tokenEnd = tokenEnd(i, end);
+		long mac = AddressUtils.parseMac(buffer, i, tokenEnd - i);
+		if (mac == AddressUtils.INVALID)
+			return;
+
+		// Mask, ignored
+		i = skipSpaces(tokenEnd, end);
+		tokenEnd = tokenEnd(i, end);
+
+		// Device
+		i = skipSpaces(tokenEnd, end);
+		tokenEnd = tokenEnd(i, end);
+		int interfaceIp = interfaceIp(i, tokenEnd);
+
+		handler.onEntry(interfaceIp, (int) ip, mac, (flags & ATF_PERM) == 0);
+	}
+
+	private int interfaceIp(int start, int end) {
+		int len = end - start;
+		for (int d = 0; d < deviceNames.length; d++) {
+			byte[] name = deviceNames[d];
+			if (name.length != len)
+				continue;
+
+			int k = 0;
+			while (k < len && name[k] == buffer.get(start + k))
+				k++;
+			if (k == len) {
+				if (now > deviceExpiries[d])
+					resolve(d);
+				return deviceIps[d];
+			}
+		}
+
+		byte[] name = new byte[len];
+		buffer.get(start, name);
+		int d = deviceNames.length;
+		deviceNames = Arrays.copyOf(deviceNames, d + 1);
+		deviceNames[d] = name;
+		deviceIps = Arrays.copyOf(deviceIps, d + 1);
+		deviceExpiries = Arrays.copyOf(deviceExpiries, d + 1);
+		resolve(d);
+		return deviceIps[d];
+	}
+
+	private void resolve(int d) {
+		int ip = interfaceResolver.applyAsInt(new String(deviceNames[d], StandardCharsets.US_ASCII));
+		deviceIps[d] = ip;
+		deviceExpiries[d] = now + (ip == 0 ? unresolvedTtlMs : resolvedTtlMs);
+	}
+
+	/**
+	 * @return the first IPv4 address of the named interface, or 0 if it has none
+	 */
+	static int resolveInterfaceIp(String deviceName) {
+		try {
+			NetworkInterface networkInterface = NetworkInterface.getByName(deviceName);
+			if (networkInterface != null) {
+				Enumeration<InetAddress> addresses = networkInterface.getInetAddresses();
+				while (addresses.hasMoreElements()) {
+					InetAddress address = addresses.nextElement();
+					if (address instanceof Inet4Address) {
+						return AddressUtils.toInt(address);
+					}
+				}
+			}
+		} catch (SocketException e) {
+			e.printStackTrace();
+			Logger.logError("Error resolving interface " + deviceName + ": ", e);
+		}
+		return 0;
+	}
+
+	private int parseHex(int start, int end) {
+		int value = 0;
+		int i = start;
+		if (end - i > 2 && buffer.get(i) == '0' && (buffer.get(i + 1) == 'x' || buffer.get(i + 1) == 'X'))
+			i += 2;
+		for (; i < end; i++) {
+			int digit = Character.digit(buffer.get(i), 16);
+			if (digit < 0)
+				return 0;
+			value = (value << 4) | digit;
+		}
+		return value;
+	}
+
+	private int skipSpaces(int i, int end) {
+		while (i < end && (buffer.get(i) == ' ' || buffer.get(i) == '\t'))
+			i++;
+		return i;
+	}
+
+	private int tokenEnd(int i, int end) {
+		while (i < end && buffer.get(i) != ' ' && buffer.get(i) != '\t')
+			i++;
+		return i;
+	}
+}
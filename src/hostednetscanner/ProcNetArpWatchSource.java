@@ -0,0 +1,105 @@
+package hostednetscanner;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Linux {@link NetworkEventSource} watching {@code /proc/net/arp} for changes.
+ *
+ * Files under {@code /proc} do not raise file system notifications, so the
+ * table is re-read on a short period into a reused buffer and hashed, and an
+ * event is raised only when the hash changes. Reading the table costs a few
+ * microseconds and forks nothing, which keeps an idle network close to free.
+ */
+public class ProcNetArpWatchSource implements NetworkEventSource {
+	public static final long DEFAULT_PERIOD_MS = 500;
+
+	private final Path path;
+	private final long periodMs;
+	private ByteBuffer buffer = ByteBuffer.allocate(16 * 1024);
+	private Thread watcher;
+	private volatile boolean closed;
+
+	public ProcNetArpWatchSource() {
+		this(ProcNetArpSource.PROC_NET_ARP, DEFAULT_PERIOD_MS);
+	}
+
+	/**
+	 * @param path     the file to watch, {@code /proc/net/arp} or a fixture copy
+	 * @param periodMs the time between two reads of the file
+	 */
+	public ProcNetArpWatchSource(Path path, long periodMs) {
+		this.path = path;
+		this.periodMs = periodMs;
+	}
+
+	@Override
+	public synchronized void start(Listener listener) throws IOException {
+		long initial = hashTable();
+		watcher = IOExecutor.newThread("proc-net-arp-watch", () -> watch(listener, initial));
+		watcher.start();
+	}
+
+	private void watch(Listener listener, long initial) {
+		long last = initial;
+		while (!closed) {
+			try {
+				Thread.sleep(periodMs);
+				long hash = hashTable();
+				if (hash != last) {
+					last = hash;
+					listener.onEvent(EventType.NEIGHBOR);
+				}
+			} catch (InterruptedException e) {
+				return;
+			} catch (IOException e) {
+				if (!closed) {
+					listener.onFailure(e);
+				}
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @return the 64-bit FNV-1a hash of the file content
+	 */
+	private long hashTable() throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			buffer.clear();
+			// Files under /proc report a size of 0, read until the end of the stream
+			while (channel.read(buffer) > 0) {
+				if (!buffer.hasRemaining()) {
+					ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+					buffer.flip();
+					larger.put(buffer);
+					buffer = larger;
+				}
+			}
+		}
+
+		byte[] content = buffer.array();
+		long hash = 0xCBF29CE484222325L;
+		for (int i = 0; i < buffer.position(); i++) {
+			hash ^= content[i] & 0xFF;
+			hash *= 0x100000001B3L;
+		}
+		return hash;
+	}
+
+	@Override
+	public String getName() {
+		return path.toString();
+	}
+
+	@Override
+	public synchronized void close() {
+		closed = true;
+		if (watcher != null) {
+			watcher.interrupt();
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package hostednetscanner;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * {@link CommandExecutor} backed by real operating system processes.
+ *
+ * The processes spawned and the bytes read from their standard output are
+ * counted per program in the {@link ScanMetrics}.
+ */
+public class ProcessCommandExecutor implements CommandExecutor {
+
+	@Override
+	public CommandResult execute(String command) throws IOException {
+		Process process = Runtime.getRuntime().exec(command);
+
+		StringBuilder output = new StringBuilder();
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(countOutput(command, process)))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				output.append(line).append("\n");
+			}
+		}
+
+		try {
+			return new CommandResult(process.waitFor(), output.toString());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			process.destroy();
+			throw new IOException("Interrupted while waiting for: " + command, e);
+		}
+	}
+
+	@Override
+	public void stream(String command, OutputHandler handler) throws IOException {
+		Process process = Runtime.getRuntime().exec(command);
+
+		try (InputStream in = countOutput(command, process)) {
+			handler.handle(in);
+			// Drain whatever the handler did not consume so the process can exit
+			in.transferTo(OutputStream.nullOutputStream());
+		}
+
+		try {
+			process.waitFor();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			process.destroy();
+			throw new IOException("Interrupted while waiting for: " + command, e);
+		}
+	}
+
+	/**
+	 * Opens a {@link ShellSessionPool} of the given shell. The number of shell
+	 * processes is read from the {@code hostednetscanner.shell.pool} system
+	 * property and defaults to 1.
+	 */
+	@Override
+	public ShellSession openShell(String... command) throws IOException {
+		return new ShellSessionPool(Arrays.asList(command), Integer.getInteger("hostednetscanner.shell.pool", 1));
+	}
+
+	/**
+	 * Counts a spawned process in the {@link ScanMetrics}.
+	 *
+	 * @param command the command line of the process
+	 * @return the standard output of the process, counting the bytes read
+	 */
+	static InputStream countOutput(String command, Process process) {
+		String program = programName(command);
+		ScanMetrics metrics = ScanMetrics.getDefault();
+		metrics.counter("processes_spawned", "program", program, "External processes spawned.").increment();
+		return new CountingInputStream(process.getInputStream(), metrics.counter("pipe_bytes_read", "program",
+				program, "Bytes read from the standard output of external processes."));
+	}
+
+	/**
+	 * @return the name of the executable of a command line, without directory
+	 *         and extension, e.g. {@code netsh}
+	 */
+	static String programName(String command) {
+		String program = command.trim().split("\\s+", 2)[0];
+		program = program.substring(Math.max(program.lastIndexOf('/'), program.lastIndexOf('\\')) + 1);
+		int extension = program.lastIndexOf('.');
+		return (extension > 0 ? program.substring(0, extension) : program).toLowerCase();
+	}
+}
@@ -0,0 +1,166 @@
+package hostednetscanner;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link CommandExecutor} that serves previously recorded command outputs from a
+ * fixture directory instead of spawning processes.
+ *
+ * Each command is mapped to a file named after its normalized command line, see
+ * {@link #fixtureName(String)}: {@code arp -a} is served from {@code arp_a.txt},
+ * {@code ipconfig /all} from {@code ipconfig_all.txt} and so on. Scripts sent to
+ * a shell opened with {@link #openShell(String...)} are served from the fixture
+ * of the shell executable, e.g. {@code powershell.txt}. Registered functions
+ * are served from the fixture of the shell and function name, e.g.
+ * {@code powershell_get_hostednetneighbors.txt}, falling back to the shell's
+ * fixture. Commands without a fixture complete with exit code 1 and no output.
+ *
+ * An artificial latency can be configured to mimic the cost of the real
+ * processes.
+ */
+public class ReplayCommandExecutor implements CommandExecutor {
+	private final Path fixtureDir;
+	private final long latencyMs;
+
+	public ReplayCommandExecutor(Path fixtureDir) {
+		this(fixtureDir, 0);
+	}
+
+	public ReplayCommandExecutor(Path fixtureDir, long latencyMs) {
+		this.fixtureDir = fixtureDir;
+		this.latencyMs = latencyMs;
+	}
+
+	/**
+	 * @return whether the application was started with
+	 *         {@code -Dhostednetscanner.replay=<fixture dir>}, the other defaults
+	 *         (neighbor source, event source, hostname lookup) then match replayed
+	 *         outputs
+	 */
+	static boolean isConfigured() {
+		String replayDir = System.getProperty("hostednetscanner.replay");
+		return replayDir != null && !replayDir.isEmpty();
+	}
+
+	/**
+	 * @return the latency configured with
+	 *         {@code -Dhostednetscanner.replay.latency}, 0 by default
+	 */
+	static long getConfiguredLatencyMs() {
+		return Long.getLong("hostednetscanner.replay.latency", 0L);
+	}
+
+	public Path getFixtureDir() {
+		return fixtureDir;
+	}
+
+	public long getLatencyMs() {
+		return latencyMs;
+	}
+
+	@Override
+	public CommandResult execute(String command) throws IOException {
+		simulateLatency();
+
+		Path fixture = fixtureDir.resolve(fixtureName(command));
+		if (!Files.isRegularFile(fixture)) {
+			return new CommandResult(1, "");
+		}
+		return new CommandResult(0, new String(Files.readAllBytes(fixture), StandardCharsets.UTF_8));
+	}
+
+	@Override
+	public void stream(String command, OutputHandler handler) throws IOException {
+		simulateLatency();
+
+		Path fixture = fixtureDir.resolve(fixtureName(command));
+		if (!Files.isRegularFile(fixture)) {
+			handler.handle(InputStream.nullInputStream());
+			return;
+		}
+		try (InputStream in = Files.newInputStream(fixture)) {
+			handler.handle(in);
+		}
+	}
+
+	@Override
+	public ShellSession openShell(String... command) throws IOException {
+		String shell = Path.of(command[0]).getFileName().toString().replaceFirst("(?i)\\.exe$", "");
+		Path fixture = fixtureDir.resolve(fixtureName(shell));
+
+		return new ShellSession() {
+			private volatile boolean open = true;
+			private final Set<String> functions = ConcurrentHashMap.newKeySet();
+
+			@Override
+			public String execute(String script) throws IOException {
+				return replay(fixture);
+			}
+
+			@Override
+			public void register(String function, String body) {
+				functions.add(function);
+			}
+
+			@Override
+			public String invoke(String function, long timeoutMs) throws IOException {
+				if (!functions.contains(function)) {
+					throw new IllegalArgumentException("Function not registered: " + function);
+				}
+				Path functionFixture = fixtureDir.resolve(fixtureName(shell + " " + function));
+				return replay(Files.isRegularFile(functionFixture) ? functionFixture : fixture);
+			}
+
+			private String replay(Path path) throws IOException {
+				if (!open) {
+					throw new IOException("Shell session is closed");
+				}
+				simulateLatency();
+				if (!Files.isRegularFile(path)) {
+					return "";
+				}
+				return new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+			}
+
+			@Override
+			public boolean isAlive() {
+				return open;
+			}
+
+			@Override
+			public void close() {
+				open = false;
+			}
+		};
+	}
+
+	/**
+	 * Maps a command line to the name of its fixture file: lowercased, with every
+	 * run of non alphanumeric characters replaced by a single underscore.
+	 *
+	 * @param command the command line
+	 * @return the fixture file name, e.g. {@code netsh_wlan_show_hostednetwork.txt}
+	 */
+	public static String fixtureName(String command) {
+		String name = command.toLowerCase().replaceAll("[^a-z0-9]+", "_").replaceAll("^_|_$", "");
+		return name + ".txt";
+	}
+
+	private void simulateLatency() throws IOException {
+		if (latencyMs <= 0)
+			return;
+
+		try {
+			Thread.sleep(latencyMs);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while replaying command", e);
+		}
+	}
+}
@@ -0,0 +1,162 @@
+package hostednetscanner;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Captures every external source needed by one scan cycle exactly once: the
+ * {@code netsh wlan show hostednetwork} client list, the ARP table and the
+ * neighbor table reported by {@link PSDeviceScanner}.
+ *
+ * Lookups made during the cycle (MAC to IP resolution, connected clients, ...)
+ * are answered from the captured outputs, the ARP table being streamed into a
+ * primitive {@link ArpTable} indexed by interface and MAC address, so the number
+ * of processes spawned per tick no longer grows with the number of clients.
+ * The duration of each capture is recorded as a stage of the scan in the
+ * {@link ScanMetrics}.
+ */
+public class ScanSnapshot {
+	private static final Pattern MAC_PATTERN = Pattern.compile("([\\dA-Fa-f:]{17})");
+	private static final ScanMetrics.LatencyHistogram NETSH_LATENCY = stageLatency("netsh");
+	private static final ScanMetrics.LatencyHistogram ARP_LATENCY = stageLatency("arp");
+	private static final ScanMetrics.LatencyHistogram NEIGHBORS_LATENCY = stageLatency("neighbors");
+
+	private final long capturedAt = System.currentTimeMillis();
+	private final String hostedNetworkOutput;
+	private final ArpTable arpTable;
+	private final NeighborTable neighborTable;
+	private final int processSpawns;
+
+	private List<String> clientMacs;
+	private long[] clientMacAddresses;
+
+	public ScanSnapshot(String hostedNetworkOutput, ArpTable arpTable, NeighborTable neighborTable,
+			int processSpawns) {
+		this.hostedNetworkOutput = hostedNetworkOutput;
+		this.arpTable = arpTable != null ? arpTable : new ArpTable(0);
+		this.neighborTable = neighborTable;
+		this.processSpawns = processSpawns;
+	}
+
+	/**
+	 * Runs each external command once and returns the resulting snapshot.
+	 *
+	 * @param withNeighbors whether the PowerShell neighbor table should be
+	 *                      captured as well (it is slow to start up, so the first
+	 *                      scans skip it)
+	 * @return the captured snapshot, never null
+	 */
+	public static ScanSnapshot capture(boolean withNeighbors) {
+		int spawns = 0;
+
+		long start = System.nanoTime();
+		String hostedNetworkOutput = HostedNetwork.queryHostedNetwork();
+		spawns++;
+
+		NETSH_LATENCY.recordSince(start);
+
+		start = System.nanoTime();
+		ArpTable arpTable = new ArpTable();
+		ARPScanner.runARPScan(arpTable);
+		ARP_LATENCY.recordSince(start);
+		if (NeighborSource.getDefault().spawnsProcess()) {
+			spawns++;
+		}
+
+		NeighborTable neighborTable = null;
+		if (withNeighbors) {
+			start = System.nanoTime();
+			try {
+				NeighborTable neighbors = new NeighborTable();
+				new PSDeviceScanner().readNeighbors(neighbors);
+				neighborTable = neighbors;
+			} catch (IOException e) {
+				System.err.println("Error executing PowerShell command: " + e.getMessage());
+			}
+			NEIGHBORS_LATENCY.recordSince(start);
+		}
+
+		return new ScanSnapshot(hostedNetworkOutput, arpTable, neighborTable, spawns);
+	}
+
+	/**
+	 * @return the latency histogram of a stage of the scan, see
+	 *         {@link ScanMetrics}
+	 */
+	static ScanMetrics.LatencyHistogram stageLatency(String stage) {
+		return ScanMetrics.getDefault().histogram("scan_stage_seconds", "stage", stage,
+				"Duration of the stages of a scan.");
+	}
+
+	public long getCapturedAt() {
+		return capturedAt;
+	}
+
+	public String getHostedNetworkOutput() {
+		return hostedNetworkOutput;
+	}
+
+	/**
+	 * @return the dynamic ARP entries of every interface, indexed by interface and
+	 *         MAC address
+	 */
+	public ArpTable getArpTable() {
+		return arpTable;
+	}
+
+	/**
+	 * @return the number of external commands run to build this snapshot
+	 */
+	public int getProcessSpawns() {
+		return processSpawns;
+	}
+
+	/**
+	 * Returns the MAC addresses of the clients listed in the hosted network
+	 * output, formatted with {@link Device#formatMacAddress(String)}.
+	 *
+	 * @return the client MAC addresses in the order netsh reported them
+	 */
+	public synchronized List<String> getClientMacs() {
+		if (clientMacs == null) {
+			List<String> macs = new ArrayList<>();
+			if (hostedNetworkOutput != null) {
+				for (String line : hostedNetworkOutput.split("\n")) {
+					Matcher matcher = MAC_PATTERN.matcher(line);
+					if (matcher.find()) {
+						macs.add(Device.formatMacAddress(matcher.group(1)));
+					}
+				}
+			}
+			clientMacs = Collections.unmodifiableList(macs);
+		}
+		return clientMacs;
+	}
+
+	/**
+	 * @return the client MAC addresses of {@link #getClientMacs()}, encoded as
+	 *         longs (see {@link AddressUtils})
+	 */
+	public synchronized long[] getClientMacAddresses() {
+		if (clientMacAddresses == null) {
+			List<String> macs = getClientMacs();
+			clientMacAddresses = new long[macs.size()];
+			for (int i = 0; i < clientMacAddresses.length; i++) {
+				clientMacAddresses[i] = AddressUtils.parseMac(macs.get(i));
+			}
+		}
+		return clientMacAddresses;
+	}
+
+	/**
+	 * @return the neighbor cache entries of the hosted network adapter with their
+	 *         state, or null if the neighbor table was not captured for this cycle
+	 */
+	public NeighborTable getNeighborTable() {
+		return neighborTable;
+	}
+}
@@ -0,0 +1,321 @@
+package hostednetscanner;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of persistent shell processes (PowerShell on Windows) speaking a framed,
+ * pipelined protocol.
+ *
+ * Scripts are registered once with {@link #register(String, String)} and
+ * defined as functions in every shell of the pool, including shells restarted
+ * later, so each call only sends the function name. Every request is framed by
+ * markers carrying a unique token:
+ *
+ * <pre>
+ * Write-Output "&lt;&lt;BEGIN:token&gt;&gt;"; Function-Name; Write-Output "&lt;&lt;END:token&gt;&gt;"
+ * </pre>
+ *
+ * A reader thread per shell routes the output between the markers to the
+ * request with the matching token, so several callers can write requests to the
+ * same shell without waiting for each other's output, and stray output outside
+ * the markers is ignored.
+ *
+ * Each call has a timeout. A shell that times out is considered wedged and is
+ * restarted, failing its other pending requests. Idle shells are also pinged
+ * periodically and restarted if they do not answer or have died.
+ */
+public class ShellSessionPool implements CommandExecutor.ShellSession {
+	private static final String BEGIN = "<<BEGIN:";
+	private static final String END = "<<END:";
+	private static final String MARKER_SUFFIX = ">>";
+
+	public static final long DEFAULT_TIMEOUT_MS = 15000;
+	private static final long HEALTH_CHECK_PERIOD_MS = 30000;
+	private static final long HEALTH_CHECK_TIMEOUT_MS = 5000;
+
+	private final List<String> command;
+	private final List<Shell> shells = new ArrayList<>();
+	private final Map<String, String> functions = Collections.synchronizedMap(new LinkedHashMap<>());
+	private final AtomicLong tokens = new AtomicLong();
+	private final AtomicLong restarts = new AtomicLong();
+	private final ScheduledExecutorService healthChecker;
+	private volatile boolean closed;
+
+	/**
+	 * Starts the shells of the pool.
+	 *
+	 * @param command the shell executable and its arguments, it must read
+	 *                commands from its standard input
+	 * @param size    the number of shells to keep running
+	 * @throws IOException if a shell could not be started
+	 */
+	public ShellSessionPool(List<String> command, int size) throws IOException {
+		this.command = new ArrayList<>(command);
+		for (int i = 0; i < Math.max(size, 1); i++) {
+			shells.add(new Shell(i));
+		}
+
+		healthChecker = Executors
+				.newSingleThreadScheduledExecutor(r -> IOExecutor.newThread("shell-pool-health", r));
+		healthChecker.scheduleWithFixedDelay(this::checkHealth, HEALTH_CHECK_PERIOD_MS, HEALTH_CHECK_PERIOD_MS,
+				TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public void register(String function, String body) throws IOException {
+		functions.put(function, body);
+		for (Shell shell : shells) {
+			shell.define(function, body);
+		}
+	}
+
+	@Override
+	public String invoke(String function, long timeoutMs) throws IOException {
+		if (!functions.containsKey(function)) {
+			throw new IllegalArgumentException("Function not registered: " + function);
+		}
+		return call(function, timeoutMs);
+	}
+
+	/**
+	 * Runs an ad-hoc script, framed like a function call, with the default
+	 * timeout.
+	 */
+	@Override
+	public String execute(String script) throws IOException {
+		// A blank line closes any multi-line statement before the end marker
+		return call(script + "\n", DEFAULT_TIMEOUT_MS);
+	}
+
+	@Override
+	public boolean isAlive() {
+		if (closed)
+			return false;
+		for (Shell shell : shells) {
+			if (shell.isAlive())
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return the number of shells restarted since the pool was created
+	 */
+	public long getRestarts() {
+		return restarts.get();
+	}
+
+	public int size() {
+		return shells.size();
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		healthChecker.shutdownNow();
+		for (Shell shell : shells) {
+			shell.stop(new IOException("Shell pool closed"));
+		}
+	}
+
+	private String call(String script, long timeoutMs) throws IOException {
+		if (closed) {
+			throw new IOException("Shell pool closed");
+		}
+
+		Shell shell = leastBusy();
+		String token = shell.id + "-" + Long.toString(tokens.incrementAndGet(), 36);
+		CompletableFuture<String> response = shell.send(token, script);
+		try {
+			return response.get(timeoutMs, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			shell.pending.remove(token);
+			restart(shell, "call timed out after " + timeoutMs + " ms");
+			throw new IOException("Shell call timed out after " + timeoutMs + " ms", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			shell.pending.remove(token);
+			throw new IOException("Interrupted while waiting for the shell", e);
+		}
+	}
+
+	private Shell leastBusy() {
+		Shell best = shells.get(0);
+		for (Shell shell : shells) {
+			if (shell.pending.size() < best.pending.size())
+				best = shell;
+		}
+		return best;
+	}
+
+	private void restart(Shell shell, String reason) {
+		if (closed)
+			return;
+
+		Logger.logMessage("Restarting shell " + shell.id + ": " + reason);
+		restarts.incrementAndGet();
+		try {
+			shell.restart();
+		} catch (IOException e) {
+			e.printStackTrace();
+			Logger.logError("Error restarting shell " + shell.id + ": ", e);
+		}
+	}
+
+	private void checkHealth() {
+		for (Shell shell : shells) {
+			if (closed)
+				return;
+
+			if (!shell.isAlive()) {
+				restart(shell, "process died");
+				continue;
+			}
+			if (!shell.pending.isEmpty())
+				continue;
+
+			String token = shell.id + "-ping-" + Long.toString(tokens.incrementAndGet(), 36);
+			try {
+				shell.send(token, "").get(HEALTH_CHECK_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+			} catch (Exception e) {
+				shell.pending.remove(token);
+				restart(shell, "health check failed");
+			}
+		}
+	}
+
+	/**
+	 * One shell process of the pool, with the reader thread routing its output.
+	 */
+	private class Shell {
+		private final int id;
+		private final Map<String, Request> pending = new ConcurrentHashMap<>();
+		private Process process;
+		private BufferedWriter writer;
+
+		Shell(int id) throws IOException {
+			this.id = id;
+			start();
+		}
+
+		private synchronized void start() throws IOException {
+			ProcessBuilder processBuilder = new ProcessBuilder(command);
+			processBuilder.redirectErrorStream(true);
+			process = processBuilder.start();
+			writer = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+
+			Process started = process;
+			IOExecutor.newThread("shell-" + id + "-reader", () -> readOutput(started)).start();
+
+			synchronized (functions) {
+				for (Map.Entry<String, String> function : functions.entrySet()) {
+					define(function.getKey(), function.getValue());
+				}
+			}
+		}
+
+		synchronized void restart() throws IOException {
+			stop(new IOException("Shell restarted"));
+			start();
+		}
+
+		synchronized void stop(IOException reason) {
+			if (process != null) {
+				process.destroyForcibly();
+			}
+			failPending(reason);
+		}
+
+		boolean isAlive() {
+			Process current = process;
+			return current != null && current.isAlive();
+		}
+
+		synchronized void define(String function, String body) throws IOException {
+			// Blank lines would end the definition early when read from stdin
+			writer.write("function " + function + " {\n" + body.replaceAll("(?m)^\\s*\\R", "") + "\n}\n\n");
+			writer.flush();
+		}
+
+		synchronized CompletableFuture<String> send(String token, String script) throws IOException {
+			Request request = new Request();
+			pending.put(token, request);
+			try {
+				writer.write("Write-Output \"" + BEGIN + token + MARKER_SUFFIX + "\"\n");
+				writer.write(script);
+				writer.write("\nWrite-Output \"" + END + token + MARKER_SUFFIX + "\"\n");
+				writer.flush();
+			} catch (IOException e) {
+				pending.remove(token);
+				throw e;
+			}
+			return request.response;
+		}
+
+		private void readOutput(Process source) {
+			try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+					ProcessCommandExecutor.countOutput(command.get(0), source), StandardCharsets.UTF_8))) {
+				Request current = null;
+				String line;
+				while ((line = reader.readLine()) != null) {
+					if (line.startsWith(BEGIN) && line.endsWith(MARKER_SUFFIX)) {
+						current = pending.get(token(line, BEGIN));
+					} else if (line.startsWith(END) && line.endsWith(MARKER_SUFFIX)) {
+						Request done = pending.remove(token(line, END));
+						if (done != null) {
+							done.response.complete(done.output.toString());
+						}
+						current = null;
+					} else if (current != null) {
+						current.output.append(line).append(System.lineSeparator());
+					}
+				}
+			} catch (IOException e) {
+				// The process was stopped, pending requests are failed below
+			}
+
+			if (source == process) {
+				failPending(new IOException("Shell process exited"));
+			}
+		}
+
+		private void failPending(IOException reason) {
+			for (String token : pending.keySet()) {
+				Request request = pending.remove(token);
+				if (request != null) {
+					request.response.completeExceptionally(reason);
+				}
+			}
+		}
+
+		private String token(String line, String prefix) {
+			return line.substring(prefix.length(), line.length() - MARKER_SUFFIX.length());
+		}
+	}
+
+	private static class Request {
+		final StringBuilder output = new StringBuilder();
+		final CompletableFuture<String> response = new CompletableFuture<>();
+	}
+}
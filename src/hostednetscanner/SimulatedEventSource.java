@@ -0,0 +1,58 @@
+package hostednetscanner;
+
+/**
+ * {@link NetworkEventSource} whose events are raised by calling
+ * {@link #fire(EventType)}, to drive a {@link NetworkMonitor} from tests,
+ * benchmarks or replayed fixtures without any operating system support.
+ */
+public class SimulatedEventSource implements NetworkEventSource {
+	private static final SimulatedEventSource instance = new SimulatedEventSource();
+
+	private volatile Listener listener;
+
+	/**
+	 * @return the shared instance returned by
+	 *         {@link NetworkEventSource#getDefault()} when simulated events are
+	 *         selected
+	 */
+	public static SimulatedEventSource getInstance() {
+		return instance;
+	}
+
+	@Override
+	public void start(Listener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Delivers an event to the started listener, if any.
+	 */
+	public void fire(EventType type) {
+		Listener current = listener;
+		if (current != null) {
+			current.onEvent(type);
+		}
+	}
+
+	/**
+	 * Simulates the source breaking down, the monitor should fall back to
+	 * polling.
+	 */
+	public void fail(Exception cause) {
+		Listener current = listener;
+		listener = null;
+		if (current != null) {
+			current.onFailure(cause);
+		}
+	}
+
+	@Override
+	public String getName() {
+		return "simulated";
+	}
+
+	@Override
+	public void close() {
+		listener = null;
+	}
+}
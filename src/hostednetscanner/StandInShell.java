@@ -0,0 +1,119 @@
+package hostednetscanner;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Minimal stand-in for {@code powershell.exe -Command -}, used to exercise and
+ * benchmark {@link ShellSessionPool} where PowerShell is not available.
+ *
+ * <pre>
+ * java hostednetscanner.StandInShell [fixture dir]
+ * </pre>
+ *
+ * It reads statements from its standard input and understands only what the
+ * pool and {@link PSDeviceScanner} send: {@code function Name { ... }}
+ * definitions, {@code Write-Output "text"}, {@code Write-Host "text"} and
+ * {@code Start-Sleep -Milliseconds n}, the latter to simulate slow or wedged
+ * shells. Calling a defined function runs its body, or prints
+ * {@code <fixture dir>/<Name>.txt} if that file exists.
+ */
+public class StandInShell {
+	private static final Pattern FUNCTION = Pattern.compile("^function\\s+([\\w-]+)\\s*\\{\\s*$");
+	private static final Pattern WRITE = Pattern.compile("^Write-(?:Output|Host)\\s+\"(.*)\"\\s*;?$");
+	private static final Pattern SLEEP = Pattern.compile("^Start-Sleep\\s+-Milliseconds\\s+(\\d+)\\s*;?$");
+
+	private final Path fixtureDir;
+	private final PrintStream out;
+	private final Map<String, String> functions = new HashMap<>();
+
+	public StandInShell(Path fixtureDir, PrintStream out) {
+		this.fixtureDir = fixtureDir;
+		this.out = out;
+	}
+
+	public static void main(String[] args) throws IOException {
+		Path fixtureDir = args.length > 0 ? Paths.get(args[0]) : null;
+		PrintStream out = new PrintStream(System.out, false, StandardCharsets.UTF_8);
+		new StandInShell(fixtureDir, out)
+				.run(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)));
+	}
+
+	public void run(BufferedReader in) throws IOException {
+		String line;
+		while ((line = in.readLine()) != null) {
+			Matcher function = FUNCTION.matcher(line.trim());
+			if (function.matches()) {
+				functions.put(function.group(1), readBody(in));
+			} else {
+				evaluate(line);
+			}
+			out.flush();
+		}
+	}
+
+	private String readBody(BufferedReader in) throws IOException {
+		StringBuilder body = new StringBuilder();
+		int depth = 1;
+		String line;
+		while ((line = in.readLine()) != null) {
+			for (int i = 0; i < line.length(); i++) {
+				char c = line.charAt(i);
+				if (c == '{')
+					depth++;
+				else if (c == '}')
+					depth--;
+			}
+			if (depth <= 0)
+				break;
+			body.append(line).append('\n');
+		}
+		return body.toString();
+	}
+
+	private void evaluate(String script) throws IOException {
+		for (String statement : script.split("\n")) {
+			statement = statement.trim();
+			if (statement.isEmpty())
+				continue;
+
+			Matcher write = WRITE.matcher(statement);
+			Matcher sleep = SLEEP.matcher(statement);
+			if (write.matches()) {
+				out.println(write.group(1));
+			} else if (sleep.matches()) {
+				sleep(Long.parseLong(sleep.group(1)));
+			} else if (functions.containsKey(statement)) {
+				call(statement);
+			}
+			// Anything else is a real PowerShell statement and is ignored
+		}
+	}
+
+	private void call(String function) throws IOException {
+		Path fixture = fixtureDir != null ? fixtureDir.resolve(function + ".txt") : null;
+		if (fixture != null && Files.isReadable(fixture)) {
+			out.print(new String(Files.readAllBytes(fixture), StandardCharsets.UTF_8));
+		} else {
+			evaluate(functions.get(function));
+		}
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
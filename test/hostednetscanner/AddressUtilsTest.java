@@ -0,0 +1,57 @@
+package hostednetscanner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that every overload of the parsers agrees with the
+ * {@link CharSequence} one, on a range in the middle of a line.
+ */
+class AddressUtilsTest {
+
+	@Test
+	void macOverloadsAgree() {
+		assertParsesMac(0xAABBCCDDEEFFL, "aa-bb-cc-dd-ee-ff");
+		assertParsesMac(0x020000000002L, "02:00:00:00:00:02");
+		assertParsesMac(AddressUtils.INVALID, "aa-bb-cc-dd-ee-f");
+		assertParsesMac(AddressUtils.INVALID, "aa-bb-cc-dd-ee-fg");
+		assertParsesMac(AddressUtils.INVALID, "aa.bb.cc.dd.ee.ff");
+		assertEquals(AddressUtils.INVALID, AddressUtils.parseMac(null));
+	}
+
+	@Test
+	void ipv4OverloadsAgree() {
+		assertParsesIPv4(0xC0A88902L, "192.168.137.2");
+		assertParsesIPv4(0xFFFFFFFFL, "255.255.255.255");
+		assertParsesIPv4(AddressUtils.INVALID, "256.0.0.1");
+		assertParsesIPv4(AddressUtils.INVALID, "10.0.0");
+		assertParsesIPv4(AddressUtils.INVALID, "10..0.1");
+		assertParsesIPv4(AddressUtils.INVALID, "10.0.0.1.");
+		assertParsesIPv4(AddressUtils.INVALID, "");
+		assertEquals(AddressUtils.INVALID, AddressUtils.parseIPv4(null));
+	}
+
+	private static void assertParsesMac(long expected, String mac) {
+		assertEquals(expected, AddressUtils.parseMac(mac));
+		String line = "  " + mac + "  dynamic";
+		byte[] bytes = line.getBytes(StandardCharsets.US_ASCII);
+		assertEquals(expected, AddressUtils.parseMac(line, 2, mac.length()));
+		assertEquals(expected, AddressUtils.parseMac(bytes, 2, mac.length()));
+		assertEquals(expected, AddressUtils.parseMac(ByteBuffer.allocateDirect(bytes.length).put(bytes), 2,
+				mac.length()));
+	}
+
+	private static void assertParsesIPv4(long expected, String ip) {
+		assertEquals(expected, AddressUtils.parseIPv4(ip));
+		String line = "  " + ip + "  dynamic";
+		byte[] bytes = line.getBytes(StandardCharsets.US_ASCII);
+		assertEquals(expected, AddressUtils.parseIPv4(line, 2, ip.length()));
+		assertEquals(expected, AddressUtils.parseIPv4(bytes, 2, ip.length()));
+		assertEquals(expected, AddressUtils.parseIPv4(ByteBuffer.allocateDirect(bytes.length).put(bytes), 2,
+				ip.length()));
+	}
+}
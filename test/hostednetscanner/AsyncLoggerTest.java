@@ -0,0 +1,58 @@
+package hostednetscanner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class AsyncLoggerTest {
+	@TempDir
+	Path directory;
+
+	private AsyncLogger logger;
+
+	@AfterEach
+	void close() {
+		if (logger != null)
+			logger.close(1000);
+	}
+
+	@Test
+	void writerRecoversOnceTheFileCanBeOpenedAndReportsTheDrops() throws Exception {
+		// A file in place of the log's directory makes opening the log fail
+		Path blocked = directory.resolve("logs");
+		Files.createFile(blocked);
+		logger = new AsyncLogger(blocked.resolve("log.jsonl"), 4, AsyncLogger.DEFAULT_MAX_BYTES,
+				AsyncLogger.DEFAULT_MAX_AGE_MS, AsyncLogger.DEFAULT_MAX_FILES);
+
+		int accepted = 0;
+		for (int i = 0; i < 20; i++) {
+			if (logger.log("INFO", "event " + i, null))
+				accepted++;
+		}
+		assertEquals(4, accepted);
+		assertEquals(16, logger.getDropped());
+		assertFalse(logger.flush(300));
+
+		Files.delete(blocked);
+		assertTrue(logger.flush(5000));
+
+		List<String> lines = Files.readAllLines(blocked.resolve("log.jsonl"), StandardCharsets.UTF_8);
+		assertEquals(5, lines.size());
+		for (int i = 0; i < 4; i++) {
+			assertEquals("event " + i, AsyncLogger.parseJson(lines.get(i)).get("message"));
+		}
+		Map<String, String> report = AsyncLogger.parseJson(lines.get(4));
+		assertEquals("WARN", report.get("level"));
+		assertEquals("16 log events dropped", report.get("message"));
+	}
+}
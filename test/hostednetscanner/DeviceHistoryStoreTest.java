@@ -0,0 +1,67 @@
+package hostednetscanner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DeviceHistoryStoreTest {
+	private static final String MAC_ADDRESS = "02:00:00:00:00:02";
+	private static final long MAC = AddressUtils.parseMac(MAC_ADDRESS);
+	private static final int IP = 0xC0A88902; // 192.168.137.2
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void sessionsLeftOpenAreClosedAtTheLastHeartbeat() throws Exception {
+		// Opened two days ago, in a segment not written since
+		long start = System.currentTimeMillis() - 2 * 24 * DeviceHistoryStore.HOUR_MS;
+		long heartbeat = System.currentTimeMillis() + 60000;
+		DeviceHistoryStore crashed = new DeviceHistoryStore(directory);
+		crashed.update(MAC, IP, true, start);
+		crashed.heartbeat(heartbeat);
+		crashed.flush();
+
+		DeviceHistoryStore recovered = new DeviceHistoryStore(directory);
+		try {
+			DeviceHistoryStore.Session session = recovered.getLastSession(MAC);
+			assertFalse(session.isOpen());
+			assertEquals(start, session.getStart());
+			assertEquals(heartbeat, session.getEnd());
+		} finally {
+			recovered.close();
+			crashed.close();
+		}
+	}
+
+	@Test
+	void sessionsStartWhenTheDeltaWasPublished() throws Exception {
+		Network network = new Network(new Device(null, FixtureGenerator.HOSTED_MAC));
+		DeviceHistoryStore store = new DeviceHistoryStore(directory);
+		AtomicLong published = new AtomicLong();
+		network.addNetworkDeltaListener(delta -> published.set(delta.getTimestamp()),
+				NetworkEventBus.OverflowPolicy.BLOCK, 16);
+		network.addNetworkDeltaListener(store, NetworkEventBus.OverflowPolicy.BLOCK, 16);
+		try {
+			synchronized (network) {
+				network.getRegistry().add(new Device(AddressUtils.toInetAddress(IP), MAC_ADDRESS, network));
+			}
+			network.publishChanges();
+			network.getEventBus().awaitIdle(5000);
+
+			DeviceHistoryStore.Session session = store.getOpenSession(MAC);
+			assertNotNull(session);
+			assertEquals(published.get(), session.getStart());
+			assertEquals(IP, session.getIp());
+		} finally {
+			network.close();
+			store.close();
+		}
+	}
+}
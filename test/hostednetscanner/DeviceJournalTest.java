@@ -0,0 +1,80 @@
+package hostednetscanner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import hostednetscanner.DeviceJournal.EventType;
+
+class DeviceJournalTest {
+	private static final String MAC_ADDRESS = "02:00:00:00:00:02";
+	private static final long MAC = AddressUtils.parseMac(MAC_ADDRESS);
+	private static final int IP = 0xC0A88902; // 192.168.137.2
+
+	@TempDir
+	Path directory;
+
+	private DeviceSnapshot previous = DeviceSnapshot.EMPTY;
+
+	@Test
+	void joinsAndLeavesFollowTheOnlineStatus() throws Exception {
+		DeviceJournal journal = new DeviceJournal(directory, DeviceJournal.Options.DEFAULT);
+		try {
+			publish(journal, NetworkDelta.ADDED, DeviceRegistry.ONLINE);
+			publish(journal, NetworkDelta.STATUS_CHANGED, DeviceRegistry.UNCONFIRMED);
+			publish(journal, NetworkDelta.STATUS_CHANGED, DeviceRegistry.OFFLINE);
+			// A known device coming back joins again
+			publish(journal, NetworkDelta.STATUS_CHANGED, DeviceRegistry.ONLINE);
+			publish(journal, NetworkDelta.IP_CHANGED, DeviceRegistry.ONLINE);
+			// Removed while connected, e.g. the known devices were cleared
+			publish(journal, NetworkDelta.REMOVED, DeviceRegistry.ONLINE);
+			publish(journal, NetworkDelta.ADDED, DeviceRegistry.ONLINE);
+			publish(journal, NetworkDelta.STATUS_CHANGED, DeviceRegistry.OFFLINE);
+			// Evicted long after it left
+			publish(journal, NetworkDelta.REMOVED, DeviceRegistry.OFFLINE);
+			assertTrue(journal.flush(5000));
+		} finally {
+			journal.close();
+		}
+
+		List<EventType> types = new ArrayList<>();
+		DeviceJournal.read(directory, event -> types.add(event.getType()));
+		assertEquals(List.of(EventType.JOIN, EventType.STATUS_CHANGE, EventType.LEAVE, EventType.JOIN,
+				EventType.IP_CHANGE, EventType.LEAVE, EventType.JOIN, EventType.LEAVE, EventType.EVICT), types);
+	}
+
+	@Test
+	void statusChangeBeforeListeningIsALeaveOnlyIfOffline() throws Exception {
+		DeviceJournal journal = new DeviceJournal(directory, DeviceJournal.Options.DEFAULT);
+		try {
+			publish(journal, NetworkDelta.STATUS_CHANGED, DeviceRegistry.ONLINE);
+			publish(journal, NetworkDelta.STATUS_CHANGED, DeviceRegistry.OFFLINE);
+			assertTrue(journal.flush(5000));
+		} finally {
+			journal.close();
+		}
+
+		List<EventType> types = new ArrayList<>();
+		DeviceJournal.read(directory, event -> types.add(event.getType()));
+		assertEquals(List.of(EventType.STATUS_CHANGE, EventType.LEAVE), types);
+	}
+
+	/**
+	 * Hands the journal a delta with one change of the device, which has the
+	 * given status after it, or had it before being removed.
+	 */
+	private void publish(DeviceJournal journal, int flags, byte status) {
+		DeviceRecord[] records = (flags & NetworkDelta.REMOVED) != 0 ? new DeviceRecord[0]
+				: new DeviceRecord[] { new DeviceRecord(MAC, MAC_ADDRESS, IP, null, null, status, 0, 0) };
+		DeviceSnapshot next = new DeviceSnapshot(previous.getVersion() + 1, records);
+		journal.onNetworkDelta(new NetworkDelta(List.of(new NetworkDelta.Change(MAC, flags)), next, previous,
+				next.getVersion()));
+		previous = next;
+	}
+}
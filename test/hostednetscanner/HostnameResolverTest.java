@@ -0,0 +1,102 @@
+package hostednetscanner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class HostnameResolverTest {
+	private static final InetAddress ADDRESS = AddressUtils.toInetAddress(0xC0A88902); // 192.168.137.2
+
+	private final AtomicInteger lookups = new AtomicInteger();
+	private HostnameResolver resolver;
+
+	@AfterEach
+	void shutdown() {
+		resolver.shutdown();
+	}
+
+	@Test
+	void slowLookupTimesOutWithNoName() throws Exception {
+		resolver = new HostnameResolver(counting(400), 2, 16, 50, 60000, 60000);
+
+		long start = System.nanoTime();
+		assertNull(resolver.resolve(ADDRESS).get(5, TimeUnit.SECONDS));
+		assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(400));
+		assertEquals(1, resolver.getTimeoutCount());
+		assertEquals(0, resolver.getFailureCount());
+		assertTrue(resolver.isCached(ADDRESS));
+	}
+
+	@Test
+	void concurrentResolutionsShareOneLookup() throws Exception {
+		resolver = new HostnameResolver(counting(200), 2, 16, 5000, 60000, 60000);
+
+		List<CompletableFuture<String>> results = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			results.add(resolver.resolve(ADDRESS));
+		}
+		for (CompletableFuture<String> result : results) {
+			assertSame(results.get(0), result);
+			assertEquals("client-192-168-137-2.local", result.get(5, TimeUnit.SECONDS));
+		}
+		assertEquals(1, lookups.get());
+		assertEquals(10, resolver.getMissCount());
+		assertEquals(9, resolver.getCoalescedCount());
+
+		// Answered from the cache from now on
+		assertEquals("client-192-168-137-2.local", resolver.resolve(ADDRESS).get(5, TimeUnit.SECONDS));
+		assertEquals(1, resolver.getHitCount());
+		assertEquals(1, lookups.get());
+	}
+
+	@Test
+	void timedOutLookupIsRetriedAfterNegativeTtl() throws Exception {
+		resolver = new HostnameResolver(counting(300), 2, 16, 50, 60000, 500);
+
+		assertNull(resolver.resolve(ADDRESS).get(5, TimeUnit.SECONDS));
+		assertNull(resolver.resolve(ADDRESS).get(5, TimeUnit.SECONDS));
+		assertEquals(1, resolver.getHitCount());
+		assertEquals(1, lookups.get());
+
+		Thread.sleep(600);
+		assertFalse(resolver.isCached(ADDRESS));
+		assertNull(resolver.resolve(ADDRESS).get(5, TimeUnit.SECONDS));
+		assertEquals(2, lookups.get());
+		assertEquals(2, resolver.getTimeoutCount());
+	}
+
+	@Test
+	void cacheIsBoundedToItsMaximumSize() throws Exception {
+		resolver = new HostnameResolver(counting(0), 2, 64, 5000, 60000, 60000, 10);
+
+		int base = 0x0A000001; // 10.0.0.1
+		for (int i = 0; i < 30; i++) {
+			resolver.resolve(AddressUtils.toInetAddress(base + i)).get(5, TimeUnit.SECONDS);
+		}
+		assertTrue(resolver.getCacheSize() <= 10);
+		assertTrue(resolver.getEvictionCount() >= 20);
+	}
+
+	/**
+	 * @return the simulated lookup with the given latency, counting its calls
+	 */
+	private HostnameResolver.Lookup counting(long latencyMs) {
+		HostnameResolver.Lookup simulated = HostnameResolver.simulatedLookup(latencyMs);
+		return address -> {
+			lookups.incrementAndGet();
+			return simulated.lookup(address);
+		};
+	}
+}
@@ -0,0 +1,18 @@
+package hostednetscanner;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class IpMonitorEventSourceTest {
+
+	@Test
+	void onlyStationChangesAreAssociations() {
+		assertTrue(IpMonitorEventSource.isStationEvent("wlan0 (phy #0): new station 02:00:00:00:00:02"));
+		assertTrue(IpMonitorEventSource.isStationEvent("wlan0 (phy #0): del station 02:00:00:00:00:02"));
+		assertFalse(IpMonitorEventSource.isStationEvent("wlan0 (phy #0): scan started"));
+		assertFalse(IpMonitorEventSource.isStationEvent("wlan0 (phy #0): connected to 02:00:00:00:00:01"));
+		assertFalse(IpMonitorEventSource.isStationEvent(""));
+	}
+}
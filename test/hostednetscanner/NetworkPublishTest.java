@@ -0,0 +1,114 @@
+package hostednetscanner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Stalls a {@link NetworkEventBus.OverflowPolicy#BLOCK} listener of the
+ * {@link HostedNetwork} while it is scanned, as a slow disk would.
+ */
+class NetworkPublishTest {
+	@TempDir
+	Path fixtureDir;
+
+	private final CountDownLatch release = new CountDownLatch(1);
+	private CommandExecutor previousExecutor;
+	private NeighborSource previousNeighborSource;
+	private HostnameResolver previousResolver;
+	private HostnameResolver resolver;
+
+	@BeforeEach
+	void installDefaults() {
+		previousExecutor = CommandExecutor.getDefault();
+		previousNeighborSource = NeighborSource.getDefault();
+		previousResolver = HostnameResolver.getDefault();
+		CommandExecutor.setDefault(new ReplayCommandExecutor(fixtureDir));
+		NeighborSource.setDefault(NeighborSource.CommandNeighborSource.INSTANCE);
+		// No name is found during the test, so the scans publish the only deltas
+		resolver = new HostnameResolver(HostnameResolver.simulatedLookup(60000), 2, 16, 60000, 60000, 60000);
+		HostnameResolver.setDefault(resolver);
+	}
+
+	@AfterEach
+	void restoreDefaults() {
+		release.countDown();
+		HostedNetwork.stopNetwork();
+		PSDeviceScanner.close();
+		CommandExecutor.setDefault(previousExecutor);
+		NeighborSource.setDefault(previousNeighborSource);
+		HostnameResolver.setDefault(previousResolver);
+		resolver.shutdown();
+	}
+
+	@Test
+	void stalledBlockingListenerDoesNotHoldTheNetwork() throws Exception {
+		FixtureGenerator.writeFixtures(fixtureDir, 1);
+		HostedNetwork network = HostedNetwork.findHostedNetworkInstance();
+		assertNotNull(network);
+
+		AtomicInteger received = new AtomicInteger();
+		NetworkDeltaListener stalled = delta -> {
+			received.incrementAndGet();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		};
+		NetworkEventBus.Subscription subscription = network.addNetworkDeltaListener(stalled,
+				NetworkEventBus.OverflowPolicy.BLOCK, 1);
+
+		// The listener takes the first delta and stalls
+		network.updateConnectedDevices();
+		await(() -> received.get() == 1);
+
+		// A new client per scan: the second delta fills the queue, the third
+		// blocks the scan thread
+		Thread scanner = IOExecutor.newThread("scanner", () -> {
+			try {
+				for (int clients = 2; clients <= 3; clients++) {
+					FixtureGenerator.writeFixtures(fixtureDir, clients);
+					network.updateConnectedDevices();
+				}
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		scanner.start();
+		await(() -> subscription.getQueued() == 1);
+		Thread.sleep(200);
+		assertTrue(scanner.isAlive(), "The scan should be blocked by the listener");
+
+		long mac = AddressUtils.parseMac(FixtureGenerator.clientMac(0));
+		CompletableFuture<Boolean> renamed = new CompletableFuture<>();
+		IOExecutor.newThread("rename", () -> renamed.complete(network.setCustomName(mac, "Laptop"))).start();
+		assertTrue(renamed.get(2, TimeUnit.SECONDS));
+
+		release.countDown();
+		scanner.join(5000);
+		network.getEventBus().awaitIdle(5000);
+		assertEquals(3, received.get());
+	}
+
+	private static void await(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (!condition.getAsBoolean()) {
+			assertTrue(System.nanoTime() < deadline, "Timed out waiting for the listener");
+			Thread.sleep(10);
+		}
+	}
+}
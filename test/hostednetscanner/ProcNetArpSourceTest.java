@@ -0,0 +1,67 @@
+package hostednetscanner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ProcNetArpSourceTest {
+	private static final int INTERFACE_IP = 0x0A000001; // 10.0.0.1
+	private static final int RENUMBERED_IP = 0x0A000101; // 10.0.1.1
+
+	@TempDir
+	Path directory;
+
+	private Path arp;
+	private final AtomicInteger resolutions = new AtomicInteger();
+
+	@BeforeEach
+	void writeTable() throws IOException {
+		arp = directory.resolve("arp");
+		Files.write(arp, FixtureGenerator.procNetArpOutput(3, "test0").getBytes(StandardCharsets.US_ASCII));
+	}
+
+	@Test
+	void interfaceWithoutAddressIsResolvedAgain() throws Exception {
+		int[] answers = { 0, INTERFACE_IP };
+		ProcNetArpSource source = new ProcNetArpSource(arp,
+				name -> answers[Math.min(resolutions.getAndIncrement(), answers.length - 1)], 60000, 0);
+
+		assertEquals(List.of(0, 0, 0), interfaceIps(source));
+		Thread.sleep(2);
+		assertEquals(List.of(INTERFACE_IP, INTERFACE_IP, INTERFACE_IP), interfaceIps(source));
+		// Cached from now on
+		interfaceIps(source);
+		assertEquals(2, resolutions.get());
+	}
+
+	@Test
+	void renumberedInterfaceIsPickedUpOnceExpired() throws Exception {
+		int[] answers = { INTERFACE_IP, RENUMBERED_IP };
+		ProcNetArpSource cached = new ProcNetArpSource(arp, name -> answers[0], 60000, 0);
+		ProcNetArpSource expiring = new ProcNetArpSource(arp,
+				name -> answers[Math.min(resolutions.getAndIncrement(), answers.length - 1)], 0, 0);
+
+		assertEquals(INTERFACE_IP, (int) interfaceIps(cached).get(0));
+		assertEquals(INTERFACE_IP, (int) interfaceIps(expiring).get(0));
+		answers[0] = RENUMBERED_IP;
+		Thread.sleep(2);
+		assertEquals(INTERFACE_IP, (int) interfaceIps(cached).get(0));
+		assertEquals(RENUMBERED_IP, (int) interfaceIps(expiring).get(0));
+	}
+
+	private static List<Integer> interfaceIps(ProcNetArpSource source) throws IOException {
+		List<Integer> ips = new ArrayList<>();
+		source.read((interfaceIp, ipAddress, macAddress, dynamic) -> ips.add(interfaceIp));
+		return ips;
+	}
+}
@@ -0,0 +1,134 @@
+package hostednetscanner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Runs full scan cycles of the {@link HostedNetwork} against replayed fixtures
+ * and counts the commands that would have spawned a process.
+ */
+class ScanSnapshotTest {
+	private static final int CYCLES = 4;
+
+	@TempDir
+	Path fixtureDir;
+
+	private CommandExecutor previousExecutor;
+	private NeighborSource previousNeighborSource;
+	private HostnameResolver previousResolver;
+	private HostnameResolver resolver;
+
+	@BeforeEach
+	void saveDefaults() {
+		previousExecutor = CommandExecutor.getDefault();
+		previousNeighborSource = NeighborSource.getDefault();
+		// The ARP table is replayed as well
+		NeighborSource.setDefault(NeighborSource.CommandNeighborSource.INSTANCE);
+		previousResolver = HostnameResolver.getDefault();
+		resolver = new HostnameResolver(HostnameResolver.simulatedLookup(0));
+		HostnameResolver.setDefault(resolver);
+	}
+
+	@AfterEach
+	void restoreDefaults() {
+		HostedNetwork.stopNetwork();
+		PSDeviceScanner.close();
+		CommandExecutor.setDefault(previousExecutor);
+		NeighborSource.setDefault(previousNeighborSource);
+		HostnameResolver.setDefault(previousResolver);
+		resolver.shutdown();
+	}
+
+	@Test
+	void processSpawnsPerCycleDoNotGrowWithClients() throws IOException {
+		List<Integer> oneClient = spawnsPerCycle(1);
+		assertEquals(oneClient, spawnsPerCycle(10));
+		assertEquals(oneClient, spawnsPerCycle(40));
+	}
+
+	@Test
+	void snapshotCountsItsOwnSpawns() throws IOException {
+		for (int clients : new int[] { 1, 10, 40 }) {
+			CountingExecutor executor = replay(clients);
+			ScanSnapshot snapshot = ScanSnapshot.capture(false);
+
+			// The BSSID of the hosted network is listed with the clients
+			assertEquals(clients + 1, snapshot.getClientMacs().size());
+			assertEquals(executor.spawns.get(), snapshot.getProcessSpawns());
+		}
+	}
+
+	/**
+	 * Runs a few scan cycles with the given number of clients, the neighbor table
+	 * being captured from the second cycle on.
+	 *
+	 * @return the number of processes spawned by each cycle
+	 */
+	private List<Integer> spawnsPerCycle(int clients) throws IOException {
+		CountingExecutor executor = replay(clients);
+		HostedNetwork network = HostedNetwork.findHostedNetworkInstance();
+		assertNotNull(network);
+
+		List<Integer> spawns = new ArrayList<>();
+		for (int cycle = 0; cycle < CYCLES; cycle++) {
+			executor.spawns.set(0);
+			network.updateConnectedDevices();
+			spawns.add(executor.spawns.get());
+		}
+		// Every client is known, plus the hosted interface itself
+		assertEquals(clients + 1, network.getSnapshot().size());
+
+		HostedNetwork.stopNetwork();
+		PSDeviceScanner.close();
+		return spawns;
+	}
+
+	private CountingExecutor replay(int clients) throws IOException {
+		Path dir = fixtureDir.resolve(Integer.toString(clients));
+		FixtureGenerator.writeFixtures(dir, clients);
+		CountingExecutor executor = new CountingExecutor(dir);
+		CommandExecutor.setDefault(executor);
+		return executor;
+	}
+
+	/**
+	 * Counts the commands and shells that would spawn a process. Scripts run by an
+	 * open shell are not counted.
+	 */
+	private static final class CountingExecutor extends ReplayCommandExecutor {
+		final AtomicInteger spawns = new AtomicInteger();
+
+		CountingExecutor(Path fixtureDir) {
+			super(fixtureDir);
+		}
+
+		@Override
+		public CommandResult execute(String command) throws IOException {
+			spawns.incrementAndGet();
+			return super.execute(command);
+		}
+
+		@Override
+		public void stream(String command, OutputHandler handler) throws IOException {
+			spawns.incrementAndGet();
+			super.stream(command, handler);
+		}
+
+		@Override
+		public ShellSession openShell(String... command) throws IOException {
+			spawns.incrementAndGet();
+			return super.openShell(command);
+		}
+	}
+}
@@ -0,0 +1,132 @@
+package hostednetscanner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs the framed protocol of {@link ShellSessionPool} against
+ * {@link StandInShell} processes.
+ */
+class ShellSessionPoolTest {
+	private static final long STARTUP_TIMEOUT_MS = 30000;
+	private static final String NL = System.lineSeparator();
+
+	private ShellSessionPool pool;
+
+	@AfterEach
+	void close() {
+		if (pool != null)
+			pool.close();
+	}
+
+	@Test
+	void callsOnlyReceiveTheOutputBetweenTheirMarkers() throws IOException {
+		pool = startPool(1);
+		pool.register("Get-Neighbors", "Write-Output \"IP Address: 192.168.137.2\"\n"
+				+ "Write-Output \"State: Reachable\"");
+
+		assertEquals("IP Address: 192.168.137.2" + NL + "State: Reachable" + NL,
+				pool.invoke("Get-Neighbors", STARTUP_TIMEOUT_MS));
+		// Ad-hoc scripts are framed the same way
+		assertEquals("hello" + NL, pool.execute("Write-Output \"hello\""));
+		assertEquals("", pool.execute("Start-Sleep -Milliseconds 1"));
+	}
+
+	@Test
+	void pipelinedCallsAreRoutedByToken() throws Exception {
+		pool = startPool(2);
+		for (int i = 0; i < 8; i++) {
+			// Calls of different lengths, interleaved over the two shells
+			String body = "Start-Sleep -Milliseconds " + (8 - i) * 10 + "\nWrite-Output \"value " + i + "\"";
+			pool.register("Get-Value" + i, body);
+		}
+
+		ExecutorService callers = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<String>> responses = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				String function = "Get-Value" + i;
+				responses.add(callers.submit(() -> pool.invoke(function, STARTUP_TIMEOUT_MS)));
+			}
+			for (int i = 0; i < 8; i++) {
+				assertEquals("value " + i + NL, responses.get(i).get(STARTUP_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+			}
+		} finally {
+			callers.shutdownNow();
+		}
+		assertEquals(0, pool.getRestarts());
+	}
+
+	@Test
+	void timedOutShellIsRestartedWithItsFunctions() throws IOException {
+		pool = startPool(1);
+		pool.register("Get-Name", "Write-Output \"shell\"");
+		pool.register("Wait-Forever", "Start-Sleep -Milliseconds 60000");
+		assertEquals("shell" + NL, pool.invoke("Get-Name", STARTUP_TIMEOUT_MS));
+
+		long start = System.nanoTime();
+		IOException timeout = assertThrows(IOException.class, () -> pool.invoke("Wait-Forever", 200));
+		assertTrue(timeout.getMessage().contains("timed out"));
+		assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+		assertEquals(1, pool.getRestarts());
+
+		// The new shell knows the functions registered before the restart
+		assertEquals("shell" + NL, pool.invoke("Get-Name", STARTUP_TIMEOUT_MS));
+		assertTrue(pool.isAlive());
+	}
+
+	@Test
+	void restartFailsTheOtherPendingCalls() throws Exception {
+		pool = startPool(1);
+		pool.register("Wait-Forever", "Start-Sleep -Milliseconds 60000");
+		pool.execute("Write-Output \"ready\"");
+
+		CompletableFuture<String> pending = new CompletableFuture<>();
+		IOExecutor.newThread("pending-call", () -> {
+			try {
+				pending.complete(pool.invoke("Wait-Forever", STARTUP_TIMEOUT_MS));
+			} catch (IOException e) {
+				pending.completeExceptionally(e);
+			}
+		}).start();
+		// Let the first call reach the shell before the one timing out
+		Thread.sleep(200);
+		assertThrows(IOException.class, () -> pool.invoke("Wait-Forever", 200));
+
+		ExecutionException failed = assertThrows(ExecutionException.class, () -> pending.get(10, TimeUnit.SECONDS));
+		assertTrue(failed.getCause() instanceof IOException, failed.toString());
+	}
+
+	@Test
+	void closedPoolRejectsCalls() throws IOException {
+		pool = startPool(1);
+		pool.close();
+
+		assertThrows(IOException.class, () -> pool.execute("Write-Output \"late\""));
+		assertFalse(pool.isAlive());
+	}
+
+	private static ShellSessionPool startPool(int shells) throws IOException {
+		String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+		return new ShellSessionPool(
+				Arrays.asList(java, "-cp", System.getProperty("java.class.path"), StandInShell.class.getName()),
+				shells);
+	}
+}
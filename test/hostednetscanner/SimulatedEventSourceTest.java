@@ -0,0 +1,150 @@
+package hostednetscanner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import hostednetscanner.NetworkEventSource.EventType;
+
+/**
+ * Drives the {@link SimulatedEventSource} directly, then through a
+ * {@link NetworkMonitor} scanning a network that only counts its scans.
+ */
+class SimulatedEventSourceTest {
+	private static final AdaptivePollingScheduler.Policy FAST_POLLING = new AdaptivePollingScheduler.Policy(50, 50,
+			100, 2.0, 0);
+
+	private final SimulatedEventSource source = new SimulatedEventSource();
+	private final CountingNetwork network = new CountingNetwork();
+	private NetworkMonitor monitor;
+
+	@AfterEach
+	void stop() {
+		if (monitor != null)
+			monitor.stop();
+		source.close();
+	}
+
+	@Test
+	void eventsAreDeliveredInOrderUntilFailure() {
+		List<String> received = new ArrayList<>();
+		source.start(new NetworkEventSource.Listener() {
+			@Override
+			public void onEvent(EventType type) {
+				received.add(type.name());
+			}
+
+			@Override
+			public void onFailure(Exception cause) {
+				received.add("failure: " + cause.getMessage());
+			}
+		});
+
+		source.fire(EventType.NEIGHBOR);
+		source.fire(EventType.ASSOCIATION);
+		source.fire(EventType.NEIGHBOR);
+		source.fail(new IOException("gone"));
+		// Nothing is delivered once the source failed
+		source.fire(EventType.ASSOCIATION);
+		source.fail(new IOException("again"));
+
+		assertEquals(List.of("NEIGHBOR", "ASSOCIATION", "NEIGHBOR", "failure: gone"), received);
+	}
+
+	@Test
+	void closedSourceDeliversNothing() {
+		AtomicInteger events = new AtomicInteger();
+		source.start(new NetworkEventSource.Listener() {
+			@Override
+			public void onEvent(EventType type) {
+				events.incrementAndGet();
+			}
+
+			@Override
+			public void onFailure(Exception cause) {
+				events.incrementAndGet();
+			}
+		});
+		source.close();
+		source.fire(EventType.NEIGHBOR);
+		source.fail(new IOException("closed"));
+
+		assertEquals(0, events.get());
+	}
+
+	@Test
+	void burstOfEventsIsCoalescedIntoOneScan() throws InterruptedException {
+		monitor = new NetworkMonitor(network, source, new AdaptivePollingScheduler(FAST_POLLING));
+		monitor.start();
+		await(() -> network.scans.get() == 1);
+		assertTrue(monitor.isEventDriven());
+
+		for (int i = 0; i < 10; i++) {
+			source.fire(i % 2 == 0 ? EventType.NEIGHBOR : EventType.ASSOCIATION);
+		}
+		await(() -> network.scans.get() == 2);
+		// Give a second scan time to run if the burst was not merged
+		Thread.sleep(300);
+
+		assertEquals(2, network.scans.get());
+		assertEquals(10, monitor.getEventCount());
+	}
+
+	@Test
+	void eventAfterScanTriggersAnotherScan() throws InterruptedException {
+		monitor = new NetworkMonitor(network, source, new AdaptivePollingScheduler(FAST_POLLING));
+		monitor.start();
+		await(() -> network.scans.get() == 1);
+
+		for (int scan = 2; scan <= 4; scan++) {
+			source.fire(EventType.NEIGHBOR);
+			int expected = scan;
+			await(() -> network.scans.get() == expected);
+		}
+		assertEquals(3, monitor.getEventCount());
+	}
+
+	@Test
+	void failedSourceFallsBackToPolling() throws InterruptedException {
+		monitor = new NetworkMonitor(network, source, new AdaptivePollingScheduler(FAST_POLLING));
+		monitor.start();
+		await(() -> network.scans.get() == 1);
+
+		source.fail(new IOException("gone"));
+		await(() -> !monitor.isEventDriven());
+		int scans = network.scans.get();
+		await(() -> network.scans.get() >= scans + 3);
+		assertFalse(monitor.isEventDriven());
+	}
+
+	private static void await(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (!condition.getAsBoolean()) {
+			assertTrue(System.nanoTime() < deadline, "Timed out waiting for the monitor");
+			Thread.sleep(10);
+		}
+	}
+
+	private static final class CountingNetwork extends Network {
+		final AtomicInteger scans = new AtomicInteger();
+
+		CountingNetwork() {
+			super(new Device(null, FixtureGenerator.HOSTED_MAC));
+		}
+
+		@Override
+		public void updateConnectedDevices() {
+			scans.incrementAndGet();
+		}
+	}
+}